@@ -1,8 +1,14 @@
 package com.vng.videofilter;
 
 import android.app.Application;
+import android.content.pm.ApplicationInfo;
 import android.os.StrictMode;
 
+import com.vng.videofilter.codec.CodecProbe;
+import com.vng.videofilter.codec.CodecProfileStore;
+import com.vng.videofilter.gles.GlUtil;
+import com.vng.videofilter.gles.ProgramCache;
+
 /**
  * Copyright (C) 2017, VNG Corporation.
  *
@@ -20,6 +26,14 @@ public class App extends Application {
         sInstance = this;
 
         StrictMode.enableDefaults();
+
+        ProgramCache.init(this);
+        // Release builds look for GL errors once per frame rather than after every call.
+        final boolean debuggable = (getApplicationInfo().flags & ApplicationInfo.FLAG_DEBUGGABLE) != 0;
+        GlUtil.setErrorCheckMode(debuggable ? GlUtil.CHECK_EVERY_CALL : GlUtil.CHECK_PER_FRAME, 1);
+
+        // Probing codecs takes a while the first time; jobs use platform defaults until then.
+        new Thread(() -> CodecProfileStore.init(this, CodecProbe.VIDEO_MIME_TYPES), "codec_probe").start();
     }
 
     public static App getInstance() {
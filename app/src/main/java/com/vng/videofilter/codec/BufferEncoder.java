@@ -0,0 +1,106 @@
+package com.vng.videofilter.codec;
+
+import android.media.MediaCodec;
+import android.media.MediaCodecInfo;
+import android.media.MediaFormat;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Copyright (C) 2017, VNG Corporation.
+ * <p>
+ * Video encoder fed with raw YUV frames through its input buffers rather than a surface.
+ * Input buffers are dequeued synchronously by the producer; the encoded samples are
+ * drained into the muxer on a dedicated thread, as with {@link SurfaceEncoder}.
+ *
+ * @author namnt4
+ * @since 18/10/2026
+ */
+public class BufferEncoder extends SurfaceEncoder {
+
+    private static final long TIMEOUT_US = 10000;
+
+    private final int mColorFormat;
+
+    /**
+     * Creates an encoder format for frames laid out in the given color format, one of
+     * {@link MediaCodecInfo.CodecCapabilities#COLOR_FormatYUV420Planar} and
+     * {@link MediaCodecInfo.CodecCapabilities#COLOR_FormatYUV420SemiPlanar}. Rows aren't
+     * padded: the stride is the width and the slice height the height.
+     */
+    public static MediaFormat createVideoFormat(String mimeType, MediaFormat sourceFormat, int colorFormat) {
+        final MediaFormat format = SurfaceEncoder.createVideoFormat(mimeType, sourceFormat);
+        format.setInteger(MediaFormat.KEY_COLOR_FORMAT, colorFormat);
+        return format;
+    }
+
+    /**
+     * Picks the YUV layout to feed an encoder with, semi-planar first as that's what most
+     * hardware encoders take natively.
+     *
+     * @return the color format, or -1 if the encoder takes neither planar nor semi-planar
+     * frames.
+     */
+    public static int selectColorFormat(String codecName, String mimeType) {
+        final int[] colorFormats = CodecProbe.getColorFormats(codecName, mimeType);
+        int selected = -1;
+        for (int colorFormat : colorFormats) {
+            if (colorFormat == MediaCodecInfo.CodecCapabilities.COLOR_FormatYUV420SemiPlanar) {
+                return colorFormat;
+            }
+            if (colorFormat == MediaCodecInfo.CodecCapabilities.COLOR_FormatYUV420Planar) {
+                selected = colorFormat;
+            }
+        }
+        return selected;
+    }
+
+    /**
+     * @param encoder     Unconfigured encoder.
+     * @param format      Base format, e.g. from {@link #createVideoFormat(String, MediaFormat, int)}.
+     * @param colorFormat Color format the format asks for.
+     */
+    public BufferEncoder(CodecPort encoder, CodecTuning.FormatSource format, int colorFormat,
+                         MuxerWrapper muxer, Listener listener) {
+        super(encoder, format, muxer, listener, false);
+        mColorFormat = colorFormat;
+    }
+
+    public int getColorFormat() {
+        return mColorFormat;
+    }
+
+    /**
+     * @return the index of a free input buffer, or a negative value if none freed up in time.
+     */
+    public int dequeueInputBuffer(long timeoutUs) {
+        return mEncoder.dequeueInputBuffer(timeoutUs);
+    }
+
+    public ByteBuffer getInputBuffer(int index) {
+        return mEncoder.getInputBuffer(index);
+    }
+
+    /**
+     * @param flags E.g. {@link MediaCodec#BUFFER_FLAG_END_OF_STREAM} to end the stream with a
+     *              buffer already dequeued.
+     */
+    public void queueInputBuffer(int index, int size, long presentationTimeUs, int flags) {
+        mEncoder.queueInputBuffer(index, 0, size, presentationTimeUs, flags);
+    }
+
+    /**
+     * Queues an empty buffer flagged as the end of the stream, waiting for one to free up.
+     */
+    @Override
+    public void signalEndOfInputStream() {
+        int index;
+        do {
+            index = mEncoder.dequeueInputBuffer(TIMEOUT_US);
+        } while (index < 0 && !Thread.currentThread().isInterrupted());
+
+        if (index >= 0) {
+            mEncoder.queueInputBuffer(index, 0, 0, 0, MediaCodec.BUFFER_FLAG_END_OF_STREAM);
+        }
+    }
+}
@@ -0,0 +1,76 @@
+package com.vng.videofilter.codec;
+
+/**
+ * Copyright (C) 2017, VNG Corporation.
+ * <p>
+ * Preallocated {@link SampleInfo} records, one per codec output buffer.
+ * <p>
+ * {@code dequeueOutputBuffer} needs a record before the index is known, so the codec
+ * writes into a shared scratch record which is then copied into the slot owned by the
+ * returned index. A slot stays valid until its buffer is released back to the codec and
+ * dequeued again, so lookups by index are O(1) and nothing is allocated per frame.
+ *
+ * @author namnt4
+ * @since 18/10/2026
+ */
+public final class BufferInfoPool {
+
+    private final SampleInfo mScratch = new SampleInfo();
+
+    private SampleInfo[] mInfos = new SampleInfo[0];
+
+    public BufferInfoPool(int bufferCount) {
+        ensureCapacity(bufferCount);
+    }
+
+    /**
+     * Returns the record to pass to {@code dequeueOutputBuffer}.
+     */
+    public SampleInfo scratch() {
+        return mScratch;
+    }
+
+    /**
+     * Copies the scratch record into the slot for {@code index} and returns that slot.
+     */
+    public SampleInfo commit(int index) {
+        final SampleInfo info = obtain(index);
+        info.set(mScratch);
+        return info;
+    }
+
+    /**
+     * Returns the slot for {@code index}, for callers that fill it directly.
+     */
+    public SampleInfo obtain(int index) {
+        if (index >= mInfos.length) {
+            ensureCapacity(Math.max(index + 1, mInfos.length << 1));
+        }
+        return mInfos[index];
+    }
+
+    /**
+     * Returns the metadata of the output buffer at {@code index}, as recorded by the last
+     * {@link #commit(int)} for that index.
+     */
+    public SampleInfo get(int index) {
+        return mInfos[index];
+    }
+
+    /**
+     * Makes sure there is a slot for every buffer index below {@code bufferCount}. Existing
+     * slots are kept, so records handed out earlier stay valid.
+     */
+    public void ensureCapacity(int bufferCount) {
+        if (bufferCount <= mInfos.length) {
+            return;
+        }
+
+        final SampleInfo[] infos = new SampleInfo[bufferCount];
+        System.arraycopy(mInfos, 0, infos, 0, mInfos.length);
+        for (int i = mInfos.length; i < bufferCount; i++) {
+            infos[i] = new SampleInfo();
+        }
+        mInfos = infos;
+    }
+}
@@ -0,0 +1,69 @@
+package com.vng.videofilter.codec;
+
+import android.annotation.TargetApi;
+import android.media.MediaCodecInfo;
+import android.media.MediaCodecList;
+
+import com.vng.videofilter.util.Utils;
+
+/**
+ * Copyright (C) 2017, VNG Corporation.
+ * <p>
+ * How many codec sessions the device can run at the same time.
+ *
+ * @author namnt4
+ * @since 18/10/2026
+ */
+public final class CodecLimits {
+
+    // Assumed when the platform can't tell. Every device we support runs a decoder and an
+    // encoder for recording and playback at the same time, so two pairs is a safe bet.
+    public static final int DEFAULT_MAX_INSTANCES = 2;
+
+    private CodecLimits() {
+    }
+
+    /**
+     * Returns the number of decoder/encoder pairs that can run concurrently, using the codec
+     * {@link CodecProfileStore} would pick for each type, or else the first codec the
+     * platform would pick.
+     */
+    public static int getMaxCodecPairs(String decoderMimeType, String encoderMimeType) {
+        return Math.min(getMaxSupportedInstances(decoderMimeType, false),
+                getMaxSupportedInstances(encoderMimeType, true));
+    }
+
+    public static int getMaxSupportedInstances(String mimeType, boolean encoder) {
+        final CodecProfile profile = CodecProfileStore.getDefault().select(mimeType, encoder, 0, 0);
+        if (profile != null) {
+            return profile.maxInstances;
+        }
+
+        if (!Utils.hasMarshmallow()) {
+            return DEFAULT_MAX_INSTANCES;
+        }
+
+        return getMaxSupportedInstancesV23(mimeType, encoder);
+    }
+
+    @TargetApi(23)
+    private static int getMaxSupportedInstancesV23(String mimeType, boolean encoder) {
+        final MediaCodecInfo[] codecInfos = new MediaCodecList(MediaCodecList.REGULAR_CODECS).getCodecInfos();
+        for (MediaCodecInfo codecInfo : codecInfos) {
+            if (codecInfo.isEncoder() != encoder) {
+                continue;
+            }
+
+            for (String type : codecInfo.getSupportedTypes()) {
+                if (type.equalsIgnoreCase(mimeType)) {
+                    try {
+                        return Math.max(1, codecInfo.getCapabilitiesForType(type).getMaxSupportedInstances());
+                    } catch (IllegalArgumentException e) {
+                        return DEFAULT_MAX_INSTANCES;
+                    }
+                }
+            }
+        }
+        return DEFAULT_MAX_INSTANCES;
+    }
+}
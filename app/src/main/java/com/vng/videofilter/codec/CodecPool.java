@@ -0,0 +1,529 @@
+package com.vng.videofilter.codec;
+
+import android.media.MediaCodec;
+import android.media.MediaFormat;
+import android.support.annotation.NonNull;
+import android.util.Log;
+import android.view.Surface;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayDeque;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Copyright (C) 2017, VNG Corporation.
+ * <p>
+ * Keeps released codecs around so the next job can skip creating them, which takes tens to
+ * hundreds of milliseconds per codec. Codecs are pooled by mime type, role and resolution
+ * class, and come back {@link CodecPort#reset() reset}, ready to be configured again.
+ * <p>
+ * Codecs handed out by {@link #acquire} go back to the pool when they're released. At most
+ * a given number of codecs are kept idle, each for at most the idle timeout.
+ * <p>
+ * The codecs of a mime type and role that are alive at once, in use or idle, are capped by
+ * what the device can run. Past the cap, an idle one of another resolution class is
+ * released to make room, and otherwise {@link #acquire} fails rather than have the codec
+ * fail to start, or take the hardware from another app.
+ *
+ * @author namnt4
+ * @since 18/10/2026
+ */
+public class CodecPool {
+
+    private static final String TAG = CodecPool.class.getSimpleName();
+
+    public static final int DEFAULT_MAX_IDLE_INSTANCES = 4;
+
+    public static final long DEFAULT_IDLE_TIMEOUT_MS = 30_000L;
+
+    // Upper bounds, in pixels, of the resolution classes.
+    private static final int[] RESOLUTION_CLASSES = {640 * 480, 1280 * 720, 1920 * 1088};
+
+    private static CodecPool sDefault;
+
+    private final Creator mCreator;
+
+    private final InstanceLimits mInstanceLimits;
+
+    private final int mMaxIdleInstances;
+
+    private final long mIdleTimeoutMs;
+
+    // Idle codecs by key, least recently released first. Guarded by this.
+    private final Map<String, ArrayDeque<IdleCodec>> mIdleCodecs = new HashMap<>();
+
+    private int mIdleCount;
+
+    // Live codecs, and the most that may be, by mime type and role. Guarded by this.
+    private final Map<String, Integer> mLiveCounts = new HashMap<>();
+    private final Map<String, Integer> mMaxLiveCounts = new HashMap<>();
+
+    private int mHitCount;
+
+    private int mMissCount;
+
+    private int mEvictionCount;
+
+    private ScheduledExecutorService mEvictor;
+
+    /**
+     * @param instanceLimits   Codecs of a mime type and role alive at most, e.g.
+     *                         {@link CodecLimits#getMaxSupportedInstances}.
+     * @param maxIdleInstances Codecs kept at most, over all keys. Codecs in use don't count.
+     * @param idleTimeoutMs    Idle codecs are released after this long.
+     */
+    public CodecPool(Creator creator, InstanceLimits instanceLimits, int maxIdleInstances, long idleTimeoutMs) {
+        mCreator = creator;
+        mInstanceLimits = instanceLimits;
+        mMaxIdleInstances = maxIdleInstances;
+        mIdleTimeoutMs = idleTimeoutMs;
+    }
+
+    /**
+     * The pool shared by every job of the process, creating {@link MediaCodecPort}s.
+     */
+    public static synchronized CodecPool getDefault() {
+        if (sDefault == null) {
+            sDefault = new CodecPool(MediaCodecPort.CREATOR, CodecLimits::getMaxSupportedInstances,
+                    DEFAULT_MAX_IDLE_INSTANCES, DEFAULT_IDLE_TIMEOUT_MS);
+        }
+        return sDefault;
+    }
+
+    /**
+     * Returns an unconfigured codec. Releasing it puts it back into the pool.
+     *
+     * @throws IOException if the codec can't be created, or as many as the device can run
+     *                     are in use already.
+     */
+    public CodecPort acquire(String mimeType, boolean encoder, int width, int height) throws IOException {
+        final String type = getType(mimeType, encoder);
+        final String key = type + "/" + getResolutionClass(width, height);
+        final CodecPort evicted;
+        synchronized (this) {
+            final ArrayDeque<IdleCodec> idle = mIdleCodecs.get(key);
+            if (idle != null && !idle.isEmpty()) {
+                // The most recently released one is the least likely to be evicted soon.
+                final IdleCodec codec = idle.removeLast();
+                mIdleCount--;
+                mHitCount++;
+                return new PooledCodecPort(type, key, codec.codec);
+            }
+
+            final int maxLiveCount = getMaxLiveCount(type, mimeType, encoder);
+            if (getLiveCount(type) >= maxLiveCount) {
+                evicted = removeOldest(type);
+                if (evicted == null) {
+                    throw new IOException("All " + maxLiveCount + " " + type + " codecs are in use");
+                }
+            } else {
+                evicted = null;
+            }
+            // Taken before creating, so that concurrent callers can't both get the last one.
+            mLiveCounts.put(type, getLiveCount(type) + 1);
+            mMissCount++;
+        }
+
+        if (evicted != null) {
+            // Its slot went to this codec already.
+            releaseQuietly(evicted);
+        }
+
+        try {
+            return new PooledCodecPort(type, key, mCreator.create(mimeType, encoder, width, height));
+        } catch (IOException | RuntimeException e) {
+            onReleased(type);
+            throw e;
+        }
+    }
+
+    /**
+     * Creates decoders for video of the given size out of this pool.
+     */
+    public CodecPort.Factory decoderFactory(int width, int height) {
+        return mimeType -> acquire(mimeType, false, width, height);
+    }
+
+    private void recycle(String type, String key, CodecPort codec) {
+        try {
+            codec.reset();
+        } catch (RuntimeException e) {
+            // The codec is in a state it can't come back from.
+            Log.w(TAG, "recycle(): " + key + ", " + e);
+            discard(type, codec);
+            return;
+        }
+
+        final CodecPort evicted;
+        synchronized (this) {
+            ArrayDeque<IdleCodec> idle = mIdleCodecs.get(key);
+            if (idle == null) {
+                idle = new ArrayDeque<>();
+                mIdleCodecs.put(key, idle);
+            }
+            idle.addLast(new IdleCodec(type, codec, System.nanoTime()));
+            mIdleCount++;
+            evicted = mIdleCount > mMaxIdleInstances ? removeOldest(null) : null;
+            scheduleEviction();
+        }
+
+        if (evicted != null) {
+            releaseQuietly(evicted);
+        }
+    }
+
+    /**
+     * Releases the codecs that have been idle for longer than the timeout.
+     */
+    public void evictIdle() {
+        final long deadlineNs = System.nanoTime() - TimeUnit.MILLISECONDS.toNanos(mIdleTimeoutMs);
+        final ArrayDeque<CodecPort> evicted = new ArrayDeque<>();
+        synchronized (this) {
+            for (ArrayDeque<IdleCodec> idle : mIdleCodecs.values()) {
+                while (!idle.isEmpty() && idle.peekFirst().releasedAtNs <= deadlineNs) {
+                    evicted.add(remove(idle));
+                    mEvictionCount++;
+                }
+            }
+        }
+
+        for (CodecPort codec : evicted) {
+            releaseQuietly(codec);
+        }
+    }
+
+    /**
+     * Releases every idle codec. Codecs in use go back to the pool as usual.
+     */
+    public void clear() {
+        final ArrayDeque<CodecPort> evicted = new ArrayDeque<>();
+        synchronized (this) {
+            for (ArrayDeque<IdleCodec> idle : mIdleCodecs.values()) {
+                while (!idle.isEmpty()) {
+                    evicted.add(remove(idle));
+                }
+            }
+        }
+
+        for (CodecPort codec : evicted) {
+            releaseQuietly(codec);
+        }
+    }
+
+    /**
+     * Takes the idle codec released the longest ago out of the pool, of the given mime type
+     * and role or of any if null. Must hold the lock; the caller releases it.
+     */
+    private CodecPort removeOldest(String type) {
+        ArrayDeque<IdleCodec> oldest = null;
+        for (ArrayDeque<IdleCodec> idle : mIdleCodecs.values()) {
+            if (!idle.isEmpty() && (type == null || type.equals(idle.peekFirst().type))
+                    && (oldest == null || idle.peekFirst().releasedAtNs < oldest.peekFirst().releasedAtNs)) {
+                oldest = idle;
+            }
+        }
+        if (oldest == null) {
+            return null;
+        }
+
+        mEvictionCount++;
+        return remove(oldest);
+    }
+
+    // Must hold the lock. The codec no longer counts as live, so the caller releases it.
+    private CodecPort remove(ArrayDeque<IdleCodec> idle) {
+        final IdleCodec codec = idle.removeFirst();
+        mIdleCount--;
+        mLiveCounts.put(codec.type, getLiveCount(codec.type) - 1);
+        return codec.codec;
+    }
+
+    private void discard(String type, CodecPort codec) {
+        onReleased(type);
+        releaseQuietly(codec);
+    }
+
+    private synchronized void onReleased(String type) {
+        mLiveCounts.put(type, getLiveCount(type) - 1);
+    }
+
+    // Must hold the lock.
+    private int getLiveCount(String type) {
+        final Integer count = mLiveCounts.get(type);
+        return count != null ? count : 0;
+    }
+
+    // Must hold the lock. Asking the platform is slow, so it's asked once per type.
+    private int getMaxLiveCount(String type, String mimeType, boolean encoder) {
+        Integer maxCount = mMaxLiveCounts.get(type);
+        if (maxCount == null) {
+            maxCount = Math.max(1, mInstanceLimits.getMaxInstances(mimeType, encoder));
+            mMaxLiveCounts.put(type, maxCount);
+        }
+        return maxCount;
+    }
+
+    private void scheduleEviction() {
+        if (mEvictor == null) {
+            mEvictor = Executors.newSingleThreadScheduledExecutor(runnable -> {
+                final Thread thread = new Thread(runnable, "codec_pool_evictor");
+                thread.setDaemon(true);
+                return thread;
+            });
+        }
+        mEvictor.schedule(this::evictIdle, mIdleTimeoutMs, TimeUnit.MILLISECONDS);
+    }
+
+    private static void releaseQuietly(CodecPort codec) {
+        try {
+            codec.release();
+        } catch (RuntimeException e) {
+            e.printStackTrace();
+        }
+    }
+
+    /**
+     * Codecs can usually be reconfigured within a resolution class, but not always across
+     * them, e.g. when a larger picture needs a different hardware instance.
+     */
+    static int getResolutionClass(int width, int height) {
+        final long pixels = (long) width * height;
+        int resolutionClass = 0;
+        while (resolutionClass < RESOLUTION_CLASSES.length && pixels > RESOLUTION_CLASSES[resolutionClass]) {
+            resolutionClass++;
+        }
+        return resolutionClass;
+    }
+
+    private static String getType(String mimeType, boolean encoder) {
+        return mimeType + (encoder ? "/encoder" : "/decoder");
+    }
+
+    public synchronized int getIdleCount() {
+        return mIdleCount;
+    }
+
+    /**
+     * Number of codecs of the mime type and role alive, in use or idle.
+     */
+    public synchronized int getLiveCount(String mimeType, boolean encoder) {
+        return getLiveCount(getType(mimeType, encoder));
+    }
+
+    /**
+     * Number of codecs handed out from the pool.
+     */
+    public synchronized int getHitCount() {
+        return mHitCount;
+    }
+
+    /**
+     * Number of codecs that had to be created.
+     */
+    public synchronized int getMissCount() {
+        return mMissCount;
+    }
+
+    /**
+     * Number of idle codecs released because of the timeout or the instance limit.
+     */
+    public synchronized int getEvictionCount() {
+        return mEvictionCount;
+    }
+
+    @Override
+    public synchronized String toString() {
+        return "CodecPool{idle " + mIdleCount + ", hits " + mHitCount + ", misses " + mMissCount
+                + ", evictions " + mEvictionCount + "}";
+    }
+
+    private static final class IdleCodec {
+
+        private final String type;
+
+        private final CodecPort codec;
+
+        private final long releasedAtNs;
+
+        private IdleCodec(String type, CodecPort codec, long releasedAtNs) {
+            this.type = type;
+            this.codec = codec;
+            this.releasedAtNs = releasedAtNs;
+        }
+    }
+
+    /**
+     * Forwards to a pooled codec, and hands it back to the pool instead of releasing it.
+     * Callbacks report this port rather than the pooled one, so clients can tell their codec
+     * apart.
+     */
+    private final class PooledCodecPort implements CodecPort {
+
+        private final String mType;
+
+        private final String mKey;
+
+        private CodecPort mCodec;
+
+        private PooledCodecPort(String type, String key, CodecPort codec) {
+            mType = type;
+            mKey = key;
+            mCodec = codec;
+        }
+
+        private CodecPort codec() {
+            if (mCodec == null) {
+                throw new IllegalStateException("Codec was released");
+            }
+            return mCodec;
+        }
+
+        @Override
+        public void setCallback(Callback callback) {
+            codec().setCallback(new Callback() {
+                @Override
+                public void onInputBufferAvailable(@NonNull CodecPort codec, int index) {
+                    callback.onInputBufferAvailable(PooledCodecPort.this, index);
+                }
+
+                @Override
+                public void onOutputBufferAvailable(@NonNull CodecPort codec, int index, @NonNull SampleInfo info) {
+                    callback.onOutputBufferAvailable(PooledCodecPort.this, index, info);
+                }
+
+                @Override
+                public void onOutputFormatChanged(@NonNull CodecPort codec, @NonNull MediaFormat format) {
+                    callback.onOutputFormatChanged(PooledCodecPort.this, format);
+                }
+
+                @Override
+                public void onError(@NonNull CodecPort codec, @NonNull Exception e) {
+                    callback.onError(PooledCodecPort.this, e);
+                }
+            });
+        }
+
+        @Override
+        public void configure(MediaFormat format, Surface surface, int flags) {
+            codec().configure(format, surface, flags);
+        }
+
+        @Override
+        public void start() {
+            codec().start();
+        }
+
+        @Override
+        public Surface createInputSurface() {
+            return codec().createInputSurface();
+        }
+
+        @Override
+        public void signalEndOfInputStream() {
+            codec().signalEndOfInputStream();
+        }
+
+        @Override
+        public int getInputBufferCount() {
+            return codec().getInputBufferCount();
+        }
+
+        @Override
+        public int getOutputBufferCount() {
+            return codec().getOutputBufferCount();
+        }
+
+        @Override
+        public ByteBuffer getInputBuffer(int index) {
+            return codec().getInputBuffer(index);
+        }
+
+        @Override
+        public ByteBuffer getOutputBuffer(int index) {
+            return codec().getOutputBuffer(index);
+        }
+
+        @Override
+        public int dequeueInputBuffer(long timeoutUs) {
+            return codec().dequeueInputBuffer(timeoutUs);
+        }
+
+        @Override
+        public int dequeueOutputBuffer(SampleInfo info, long timeoutUs) {
+            return codec().dequeueOutputBuffer(info, timeoutUs);
+        }
+
+        @Override
+        public void queueInputBuffer(int index, int offset, int size, long presentationTimeUs, int flags) {
+            codec().queueInputBuffer(index, offset, size, presentationTimeUs, flags);
+        }
+
+        @Override
+        public void queueSecureInputBuffer(int index, int offset, MediaCodec.CryptoInfo info,
+                                           long presentationTimeUs, int flags) {
+            codec().queueSecureInputBuffer(index, offset, info, presentationTimeUs, flags);
+        }
+
+        @Override
+        public void releaseOutputBuffer(int index, boolean render) {
+            codec().releaseOutputBuffer(index, render);
+        }
+
+        @Override
+        public MediaFormat getOutputFormat() {
+            return codec().getOutputFormat();
+        }
+
+        @Override
+        public String getName() {
+            return codec().getName();
+        }
+
+        @Override
+        public void flush() {
+            codec().flush();
+        }
+
+        @Override
+        public void stop() {
+            codec().stop();
+        }
+
+        @Override
+        public void reset() {
+            codec().reset();
+        }
+
+        @Override
+        public void release() {
+            if (mCodec == null) {
+                return;
+            }
+
+            final CodecPort codec = mCodec;
+            mCodec = null;
+            recycle(mType, mKey, codec);
+        }
+    }
+
+    /**
+     * Creates the codecs the pool runs out of.
+     */
+    public interface Creator {
+
+        CodecPort create(String mimeType, boolean encoder, int width, int height) throws IOException;
+    }
+
+    /**
+     * Tells how many codecs of a mime type and role the device can run at once.
+     */
+    public interface InstanceLimits {
+
+        int getMaxInstances(String mimeType, boolean encoder);
+    }
+}
@@ -0,0 +1,114 @@
+package com.vng.videofilter.codec;
+
+import android.media.MediaCodec;
+import android.media.MediaFormat;
+import android.support.annotation.NonNull;
+import android.view.Surface;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+/**
+ * Copyright (C) 2017, VNG Corporation.
+ * <p>
+ * The subset of {@link MediaCodec} the pipeline relies on. {@link MediaCodecPort} forwards
+ * to a real codec; tests can plug in a stand-in to run the pipeline off-device.
+ * <p>
+ * Lifecycle and threading follow {@link MediaCodec}: create, optionally
+ * {@link #setCallback(Callback)}, {@link #configure(MediaFormat, Surface, int)},
+ * {@link #start()}. Status codes returned by the dequeue methods are the
+ * {@code MediaCodec.INFO_*} constants.
+ *
+ * @author namnt4
+ * @since 18/10/2026
+ */
+public interface CodecPort {
+
+    /**
+     * Switches the codec to asynchronous mode. Must be called before configure.
+     */
+    void setCallback(Callback callback);
+
+    void configure(MediaFormat format, Surface surface, int flags);
+
+    void start();
+
+    /**
+     * Encoders only. Must be called after configure and before start.
+     */
+    Surface createInputSurface();
+
+    /**
+     * Encoders fed through {@link #createInputSurface()} only.
+     */
+    void signalEndOfInputStream();
+
+    /**
+     * Returns the number of input buffers, or 0 if the codec only reports its buffers
+     * through the callback.
+     */
+    int getInputBufferCount();
+
+    /**
+     * Returns the number of output buffers, or 0 if the codec only reports its buffers
+     * through the callback.
+     */
+    int getOutputBufferCount();
+
+    ByteBuffer getInputBuffer(int index);
+
+    ByteBuffer getOutputBuffer(int index);
+
+    int dequeueInputBuffer(long timeoutUs);
+
+    int dequeueOutputBuffer(SampleInfo info, long timeoutUs);
+
+    void queueInputBuffer(int index, int offset, int size, long presentationTimeUs, int flags);
+
+    void queueSecureInputBuffer(int index, int offset, MediaCodec.CryptoInfo info,
+                                long presentationTimeUs, int flags);
+
+    void releaseOutputBuffer(int index, boolean render);
+
+    MediaFormat getOutputFormat();
+
+    String getName();
+
+    void flush();
+
+    void stop();
+
+    /**
+     * Returns the codec to the uninitialized state, so it can be configured again.
+     */
+    void reset();
+
+    void release();
+
+    /**
+     * Asynchronous notifications, mirroring {@link MediaCodec.Callback}. May be called on any
+     * thread.
+     */
+    interface Callback {
+
+        void onInputBufferAvailable(@NonNull CodecPort codec, int index);
+
+        /**
+         * @param info Metadata of the buffer. Owned by the codec and valid until the buffer
+         *             is released.
+         */
+        void onOutputBufferAvailable(@NonNull CodecPort codec, int index, @NonNull SampleInfo info);
+
+        void onOutputFormatChanged(@NonNull CodecPort codec, @NonNull MediaFormat format);
+
+        void onError(@NonNull CodecPort codec, @NonNull Exception e);
+    }
+
+    /**
+     * Creates unconfigured codecs.
+     */
+    interface Factory {
+
+        CodecPort createDecoder(String mimeType) throws IOException;
+    }
+}
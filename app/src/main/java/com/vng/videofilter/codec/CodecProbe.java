@@ -0,0 +1,129 @@
+package com.vng.videofilter.codec;
+
+import android.annotation.TargetApi;
+import android.media.MediaCodecInfo;
+import android.media.MediaCodecList;
+import android.util.Log;
+import android.util.Range;
+
+import com.vng.videofilter.util.Utils;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Copyright (C) 2017, VNG Corporation.
+ * <p>
+ * Lists the video codecs of the device with their capabilities. Speed comes from the
+ * performance points the vendor publishes; {@link CodecProfileStore} refines it with what
+ * jobs actually measure.
+ *
+ * @author namnt4
+ * @since 18/10/2026
+ */
+public final class CodecProbe {
+
+    private static final String TAG = CodecProbe.class.getSimpleName();
+
+    // Size the achievable frame rate is looked up for.
+    public static final int BENCHMARK_WIDTH = 1280;
+    public static final int BENCHMARK_HEIGHT = 720;
+
+    // Types sources are commonly encoded with.
+    public static final String[] VIDEO_MIME_TYPES = {"video/avc", "video/hevc", "video/mp4v-es", "video/3gpp",
+            "video/x-vnd.on2.vp8", "video/x-vnd.on2.vp9"};
+
+    // Name prefixes of the software codecs shipped with the platform.
+    private static final String[] SOFTWARE_CODEC_PREFIXES = {"OMX.google.", "c2.android.", "OMX.SEC.sw.", "OMX.ffmpeg."};
+
+    private CodecProbe() {
+    }
+
+    /**
+     * @param mimeTypes Types to report codecs for, e.g. the types the app decodes and encodes.
+     */
+    public static List<CodecProfile> probe(String... mimeTypes) {
+        final List<CodecProfile> profiles = new ArrayList<>();
+        final MediaCodecInfo[] codecInfos = new MediaCodecList(MediaCodecList.REGULAR_CODECS).getCodecInfos();
+        for (MediaCodecInfo codecInfo : codecInfos) {
+            for (String type : codecInfo.getSupportedTypes()) {
+                for (String mimeType : mimeTypes) {
+                    if (!type.equalsIgnoreCase(mimeType)) {
+                        continue;
+                    }
+
+                    try {
+                        profiles.add(probe(codecInfo, mimeType));
+                    } catch (RuntimeException e) {
+                        // Some vendors throw for types they list.
+                        Log.w(TAG, "probe(): " + codecInfo.getName() + ", " + e);
+                    }
+                }
+            }
+        }
+        return profiles;
+    }
+
+    private static CodecProfile probe(MediaCodecInfo codecInfo, String mimeType) {
+        final MediaCodecInfo.CodecCapabilities capabilities = codecInfo.getCapabilitiesForType(mimeType);
+        final MediaCodecInfo.VideoCapabilities video = capabilities.getVideoCapabilities();
+
+        final int maxWidth = video != null ? upper(video.getSupportedWidths()) : 0;
+        final int maxHeight = video != null ? upper(video.getSupportedHeights()) : 0;
+        final int maxFrameRate = video != null ? upper(video.getSupportedFrameRates()) : 0;
+        final int maxInstances = Utils.hasMarshmallow()
+                ? Math.max(1, capabilities.getMaxSupportedInstances())
+                : CodecLimits.DEFAULT_MAX_INSTANCES;
+        final float achievableFrameRate = video != null && Utils.hasMarshmallow()
+                ? getAchievableFrameRate(video)
+                : 0;
+
+        return new CodecProfile(codecInfo.getName(), mimeType, codecInfo.isEncoder(),
+                isHardware(codecInfo.getName()), maxWidth, maxHeight, maxFrameRate, maxInstances,
+                achievableFrameRate);
+    }
+
+    @TargetApi(23)
+    private static float getAchievableFrameRate(MediaCodecInfo.VideoCapabilities video) {
+        try {
+            final Range<Double> range = video.getAchievableFrameRatesFor(BENCHMARK_WIDTH, BENCHMARK_HEIGHT);
+            return range != null ? range.getLower().floatValue() : 0;
+        } catch (IllegalArgumentException e) {
+            // The codec doesn't publish a performance point for that size.
+            return 0;
+        }
+    }
+
+    /**
+     * @return the color formats a codec takes or produces for a type, or an empty array if
+     * there is no such codec.
+     */
+    public static int[] getColorFormats(String codecName, String mimeType) {
+        final MediaCodecInfo[] codecInfos = new MediaCodecList(MediaCodecList.REGULAR_CODECS).getCodecInfos();
+        for (MediaCodecInfo codecInfo : codecInfos) {
+            if (!codecInfo.getName().equals(codecName)) {
+                continue;
+            }
+
+            try {
+                return codecInfo.getCapabilitiesForType(mimeType).colorFormats;
+            } catch (RuntimeException e) {
+                Log.w(TAG, "getColorFormats(): " + codecName + ", " + e);
+            }
+        }
+        return new int[0];
+    }
+
+    static boolean isHardware(String codecName) {
+        for (String prefix : SOFTWARE_CODEC_PREFIXES) {
+            if (codecName.startsWith(prefix)) {
+                return false;
+            }
+        }
+        return !codecName.contains(".sw.");
+    }
+
+    private static int upper(Range<Integer> range) {
+        return range != null ? range.getUpper() : 0;
+    }
+}
@@ -0,0 +1,122 @@
+package com.vng.videofilter.codec;
+
+import java.util.Properties;
+
+/**
+ * Copyright (C) 2017, VNG Corporation.
+ * <p>
+ * What one codec of the device can do for one mime type, as found by {@link CodecProbe}
+ * and refined by the jobs that ran on it.
+ *
+ * @author namnt4
+ * @since 18/10/2026
+ */
+public final class CodecProfile {
+
+    public final String name;
+
+    public final String mimeType;
+
+    public final boolean encoder;
+
+    public final boolean hardware;
+
+    public final int maxWidth;
+
+    public final int maxHeight;
+
+    public final int maxFrameRate;
+
+    public final int maxInstances;
+
+    /**
+     * Frame rate the platform says the codec achieves at {@link CodecProbe#BENCHMARK_WIDTH}
+     * x {@link CodecProbe#BENCHMARK_HEIGHT}, or 0 if unknown.
+     */
+    public final float achievableFrameRate;
+
+    /**
+     * Frame rate measured in the jobs the codec ran, or 0 if it hasn't run yet.
+     */
+    float measuredFrameRate;
+
+    public CodecProfile(String name,
+                        String mimeType,
+                        boolean encoder,
+                        boolean hardware,
+                        int maxWidth,
+                        int maxHeight,
+                        int maxFrameRate,
+                        int maxInstances,
+                        float achievableFrameRate) {
+        this.name = name;
+        this.mimeType = mimeType;
+        this.encoder = encoder;
+        this.hardware = hardware;
+        this.maxWidth = maxWidth;
+        this.maxHeight = maxHeight;
+        this.maxFrameRate = maxFrameRate;
+        this.maxInstances = maxInstances;
+        this.achievableFrameRate = achievableFrameRate;
+    }
+
+    public synchronized float getMeasuredFrameRate() {
+        return measuredFrameRate;
+    }
+
+    /**
+     * Whether a picture of that size fits, in either orientation.
+     */
+    public boolean supportsSize(int width, int height) {
+        return (width <= maxWidth && height <= maxHeight) || (height <= maxWidth && width <= maxHeight);
+    }
+
+    /**
+     * Best guess of the frame rate, measured if possible.
+     */
+    public synchronized float getExpectedFrameRate() {
+        return measuredFrameRate > 0 ? measuredFrameRate : achievableFrameRate;
+    }
+
+    synchronized void writeTo(Properties properties, String prefix) {
+        properties.setProperty(prefix + "name", name);
+        properties.setProperty(prefix + "mime", mimeType);
+        properties.setProperty(prefix + "encoder", Boolean.toString(encoder));
+        properties.setProperty(prefix + "hardware", Boolean.toString(hardware));
+        properties.setProperty(prefix + "maxWidth", Integer.toString(maxWidth));
+        properties.setProperty(prefix + "maxHeight", Integer.toString(maxHeight));
+        properties.setProperty(prefix + "maxFrameRate", Integer.toString(maxFrameRate));
+        properties.setProperty(prefix + "maxInstances", Integer.toString(maxInstances));
+        properties.setProperty(prefix + "achievableFrameRate", Float.toString(achievableFrameRate));
+        properties.setProperty(prefix + "measuredFrameRate", Float.toString(measuredFrameRate));
+    }
+
+    /**
+     * @throws IllegalArgumentException if the properties don't hold a profile at that prefix.
+     */
+    static CodecProfile readFrom(Properties properties, String prefix) {
+        final String name = properties.getProperty(prefix + "name");
+        final String mimeType = properties.getProperty(prefix + "mime");
+        if (name == null || mimeType == null) {
+            throw new IllegalArgumentException("No profile at " + prefix);
+        }
+
+        final CodecProfile profile = new CodecProfile(name, mimeType,
+                Boolean.parseBoolean(properties.getProperty(prefix + "encoder")),
+                Boolean.parseBoolean(properties.getProperty(prefix + "hardware")),
+                Integer.parseInt(properties.getProperty(prefix + "maxWidth", "0")),
+                Integer.parseInt(properties.getProperty(prefix + "maxHeight", "0")),
+                Integer.parseInt(properties.getProperty(prefix + "maxFrameRate", "0")),
+                Integer.parseInt(properties.getProperty(prefix + "maxInstances", "1")),
+                Float.parseFloat(properties.getProperty(prefix + "achievableFrameRate", "0")));
+        profile.measuredFrameRate = Float.parseFloat(properties.getProperty(prefix + "measuredFrameRate", "0"));
+        return profile;
+    }
+
+    @Override
+    public String toString() {
+        return "CodecProfile{" + name + ", " + mimeType + (encoder ? " encoder" : " decoder")
+                + (hardware ? ", hw" : ", sw") + ", " + maxWidth + "x" + maxHeight + "@" + maxFrameRate
+                + ", x" + maxInstances + ", " + getExpectedFrameRate() + " fps}";
+    }
+}
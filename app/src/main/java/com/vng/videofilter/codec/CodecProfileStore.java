@@ -0,0 +1,206 @@
+package com.vng.videofilter.codec;
+
+import android.content.Context;
+import android.os.Build;
+import android.util.Log;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Properties;
+
+/**
+ * Copyright (C) 2017, VNG Corporation.
+ * <p>
+ * The {@link CodecProfile}s of the device, kept in a small properties file. The file is
+ * only trusted for the build it was written on: after a system update the codecs are
+ * probed again.
+ *
+ * @author namnt4
+ * @since 18/10/2026
+ */
+public class CodecProfileStore {
+
+    private static final String TAG = CodecProfileStore.class.getSimpleName();
+
+    private static final String FILE_NAME = "codec_profiles.properties";
+
+    // Bumped whenever the file layout changes.
+    private static final int VERSION = 1;
+
+    private static final String KEY_VERSION = "version";
+    private static final String KEY_FINGERPRINT = "fingerprint";
+    private static final String KEY_COUNT = "count";
+
+    // Weight of a new measurement in the measured frame rate.
+    private static final float MEASUREMENT_WEIGHT = 0.5f;
+
+    // Until init() is done, codecs are picked by type.
+    private static volatile CodecProfileStore sDefault = new CodecProfileStore(null, Build.FINGERPRINT);
+
+    private final File mFile;
+
+    private final String mFingerprint;
+
+    private volatile List<CodecProfile> mProfiles = Collections.emptyList();
+
+    /**
+     * @param file        Where the profiles are kept, or null to keep them in memory only.
+     * @param fingerprint Build the profiles are valid for.
+     */
+    public CodecProfileStore(File file, String fingerprint) {
+        mFile = file;
+        mFingerprint = fingerprint;
+    }
+
+    public static CodecProfileStore getDefault() {
+        return sDefault;
+    }
+
+    /**
+     * Loads the profiles saved on this build, or probes the codecs and saves them if there
+     * are none. Does disk I/O, and the probe can take a while: call it off the main thread.
+     *
+     * @param mimeTypes Types to probe codecs for.
+     */
+    public static void init(Context context, String... mimeTypes) {
+        final CodecProfileStore store = new CodecProfileStore(new File(context.getFilesDir(), FILE_NAME),
+                Build.FINGERPRINT);
+        if (!store.load()) {
+            store.setProfiles(CodecProbe.probe(mimeTypes));
+            store.save();
+            Log.d(TAG, "init(): probed " + store.getProfiles());
+        }
+        sDefault = store;
+    }
+
+    public List<CodecProfile> getProfiles() {
+        return mProfiles;
+    }
+
+    public void setProfiles(List<CodecProfile> profiles) {
+        mProfiles = Collections.unmodifiableList(new ArrayList<>(profiles));
+    }
+
+    /**
+     * Picks the codec to use: among those that support the size, hardware codecs first, then
+     * the fastest.
+     *
+     * @return null if no profile fits, in which case the platform default should be used.
+     */
+    public CodecProfile select(String mimeType, boolean encoder, int width, int height) {
+        CodecProfile best = null;
+        for (CodecProfile profile : mProfiles) {
+            if (profile.encoder != encoder || !profile.mimeType.equalsIgnoreCase(mimeType)
+                    || !profile.supportsSize(width, height)) {
+                continue;
+            }
+
+            if (best == null || isBetter(profile, best)) {
+                best = profile;
+            }
+        }
+        return best;
+    }
+
+    private static boolean isBetter(CodecProfile a, CodecProfile b) {
+        if (a.hardware != b.hardware) {
+            return a.hardware;
+        }
+        return a.getExpectedFrameRate() > b.getExpectedFrameRate();
+    }
+
+    public CodecProfile find(String codecName, String mimeType) {
+        for (CodecProfile profile : mProfiles) {
+            if (profile.name.equals(codecName) && profile.mimeType.equalsIgnoreCase(mimeType)) {
+                return profile;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Folds the frame rate a job achieved with a codec into its profile and saves it.
+     */
+    public void recordFrameRate(String codecName, String mimeType, float framesPerSecond) {
+        final CodecProfile profile = find(codecName, mimeType);
+        if (profile == null || framesPerSecond <= 0) {
+            return;
+        }
+
+        synchronized (profile) {
+            profile.measuredFrameRate = profile.measuredFrameRate > 0
+                    ? profile.measuredFrameRate + MEASUREMENT_WEIGHT * (framesPerSecond - profile.measuredFrameRate)
+                    : framesPerSecond;
+        }
+        save();
+    }
+
+    /**
+     * @return false if there is no file, or it was written on another build.
+     */
+    public boolean load() {
+        if (mFile == null || !mFile.isFile()) {
+            return false;
+        }
+
+        final Properties properties = new Properties();
+        try (InputStream in = new FileInputStream(mFile)) {
+            properties.load(in);
+        } catch (IOException e) {
+            Log.w(TAG, "load(): " + e);
+            return false;
+        }
+
+        if (!Integer.toString(VERSION).equals(properties.getProperty(KEY_VERSION))
+                || !mFingerprint.equals(properties.getProperty(KEY_FINGERPRINT))) {
+            return false;
+        }
+
+        try {
+            final int count = Integer.parseInt(properties.getProperty(KEY_COUNT, "0"));
+            final List<CodecProfile> profiles = new ArrayList<>(count);
+            for (int i = 0; i < count; i++) {
+                profiles.add(CodecProfile.readFrom(properties, i + "."));
+            }
+            setProfiles(profiles);
+            return true;
+        } catch (IllegalArgumentException e) {
+            Log.w(TAG, "load(): " + e);
+            return false;
+        }
+    }
+
+    public synchronized void save() {
+        if (mFile == null) {
+            return;
+        }
+
+        final List<CodecProfile> profiles = mProfiles;
+        final Properties properties = new Properties();
+        properties.setProperty(KEY_VERSION, Integer.toString(VERSION));
+        properties.setProperty(KEY_FINGERPRINT, mFingerprint);
+        properties.setProperty(KEY_COUNT, Integer.toString(profiles.size()));
+        for (int i = 0; i < profiles.size(); i++) {
+            profiles.get(i).writeTo(properties, i + ".");
+        }
+
+        // Write aside and rename, so a crash never leaves half a file behind.
+        final File temp = new File(mFile.getPath() + ".tmp");
+        try (OutputStream out = new FileOutputStream(temp)) {
+            properties.store(out, null);
+        } catch (IOException e) {
+            Log.w(TAG, "save(): " + e);
+            return;
+        }
+        if (!temp.renameTo(mFile)) {
+            Log.w(TAG, "save(): could not write " + mFile);
+        }
+    }
+}
@@ -0,0 +1,168 @@
+package com.vng.videofilter.codec;
+
+import android.media.MediaCodec;
+import android.media.MediaFormat;
+import android.util.Log;
+import android.view.Surface;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Copyright (C) 2017, VNG Corporation.
+ * <p>
+ * Configures codecs to run as fast as they can rather than at playback pace: non-realtime
+ * priority, the highest operating rate, and low latency output for decoders. Codecs that
+ * don't know a key ignore it, but some reject the whole configuration instead; then the
+ * keys are added back one at a time, and only those that make configure fail are left out.
+ * What each codec accepted is remembered, so it's only tried once per codec and process.
+ *
+ * @author namnt4
+ * @since 18/10/2026
+ */
+public final class CodecTuning {
+
+    private static final String TAG = CodecTuning.class.getSimpleName();
+
+    // MediaFormat.KEY_LOW_LATENCY, API 30.
+    static final String KEY_LOW_LATENCY = "low-latency";
+
+    // Vendor extensions with the same meaning.
+    static final String KEY_QTI_LOW_LATENCY = "vendor.qti-ext-dec-low-latency.enable";
+    static final String KEY_RTC_LOW_LATENCY = "vendor.rtc-ext-dec-low-latency.enable";
+
+    // Ordered from the most to the least widely supported.
+    private static final String[] ENCODER_KEYS = {MediaFormat.KEY_PRIORITY, MediaFormat.KEY_OPERATING_RATE};
+    private static final String[] DECODER_KEYS = {MediaFormat.KEY_PRIORITY, MediaFormat.KEY_OPERATING_RATE,
+            KEY_LOW_LATENCY, KEY_QTI_LOW_LATENCY, KEY_RTC_LOW_LATENCY};
+
+    // Keys each codec accepted, by codec name and role.
+    private static final Map<String, List<String>> sAcceptedKeys = new HashMap<>();
+
+    private CodecTuning() {
+    }
+
+    /**
+     * Sets the callback, if any, and configures the codec with the tuning keys it accepts.
+     *
+     * @param formatSource Called for a fresh format on every attempt, as keys can't be
+     *                     removed from a format.
+     * @throws RuntimeException what configure threw, if the codec can't be configured even
+     *                          without any tuning key.
+     */
+    public static void configure(CodecPort codec, FormatSource formatSource, Surface surface, int flags,
+                                 CodecPort.Callback callback) {
+        final boolean encoder = (flags & MediaCodec.CONFIGURE_FLAG_ENCODE) != 0;
+        final String cacheKey = codec.getName() + (encoder ? "/encoder" : "/decoder");
+        final List<String> cached = getAcceptedKeys(cacheKey);
+        final List<String> keys = cached != null
+                ? cached
+                : Arrays.asList(encoder ? ENCODER_KEYS : DECODER_KEYS);
+
+        final RuntimeException error = tryConfigure(codec, formatSource, keys, surface, flags, callback);
+        if (error == null) {
+            remember(cacheKey, cached, keys);
+            return;
+        }
+        Log.w(TAG, "configure(): " + cacheKey + " rejected " + keys + ", " + error);
+        codec.reset();
+
+        // Which keys are rejected can only be told by trying them.
+        List<String> accepted = new ArrayList<>();
+        boolean configured = false;
+        for (int i = 0; i < keys.size(); i++) {
+            final List<String> attempt = new ArrayList<>(accepted);
+            attempt.add(keys.get(i));
+            if (tryConfigure(codec, formatSource, attempt, surface, flags, callback) == null) {
+                accepted = attempt;
+                configured = i == keys.size() - 1;
+                if (configured) {
+                    break;
+                }
+            }
+            codec.reset();
+        }
+
+        if (!configured) {
+            final RuntimeException e = tryConfigure(codec, formatSource, accepted, surface, flags, callback);
+            if (e != null) {
+                throw e;
+            }
+        }
+        remember(cacheKey, cached, accepted);
+    }
+
+    /**
+     * @return what configure threw, or null if the codec is configured.
+     */
+    private static RuntimeException tryConfigure(CodecPort codec, FormatSource formatSource, List<String> keys,
+                                                 Surface surface, int flags, CodecPort.Callback callback) {
+        final MediaFormat format = formatSource.create();
+        for (String key : keys) {
+            apply(format, key);
+        }
+
+        try {
+            if (callback != null) {
+                codec.setCallback(callback);
+            }
+            codec.configure(format, surface, flags);
+            return null;
+        } catch (RuntimeException e) {
+            return e;
+        }
+    }
+
+    private static void remember(String cacheKey, List<String> cached, List<String> keys) {
+        if (cached == null) {
+            Log.d(TAG, "configure(): " + cacheKey + " accepts " + keys);
+            synchronized (sAcceptedKeys) {
+                sAcceptedKeys.put(cacheKey, new ArrayList<>(keys));
+            }
+        }
+    }
+
+    private static void apply(MediaFormat format, String key) {
+        if (MediaFormat.KEY_PRIORITY.equals(key)) {
+            // 0 is realtime, 1 is best effort.
+            format.setInteger(key, 1);
+        } else if (MediaFormat.KEY_OPERATING_RATE.equals(key)) {
+            // Asking for more than the codec can do means "as fast as possible".
+            format.setInteger(key, Short.MAX_VALUE);
+        } else {
+            format.setInteger(key, 1);
+        }
+    }
+
+    /**
+     * @return the keys a codec accepted, or null if it hasn't been configured yet.
+     */
+    public static List<String> getAcceptedKeys(String codecName, boolean encoder) {
+        return getAcceptedKeys(codecName + (encoder ? "/encoder" : "/decoder"));
+    }
+
+    private static List<String> getAcceptedKeys(String cacheKey) {
+        synchronized (sAcceptedKeys) {
+            final List<String> keys = sAcceptedKeys.get(cacheKey);
+            return keys != null ? Collections.unmodifiableList(new ArrayList<>(keys)) : null;
+        }
+    }
+
+    static void clearCache() {
+        synchronized (sAcceptedKeys) {
+            sAcceptedKeys.clear();
+        }
+    }
+
+    /**
+     * Creates the base format of a codec.
+     */
+    public interface FormatSource {
+
+        MediaFormat create();
+    }
+}
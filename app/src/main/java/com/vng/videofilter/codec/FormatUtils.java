@@ -0,0 +1,89 @@
+package com.vng.videofilter.codec;
+
+import android.media.MediaCodec;
+import android.media.MediaExtractor;
+import android.media.MediaFormat;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Copyright (C) 2017, VNG Corporation.
+ *
+ * @author namnt4
+ * @since 18/10/2026
+ */
+public final class FormatUtils {
+
+    private static final String[] CSD_KEYS = {"csd-0", "csd-1", "csd-2"};
+
+    private FormatUtils() {
+    }
+
+    /**
+     * Whether samples encoded for one format can be muxed under the other without the
+     * decoder noticing: same type, size and codec specific data (SPS/PPS for AVC).
+     */
+    public static boolean hasSameCodecConfig(MediaFormat a, MediaFormat b) {
+        if (!equals(getString(a, MediaFormat.KEY_MIME), getString(b, MediaFormat.KEY_MIME))
+                || getInteger(a, MediaFormat.KEY_WIDTH) != getInteger(b, MediaFormat.KEY_WIDTH)
+                || getInteger(a, MediaFormat.KEY_HEIGHT) != getInteger(b, MediaFormat.KEY_HEIGHT)) {
+            return false;
+        }
+
+        for (String key : CSD_KEYS) {
+            if (!equals(getByteBuffer(a, key), getByteBuffer(b, key))) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Upper bound of the size of one sample of a track: KEY_MAX_INPUT_SIZE if the track
+     * reports it, else the size of a raw YUV 4:2:0 picture for video, else the default.
+     */
+    public static int getMaxSampleSize(MediaFormat format, int defaultSize) {
+        final int maxInputSize = getInteger(format, MediaFormat.KEY_MAX_INPUT_SIZE);
+        if (maxInputSize > 0) {
+            return maxInputSize;
+        }
+
+        // An encoded frame is never larger than the raw picture.
+        final int width = getInteger(format, MediaFormat.KEY_WIDTH);
+        final int height = getInteger(format, MediaFormat.KEY_HEIGHT);
+        return width > 0 && height > 0 ? width * height * 3 / 2 : defaultSize;
+    }
+
+    /**
+     * Buffer flags to mux a sample read from an extractor with. The two sets of flags share
+     * values but not meanings, e.g. SAMPLE_FLAG_ENCRYPTED is BUFFER_FLAG_CODEC_CONFIG and
+     * SAMPLE_FLAG_PARTIAL_FRAME is BUFFER_FLAG_END_OF_STREAM, so only sync is carried over.
+     */
+    public static int toBufferFlags(int sampleFlags) {
+        return (sampleFlags & MediaExtractor.SAMPLE_FLAG_SYNC) != 0 ? MediaCodec.BUFFER_FLAG_KEY_FRAME : 0;
+    }
+
+    public static String getString(MediaFormat format, String key) {
+        return format.containsKey(key) ? format.getString(key) : null;
+    }
+
+    public static int getInteger(MediaFormat format, String key) {
+        return getInteger(format, key, 0);
+    }
+
+    public static int getInteger(MediaFormat format, String key, int defaultValue) {
+        return format.containsKey(key) ? format.getInteger(key) : defaultValue;
+    }
+
+    public static long getLong(MediaFormat format, String key, long defaultValue) {
+        return format.containsKey(key) ? format.getLong(key) : defaultValue;
+    }
+
+    private static ByteBuffer getByteBuffer(MediaFormat format, String key) {
+        return format.containsKey(key) ? format.getByteBuffer(key) : null;
+    }
+
+    private static boolean equals(Object a, Object b) {
+        return a == null ? b == null : a.equals(b);
+    }
+}
@@ -0,0 +1,417 @@
+package com.vng.videofilter.codec;
+
+import android.annotation.TargetApi;
+import android.media.MediaCodec;
+import android.media.MediaFormat;
+import android.support.annotation.NonNull;
+import android.util.Log;
+import android.view.Surface;
+
+import com.vng.videofilter.util.Utils;
+
+import java.io.IOException;
+import java.lang.ref.WeakReference;
+import java.nio.ByteBuffer;
+
+/**
+ * Copyright (C) 2017, VNG Corporation.
+ * <p>
+ * {@link CodecPort} backed by a {@link MediaCodec}. On Lollipop and later asynchronous mode
+ * uses {@link MediaCodec.Callback}; before that it is emulated with a pair of threads
+ * blocking on the dequeue calls.
+ *
+ * @author namnt4
+ * @since 18/10/2026
+ */
+public final class MediaCodecPort implements CodecPort {
+
+    private static final String TAG = MediaCodecPort.class.getSimpleName();
+
+    // Initial number of callback records. Grows if the codec uses more buffers.
+    private static final int DEFAULT_BUFFER_COUNT = 16;
+
+    public static final Factory FACTORY = mimeType -> new MediaCodecPort(MediaCodec.createDecoderByType(mimeType));
+
+    public static final CodecPool.Creator CREATOR = MediaCodecPort::create;
+
+    private final MediaCodec mCodec;
+
+    private final MediaCodec.BufferInfo mBufferInfo = new MediaCodec.BufferInfo();
+
+    // References to the internal buffers managed by the codec, pre-Lollipop only.
+    private ByteBuffer[] mInputBuffers;
+    private ByteBuffer[] mOutputBuffers;
+
+    private ZMediaCodecCallback mMediaCodecCallback;
+
+    public static MediaCodecPort createEncoder(String mimeType) throws IOException {
+        return new MediaCodecPort(MediaCodec.createEncoderByType(mimeType));
+    }
+
+    /**
+     * Creates the codec {@link CodecProfileStore} picks for the type and size, or the
+     * platform default for the type if it has no profile that fits.
+     */
+    public static MediaCodecPort create(String mimeType, boolean encoder, int width, int height) throws IOException {
+        final CodecProfile profile = CodecProfileStore.getDefault().select(mimeType, encoder, width, height);
+        if (profile != null) {
+            try {
+                return new MediaCodecPort(MediaCodec.createByCodecName(profile.name));
+            } catch (IOException | IllegalArgumentException e) {
+                Log.w(TAG, "create(): " + profile.name + ", " + e);
+            }
+        }
+
+        return new MediaCodecPort(encoder
+                ? MediaCodec.createEncoderByType(mimeType)
+                : MediaCodec.createDecoderByType(mimeType));
+    }
+
+    public MediaCodecPort(MediaCodec codec) {
+        mCodec = codec;
+    }
+
+    public MediaCodec getCodec() {
+        return mCodec;
+    }
+
+    @Override
+    public void setCallback(Callback callback) {
+        mMediaCodecCallback = Utils.hasLollipop()
+                ? new ZMediaCodecCallbackV21(callback)
+                : new ZMediaCodecCallbackPreV21(callback);
+    }
+
+    @Override
+    public void configure(MediaFormat format, Surface surface, int flags) {
+        mCodec.configure(format, surface, null, flags);
+    }
+
+    @Override
+    public void start() {
+        mCodec.start();
+        if (mMediaCodecCallback != null) {
+            mMediaCodecCallback.start();
+        }
+    }
+
+    @Override
+    public Surface createInputSurface() {
+        return mCodec.createInputSurface();
+    }
+
+    @Override
+    public void signalEndOfInputStream() {
+        mCodec.signalEndOfInputStream();
+    }
+
+    @Override
+    public int getInputBufferCount() {
+        if (isAsync()) {
+            return 0;
+        }
+        if (mInputBuffers == null) {
+            mInputBuffers = mCodec.getInputBuffers();
+        }
+        return mInputBuffers.length;
+    }
+
+    @Override
+    public int getOutputBufferCount() {
+        if (isAsync()) {
+            return 0;
+        }
+        if (mOutputBuffers == null) {
+            mOutputBuffers = mCodec.getOutputBuffers();
+        }
+        return mOutputBuffers.length;
+    }
+
+    @Override
+    public ByteBuffer getInputBuffer(int index) {
+        if (Utils.hasLollipop()) {
+            return mCodec.getInputBuffer(index);
+        }
+
+        if (mInputBuffers == null) {
+            mInputBuffers = mCodec.getInputBuffers();
+        }
+        return mInputBuffers[index];
+    }
+
+    @Override
+    public ByteBuffer getOutputBuffer(int index) {
+        if (Utils.hasLollipop()) {
+            return mCodec.getOutputBuffer(index);
+        }
+
+        if (mOutputBuffers == null) {
+            mOutputBuffers = mCodec.getOutputBuffers();
+        }
+        return mOutputBuffers[index];
+    }
+
+    @Override
+    public int dequeueInputBuffer(long timeoutUs) {
+        return mCodec.dequeueInputBuffer(timeoutUs);
+    }
+
+    @Override
+    public int dequeueOutputBuffer(SampleInfo info, long timeoutUs) {
+        final int index = mCodec.dequeueOutputBuffer(mBufferInfo, timeoutUs);
+        if (index == MediaCodec.INFO_OUTPUT_BUFFERS_CHANGED) {
+            mOutputBuffers = null;
+        } else if (index >= 0) {
+            info.set(mBufferInfo.offset, mBufferInfo.size, mBufferInfo.presentationTimeUs, mBufferInfo.flags);
+        }
+        return index;
+    }
+
+    @Override
+    public void queueInputBuffer(int index, int offset, int size, long presentationTimeUs, int flags) {
+        mCodec.queueInputBuffer(index, offset, size, presentationTimeUs, flags);
+    }
+
+    @Override
+    public void queueSecureInputBuffer(int index, int offset, MediaCodec.CryptoInfo info,
+                                       long presentationTimeUs, int flags) {
+        mCodec.queueSecureInputBuffer(index, offset, info, presentationTimeUs, flags);
+    }
+
+    @Override
+    public void releaseOutputBuffer(int index, boolean render) {
+        mCodec.releaseOutputBuffer(index, render);
+    }
+
+    @Override
+    public MediaFormat getOutputFormat() {
+        return mCodec.getOutputFormat();
+    }
+
+    @Override
+    public String getName() {
+        return mCodec.getName();
+    }
+
+    @Override
+    public void flush() {
+        mCodec.flush();
+    }
+
+    @Override
+    public void stop() {
+        stopCallback();
+        try {
+            mCodec.stop();
+        } finally {
+            joinCallback();
+        }
+    }
+
+    @TargetApi(21)
+    @Override
+    public void reset() {
+        stopCallback();
+        try {
+            mCodec.reset();
+        } finally {
+            joinCallback();
+            mMediaCodecCallback = null;
+            mInputBuffers = null;
+            mOutputBuffers = null;
+        }
+    }
+
+    @Override
+    public void release() {
+        stopCallback();
+        try {
+            mCodec.release();
+        } finally {
+            joinCallback();
+            mMediaCodecCallback = null;
+            mInputBuffers = null;
+            mOutputBuffers = null;
+        }
+    }
+
+    private boolean isAsync() {
+        return mMediaCodecCallback != null && Utils.hasLollipop();
+    }
+
+    private void stopCallback() {
+        if (mMediaCodecCallback != null) {
+            mMediaCodecCallback.stop();
+        }
+    }
+
+    private void joinCallback() {
+        if (mMediaCodecCallback != null) {
+            try {
+                mMediaCodecCallback.join();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    /**
+     * {@link ZMediaCodecCallback}
+     */
+    private interface ZMediaCodecCallback {
+
+        void start();
+
+        void join() throws InterruptedException;
+
+        void stop();
+    }
+
+    /**
+     * {@link ZMediaCodecCallbackV21}
+     */
+    @TargetApi(21)
+    private final class ZMediaCodecCallbackV21 extends MediaCodec.Callback implements ZMediaCodecCallback {
+
+        private final Callback mCallback;
+
+        // Callbacks all arrive on the codec's looper, so the pool is confined to it.
+        private final BufferInfoPool mBufferInfoPool = new BufferInfoPool(DEFAULT_BUFFER_COUNT);
+
+        ZMediaCodecCallbackV21(Callback callback) {
+            mCallback = callback;
+            mCodec.setCallback(this);
+        }
+
+        @Override
+        public void onInputBufferAvailable(@NonNull MediaCodec codec, int index) {
+            mCallback.onInputBufferAvailable(MediaCodecPort.this, index);
+        }
+
+        @Override
+        public void onOutputBufferAvailable(@NonNull MediaCodec codec, int index, @NonNull MediaCodec.BufferInfo info) {
+            final SampleInfo sampleInfo = mBufferInfoPool.obtain(index);
+            sampleInfo.set(info.offset, info.size, info.presentationTimeUs, info.flags);
+            mCallback.onOutputBufferAvailable(MediaCodecPort.this, index, sampleInfo);
+        }
+
+        @Override
+        public void onOutputFormatChanged(@NonNull MediaCodec codec, @NonNull MediaFormat format) {
+            mCallback.onOutputFormatChanged(MediaCodecPort.this, format);
+        }
+
+        @Override
+        public void onError(@NonNull MediaCodec codec, @NonNull MediaCodec.CodecException e) {
+            mCallback.onError(MediaCodecPort.this, e);
+        }
+
+        @Override
+        public void start() {
+        }
+
+        @Override
+        public void join() throws InterruptedException {
+        }
+
+        @Override
+        public void stop() {
+        }
+    }
+
+    /**
+     * {@link ZMediaCodecCallbackPreV21}
+     */
+    private final class ZMediaCodecCallbackPreV21 implements ZMediaCodecCallback {
+
+        private final Thread mInputThread;
+
+        private final Thread mOutputThread;
+
+        private final WeakReference<MediaCodec> mCodecRef;
+
+        // Only touched by the output thread; each slot is read by the callback until its
+        // buffer is released, which happens before the codec can hand the index out again.
+        private final BufferInfoPool mBufferInfoPool = new BufferInfoPool(DEFAULT_BUFFER_COUNT);
+
+        private final MediaCodec.BufferInfo mOutputInfo = new MediaCodec.BufferInfo();
+
+        ZMediaCodecCallbackPreV21(final Callback callback) {
+            mCodecRef = new WeakReference<>(mCodec);
+
+            mInputThread = new Thread() {
+                @Override
+                public void run() {
+                    while (!isInterrupted()) {
+                        try {
+                            MediaCodec codec = mCodecRef.get();
+                            if (codec == null) {
+                                break;
+                            }
+
+                            int index = codec.dequeueInputBuffer(-1);
+                            if (index >= 0) {
+                                callback.onInputBufferAvailable(MediaCodecPort.this, index);
+                            }
+                        } catch (IllegalStateException e) {
+                            break;
+                        }
+                    }
+                }
+            };
+
+            mOutputThread = new Thread() {
+                @Override
+                public void run() {
+                    while (!isInterrupted()) {
+                        try {
+                            MediaCodec codec = mCodecRef.get();
+                            if (codec == null) {
+                                break;
+                            }
+
+                            int index = codec.dequeueOutputBuffer(mOutputInfo, -1);
+                            if (index == MediaCodec.INFO_OUTPUT_FORMAT_CHANGED) {
+                                callback.onOutputFormatChanged(MediaCodecPort.this, codec.getOutputFormat());
+                            } else if (index == MediaCodec.INFO_OUTPUT_BUFFERS_CHANGED) {
+                                mOutputBuffers = null;
+                            } else if (index >= 0) {
+                                final SampleInfo info = mBufferInfoPool.obtain(index);
+                                info.set(mOutputInfo.offset, mOutputInfo.size,
+                                        mOutputInfo.presentationTimeUs, mOutputInfo.flags);
+                                callback.onOutputBufferAvailable(MediaCodecPort.this, index, info);
+                            }
+                        } catch (IllegalStateException | IllegalArgumentException e) {
+                            break;
+                        }
+                    }
+                }
+            };
+        }
+
+        @Override
+        public void start() {
+            mInputThread.start();
+            mOutputThread.start();
+        }
+
+        @Override
+        public void join() throws InterruptedException {
+            if (mInputThread.isAlive()) {
+                mInputThread.join();
+            }
+            if (mOutputThread.isAlive()) {
+                mOutputThread.join();
+            }
+        }
+
+        @Override
+        public void stop() {
+            if (mInputThread.isAlive()) {
+                mInputThread.interrupt();
+            }
+            if (mOutputThread.isAlive()) {
+                mOutputThread.interrupt();
+            }
+        }
+    }
+}
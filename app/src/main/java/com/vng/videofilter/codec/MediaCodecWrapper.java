@@ -23,11 +23,11 @@ import android.os.Handler;
 import android.os.Looper;
 import android.view.Surface;
 
+import com.vng.videofilter.util.IntRingQueue;
+
 import java.io.IOException;
 import java.nio.ByteBuffer;
-import java.util.ArrayDeque;
 import java.util.Locale;
-import java.util.Queue;
 
 /**
  * Simplifies the MediaCodec interface by wrapping around the buffer processing operations.
@@ -55,36 +55,30 @@ public class MediaCodecWrapper {
     }
 
     /**
-     * The {@link MediaCodec} that is managed by this class.
+     * The {@link CodecPort} that is managed by this class.
      */
-    private MediaCodec mDecoder;
-
-    // References to the internal buffers managed by the codec. The codec
-    // refers to these buffers by index, never by reference so it's up to us
-    // to keep track of which buffer is which.
-    private ByteBuffer[] mInputBuffers;
-    private ByteBuffer[] mOutputBuffers;
+    private CodecPort mDecoder;
 
     // Indices of the input buffers that are currently available for writing. We'll
     // consume these in the order they were dequeued from the codec.
-    private Queue<Integer> mAvailableInputBuffers;
+    private IntRingQueue mAvailableInputBuffers;
 
     // Indices of the output buffers that currently hold valid data, in the order
     // they were produced by the codec.
-    private Queue<Integer> mAvailableOutputBuffers;
+    private IntRingQueue mAvailableOutputBuffers;
 
-    // Information about each output buffer, by index. Each entry in this array
+    // Information about each output buffer, by index. Each entry in this pool
     // is valid if and only if its index is currently contained in mAvailableOutputBuffers.
-    private MediaCodec.BufferInfo[] mOutputBufferInfo;
+    private final BufferInfoPool mOutputBufferInfo;
 
-    private MediaCodecWrapper(MediaCodec codec) {
+    private MediaCodecWrapper(CodecPort codec) {
         mDecoder = codec;
         codec.start();
-        mInputBuffers = codec.getInputBuffers();
-        mOutputBuffers = codec.getOutputBuffers();
-        mOutputBufferInfo = new MediaCodec.BufferInfo[mOutputBuffers.length];
-        mAvailableInputBuffers = new ArrayDeque<>(mOutputBuffers.length);
-        mAvailableOutputBuffers = new ArrayDeque<>(mInputBuffers.length);
+        final int inputBufferCount = codec.getInputBufferCount();
+        final int outputBufferCount = codec.getOutputBufferCount();
+        mOutputBufferInfo = new BufferInfoPool(outputBufferCount);
+        mAvailableInputBuffers = new IntRingQueue(inputBufferCount);
+        mAvailableOutputBuffers = new IntRingQueue(outputBufferCount);
     }
 
     /**
@@ -137,8 +131,17 @@ public class MediaCodecWrapper {
      */
     public static MediaCodecWrapper fromVideoFormat(final MediaFormat trackFormat,
             Surface surface) throws IOException {
+        return fromVideoFormat(trackFormat, surface, MediaCodecPort.FACTORY);
+    }
+
+    /**
+     * Same as {@link #fromVideoFormat(MediaFormat, Surface)}, creating the codec with the
+     * given factory.
+     */
+    public static MediaCodecWrapper fromVideoFormat(final MediaFormat trackFormat,
+            Surface surface, CodecPort.Factory codecFactory) throws IOException {
         MediaCodecWrapper result = null;
-        MediaCodec videoCodec = null;
+        CodecPort videoCodec = null;
 
         // BEGIN_INCLUDE(create_codec)
         final String mimeType = trackFormat.getString(MediaFormat.KEY_MIME);
@@ -146,8 +149,8 @@ public class MediaCodecWrapper {
         // Check to see if this is actually a video mime type. If it is, then create
         // a codec that can decode this mime type.
         if (mimeType.contains("video/")) {
-            videoCodec = MediaCodec.createDecoderByType(mimeType);
-            videoCodec.configure(trackFormat, surface, null,  0);
+            videoCodec = codecFactory.createDecoder(mimeType);
+            videoCodec.configure(trackFormat, surface, 0);
 
         }
 
@@ -161,6 +164,13 @@ public class MediaCodecWrapper {
         return result;
     }
 
+    /**
+     * Wraps a codec that has already been configured, in synchronous mode. Starts the codec.
+     */
+    public static MediaCodecWrapper fromCodec(CodecPort configuredCodec) {
+        return new MediaCodecWrapper(configuredCodec);
+    }
+
 
     /**
      * Write a media sample to the decoder.
@@ -192,7 +202,7 @@ public class MediaCodecWrapper {
         // check if we have dequed input buffers available from the codec
         if (size > 0 &&  !mAvailableInputBuffers.isEmpty()) {
             int index = mAvailableInputBuffers.remove();
-            ByteBuffer buffer = mInputBuffers[index];
+            ByteBuffer buffer = mDecoder.getInputBuffer(index);
 
             // we can't write our sample to a lesser capacity input buffer.
             if (size > buffer.capacity()) {
@@ -242,15 +252,27 @@ public class MediaCodecWrapper {
             final boolean isSecure,
             final long presentationTimeUs,
             int flags) {
+        return writeSample(new MediaExtractorSource(extractor), isSecure, presentationTimeUs, flags);
+    }
+
+    /**
+     * Same as {@link #writeSample(MediaExtractor, boolean, long, int)}, reading from any
+     * {@link SampleSource}.
+     */
+    public boolean writeSample(final SampleSource extractor,
+            final boolean isSecure,
+            final long presentationTimeUs,
+            int flags) {
         boolean result = false;
 
         if (!mAvailableInputBuffers.isEmpty()) {
             int index = mAvailableInputBuffers.remove();
-            ByteBuffer buffer = mInputBuffers[index];
+            ByteBuffer buffer = mDecoder.getInputBuffer(index);
 
             // reads the sample from the file using extractor into the buffer
             int size = extractor.readSampleData(buffer, 0);
             if (size <= 0) {
+                size = 0;
                 flags |= MediaCodec.BUFFER_FLAG_END_OF_STREAM;
             }
 
@@ -282,7 +304,7 @@ public class MediaCodecWrapper {
         boolean result = false;
         if (!mAvailableOutputBuffers.isEmpty()) {
             int index = mAvailableOutputBuffers.peek();
-            MediaCodec.BufferInfo info = mOutputBufferInfo[index];
+            SampleInfo info = mOutputBufferInfo.get(index);
             // metadata of the sample
             out_bufferInfo.set(
                     info.offset,
@@ -331,13 +353,16 @@ public class MediaCodecWrapper {
 
         // Likewise with output buffers. If the output buffers have changed, start using the
         // new set of output buffers. If the output format has changed, notify listeners.
-        MediaCodec.BufferInfo info = new MediaCodec.BufferInfo();
+        // The codec writes into a scratch record which is copied into the slot of the
+        // returned index, so every slot keeps its own metadata.
+        SampleInfo info = mOutputBufferInfo.scratch();
         while ((index = mDecoder.dequeueOutputBuffer(info, 0)) !=  MediaCodec.INFO_TRY_AGAIN_LATER) {
             switch (index) {
                 case MediaCodec.INFO_OUTPUT_BUFFERS_CHANGED:
-                    mOutputBuffers = mDecoder.getOutputBuffers();
-                    mOutputBufferInfo = new MediaCodec.BufferInfo[mOutputBuffers.length];
+                    final int outputBufferCount = mDecoder.getOutputBufferCount();
+                    mOutputBufferInfo.ensureCapacity(outputBufferCount);
                     mAvailableOutputBuffers.clear();
+                    mAvailableOutputBuffers.ensureCapacity(outputBufferCount);
                     break;
                 case MediaCodec.INFO_OUTPUT_FORMAT_CHANGED:
                     if (mOutputFormatChangedListener != null) {
@@ -358,7 +383,7 @@ public class MediaCodecWrapper {
                     // INFO_OUTPUT_BUFFERS_CHANGED i.e all the other possible return codes but
                     // asserting index value anyways for future-proofing the code.
                     if (index >= 0) {
-                        mOutputBufferInfo[index] = info;
+                        mOutputBufferInfo.commit(index);
                         mAvailableOutputBuffers.add(index);
                     } else {
                         throw new IllegalStateException("Unknown status from dequeueOutputBuffer");
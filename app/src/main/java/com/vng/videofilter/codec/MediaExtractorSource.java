@@ -0,0 +1,93 @@
+package com.vng.videofilter.codec;
+
+import android.media.MediaCodec;
+import android.media.MediaExtractor;
+import android.media.MediaFormat;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Copyright (C) 2017, VNG Corporation.
+ * <p>
+ * {@link SampleSource} backed by a {@link MediaExtractor}.
+ *
+ * @author namnt4
+ * @since 18/10/2026
+ */
+public final class MediaExtractorSource implements SampleSource {
+
+    private final MediaExtractor mExtractor;
+
+    public MediaExtractorSource(MediaExtractor extractor) {
+        mExtractor = extractor;
+    }
+
+    public MediaExtractor getExtractor() {
+        return mExtractor;
+    }
+
+    @Override
+    public int getTrackCount() {
+        return mExtractor.getTrackCount();
+    }
+
+    @Override
+    public String getTrackMime(int index) {
+        return mExtractor.getTrackFormat(index).getString(MediaFormat.KEY_MIME);
+    }
+
+    @Override
+    public MediaFormat getTrackFormat(int index) {
+        return mExtractor.getTrackFormat(index);
+    }
+
+    @Override
+    public void selectTrack(int index) {
+        mExtractor.selectTrack(index);
+    }
+
+    @Override
+    public void unselectTrack(int index) {
+        mExtractor.unselectTrack(index);
+    }
+
+    @Override
+    public int readSampleData(ByteBuffer buffer, int offset) {
+        return mExtractor.readSampleData(buffer, offset);
+    }
+
+    @Override
+    public long getSampleTime() {
+        return mExtractor.getSampleTime();
+    }
+
+    @Override
+    public int getSampleFlags() {
+        return mExtractor.getSampleFlags();
+    }
+
+    @Override
+    public int getSampleTrackIndex() {
+        return mExtractor.getSampleTrackIndex();
+    }
+
+    @Override
+    public boolean getSampleCryptoInfo(MediaCodec.CryptoInfo info) {
+        return mExtractor.getSampleCryptoInfo(info);
+    }
+
+    @Override
+    public boolean advance() {
+        return mExtractor.advance();
+    }
+
+    @Override
+    public void seekTo(long timeUs, int mode) {
+        mExtractor.seekTo(timeUs, mode);
+    }
+
+    @Override
+    public void release() {
+        mExtractor.release();
+    }
+}
@@ -0,0 +1,30 @@
+package com.vng.videofilter.codec;
+
+import android.media.MediaFormat;
+import android.media.MediaMuxer;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Copyright (C) 2017, VNG Corporation.
+ * <p>
+ * The subset of {@link MediaMuxer} the pipeline relies on. {@link MediaMuxerPort} forwards
+ * to a real muxer; tests can plug in a stand-in that records the samples.
+ *
+ * @author namnt4
+ * @since 18/10/2026
+ */
+public interface MuxerPort {
+
+    int addTrack(MediaFormat format);
+
+    void setOrientationHint(int degrees);
+
+    void start();
+
+    void writeSampleData(int trackIndex, ByteBuffer buffer, SampleInfo info);
+
+    void stop();
+
+    void release();
+}
@@ -0,0 +1,133 @@
+package com.vng.videofilter.codec;
+
+import android.media.MediaFormat;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Copyright (C) 2017, VNG Corporation.
+ * <p>
+ * Serializes access to a {@link MuxerPort} shared by several writer threads. The muxer is
+ * started once the expected number of tracks has been added; writers block until then.
+ * <p>
+ * Samples of all tracks go through a {@link SampleInterleaver}, which reorders them by time
+ * before they reach the muxer, and a writer waits while its track is ahead of the window of
+ * the tracks still producing, so copied tracks, ready much sooner than encoded ones, stay
+ * interleaved with them.
+ *
+ * @author namnt4
+ * @since 18/10/2026
+ */
+public class MuxerWrapper {
+
+    private final MuxerPort mMuxer;
+
+    private final int mTrackCount;
+
+    private int mAddedTracks;
+
+    private boolean mStarted;
+
+    private boolean mStopped;
+
+    private final SampleInterleaver mInterleaver;
+
+    /**
+     * @param trackCount Number of tracks that will be added before the muxer can start.
+     */
+    public MuxerWrapper(MuxerPort muxer, int trackCount) {
+        this(muxer, trackCount, new SampleInterleaver(trackCount,
+                SampleInterleaver.DEFAULT_WINDOW_US, SampleInterleaver.DEFAULT_BUFFER_COUNT));
+    }
+
+    /**
+     * @param interleaver Reorders the samples of all tracks.
+     */
+    public MuxerWrapper(MuxerPort muxer, int trackCount, SampleInterleaver interleaver) {
+        mMuxer = muxer;
+        mInterleaver = interleaver;
+        mTrackCount = trackCount;
+    }
+
+    public synchronized void setOrientationHint(int degrees) {
+        mMuxer.setOrientationHint(degrees);
+    }
+
+    /**
+     * Adds a track, and starts the muxer if it was the last one expected.
+     */
+    public synchronized int addTrack(MediaFormat format) {
+        if (mStarted) {
+            throw new IllegalStateException("Muxer already started");
+        }
+
+        final int trackIndex = mMuxer.addTrack(format);
+        if (++mAddedTracks == mTrackCount) {
+            mMuxer.start();
+            mStarted = true;
+            notifyAll();
+        }
+        return trackIndex;
+    }
+
+    public synchronized boolean isStarted() {
+        return mStarted;
+    }
+
+    /**
+     * Writes a sample, waiting for the remaining tracks to be added first and for the other
+     * tracks to catch up, unless they have stalled.
+     */
+    public synchronized void writeSampleData(int trackIndex, ByteBuffer buffer, SampleInfo info) throws InterruptedException {
+        while (!mStopped && !mStarted) {
+            wait();
+        }
+        // Wakes up to ask again, as a track that stalls stops holding this one back.
+        while (!mStopped && mInterleaver.isAhead(trackIndex, info.presentationTimeUs)) {
+            wait(SampleInterleaver.STALL_TIMEOUT_MS);
+        }
+
+        if (mStopped) {
+            throw new IllegalStateException("Muxer stopped");
+        }
+
+        mInterleaver.add(trackIndex, buffer, info, mMuxer);
+        notifyAll();
+    }
+
+    /**
+     * No more samples will be written to the track, so the others stop waiting for it.
+     */
+    public synchronized void finishTrack(int trackIndex) {
+        if (trackIndex < 0) {
+            return;
+        }
+
+        mInterleaver.finishTrack(trackIndex);
+        if (mStarted && !mStopped) {
+            mInterleaver.drain(mMuxer);
+        }
+        notifyAll();
+    }
+
+    /**
+     * Stops the muxer if it was started and releases it. Writers still waiting are woken up
+     * and fail.
+     */
+    public synchronized void release() {
+        if (mStopped) {
+            return;
+        }
+
+        mStopped = true;
+        notifyAll();
+        try {
+            if (mStarted) {
+                mInterleaver.flush(mMuxer);
+                mMuxer.stop();
+            }
+        } finally {
+            mMuxer.release();
+        }
+    }
+}
@@ -0,0 +1,52 @@
+package com.vng.videofilter.codec;
+
+import android.media.MediaCodec;
+
+/**
+ * Copyright (C) 2017, VNG Corporation.
+ * <p>
+ * Codec-neutral equivalent of {@link MediaCodec.BufferInfo}. Plain fields, no framework
+ * dependency, so it can be created and inspected in local unit tests.
+ *
+ * @author namnt4
+ * @since 18/10/2026
+ */
+public final class SampleInfo {
+
+    public int offset;
+
+    public int size;
+
+    public long presentationTimeUs;
+
+    public int flags;
+
+    public void set(int newOffset, int newSize, long newTimeUs, int newFlags) {
+        offset = newOffset;
+        size = newSize;
+        presentationTimeUs = newTimeUs;
+        flags = newFlags;
+    }
+
+    public void set(SampleInfo other) {
+        set(other.offset, other.size, other.presentationTimeUs, other.flags);
+    }
+
+    public boolean isEndOfStream() {
+        return (flags & MediaCodec.BUFFER_FLAG_END_OF_STREAM) != 0;
+    }
+
+    public boolean isKeyFrame() {
+        return (flags & MediaCodec.BUFFER_FLAG_KEY_FRAME) != 0;
+    }
+
+    public boolean isCodecConfig() {
+        return (flags & MediaCodec.BUFFER_FLAG_CODEC_CONFIG) != 0;
+    }
+
+    @Override
+    public String toString() {
+        return "SampleInfo{offset=" + offset + ", size=" + size
+                + ", presentationTimeUs=" + presentationTimeUs + ", flags=" + flags + "}";
+    }
+}
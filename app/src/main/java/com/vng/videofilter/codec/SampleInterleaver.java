@@ -0,0 +1,231 @@
+package com.vng.videofilter.codec;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.PriorityQueue;
+
+/**
+ * Copyright (C) 2017, VNG Corporation.
+ * <p>
+ * Reorders the samples of several tracks by time before they reach the muxer, so that
+ * however bursty the producers are, the output is interleaved and players read it without
+ * seeking back and forth. A sample is held until every unfinished track has reached its
+ * time, and is then written in order with the others.
+ * <p>
+ * Payloads are copied into a bounded number of reusable direct buffers. Each one grows to
+ * the largest sample it has held, so the memory used stays bounded by the buffer count.
+ * When all of them are taken, the oldest sample is written early to free one. Producers
+ * should hold back the samples {@link #isAhead} reports, which keeps that from happening
+ * in the common case; {@link MuxerWrapper} makes them wait. A track that hasn't produced
+ * for {@link #STALL_TIMEOUT_MS} holds nobody back until it does again, so a sparse track,
+ * or one fed by the same thread as the waiting one, can't stall the others for good.
+ * <p>
+ * Decode times aren't known, so samples are ordered by the latest presentation time of
+ * their track so far, which keeps the order of each track as produced. Not thread safe.
+ *
+ * @author namnt4
+ * @since 18/10/2026
+ */
+public class SampleInterleaver {
+
+    public static final long DEFAULT_WINDOW_US = 1_000_000L;
+
+    public static final int DEFAULT_BUFFER_COUNT = 128;
+
+    public static final long STALL_TIMEOUT_MS = 1000L;
+
+    private static final long STALL_TIMEOUT_NS = STALL_TIMEOUT_MS * 1_000_000L;
+
+    private static final int INITIAL_BUFFER_SIZE = 16 * 1024;
+
+    private final long mWindowUs;
+
+    private final ArrayDeque<Sample> mFree = new ArrayDeque<>();
+
+    private final PriorityQueue<Sample> mQueue;
+
+    // By track index. Long.MIN_VALUE until a track has a sample, or for the add times,
+    // until another track first waits on it.
+    private long[] mLastTimesUs;
+    private long[] mLastAddTimesNs;
+    private boolean[] mFinished;
+
+    private long mSequence;
+
+    /**
+     * @param windowUs    How far a track may get ahead of the slowest unfinished one.
+     * @param bufferCount Number of samples that can be held at once.
+     */
+    public SampleInterleaver(int trackCount, long windowUs, int bufferCount) {
+        if (bufferCount <= 0) {
+            throw new IllegalArgumentException("Invalid buffer count " + bufferCount);
+        }
+        mWindowUs = windowUs;
+        mLastTimesUs = new long[trackCount];
+        Arrays.fill(mLastTimesUs, Long.MIN_VALUE);
+        mLastAddTimesNs = new long[trackCount];
+        Arrays.fill(mLastAddTimesNs, Long.MIN_VALUE);
+        mFinished = new boolean[trackCount];
+        for (int i = 0; i < bufferCount; i++) {
+            mFree.add(new Sample());
+        }
+        mQueue = new PriorityQueue<>(bufferCount, (a, b) -> a.orderUs != b.orderUs
+                ? Long.compare(a.orderUs, b.orderUs)
+                : Long.compare(a.sequence, b.sequence));
+    }
+
+    /**
+     * Whether a sample is more than the window ahead of an unfinished track that is still
+     * producing, and its producer should wait before adding it. Ask again within
+     * {@link #STALL_TIMEOUT_MS} while waiting: the answer changes once the other track stalls.
+     */
+    public boolean isAhead(int trackIndex, long presentationTimeUs) {
+        return isAhead(trackIndex, presentationTimeUs, System.nanoTime());
+    }
+
+    boolean isAhead(int trackIndex, long presentationTimeUs, long nowNs) {
+        ensureTrack(trackIndex);
+        for (int i = 0; i < mLastTimesUs.length; i++) {
+            if (i == trackIndex || mFinished[i]
+                    || presentationTimeUs <= Math.max(0, mLastTimesUs[i]) + mWindowUs) {
+                continue;
+            }
+
+            // A track that hasn't started yet gets the timeout from when it's first waited on.
+            if (mLastAddTimesNs[i] == Long.MIN_VALUE) {
+                mLastAddTimesNs[i] = nowNs;
+            }
+            if (nowNs - mLastAddTimesNs[i] < STALL_TIMEOUT_NS) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Copies a sample in, then writes every sample that can't be preceded by one still to
+     * come. Codec config and empty samples are dropped, as the muxer gets those from the
+     * track format.
+     */
+    public void add(int trackIndex, ByteBuffer buffer, SampleInfo info, MuxerPort muxer) {
+        add(trackIndex, buffer, info, muxer, System.nanoTime());
+    }
+
+    void add(int trackIndex, ByteBuffer buffer, SampleInfo info, MuxerPort muxer, long nowNs) {
+        ensureTrack(trackIndex);
+        mLastAddTimesNs[trackIndex] = nowNs;
+        if (info.size <= 0 || info.isCodecConfig()) {
+            return;
+        }
+
+        if (mFree.isEmpty()) {
+            writeNext(muxer);
+        }
+
+        final Sample sample = mFree.pop();
+        sample.copy(buffer, info);
+        sample.trackIndex = trackIndex;
+        sample.orderUs = Math.max(mLastTimesUs[trackIndex], info.presentationTimeUs);
+        sample.sequence = mSequence++;
+        mLastTimesUs[trackIndex] = sample.orderUs;
+        mQueue.add(sample);
+
+        drain(muxer);
+    }
+
+    /**
+     * No more samples will come for the track, so the others stop waiting for it. Call
+     * {@link #drain} next to write what that lets through.
+     */
+    public void finishTrack(int trackIndex) {
+        ensureTrack(trackIndex);
+        mFinished[trackIndex] = true;
+    }
+
+    /**
+     * Writes everything held, e.g. before the muxer is stopped.
+     */
+    public void flush(MuxerPort muxer) {
+        while (!mQueue.isEmpty()) {
+            writeNext(muxer);
+        }
+    }
+
+    public int getQueuedCount() {
+        return mQueue.size();
+    }
+
+    /**
+     * Writes every sample that can't be preceded by one still to come.
+     */
+    public void drain(MuxerPort muxer) {
+        while (!mQueue.isEmpty() && mQueue.peek().orderUs <= getSafeTimeUs()) {
+            writeNext(muxer);
+        }
+    }
+
+    /**
+     * Time up to which every unfinished track has produced its samples.
+     */
+    private long getSafeTimeUs() {
+        long safeTimeUs = Long.MAX_VALUE;
+        for (int i = 0; i < mLastTimesUs.length; i++) {
+            if (!mFinished[i]) {
+                safeTimeUs = Math.min(safeTimeUs, mLastTimesUs[i]);
+            }
+        }
+        return safeTimeUs;
+    }
+
+    private void writeNext(MuxerPort muxer) {
+        final Sample sample = mQueue.poll();
+        try {
+            muxer.writeSampleData(sample.trackIndex, sample.buffer, sample.info);
+        } finally {
+            mFree.push(sample);
+        }
+    }
+
+    private void ensureTrack(int trackIndex) {
+        if (trackIndex < mLastTimesUs.length) {
+            return;
+        }
+
+        final int oldLength = mLastTimesUs.length;
+        mLastTimesUs = Arrays.copyOf(mLastTimesUs, trackIndex + 1);
+        Arrays.fill(mLastTimesUs, oldLength, mLastTimesUs.length, Long.MIN_VALUE);
+        mLastAddTimesNs = Arrays.copyOf(mLastAddTimesNs, trackIndex + 1);
+        Arrays.fill(mLastAddTimesNs, oldLength, mLastAddTimesNs.length, Long.MIN_VALUE);
+        mFinished = Arrays.copyOf(mFinished, trackIndex + 1);
+    }
+
+    private static final class Sample {
+
+        final SampleInfo info = new SampleInfo();
+
+        // Allocated on first use, so a single track only ever fills the one buffer it reuses.
+        ByteBuffer buffer;
+
+        int trackIndex;
+
+        long orderUs;
+
+        long sequence;
+
+        void copy(ByteBuffer source, SampleInfo sourceInfo) {
+            if (buffer == null) {
+                buffer = ByteBuffer.allocateDirect(Math.max(sourceInfo.size, INITIAL_BUFFER_SIZE));
+            } else if (buffer.capacity() < sourceInfo.size) {
+                buffer = ByteBuffer.allocateDirect(Math.max(sourceInfo.size, buffer.capacity() * 2));
+            }
+
+            final ByteBuffer payload = source.duplicate();
+            payload.limit(sourceInfo.offset + sourceInfo.size).position(sourceInfo.offset);
+            buffer.clear();
+            buffer.put(payload);
+            buffer.flip();
+            info.set(0, sourceInfo.size, sourceInfo.presentationTimeUs, sourceInfo.flags);
+        }
+    }
+}
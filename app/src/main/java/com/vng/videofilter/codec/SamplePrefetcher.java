@@ -0,0 +1,288 @@
+package com.vng.videofilter.codec;
+
+import android.util.Log;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Copyright (C) 2017, VNG Corporation.
+ * <p>
+ * Reads the samples of a source ahead of the codec, on its own thread, into a bounded ring
+ * of reusable direct buffers. Whoever feeds the codec only copies the next buffer, so a slow
+ * read stalls this thread instead of the codec queue, as long as the ring isn't empty.
+ * <p>
+ * The consumer side ({@link #hasSample()}, {@link #readSampleData}, {@link #advance()}, ...)
+ * mirrors {@link SampleSource} and must be used from one thread.
+ *
+ * @author namnt4
+ * @since 18/10/2026
+ */
+public class SamplePrefetcher {
+
+    private static final String TAG = SamplePrefetcher.class.getSimpleName();
+
+    public static final int DEFAULT_DEPTH = 8;
+
+    // Slots never grow past this, whatever the source claims.
+    private static final int MAX_SAMPLE_SIZE = 64 * 1024 * 1024;
+
+    private final SampleSource mSource;
+
+    private final Slot[] mSlots;
+
+    // Next slot to consume, and number of filled slots from there on. Guarded by this.
+    private int mHead;
+    private int mCount;
+
+    // The reader reached the end of the source, or failed. Guarded by this.
+    private boolean mReaderDone;
+
+    // Consumer side metrics. Guarded by this.
+    private long mSamplesConsumed;
+    private long mOccupancySum;
+    private int mUnderrunCount;
+
+    private Listener mListener;
+
+    private Thread mThread;
+
+    private volatile boolean mRunning;
+
+    /**
+     * @param source        Read from the selected tracks, from its current position on. Used
+     *                      only by this instance until {@link #release()}.
+     * @param depth         Number of samples read ahead.
+     * @param maxSampleSize Initial size of each buffer; buffers grow if a sample doesn't fit.
+     */
+    public SamplePrefetcher(SampleSource source, int depth, int maxSampleSize) {
+        mSource = source;
+        mSlots = new Slot[Math.max(1, depth)];
+        for (int i = 0; i < mSlots.length; i++) {
+            mSlots[i] = new Slot(maxSampleSize);
+        }
+    }
+
+    public void start(Listener listener) {
+        mListener = listener;
+        mRunning = true;
+        mThread = new Thread(this::read, "sample_prefetcher");
+        mThread.start();
+    }
+
+    private void read() {
+        try {
+            Slot slot;
+            while (mRunning) {
+                synchronized (this) {
+                    while (mRunning && mCount == mSlots.length) {
+                        wait();
+                    }
+                    if (!mRunning) {
+                        return;
+                    }
+                    slot = mSlots[(mHead + mCount) % mSlots.length];
+                }
+
+                // The slot is only ours until it's published below.
+                if (!fill(slot)) {
+                    break;
+                }
+                mSource.advance();
+
+                final boolean wasEmpty;
+                synchronized (this) {
+                    wasEmpty = mCount++ == 0;
+                }
+                if (wasEmpty) {
+                    mListener.onSamplesAvailable();
+                }
+            }
+        } catch (InterruptedException e) {
+            Log.d(TAG, "read(): interrupted");
+            return;
+        } catch (RuntimeException e) {
+            // Same as the extractor returning -1: the stream ends here.
+            Log.e(TAG, "read(): " + e);
+        }
+
+        synchronized (this) {
+            mReaderDone = true;
+        }
+        if (mRunning) {
+            mListener.onSamplesAvailable();
+        }
+    }
+
+    /**
+     * @return false at the end of the source.
+     */
+    private boolean fill(Slot slot) {
+        int size;
+        while (true) {
+            slot.buffer.clear();
+            try {
+                size = mSource.readSampleData(slot.buffer, 0);
+                break;
+            } catch (IllegalArgumentException e) {
+                // The sample doesn't fit.
+                if (slot.buffer.capacity() >= MAX_SAMPLE_SIZE) {
+                    throw e;
+                }
+                slot.buffer = ByteBuffer.allocateDirect(Math.min(MAX_SAMPLE_SIZE, slot.buffer.capacity() * 2));
+            }
+        }
+
+        if (size < 0) {
+            return false;
+        }
+        slot.buffer.position(0);
+        slot.buffer.limit(size);
+        slot.presentationTimeUs = mSource.getSampleTime();
+        slot.flags = mSource.getSampleFlags();
+        return true;
+    }
+
+    /**
+     * Whether a sample is ready to be read. If not, and the stream hasn't ended, the listener
+     * is called once one is.
+     */
+    public synchronized boolean hasSample() {
+        if (mCount > 0) {
+            return true;
+        }
+        if (!mReaderDone) {
+            mUnderrunCount++;
+        }
+        return false;
+    }
+
+    /**
+     * Whether every sample of the source has been consumed.
+     */
+    public synchronized boolean isEndOfStream() {
+        return mCount == 0 && mReaderDone;
+    }
+
+    public long getSampleTime() {
+        return head().presentationTimeUs;
+    }
+
+    public int getSampleFlags() {
+        return head().flags;
+    }
+
+    /**
+     * Copies the current sample into the buffer at the given offset.
+     *
+     * @return the size of the sample.
+     */
+    public int readSampleData(ByteBuffer buffer, int offset) {
+        final ByteBuffer sample = head().buffer;
+        final int size = sample.remaining();
+        buffer.clear();
+        buffer.position(offset);
+        buffer.put(sample);
+        sample.position(0);
+        buffer.flip();
+        buffer.position(offset);
+        return size;
+    }
+
+    /**
+     * Hands the current slot back to the reader.
+     */
+    public synchronized void advance() {
+        if (mCount == 0) {
+            return;
+        }
+
+        mSamplesConsumed++;
+        mOccupancySum += mCount;
+        mHead = (mHead + 1) % mSlots.length;
+        mCount--;
+        notifyAll();
+    }
+
+    private synchronized Slot head() {
+        if (mCount == 0) {
+            throw new IllegalStateException("No sample ready");
+        }
+        return mSlots[mHead];
+    }
+
+    public int getDepth() {
+        return mSlots.length;
+    }
+
+    /**
+     * Number of samples read ahead right now.
+     */
+    public synchronized int getOccupancy() {
+        return mCount;
+    }
+
+    /**
+     * Average number of samples that were read ahead when one was consumed. Close to the
+     * depth means the reader keeps up; close to 1 means the codec waits for it.
+     */
+    public synchronized float getAverageOccupancy() {
+        return mSamplesConsumed == 0 ? 0 : (float) mOccupancySum / mSamplesConsumed;
+    }
+
+    /**
+     * Number of times a sample was asked for before the reader had one.
+     */
+    public synchronized int getUnderrunCount() {
+        return mUnderrunCount;
+    }
+
+    /**
+     * Stops the reader. The source isn't released.
+     */
+    public void release() {
+        mRunning = false;
+        synchronized (this) {
+            notifyAll();
+        }
+
+        if (mThread != null) {
+            mThread.interrupt();
+            try {
+                mThread.join();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            mThread = null;
+        }
+    }
+
+    @Override
+    public synchronized String toString() {
+        return "SamplePrefetcher{" + mCount + "/" + mSlots.length
+                + ", average " + getAverageOccupancy() + ", underruns " + mUnderrunCount + "}";
+    }
+
+    private static final class Slot {
+
+        private ByteBuffer buffer;
+
+        private long presentationTimeUs;
+
+        private int flags;
+
+        private Slot(int size) {
+            buffer = ByteBuffer.allocateDirect(size);
+        }
+    }
+
+    /**
+     * {@link Listener}. Called on the reader thread.
+     */
+    public interface Listener {
+
+        /**
+         * A sample is ready after the ring ran empty, or the stream ended.
+         */
+        void onSamplesAvailable();
+    }
+}
@@ -0,0 +1,52 @@
+package com.vng.videofilter.codec;
+
+import android.media.MediaCodec;
+import android.media.MediaExtractor;
+import android.media.MediaFormat;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Copyright (C) 2017, VNG Corporation.
+ * <p>
+ * The subset of {@link MediaExtractor} the pipeline relies on. {@link MediaExtractorSource}
+ * forwards to a real extractor; tests can feed samples from memory instead.
+ *
+ * @author namnt4
+ * @since 18/10/2026
+ */
+public interface SampleSource {
+
+    int getTrackCount();
+
+    /**
+     * Returns the mime type of a track. Cheaper than, and unlike {@link #getTrackFormat(int)}
+     * always available off-device.
+     */
+    String getTrackMime(int index);
+
+    MediaFormat getTrackFormat(int index);
+
+    void selectTrack(int index);
+
+    void unselectTrack(int index);
+
+    /**
+     * @return the sample size, or -1 if no more samples are available.
+     */
+    int readSampleData(ByteBuffer buffer, int offset);
+
+    long getSampleTime();
+
+    int getSampleFlags();
+
+    int getSampleTrackIndex();
+
+    boolean getSampleCryptoInfo(MediaCodec.CryptoInfo info);
+
+    boolean advance();
+
+    void seekTo(long timeUs, int mode);
+
+    void release();
+}
@@ -0,0 +1,235 @@
+package com.vng.videofilter.codec;
+
+import android.media.MediaExtractor;
+
+import com.vng.videofilter.mp4.SampleTableIndex;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Copyright (C) 2017, VNG Corporation.
+ * <p>
+ * Splits a video track into segments of about the same duration that start at sync samples,
+ * so each one can be decoded on its own. The sync samples come from a
+ * {@link SampleTableIndex} when there is one, or else from a pass over the track.
+ *
+ * @author namnt4
+ * @since 18/10/2026
+ */
+public final class SegmentPlanner {
+
+    private SegmentPlanner() {
+    }
+
+    /**
+     * Scans the sample table of the track. Leaves the track selected and the source at its
+     * start.
+     *
+     * @param segmentCount Upper bound; fewer segments are returned if the track doesn't have
+     *                     enough sync samples.
+     */
+    public static List<Segment> plan(SampleSource source, int trackIndex, int segmentCount) {
+        final SyncTable table = scan(source, trackIndex);
+        return plan(table.mSyncTimesUs, table.mSyncCount, table.mLastTimeUs, segmentCount);
+    }
+
+    /**
+     * Same as {@link #plan(SampleSource, int, int)}, over [startUs, endUs) of the track only.
+     * The first segment starts at startUs, wherever the sync samples are.
+     */
+    public static List<Segment> plan(SampleSource source, int trackIndex, int segmentCount, long startUs, long endUs) {
+        return plan(scan(source, trackIndex), segmentCount, startUs, endUs);
+    }
+
+    /**
+     * Same as {@link #plan(SampleSource, int, int, long, long)}, with as many segments as it
+     * takes for each to last about segmentDurationUs.
+     */
+    public static List<Segment> planByDuration(SampleSource source, int trackIndex, long segmentDurationUs,
+                                               long startUs, long endUs) {
+        return planByDuration(scan(source, trackIndex), segmentDurationUs, startUs, endUs);
+    }
+
+    /**
+     * Same as {@link #plan(SampleSource, int, int, long, long)}, from an index of the track.
+     */
+    public static List<Segment> plan(SampleTableIndex index, int segmentCount, long startUs, long endUs) {
+        return plan(SyncTable.from(index), segmentCount, startUs, endUs);
+    }
+
+    /**
+     * Same as {@link #planByDuration(SampleSource, int, long, long, long)}, from an index of
+     * the track.
+     */
+    public static List<Segment> planByDuration(SampleTableIndex index, long segmentDurationUs, long startUs,
+                                               long endUs) {
+        return planByDuration(SyncTable.from(index), segmentDurationUs, startUs, endUs);
+    }
+
+    private static List<Segment> planByDuration(SyncTable table, long segmentDurationUs, long startUs, long endUs) {
+        final long durationUs = Math.min(table.mLastTimeUs, endUs) - startUs;
+        final int segmentCount = (int) Math.max(1, (durationUs + segmentDurationUs - 1) / segmentDurationUs);
+        return plan(table, segmentCount, startUs, endUs);
+    }
+
+    private static List<Segment> plan(SyncTable table, int segmentCount, long startUs, long endUs) {
+        final long[] syncTimesUs = new long[table.mSyncCount + 1];
+        int syncCount = 0;
+        syncTimesUs[syncCount++] = startUs;
+        for (int i = 0; i < table.mSyncCount; i++) {
+            if (table.mSyncTimesUs[i] > startUs && table.mSyncTimesUs[i] < endUs) {
+                syncTimesUs[syncCount++] = table.mSyncTimesUs[i];
+            }
+        }
+        return clip(plan(syncTimesUs, syncCount, Math.min(table.mLastTimeUs, endUs), segmentCount), startUs, endUs);
+    }
+
+    /**
+     * Returns one segment per GOP, i.e. per sync sample. Leaves the track selected and the
+     * source at its start.
+     */
+    public static List<Segment> splitAtSyncSamples(SampleSource source, int trackIndex) {
+        return splitAtSyncSamples(scan(source, trackIndex));
+    }
+
+    /**
+     * Same as {@link #splitAtSyncSamples(SampleSource, int)}, from an index of the track.
+     */
+    public static List<Segment> splitAtSyncSamples(SampleTableIndex index) {
+        return splitAtSyncSamples(SyncTable.from(index));
+    }
+
+    private static List<Segment> splitAtSyncSamples(SyncTable table) {
+        final List<Segment> segments = new ArrayList<>(table.mSyncCount);
+        for (int i = 0; i < table.mSyncCount; i++) {
+            segments.add(new Segment(i, table.mSyncTimesUs[i],
+                    i + 1 < table.mSyncCount ? table.mSyncTimesUs[i + 1] : Long.MAX_VALUE));
+        }
+        return segments;
+    }
+
+    /**
+     * Keeps the part of the segments within [startUs, endUs): segments outside are dropped,
+     * the first and last ones are cut, and the rest are renumbered.
+     */
+    public static List<Segment> clip(List<Segment> segments, long startUs, long endUs) {
+        final List<Segment> clipped = new ArrayList<>(segments.size());
+        for (Segment segment : segments) {
+            final long segmentStartUs = Math.max(segment.startUs, startUs);
+            final long segmentEndUs = Math.min(segment.endUs, endUs);
+            if (segmentStartUs < segmentEndUs) {
+                clipped.add(new Segment(clipped.size(), segmentStartUs, segmentEndUs));
+            }
+        }
+        return clipped;
+    }
+
+    private static SyncTable scan(SampleSource source, int trackIndex) {
+        final int trackCount = source.getTrackCount();
+        for (int i = 0; i < trackCount; i++) {
+            if (i == trackIndex) {
+                source.selectTrack(i);
+            } else {
+                source.unselectTrack(i);
+            }
+        }
+        source.seekTo(0, MediaExtractor.SEEK_TO_PREVIOUS_SYNC);
+
+        final SyncTable table = new SyncTable();
+        long sampleTimeUs;
+        while ((sampleTimeUs = source.getSampleTime()) >= 0) {
+            if ((source.getSampleFlags() & MediaExtractor.SAMPLE_FLAG_SYNC) != 0) {
+                table.addSync(sampleTimeUs);
+            }
+            table.mLastTimeUs = Math.max(table.mLastTimeUs, sampleTimeUs);
+            source.advance();
+        }
+        source.seekTo(0, MediaExtractor.SEEK_TO_PREVIOUS_SYNC);
+        return table;
+    }
+
+    /**
+     * @param syncTimesUs Presentation times of the sync samples, in increasing order.
+     * @param lastTimeUs  Presentation time of the last sample of the track.
+     */
+    static List<Segment> plan(long[] syncTimesUs, int syncCount, long lastTimeUs, int segmentCount) {
+        final List<Segment> segments = new ArrayList<>(segmentCount);
+        if (syncCount == 0) {
+            return segments;
+        }
+
+        final long firstTimeUs = syncTimesUs[0];
+        final long durationUs = lastTimeUs - firstTimeUs;
+        long startUs = firstTimeUs;
+        int syncIndex = 0;
+        for (int i = 1; i < segmentCount; i++) {
+            final long targetUs = firstTimeUs + durationUs * i / segmentCount;
+            while (syncIndex < syncCount && (syncTimesUs[syncIndex] <= startUs || syncTimesUs[syncIndex] < targetUs)) {
+                syncIndex++;
+            }
+            if (syncIndex == syncCount) {
+                break;
+            }
+
+            // Take whichever sync sample around the target is closer.
+            long boundaryUs = syncTimesUs[syncIndex];
+            if (syncIndex > 0 && syncTimesUs[syncIndex - 1] > startUs
+                    && targetUs - syncTimesUs[syncIndex - 1] < boundaryUs - targetUs) {
+                boundaryUs = syncTimesUs[syncIndex - 1];
+            }
+            segments.add(new Segment(segments.size(), startUs, boundaryUs));
+            startUs = boundaryUs;
+        }
+        segments.add(new Segment(segments.size(), startUs, Long.MAX_VALUE));
+        return segments;
+    }
+
+    private static final class SyncTable {
+
+        private long[] mSyncTimesUs = new long[64];
+
+        private int mSyncCount;
+
+        private long mLastTimeUs = Long.MIN_VALUE;
+
+        private static SyncTable from(SampleTableIndex index) {
+            final SyncTable table = new SyncTable();
+            table.mSyncTimesUs = index.getSyncTimesUs();
+            table.mSyncCount = table.mSyncTimesUs.length;
+            table.mLastTimeUs = index.getLastTimeUs();
+            return table;
+        }
+
+        private void addSync(long timeUs) {
+            if (mSyncCount == mSyncTimesUs.length) {
+                mSyncTimesUs = Arrays.copyOf(mSyncTimesUs, mSyncCount * 2);
+            }
+            mSyncTimesUs[mSyncCount++] = timeUs;
+        }
+    }
+
+    /**
+     * Presentation time range [startUs, endUs) of a segment. The last segment is open ended.
+     */
+    public static final class Segment {
+
+        public final int index;
+
+        public final long startUs;
+
+        public final long endUs;
+
+        public Segment(int index, long startUs, long endUs) {
+            this.index = index;
+            this.startUs = startUs;
+            this.endUs = endUs;
+        }
+
+        @Override
+        public String toString() {
+            return "Segment{" + index + ", " + startUs + ".." + (endUs == Long.MAX_VALUE ? "end" : endUs) + "}";
+        }
+    }
+}
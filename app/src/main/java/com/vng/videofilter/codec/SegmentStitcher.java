@@ -0,0 +1,185 @@
+package com.vng.videofilter.codec;
+
+import android.media.MediaExtractor;
+import android.media.MediaFormat;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Copyright (C) 2017, VNG Corporation.
+ * <p>
+ * Joins pieces of a video track into one muxer track without re-encoding. A piece is
+ * either a separately encoded segment or a range of GOPs copied from the source. Each
+ * piece's samples are shifted so that it starts where it was planned to start, whatever
+ * timeline its container normalized them to.
+ *
+ * @author namnt4
+ * @since 18/10/2026
+ */
+public final class SegmentStitcher {
+
+    // Used when a piece doesn't report its largest sample and its size is unknown.
+    private static final int DEFAULT_BUFFER_SIZE = 1024 * 1024;
+
+    private SegmentStitcher() {
+    }
+
+    /**
+     * Stitches whole segments, each holding a single video track.
+     *
+     * @param segmentStartsUs Presentation time the first frame of each segment must get.
+     * @return the number of samples written.
+     * @throws IOException if the segments weren't encoded with the same codec config.
+     */
+    public static int stitch(List<SampleSource> segments, long[] segmentStartsUs, MuxerWrapper muxer)
+            throws IOException, InterruptedException {
+        final List<Piece> pieces = new ArrayList<>(segments.size());
+        for (int i = 0; i < segments.size(); i++) {
+            pieces.add(Piece.whole(segments.get(i), 0, segmentStartsUs[i]));
+        }
+        return stitch(pieces, muxer);
+    }
+
+    /**
+     * Checks that every splice point joins pieces with the same codec config, so the output
+     * can be decoded with the config of the first piece.
+     *
+     * @return the index of the first piece that doesn't match the one before, or -1.
+     */
+    public static int findIncompatiblePiece(List<Piece> pieces) {
+        for (int i = 1; i < pieces.size(); i++) {
+            if (!FormatUtils.hasSameCodecConfig(pieces.get(i - 1).getFormat(), pieces.get(i).getFormat())) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Adds one track to the muxer, with the format of the first piece, and writes the pieces
+     * into it in order. Returns once everything has been written.
+     *
+     * @return the number of samples written.
+     * @throws IOException if two consecutive pieces don't share the same codec config.
+     */
+    public static int stitch(List<Piece> pieces, MuxerWrapper muxer) throws IOException, InterruptedException {
+        final int incompatible = findIncompatiblePiece(pieces);
+        if (incompatible != -1) {
+            throw new IOException("Piece " + incompatible + " was encoded with a different codec config");
+        }
+
+        int bufferSize = 0;
+        for (Piece piece : pieces) {
+            bufferSize = Math.max(bufferSize, FormatUtils.getMaxSampleSize(piece.getFormat(), DEFAULT_BUFFER_SIZE));
+        }
+
+        final ByteBuffer buffer = ByteBuffer.allocateDirect(bufferSize);
+        final SampleInfo info = new SampleInfo();
+        final int trackIndex = muxer.addTrack(pieces.get(0).getFormat());
+        int samplesWritten = 0;
+        try {
+            for (Piece piece : pieces) {
+                samplesWritten += piece.copyTo(muxer, trackIndex, buffer, info);
+            }
+        } finally {
+            muxer.finishTrack(trackIndex);
+        }
+        return samplesWritten;
+    }
+
+    /**
+     * The samples of one track of a source, from the sync sample at or before a start time
+     * up to the first sync sample at or after an end time.
+     */
+    public static final class Piece {
+
+        private final SampleSource mSource;
+
+        private final int mTrackIndex;
+
+        private final long mSourceStartUs;
+
+        private final long mSourceEndUs;
+
+        private final long mTargetStartUs;
+
+        private Piece(SampleSource source, int trackIndex, long sourceStartUs, long sourceEndUs, long targetStartUs) {
+            mSource = source;
+            mTrackIndex = trackIndex;
+            mSourceStartUs = sourceStartUs;
+            mSourceEndUs = sourceEndUs;
+            mTargetStartUs = targetStartUs;
+        }
+
+        /**
+         * The whole track, moved to start at targetStartUs.
+         */
+        public static Piece whole(SampleSource source, int trackIndex, long targetStartUs) {
+            return new Piece(source, trackIndex, 0, Long.MAX_VALUE, targetStartUs);
+        }
+
+        /**
+         * The GOPs covering [startUs, endUs), keeping their timestamps. Both ends should be
+         * sync samples.
+         */
+        public static Piece range(SampleSource source, int trackIndex, long startUs, long endUs) {
+            return range(source, trackIndex, startUs, endUs, startUs);
+        }
+
+        /**
+         * The GOPs covering [startUs, endUs), moved to start at targetStartUs.
+         */
+        public static Piece range(SampleSource source, int trackIndex, long startUs, long endUs, long targetStartUs) {
+            return new Piece(source, trackIndex, startUs, endUs, targetStartUs);
+        }
+
+        public MediaFormat getFormat() {
+            return mSource.getTrackFormat(mTrackIndex);
+        }
+
+        private int copyTo(MuxerWrapper muxer, int muxerTrackIndex, ByteBuffer buffer, SampleInfo info)
+                throws InterruptedException {
+            final int trackCount = mSource.getTrackCount();
+            for (int i = 0; i < trackCount; i++) {
+                if (i == mTrackIndex) {
+                    mSource.selectTrack(i);
+                } else {
+                    mSource.unselectTrack(i);
+                }
+            }
+            mSource.seekTo(mSourceStartUs, MediaExtractor.SEEK_TO_PREVIOUS_SYNC);
+
+            long sampleTimeUs = mSource.getSampleTime();
+            final long offsetUs = mTargetStartUs - sampleTimeUs;
+            int flags;
+            int size;
+            int samplesWritten = 0;
+            while (sampleTimeUs >= 0) {
+                flags = mSource.getSampleFlags();
+                if (samplesWritten > 0 && sampleTimeUs >= mSourceEndUs
+                        && (flags & MediaExtractor.SAMPLE_FLAG_SYNC) != 0) {
+                    break;
+                }
+
+                buffer.clear();
+                size = mSource.readSampleData(buffer, 0);
+                if (size < 0) {
+                    break;
+                }
+
+                info.set(0, size, sampleTimeUs + offsetUs, FormatUtils.toBufferFlags(flags));
+                buffer.position(0);
+                buffer.limit(size);
+                muxer.writeSampleData(muxerTrackIndex, buffer, info);
+                samplesWritten++;
+
+                mSource.advance();
+                sampleTimeUs = mSource.getSampleTime();
+            }
+            return samplesWritten;
+        }
+    }
+}
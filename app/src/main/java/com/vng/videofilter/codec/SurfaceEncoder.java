@@ -0,0 +1,203 @@
+package com.vng.videofilter.codec;
+
+import android.media.MediaCodec;
+import android.media.MediaCodecInfo;
+import android.media.MediaFormat;
+import android.util.Log;
+import android.view.Surface;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Copyright (C) 2017, VNG Corporation.
+ * <p>
+ * Video encoder fed through its input {@link Surface}. A dedicated thread drains the
+ * encoded samples into a {@link MuxerWrapper}, so the producer only ever blocks in
+ * {@code eglSwapBuffers} when the encoder runs out of input buffers.
+ *
+ * @author namnt4
+ * @since 18/10/2026
+ */
+public class SurfaceEncoder {
+
+    private static final String TAG = SurfaceEncoder.class.getSimpleName();
+
+    private static final long TIMEOUT_US = 10000;
+
+    private static final int DEFAULT_FRAME_RATE = 30;
+
+    private static final int DEFAULT_I_FRAME_INTERVAL = 1;
+
+    // Bits per pixel per frame used when the source doesn't report its bit rate.
+    private static final float DEFAULT_BITS_PER_PIXEL = 0.25f;
+
+    protected final CodecPort mEncoder;
+
+    private final Surface mInputSurface;
+
+    private final MuxerWrapper mMuxer;
+
+    private final Listener mListener;
+
+    private final SampleInfo mInfo = new SampleInfo();
+
+    private Thread mDrainThread;
+
+    private volatile boolean mRunning;
+
+    private int mTrackIndex = -1;
+
+    /**
+     * Creates an encoder format matching the size, frame rate and bit rate of a decoded track.
+     */
+    public static MediaFormat createVideoFormat(String mimeType, MediaFormat sourceFormat) {
+        final int width = sourceFormat.getInteger(MediaFormat.KEY_WIDTH);
+        final int height = sourceFormat.getInteger(MediaFormat.KEY_HEIGHT);
+        final int frameRate = sourceFormat.containsKey(MediaFormat.KEY_FRAME_RATE)
+                ? sourceFormat.getInteger(MediaFormat.KEY_FRAME_RATE)
+                : DEFAULT_FRAME_RATE;
+        final int bitRate = sourceFormat.containsKey(MediaFormat.KEY_BIT_RATE)
+                ? sourceFormat.getInteger(MediaFormat.KEY_BIT_RATE)
+                : (int) (width * height * frameRate * DEFAULT_BITS_PER_PIXEL);
+
+        final MediaFormat format = MediaFormat.createVideoFormat(mimeType, width, height);
+        format.setInteger(MediaFormat.KEY_COLOR_FORMAT, MediaCodecInfo.CodecCapabilities.COLOR_FormatSurface);
+        format.setInteger(MediaFormat.KEY_BIT_RATE, bitRate);
+        format.setInteger(MediaFormat.KEY_FRAME_RATE, frameRate);
+        format.setInteger(MediaFormat.KEY_I_FRAME_INTERVAL, DEFAULT_I_FRAME_INTERVAL);
+
+        // Keeping the profile and level of the source makes its codec config more likely to
+        // match ours, which is what lets copied GOPs be spliced with encoded ones.
+        if (mimeType.equals(FormatUtils.getString(sourceFormat, MediaFormat.KEY_MIME))) {
+            final int profile = FormatUtils.getInteger(sourceFormat, MediaFormat.KEY_PROFILE);
+            final int level = FormatUtils.getInteger(sourceFormat, MediaFormat.KEY_LEVEL);
+            if (profile > 0 && level > 0) {
+                format.setInteger(MediaFormat.KEY_PROFILE, profile);
+                format.setInteger(MediaFormat.KEY_LEVEL, level);
+            }
+        }
+        return format;
+    }
+
+    /**
+     * @param encoder Unconfigured encoder, driven synchronously by this class.
+     * @param format  Base format, e.g. from {@link #createVideoFormat}; tuned for speed with
+     *                {@link CodecTuning}.
+     */
+    public SurfaceEncoder(CodecPort encoder, CodecTuning.FormatSource format, MuxerWrapper muxer, Listener listener) {
+        this(encoder, format, muxer, listener, true);
+    }
+
+    /**
+     * @param inputSurface Whether the encoder is fed through its input surface; if not,
+     *                     the subclass queues input buffers itself.
+     */
+    protected SurfaceEncoder(CodecPort encoder, CodecTuning.FormatSource format, MuxerWrapper muxer,
+                             Listener listener, boolean inputSurface) {
+        mEncoder = encoder;
+        mMuxer = muxer;
+        mListener = listener;
+
+        CodecTuning.configure(mEncoder, format, null, MediaCodec.CONFIGURE_FLAG_ENCODE, null);
+        mInputSurface = inputSurface ? mEncoder.createInputSurface() : null;
+    }
+
+    public Surface getInputSurface() {
+        return mInputSurface;
+    }
+
+    public String getCodecName() {
+        return mEncoder.getName();
+    }
+
+    public void start() {
+        mEncoder.start();
+        mRunning = true;
+        mDrainThread = new Thread(this::drain, "surface_encoder");
+        mDrainThread.start();
+    }
+
+    /**
+     * Called after the last frame has been swapped into the input surface.
+     */
+    public void signalEndOfInputStream() {
+        mEncoder.signalEndOfInputStream();
+    }
+
+    private void drain() {
+        try {
+            while (mRunning) {
+                final int index = mEncoder.dequeueOutputBuffer(mInfo, TIMEOUT_US);
+                if (index == MediaCodec.INFO_OUTPUT_FORMAT_CHANGED) {
+                    mTrackIndex = mMuxer.addTrack(mEncoder.getOutputFormat());
+                    continue;
+                }
+
+                if (index < 0) {
+                    continue;
+                }
+
+                // The codec config is already part of the output format given to the muxer.
+                final boolean frame = mInfo.size > 0 && !mInfo.isCodecConfig();
+                if (frame) {
+                    final ByteBuffer buffer = mEncoder.getOutputBuffer(index);
+                    buffer.position(mInfo.offset);
+                    buffer.limit(mInfo.offset + mInfo.size);
+                    mMuxer.writeSampleData(mTrackIndex, buffer, mInfo);
+                }
+                mEncoder.releaseOutputBuffer(index, false);
+
+                if (frame) {
+                    mListener.onFrameEncoded(mInfo.presentationTimeUs);
+                }
+
+                if (mInfo.isEndOfStream()) {
+                    mMuxer.finishTrack(mTrackIndex);
+                    mListener.onEndOfStream();
+                    break;
+                }
+            }
+        } catch (InterruptedException e) {
+            Log.d(TAG, "drain(): interrupted");
+        } catch (Exception e) {
+            Log.e(TAG, "drain(): " + e);
+            mListener.onError(e);
+        } finally {
+            mMuxer.finishTrack(mTrackIndex);
+        }
+    }
+
+    public void release() {
+        mRunning = false;
+        if (mDrainThread != null) {
+            mDrainThread.interrupt();
+            try {
+                mDrainThread.join();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            mDrainThread = null;
+        }
+
+        try {
+            mEncoder.release();
+        } catch (Exception e) {
+            e.printStackTrace();
+        }
+        if (mInputSurface != null) {
+            mInputSurface.release();
+        }
+    }
+
+    /**
+     * {@link Listener}. Called on the drain thread.
+     */
+    public interface Listener {
+
+        void onFrameEncoded(long presentationTimeUs);
+
+        void onEndOfStream();
+
+        void onError(Exception e);
+    }
+}
@@ -0,0 +1,253 @@
+package com.vng.videofilter.codec;
+
+import android.media.MediaExtractor;
+import android.media.MediaFormat;
+import android.util.Log;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Copyright (C) 2017, VNG Corporation.
+ * <p>
+ * Copies the audio tracks of a source into the muxer without decoding them. Runs on
+ * its own thread and its own {@link SampleSource}, so it never competes with the video
+ * pipeline for the extractor or the queue. Every sample goes through one direct buffer,
+ * sized for the largest sample of the copied tracks. Other tracks, e.g. subtitles, timecode
+ * or the metadata tracks of phone recordings, are dropped: the muxers take only audio and
+ * video, and sparse tracks would hold the interleaving back.
+ *
+ * @author namnt4
+ * @since 18/10/2026
+ */
+public class TrackPassthrough {
+
+    private static final String TAG = TrackPassthrough.class.getSimpleName();
+
+    // Used when none of the copied tracks report KEY_MAX_INPUT_SIZE.
+    private static final int DEFAULT_BUFFER_SIZE = 256 * 1024;
+
+    private final SampleSource mSource;
+
+    // Muxer track of each source track, or -1 if the track isn't copied.
+    private final int[] mMuxerTrackIndices;
+
+    // By source track index.
+    private final boolean[] mCopied;
+
+    private final int mTrackCount;
+
+    private final ByteBuffer mBuffer;
+
+    private final SampleInfo mInfo = new SampleInfo();
+
+    private MuxerWrapper mMuxer;
+
+    private Listener mListener;
+
+    private Thread mThread;
+
+    private volatile boolean mRunning;
+
+    // Presentation time range of the samples copied.
+    private long mStartTimeUs = 0;
+    private long mEndTimeUs = Long.MAX_VALUE;
+
+    /**
+     * Selects every audio track of the source.
+     *
+     * @param source Used only by this instance from now on.
+     */
+    public TrackPassthrough(SampleSource source) {
+        mSource = source;
+
+        final int trackCount = source.getTrackCount();
+        mMuxerTrackIndices = new int[trackCount];
+        Arrays.fill(mMuxerTrackIndices, -1);
+        mCopied = new boolean[trackCount];
+
+        int selectedTracks = 0;
+        int bufferSize = -1;
+        for (int i = 0; i < trackCount; i++) {
+            final String mime = source.getTrackMime(i);
+            if (mime == null || !mime.startsWith("audio/")) {
+                if (mime == null || !mime.startsWith("video/")) {
+                    Log.d(TAG, "skipping track " + i + " (" + mime + ")");
+                }
+                source.unselectTrack(i);
+                continue;
+            }
+
+            source.selectTrack(i);
+            mCopied[i] = true;
+            selectedTracks++;
+
+            final MediaFormat format = source.getTrackFormat(i);
+            if (format.containsKey(MediaFormat.KEY_MAX_INPUT_SIZE)) {
+                bufferSize = Math.max(bufferSize, format.getInteger(MediaFormat.KEY_MAX_INPUT_SIZE));
+            }
+        }
+
+        mTrackCount = selectedTracks;
+        mBuffer = ByteBuffer.allocateDirect(bufferSize > 0 ? bufferSize : DEFAULT_BUFFER_SIZE);
+    }
+
+    /**
+     * Number of tracks that will be copied.
+     */
+    public int getTrackCount() {
+        return mTrackCount;
+    }
+
+    /**
+     * Formats of the tracks that will be copied, in the order they're added to the muxer.
+     */
+    public List<MediaFormat> getTrackFormats() {
+        final List<MediaFormat> formats = new ArrayList<>(mTrackCount);
+        for (int i = 0; i < mCopied.length; i++) {
+            if (mCopied[i]) {
+                formats.add(mSource.getTrackFormat(i));
+            }
+        }
+        return formats;
+    }
+
+    /**
+     * Adds the copied tracks to the muxer, which keeps them interleaved with the encoded ones.
+     * Must be called before the muxer starts.
+     */
+    public void addTracks(MuxerWrapper muxer) {
+        mMuxer = muxer;
+        for (int i = 0; i < mMuxerTrackIndices.length; i++) {
+            if (mCopied[i]) {
+                mMuxerTrackIndices[i] = muxer.addTrack(mSource.getTrackFormat(i));
+            }
+        }
+    }
+
+    /**
+     * Copies only the samples presenting in [startUs, endUs), moved earlier by startUs so
+     * they line up with a video track trimmed the same way. Must be called before start.
+     */
+    public void setTimeRange(long startUs, long endUs) {
+        mStartTimeUs = startUs;
+        mEndTimeUs = endUs;
+    }
+
+    public void start(Listener listener) {
+        if (mMuxer == null) {
+            throw new IllegalStateException("addTracks() must be called first");
+        }
+
+        mListener = listener;
+        mRunning = true;
+        mThread = new Thread(this::copy, "track_passthrough");
+        mThread.start();
+    }
+
+    private void copy() {
+        try {
+            if (mStartTimeUs > 0) {
+                mSource.seekTo(mStartTimeUs, MediaExtractor.SEEK_TO_PREVIOUS_SYNC);
+            }
+
+            int sourceTrackIndex;
+            int size;
+            long sampleTimeUs;
+            while (mRunning) {
+                sourceTrackIndex = mSource.getSampleTrackIndex();
+                if (sourceTrackIndex < 0) {
+                    break;
+                }
+
+                // Tracks are interleaved, so one track past the end doesn't end the others.
+                sampleTimeUs = mSource.getSampleTime();
+                if (sampleTimeUs < mStartTimeUs || sampleTimeUs >= mEndTimeUs) {
+                    if (sampleTimeUs >= mEndTimeUs && finishTrack(sourceTrackIndex)) {
+                        break;
+                    }
+                    mSource.advance();
+                    continue;
+                }
+
+                mBuffer.clear();
+                size = mSource.readSampleData(mBuffer, 0);
+                if (size < 0) {
+                    break;
+                }
+
+                mInfo.set(0, size, sampleTimeUs - mStartTimeUs, FormatUtils.toBufferFlags(mSource.getSampleFlags()));
+                mBuffer.position(0);
+                mBuffer.limit(size);
+                mMuxer.writeSampleData(mMuxerTrackIndices[sourceTrackIndex], mBuffer, mInfo);
+                mSource.advance();
+            }
+
+            finishTracks();
+            if (mRunning) {
+                mListener.onComplete();
+            }
+        } catch (InterruptedException e) {
+            Log.d(TAG, "copy(): interrupted");
+        } catch (Exception e) {
+            Log.e(TAG, "copy(): " + e);
+            finishTracks();
+            mListener.onError(e);
+        }
+    }
+
+    /**
+     * Finishes one track early.
+     *
+     * @return whether every track is finished.
+     */
+    private boolean finishTrack(int sourceTrackIndex) {
+        if (mMuxerTrackIndices[sourceTrackIndex] != -1) {
+            mMuxer.finishTrack(mMuxerTrackIndices[sourceTrackIndex]);
+            mSource.unselectTrack(sourceTrackIndex);
+            mMuxerTrackIndices[sourceTrackIndex] = -1;
+        }
+
+        for (int trackIndex : mMuxerTrackIndices) {
+            if (trackIndex != -1) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private void finishTracks() {
+        for (int trackIndex : mMuxerTrackIndices) {
+            if (trackIndex != -1) {
+                mMuxer.finishTrack(trackIndex);
+            }
+        }
+    }
+
+    public void release() {
+        mRunning = false;
+        if (mThread != null) {
+            mThread.interrupt();
+            try {
+                mThread.join();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            mThread = null;
+        }
+
+        mSource.release();
+    }
+
+    /**
+     * {@link Listener}. Called on the passthrough thread.
+     */
+    public interface Listener {
+
+        void onComplete();
+
+        void onError(Exception e);
+    }
+}
@@ -16,10 +16,22 @@
 
 package com.vng.videofilter.gles;
 
+import android.opengl.EGL14;
+import android.opengl.EGLContext;
+import android.opengl.GLES20;
+import android.opengl.GLES30;
+
 import java.nio.FloatBuffer;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
 
 /**
  * Base class for stuff we like to draw.
+ * <p>
+ * The arrays can also be uploaded once into a buffer object, with a vertex array object on
+ * top on GLES 3, so that draws don't send the geometry to the driver again every frame.
+ * See {@link #upload()}.
  */
 public class Drawable2d {
     private static final int SIZEOF_FLOAT = 4;
@@ -98,6 +110,14 @@ public class Drawable2d {
     private int mTexCoordStride;
     private Prefab mPrefab;
 
+    // What is known of each live context drawables were used in. Guarded by itself.
+    private static final Map<EGLContext, ContextState> sContexts = new HashMap<>();
+
+    // The objects made by upload(), by the context they were made in, and those of the
+    // context upload() was last called in.
+    private final Map<ContextState, Upload> mUploads = new HashMap<>();
+    private Upload mUpload;
+
     /**
      * Enum values for constructor.
      */
@@ -186,6 +206,170 @@ public class Drawable2d {
         return mCoordsPerVertex;
     }
 
+    /**
+     * Copies the arrays into a buffer object of the current context, and on GLES 3 records
+     * the attribute setup in a vertex array object.  Does nothing if that was done already
+     * in this context; each context gets its own objects.
+     * <p>
+     * The objects are laid out for the attribute locations GlUtil.createProgram() gives.
+     */
+    public void upload() {
+        final ContextState context = getContextState(EGL14.eglGetCurrentContext());
+        if (mUpload != null && mUpload.context == context) {
+            return;
+        }
+
+        mUpload = mUploads.get(context);
+        if (mUpload != null) {
+            return;
+        }
+
+        // The objects of destroyed contexts went with them.
+        for (Iterator<ContextState> it = mUploads.keySet().iterator(); it.hasNext(); ) {
+            if (it.next().destroyed) {
+                it.remove();
+            }
+        }
+
+        final int vertexBytes = mVertexCount * mVertexStride;
+        final int texCoordBytes = mVertexCount * mTexCoordStride;
+        final FloatBuffer data = GlUtil.createFloatBuffer(new float[(vertexBytes + texCoordBytes) / SIZEOF_FLOAT]);
+        data.put(mVertexArray.duplicate()).put(mTexCoordArray.duplicate()).position(0);
+
+        final Upload upload = new Upload(context);
+        final int[] ids = new int[1];
+        GLES20.glGenBuffers(1, ids, 0);
+        upload.bufferId = ids[0];
+        GLES20.glBindBuffer(GLES20.GL_ARRAY_BUFFER, upload.bufferId);
+        GLES20.glBufferData(GLES20.GL_ARRAY_BUFFER, vertexBytes + texCoordBytes, data,
+                GLES20.GL_STATIC_DRAW);
+        GlUtil.checkGlError("glBufferData");
+
+        if (GlUtil.isGles3()) {
+            GLES30.glGenVertexArrays(1, ids, 0);
+            upload.vertexArrayId = ids[0];
+            GLES30.glBindVertexArray(upload.vertexArrayId);
+            setUpAttributes(upload);
+            GLES30.glBindVertexArray(0);
+            GlUtil.checkGlError("glBindVertexArray");
+        }
+        // Attributes set up for another drawable keep reading its buffer regardless.
+        GLES20.glBindBuffer(GLES20.GL_ARRAY_BUFFER, 0);
+        mUploads.put(context, upload);
+        mUpload = upload;
+    }
+
+    /**
+     * Returns true if upload() was called.
+     */
+    public boolean isUploaded() {
+        return !mUploads.isEmpty();
+    }
+
+    /**
+     * Deletes the objects made by upload() in the current context.  Those made in other
+     * contexts are forgotten; they go when their context is destroyed.  If the current
+     * context is about to be destroyed, there is no need to call this.
+     */
+    public void release() {
+        final ContextState current = getContextState(EGL14.eglGetCurrentContext());
+        final Upload upload = mUploads.get(current);
+        if (current.bound == this) {
+            unbindAttributes(current);
+        }
+        if (upload != null) {
+            if (upload.vertexArrayId != 0) {
+                GLES30.glDeleteVertexArrays(1, new int[] {upload.vertexArrayId}, 0);
+            }
+            GLES20.glDeleteBuffers(1, new int[] {upload.bufferId}, 0);
+        }
+
+        for (ContextState context : mUploads.keySet()) {
+            if (context.bound == this) {
+                // Not current, so its attributes can't be reset; the next bind() sets them.
+                context.bound = null;
+            }
+        }
+        mUploads.clear();
+        mUpload = null;
+    }
+
+    /**
+     * Points the position and texture coordinate attributes at the uploaded arrays: one
+     * call with a vertex array object.  Without one, the attributes are only set up when
+     * another drawable or a client-side array used them since, whatever the program.
+     */
+    void bind() {
+        if (mUpload.vertexArrayId != 0) {
+            GLES30.glBindVertexArray(mUpload.vertexArrayId);
+        } else if (mUpload.context.bound != this) {
+            setUpAttributes(mUpload);
+            mUpload.context.bound = this;
+        }
+    }
+
+    /**
+     * Undoes bind() with a vertex array object.  Without one, the attributes stay set up for
+     * the next draw; client-side arrays call {@link #unbindAttributes()} first.
+     */
+    void unbind() {
+        if (mUpload.vertexArrayId != 0) {
+            GLES30.glBindVertexArray(0);
+        }
+    }
+
+    /**
+     * Resets the attributes a drawable left set up in the current context, before they are
+     * pointed at client-side arrays, which must not be read from its buffer.
+     */
+    static void unbindAttributes() {
+        final ContextState context = getContextState(EGL14.eglGetCurrentContext());
+        if (context.bound != null) {
+            unbindAttributes(context);
+        }
+    }
+
+    /**
+     * Called by {@link EglCore} before it destroys a context.
+     */
+    static void onContextDestroyed(EGLContext context) {
+        synchronized (sContexts) {
+            final ContextState state = sContexts.remove(context);
+            if (state != null) {
+                state.destroyed = true;
+                state.bound = null;
+            }
+        }
+    }
+
+    private static void unbindAttributes(ContextState context) {
+        GLES20.glDisableVertexAttribArray(GlUtil.ATTRIB_POSITION);
+        GLES20.glDisableVertexAttribArray(GlUtil.ATTRIB_TEXTURE_COORD);
+        GLES20.glBindBuffer(GLES20.GL_ARRAY_BUFFER, 0);
+        context.bound = null;
+    }
+
+    private static ContextState getContextState(EGLContext context) {
+        synchronized (sContexts) {
+            ContextState state = sContexts.get(context);
+            if (state == null) {
+                state = new ContextState();
+                sContexts.put(context, state);
+            }
+            return state;
+        }
+    }
+
+    private void setUpAttributes(Upload upload) {
+        GLES20.glBindBuffer(GLES20.GL_ARRAY_BUFFER, upload.bufferId);
+        GLES20.glEnableVertexAttribArray(GlUtil.ATTRIB_POSITION);
+        GLES20.glVertexAttribPointer(GlUtil.ATTRIB_POSITION, mCoordsPerVertex,
+                GLES20.GL_FLOAT, false, mVertexStride, 0);
+        GLES20.glEnableVertexAttribArray(GlUtil.ATTRIB_TEXTURE_COORD);
+        GLES20.glVertexAttribPointer(GlUtil.ATTRIB_TEXTURE_COORD, 2,
+                GLES20.GL_FLOAT, false, mTexCoordStride, mVertexCount * mVertexStride);
+    }
+
     @Override
     public String toString() {
         if (mPrefab != null) {
@@ -194,4 +378,33 @@ public class Drawable2d {
             return "[Drawable2d: ...]";
         }
     }
+
+    /**
+     * A context, told apart from a later one that gets the same handle.  Only used on the
+     * thread it is current on.
+     */
+    private static final class ContextState {
+
+        // The drawable the attributes are set up for, without vertex array objects.
+        Drawable2d bound;
+
+        volatile boolean destroyed;
+    }
+
+    /**
+     * A buffer with the vertices, then the texture coordinates, and the vertex array set up
+     * to read it (GLES 3 only).
+     */
+    private static final class Upload {
+
+        final ContextState context;
+
+        int bufferId;
+
+        int vertexArrayId;
+
+        Upload(ContextState context) {
+            this.context = context;
+        }
+    }
 }
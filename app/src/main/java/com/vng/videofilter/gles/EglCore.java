@@ -128,6 +128,8 @@ public final class EglCore {
             mGlVersion = 2;
         }
 
+        ProgramCache.getDefault().onContextCreated(mEGLContext, sharedContext);
+
         // Confirm with query.
         int[] values = new int[1];
         EGL14.eglQueryContext(mEGLDisplay, mEGLContext, EGL14.EGL_CONTEXT_CLIENT_VERSION,
@@ -187,6 +189,8 @@ public final class EglCore {
             // every eglInitialize() we need an eglTerminate().
             EGL14.eglMakeCurrent(mEGLDisplay, EGL14.EGL_NO_SURFACE, EGL14.EGL_NO_SURFACE,
                     EGL14.EGL_NO_CONTEXT);
+            ProgramCache.getDefault().onContextDestroyed(mEGLContext);
+            Drawable2d.onContextDestroyed(mEGLContext);
             EGL14.eglDestroyContext(mEGLDisplay, mEGLContext);
             EGL14.eglReleaseThread();
             EGL14.eglTerminate(mEGLDisplay);
@@ -52,7 +52,7 @@ public class FlatShadedProgram {
      * Prepares the program in the current EGL context.
      */
     public FlatShadedProgram() {
-        mProgramHandle = GlUtil.createProgram(VERTEX_SHADER, FRAGMENT_SHADER);
+        mProgramHandle = ProgramCache.getDefault().acquire(VERTEX_SHADER, FRAGMENT_SHADER);
         if (mProgramHandle == 0) {
             throw new RuntimeException("Unable to create program");
         }
@@ -69,10 +69,10 @@ public class FlatShadedProgram {
     }
 
     /**
-     * Releases the program.
+     * Releases the program.  It stays linked in the {@link ProgramCache}.
      */
     public void release() {
-        GLES20.glDeleteProgram(mProgramHandle);
+        ProgramCache.getDefault().release(mProgramHandle);
         mProgramHandle = -1;
     }
 
@@ -103,6 +103,7 @@ public class FlatShadedProgram {
         // Copy the color vector in.
         GLES20.glUniform4fv(muColorLoc, 1, color, 0);
         GlUtil.checkGlError("glUniform4fv ");
+        Drawable2d.unbindAttributes();
 
         // Enable the "aPosition" vertex attribute.
         GLES20.glEnableVertexAttribArray(maPositionLoc);
@@ -121,4 +122,29 @@ public class FlatShadedProgram {
         GLES20.glDisableVertexAttribArray(maPositionLoc);
         GLES20.glUseProgram(0);
     }
+
+    /**
+     * Issues the draw call with the geometry of the drawable, uploading it on the first
+     * call in this context.
+     *
+     * @param mvpMatrix The 4x4 projection matrix.
+     * @param color A 4-element color vector.
+     */
+    public void draw(float[] mvpMatrix, float[] color, Drawable2d drawable) {
+        drawable.upload();
+        GlUtil.checkGlError("draw start");
+
+        GLES20.glUseProgram(mProgramHandle);
+        GlUtil.checkGlError("glUseProgram");
+        GLES20.glUniformMatrix4fv(muMVPMatrixLoc, 1, false, mvpMatrix, 0);
+        GLES20.glUniform4fv(muColorLoc, 1, color, 0);
+        GlUtil.checkGlError("glUniform4fv ");
+
+        drawable.bind();
+        GLES20.glDrawArrays(GLES20.GL_TRIANGLE_STRIP, 0, drawable.getVertexCount());
+        GlUtil.checkGlError("glDrawArrays");
+        drawable.unbind();
+
+        GLES20.glUseProgram(0);
+    }
 }
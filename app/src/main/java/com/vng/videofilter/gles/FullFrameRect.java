@@ -49,6 +49,9 @@ public class FullFrameRect {
             }
             mProgram = null;
         }
+        if (doEglCleanup) {
+            mRectDrawable.release();
+        }
     }
 
     /**
@@ -79,11 +82,8 @@ public class FullFrameRect {
      * Draws a viewport-filling rect, texturing it with the specified texture object.
      */
     public void drawFrame(int textureId, float[] texMatrix) {
-        // Use the identity matrix for MVP so our 2x2 FULL_RECTANGLE covers the viewport.
-        mProgram.draw(GlUtil.IDENTITY_MATRIX, mRectDrawable.getVertexArray(), 0,
-                mRectDrawable.getVertexCount(), mRectDrawable.getCoordsPerVertex(),
-                mRectDrawable.getVertexStride(),
-                texMatrix, mRectDrawable.getTexCoordArray(), textureId,
-                mRectDrawable.getTexCoordStride());
+        // Use the identity matrix for MVP so our 2x2 FULL_RECTANGLE covers the viewport.  The
+        // rect is uploaded to the GPU on the first frame and drawn from there after.
+        mProgram.draw(GlUtil.IDENTITY_MATRIX, mRectDrawable, texMatrix, textureId);
     }
 }
@@ -30,6 +30,7 @@ import java.io.InputStreamReader;
 import java.nio.ByteBuffer;
 import java.nio.ByteOrder;
 import java.nio.FloatBuffer;
+import java.util.concurrent.atomic.AtomicLong;
 
 import static android.opengl.GLES11Ext.GL_TEXTURE_EXTERNAL_OES;
 
@@ -48,6 +49,34 @@ public class GlUtil {
 
     private static final int SIZEOF_FLOAT = 4;
 
+    /** Location every program gets for "aPosition", so vertex arrays work with any of them. */
+    public static final int ATTRIB_POSITION = 0;
+    /** Location every program gets for "aTextureCoord". */
+    public static final int ATTRIB_TEXTURE_COORD = 1;
+
+    /** checkGlError() checks after every call.  The default, and what debug builds use. */
+    public static final int CHECK_EVERY_CALL = 0;
+    /** checkGlError() does nothing; errors are found once per frame by checkFrameErrors(). */
+    public static final int CHECK_PER_FRAME = 1;
+    /** Like CHECK_PER_FRAME, but every call is checked in one frame out of the interval. */
+    public static final int CHECK_SAMPLED = 2;
+
+    // glGetError() can make the driver sync, so release builds don't call it on every call.
+    private static volatile int sCheckMode = CHECK_EVERY_CALL;
+    private static volatile int sSampleInterval = 1;
+
+    private static final AtomicLong sErrorCount = new AtomicLong();
+
+    // Per GL thread: frames are counted, and errors found, where the frames are drawn.
+    private static final ThreadLocal<FrameErrors> sFrameErrors = new ThreadLocal<FrameErrors>() {
+        @Override
+        protected FrameErrors initialValue() {
+            return new FrameErrors();
+        }
+    };
+
+    // glGetError() returns one flag per call; a broken context may never stop returning them.
+    private static final int MAX_ERRORS_PER_FRAME = 16;
 
     private GlUtil() {}     // do not instantiate
 
@@ -75,6 +104,9 @@ public class GlUtil {
         checkGlError("glAttachShader");
         GLES20.glAttachShader(program, pixelShader);
         checkGlError("glAttachShader");
+        // Binding a name the shaders don't use is ignored.
+        GLES20.glBindAttribLocation(program, ATTRIB_POSITION, "aPosition");
+        GLES20.glBindAttribLocation(program, ATTRIB_TEXTURE_COORD, "aTextureCoord");
         GLES20.glLinkProgram(program);
         int[] linkStatus = new int[1];
         GLES20.glGetProgramiv(program, GLES20.GL_LINK_STATUS, linkStatus, 0);
@@ -87,6 +119,14 @@ public class GlUtil {
         return program;
     }
 
+    /**
+     * Returns true if the current context is GLES 3 or later.
+     */
+    public static boolean isGles3() {
+        final String version = GLES20.glGetString(GLES20.GL_VERSION);
+        return version != null && version.startsWith("OpenGL ES 3");
+    }
+
     /**
      * Compiles the provided shader source.
      *
@@ -109,17 +149,90 @@ public class GlUtil {
     }
 
     /**
-     * Checks to see if a GLES error has been raised.
+     * Sets how often GL errors are looked for, e.g. CHECK_PER_FRAME.
+     *
+     * @param sampleInterval For CHECK_SAMPLED, one frame in how many is checked call by call.
+     */
+    public static void setErrorCheckMode(int mode, int sampleInterval) {
+        if (mode != CHECK_EVERY_CALL && mode != CHECK_PER_FRAME && mode != CHECK_SAMPLED) {
+            throw new IllegalArgumentException("Unknown check mode " + mode);
+        }
+        sSampleInterval = Math.max(1, sampleInterval);
+        sCheckMode = mode;
+    }
+
+    public static int getErrorCheckMode() {
+        return sCheckMode;
+    }
+
+    /**
+     * Checks to see if a GLES error has been raised, if the check mode has every call
+     * checked now.  Otherwise it is found by the next checkFrameErrors().
      */
     public static void checkGlError(String op) {
+        final int mode = sCheckMode;
+        if (mode == CHECK_PER_FRAME || (mode == CHECK_SAMPLED && !sFrameErrors.get().sampled)) {
+            return;
+        }
+
         int error = GLES20.glGetError();
         if (error != GLES20.GL_NO_ERROR) {
+            sErrorCount.incrementAndGet();
             String msg = op + ": glError 0x" + Integer.toHexString(error);
             Log.e(TAG, msg);
             throw new RuntimeException(msg);
         }
     }
 
+    /**
+     * Ends a frame, or a pass, drawn on this thread: collects every GL error raised since the
+     * last call.  In CHECK_EVERY_CALL mode, what debug builds use, it throws if there was one;
+     * otherwise the errors are logged and counted, and the frame goes out as it is rather
+     * than failing the whole job.  Call it once per frame whatever the check mode.
+     * In CHECK_SAMPLED mode, it also decides whether the next frame is checked call by call.
+     *
+     * @param pass Names the frame or pass in the exception.
+     */
+    public static void checkFrameErrors(String pass) {
+        final FrameErrors frame = sFrameErrors.get();
+        int count = 0;
+        int first = GLES20.GL_NO_ERROR;
+        // Each error flag is reported once; a few calls clear them all.
+        for (int error = GLES20.glGetError(); error != GLES20.GL_NO_ERROR && count < MAX_ERRORS_PER_FRAME;
+             error = GLES20.glGetError()) {
+            if (count++ == 0) {
+                first = error;
+            }
+        }
+
+        final int mode = sCheckMode;
+        frame.lastCount = count;
+        frame.frames++;
+        frame.sampled = mode == CHECK_SAMPLED && frame.frames % sSampleInterval == 0;
+        if (count > 0) {
+            sErrorCount.addAndGet(count);
+            String msg = pass + ": " + count + " glErrors, first 0x" + Integer.toHexString(first);
+            Log.e(TAG, msg);
+            if (mode == CHECK_EVERY_CALL) {
+                throw new RuntimeException(msg);
+            }
+        }
+    }
+
+    /**
+     * Errors found by the last checkFrameErrors() on this thread, for telemetry.
+     */
+    public static int getLastFrameErrorCount() {
+        return sFrameErrors.get().lastCount;
+    }
+
+    /**
+     * Errors found in the process so far, by either kind of check.
+     */
+    public static long getErrorCount() {
+        return sErrorCount.get();
+    }
+
     /**
      * Checks to see if the location we obtained is valid.  GLES returns -1 if a label
      * could not be found, but does not set the GL error.
@@ -322,4 +435,10 @@ public class GlUtil {
             }
         }
     }
+
+    private static final class FrameErrors {
+        long frames;
+        int lastCount;
+        boolean sampled;
+    }
 }
@@ -0,0 +1,114 @@
+package com.vng.videofilter.gles;
+
+import android.util.Log;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+
+/**
+ * Copyright (C) 2017, VNG Corporation.
+ * <p>
+ * Linked program binaries on disk, one file per program. Each file records the driver it
+ * was written by, and is only trusted by the same one: a binary from another driver version
+ * would at best be rejected by it.
+ *
+ * @author namnt4
+ * @since 18/10/2026
+ */
+final class ProgramBinaryStore {
+
+    private static final String TAG = ProgramBinaryStore.class.getSimpleName();
+
+    // Bumped whenever the file layout, or the way programs are linked, changes.
+    private static final int VERSION = 1;
+
+    // Larger files are taken for garbage rather than read.
+    private static final int MAX_BINARY_SIZE = 4 * 1024 * 1024;
+
+    private final File mDirectory;
+
+    ProgramBinaryStore(File directory) {
+        mDirectory = directory;
+    }
+
+    /**
+     * @return null if there is none, or it was written by another driver.
+     */
+    Binary load(String key, String driver) {
+        final File file = getFile(key);
+        if (!file.isFile()) {
+            return null;
+        }
+
+        try (DataInputStream in = new DataInputStream(new FileInputStream(file))) {
+            if (in.readInt() != VERSION || !driver.equals(in.readUTF())) {
+                return null;
+            }
+            final int format = in.readInt();
+            final int length = in.readInt();
+            if (length <= 0 || length > MAX_BINARY_SIZE) {
+                throw new IOException("Invalid length " + length);
+            }
+            final byte[] data = new byte[length];
+            in.readFully(data);
+            return new Binary(format, data);
+        } catch (IOException e) {
+            Log.w(TAG, "load(): " + file + ": " + e);
+            delete(key);
+            return null;
+        }
+    }
+
+    void save(String key, String driver, Binary binary) {
+        if (!mDirectory.isDirectory() && !mDirectory.mkdirs()) {
+            Log.w(TAG, "save(): could not create " + mDirectory);
+            return;
+        }
+
+        // Write aside and rename, so a crash never leaves half a file behind.
+        final File file = getFile(key);
+        final File temp = new File(file.getPath() + ".tmp");
+        try (DataOutputStream out = new DataOutputStream(new FileOutputStream(temp))) {
+            out.writeInt(VERSION);
+            out.writeUTF(driver);
+            out.writeInt(binary.format);
+            out.writeInt(binary.data.length);
+            out.write(binary.data);
+        } catch (IOException e) {
+            Log.w(TAG, "save(): " + e);
+            temp.delete();
+            return;
+        }
+        if (!temp.renameTo(file)) {
+            Log.w(TAG, "save(): could not write " + file);
+            temp.delete();
+        }
+    }
+
+    void delete(String key) {
+        getFile(key).delete();
+    }
+
+    private File getFile(String key) {
+        return new File(mDirectory, key + ".bin");
+    }
+
+    /**
+     * A program as returned by {@code glGetProgramBinary}.
+     */
+    static final class Binary {
+
+        final int format;
+
+        final byte[] data;
+
+        Binary(int format, byte[] data) {
+            this.format = format;
+            this.data = data;
+        }
+    }
+}
@@ -0,0 +1,309 @@
+package com.vng.videofilter.gles;
+
+import android.content.Context;
+import android.opengl.EGL14;
+import android.opengl.EGLContext;
+import android.opengl.GLES20;
+import android.opengl.GLES30;
+import android.os.Build;
+import android.os.SystemClock;
+import android.util.Log;
+
+import java.io.File;
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Copyright (C) 2017, VNG Corporation.
+ * <p>
+ * Linked GL programs, shared by everything in the process, so that a program isn't compiled
+ * from source again on every job start; some drivers take 50-200 ms to do that. Programs are
+ * keyed by a hash of their shader sources, #defines included.
+ * <p>
+ * A program is reused by every context in the share group it was linked in, and kept until
+ * the last of those contexts is destroyed: there are only a handful of distinct programs.
+ * On GLES 3 contexts the linked binaries are also kept, in memory and, after
+ * {@link #init}, on disk, for the contexts of later share groups and later processes to
+ * load instead of compiling. A binary the driver rejects, e.g. after it was updated, is
+ * dropped and the program compiled from source again.
+ * <p>
+ * Share groups are known from {@link EglCore}, which reports the contexts it creates;
+ * any other context is taken for a group of its own.
+ *
+ * @author namnt4
+ * @since 18/10/2026
+ */
+public final class ProgramCache {
+
+    private static final String TAG = ProgramCache.class.getSimpleName();
+
+    private static final String DIR_NAME = "program_binaries";
+
+    private static final ProgramCache sDefault = new ProgramCache();
+
+    private final Map<EGLContext, ShareGroup> mShareGroups = new HashMap<>();
+
+    // Binaries by program key; only ever written by the one driver of the process.
+    private final Map<String, ProgramBinaryStore.Binary> mBinaries = new HashMap<>();
+
+    private ProgramBinaryStore mStore;
+
+    private String mDriver;
+
+    private ProgramCache() {
+    }
+
+    public static ProgramCache getDefault() {
+        return sDefault;
+    }
+
+    /**
+     * Keeps program binaries in the cache directory of the app from now on. Does no disk
+     * I/O itself.
+     */
+    public static void init(Context context) {
+        sDefault.setDirectory(new File(context.getCacheDir(), DIR_NAME));
+    }
+
+    /**
+     * @param directory Where program binaries are kept, or null to keep them in memory only.
+     */
+    public synchronized void setDirectory(File directory) {
+        mStore = directory != null ? new ProgramBinaryStore(directory) : null;
+    }
+
+    /**
+     * Called by {@link EglCore} when it creates a context.
+     *
+     * @param sharedContext The context it shares objects with, or null.
+     */
+    synchronized void onContextCreated(EGLContext context, EGLContext sharedContext) {
+        final ShareGroup group = sharedContext != null && !sharedContext.equals(EGL14.EGL_NO_CONTEXT)
+                ? getShareGroup(sharedContext)
+                : new ShareGroup();
+        group.contexts.add(context);
+        mShareGroups.put(context, group);
+    }
+
+    /**
+     * Called by {@link EglCore} before it destroys a context. The programs of its share
+     * group go with the last context of the group.
+     */
+    synchronized void onContextDestroyed(EGLContext context) {
+        final ShareGroup group = mShareGroups.remove(context);
+        if (group != null) {
+            group.contexts.remove(context);
+            if (group.contexts.isEmpty()) {
+                Log.d(TAG, "share group gone with " + group.programs.size() + " programs");
+            }
+        }
+    }
+
+    /**
+     * Gets the program for the shaders in the current context, linking it if the share
+     * group has none yet.
+     *
+     * @return A handle to the program, or 0 on failure.
+     */
+    public int acquire(String vertexSource, String fragmentSource) {
+        final String key = getKey(vertexSource, fragmentSource);
+        final EGLContext context = EGL14.eglGetCurrentContext();
+        synchronized (this) {
+            final Integer program = getShareGroup(context).programs.get(key);
+            if (program != null) {
+                return program;
+            }
+        }
+
+        // Not under the lock: contexts of other share groups can link at the same time.
+        final long startMs = SystemClock.elapsedRealtime();
+        final int program = link(key, vertexSource, fragmentSource);
+        if (program == 0) {
+            return 0;
+        }
+        Log.d(TAG, "linked program " + program + " in " + (SystemClock.elapsedRealtime() - startMs) + " ms");
+
+        synchronized (this) {
+            final Map<String, Integer> programs = getShareGroup(context).programs;
+            final Integer linked = programs.get(key);
+            if (linked != null) {
+                // Another context of the group got there first.
+                GLES20.glDeleteProgram(program);
+                return linked;
+            }
+            programs.put(key, program);
+            return program;
+        }
+    }
+
+    /**
+     * Gives back a program from {@link #acquire}. It stays linked for the next user in the
+     * share group; anything else is deleted.
+     */
+    public synchronized void release(int program) {
+        final ShareGroup group = mShareGroups.get(EGL14.eglGetCurrentContext());
+        if (group == null || !group.programs.containsValue(program)) {
+            GLES20.glDeleteProgram(program);
+        }
+    }
+
+    private ShareGroup getShareGroup(EGLContext context) {
+        ShareGroup group = mShareGroups.get(context);
+        if (group == null) {
+            group = new ShareGroup();
+            group.contexts.add(context);
+            mShareGroups.put(context, group);
+        }
+        return group;
+    }
+
+    private int link(String key, String vertexSource, String fragmentSource) {
+        final String driver = getDriver();
+        if (driver == null) {
+            return GlUtil.createProgram(vertexSource, fragmentSource);
+        }
+
+        final ProgramBinaryStore.Binary binary = loadBinary(key, driver);
+        if (binary != null) {
+            final int program = GLES20.glCreateProgram();
+            final ByteBuffer data = ByteBuffer.allocateDirect(binary.data.length);
+            data.put(binary.data).flip();
+            clearErrors();
+            GLES30.glProgramBinary(program, binary.format, data, binary.data.length);
+            // An unknown format is an error as well as a failed link. Only the link status
+            // decides, and the error isn't left for the next check to find.
+            clearErrors();
+            if (isLinked(program)) {
+                return program;
+            }
+            Log.w(TAG, "link(): binary of " + key + " rejected, compiling it");
+            GLES20.glDeleteProgram(program);
+            forgetBinary(key);
+        }
+
+        final int program = GlUtil.createProgram(vertexSource, fragmentSource);
+        if (program != 0) {
+            saveBinary(key, driver, program);
+        }
+        return program;
+    }
+
+    private synchronized ProgramBinaryStore.Binary loadBinary(String key, String driver) {
+        ProgramBinaryStore.Binary binary = mBinaries.get(key);
+        if (binary == null && mStore != null) {
+            binary = mStore.load(key, driver);
+            if (binary != null) {
+                mBinaries.put(key, binary);
+            }
+        }
+        return binary;
+    }
+
+    private synchronized void forgetBinary(String key) {
+        mBinaries.remove(key);
+        if (mStore != null) {
+            mStore.delete(key);
+        }
+    }
+
+    private void saveBinary(String key, String driver, int program) {
+        final int[] values = new int[1];
+        GLES20.glGetProgramiv(program, GLES30.GL_PROGRAM_BINARY_LENGTH, values, 0);
+        if (values[0] <= 0) {
+            return;
+        }
+
+        final ByteBuffer data = ByteBuffer.allocateDirect(values[0]);
+        final int[] length = new int[1];
+        final int[] format = new int[1];
+        clearErrors();
+        GLES30.glGetProgramBinary(program, values[0], length, 0, format, 0, data);
+        if (GLES20.glGetError() != GLES20.GL_NO_ERROR || length[0] <= 0) {
+            return;
+        }
+
+        final byte[] bytes = new byte[length[0]];
+        data.get(bytes);
+        final ProgramBinaryStore.Binary binary = new ProgramBinaryStore.Binary(format[0], bytes);
+        synchronized (this) {
+            mBinaries.put(key, binary);
+            if (mStore != null) {
+                mStore.save(key, driver, binary);
+            }
+        }
+    }
+
+    /**
+     * Identifies the driver of the current context, if it can hand out program binaries.
+     *
+     * @return null if it can't.
+     */
+    private synchronized String getDriver() {
+        if (!GlUtil.isGles3()) {
+            return null;
+        }
+        final int[] formats = new int[1];
+        GLES20.glGetIntegerv(GLES30.GL_NUM_PROGRAM_BINARY_FORMATS, formats, 0);
+        if (formats[0] <= 0) {
+            return null;
+        }
+
+        if (mDriver == null) {
+            mDriver = Build.FINGERPRINT + '|' + GLES20.glGetString(GLES20.GL_VENDOR) + '|'
+                    + GLES20.glGetString(GLES20.GL_RENDERER) + '|' + GLES20.glGetString(GLES20.GL_VERSION);
+        }
+        return mDriver;
+    }
+
+    /**
+     * Reads out the pending errors, which may be several, so that the next glGetError only
+     * reports the calls that follow.
+     */
+    private static void clearErrors() {
+        while (GLES20.glGetError() != GLES20.GL_NO_ERROR) {
+            // Discarded.
+        }
+    }
+
+    private static boolean isLinked(int program) {
+        final int[] linkStatus = new int[1];
+        GLES20.glGetProgramiv(program, GLES20.GL_LINK_STATUS, linkStatus, 0);
+        return linkStatus[0] == GLES20.GL_TRUE;
+    }
+
+    /**
+     * Hex SHA-1 of the sources, which also names the file of the binary.
+     */
+    static String getKey(String vertexSource, String fragmentSource) {
+        try {
+            final MessageDigest digest = MessageDigest.getInstance("SHA-1");
+            final Charset utf8 = Charset.forName("UTF-8");
+            digest.update(vertexSource.getBytes(utf8));
+            // Keeps "ab" + "c" apart from "a" + "bc".
+            digest.update((byte) 0);
+            digest.update(fragmentSource.getBytes(utf8));
+
+            final StringBuilder key = new StringBuilder();
+            for (byte b : digest.digest()) {
+                key.append(Character.forDigit((b >> 4) & 0xf, 16)).append(Character.forDigit(b & 0xf, 16));
+            }
+            return key.toString();
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static final class ShareGroup {
+
+        final Set<EGLContext> contexts = new HashSet<>();
+
+        // Program handles by key.
+        final Map<String, Integer> programs = new HashMap<>();
+    }
+}
@@ -174,9 +174,7 @@ public class Sprite2d {
         // Compute model/view/projection matrix.
         Matrix.multiplyMM(mScratchMatrix, 0, projectionMatrix, 0, getModelViewMatrix(), 0);
 
-        program.draw(mScratchMatrix, mColor, mDrawable.getVertexArray(), 0,
-                mDrawable.getVertexCount(), mDrawable.getCoordsPerVertex(),
-                mDrawable.getVertexStride());
+        program.draw(mScratchMatrix, mColor, mDrawable);
     }
 
     /**
@@ -186,10 +184,7 @@ public class Sprite2d {
         // Compute model/view/projection matrix.
         Matrix.multiplyMM(mScratchMatrix, 0, projectionMatrix, 0, getModelViewMatrix(), 0);
 
-        program.draw(mScratchMatrix, mDrawable.getVertexArray(), 0,
-                mDrawable.getVertexCount(), mDrawable.getCoordsPerVertex(),
-                mDrawable.getVertexStride(), GlUtil.IDENTITY_MATRIX, mDrawable.getTexCoordArray(),
-                mTextureId, mDrawable.getTexCoordStride());
+        program.draw(mScratchMatrix, mDrawable, GlUtil.IDENTITY_MATRIX, mTextureId);
     }
 
     @Override
@@ -29,7 +29,7 @@ public class Texture2dProgram {
     private static final String TAG = GlUtil.TAG;
 
     public enum ProgramType {
-        TEXTURE_2D, TEXTURE_EXT, TEXTURE_EXT_BW, TEXTURE_EXT_FILT
+        TEXTURE_2D, TEXTURE_EXT, TEXTURE_EXT_BW, TEXTURE_EXT_FILT, TEXTURE_EXT_WATERMARK
     }
 
     // Simple vertex shader, used for all programs.
@@ -44,6 +44,27 @@ public class Texture2dProgram {
             "    vTextureCoord = (uTexMatrix * aTextureCoord).xy;\n" +
             "}\n";
 
+    // Vertex shader for TEXTURE_EXT_WATERMARK. Also maps the position into the watermark
+    // rectangle, given in viewport coordinates from (0,0) at the bottom left to (1,1), so
+    // that the watermark is sampled at (0,0) at its top left as the bitmap is laid out, and
+    // turns it counterclockwise by the rotation the frames are played with.
+    private static final String VERTEX_SHADER_WATERMARK =
+            "uniform mat4 uMVPMatrix;\n" +
+            "uniform mat4 uTexMatrix;\n" +
+            "uniform vec4 uWatermarkRect;\n" +
+            "uniform mat2 uWatermarkRotation;\n" +
+            "attribute vec4 aPosition;\n" +
+            "attribute vec4 aTextureCoord;\n" +
+            "varying vec2 vTextureCoord;\n" +
+            "varying vec2 vWatermarkCoord;\n" +
+            "void main() {\n" +
+            "    gl_Position = uMVPMatrix * aPosition;\n" +
+            "    vTextureCoord = (uTexMatrix * aTextureCoord).xy;\n" +
+            "    vec2 coord = (gl_Position.xy * 0.5 + 0.5 - uWatermarkRect.xy) / uWatermarkRect.zw;\n" +
+            "    coord = uWatermarkRotation * (coord - 0.5) + 0.5;\n" +
+            "    vWatermarkCoord = vec2(coord.x, 1.0 - coord.y);\n" +
+            "}\n";
+
     // Simple fragment shader for use with "normal" 2D textures.
     private static final String FRAGMENT_SHADER_2D =
             "precision mediump float;\n" +
@@ -76,6 +97,27 @@ public class Texture2dProgram {
             "    gl_FragColor = vec4(color, color, color, 1.0);\n" +
             "}\n";
 
+    // Fragment shader that draws the video frame with the watermark on top in one pass,
+    // instead of a second draw with blending. The watermark is premultiplied, and blended as
+    // glBlendFunc(GL_ONE, GL_ONE_MINUS_SRC_ALPHA) would, scaled by the opacity. There is no
+    // branch: outside the rectangle the watermark is sampled anyway and weighted by 0.
+    // WatermarkBlend does the same math on the CPU.
+    private static final String FRAGMENT_SHADER_EXT_WATERMARK =
+            "#extension GL_OES_EGL_image_external : require\n" +
+            "precision mediump float;\n" +
+            "varying vec2 vTextureCoord;\n" +
+            "varying vec2 vWatermarkCoord;\n" +
+            "uniform samplerExternalOES sTexture;\n" +
+            "uniform sampler2D sWatermark;\n" +
+            "uniform float uWatermarkOpacity;\n" +
+            "void main() {\n" +
+            "    vec4 frame = texture2D(sTexture, vTextureCoord);\n" +
+            "    vec4 mark = texture2D(sWatermark, vWatermarkCoord);\n" +
+            "    vec2 inside = step(0.0, vWatermarkCoord) * step(vWatermarkCoord, vec2(1.0));\n" +
+            "    float weight = inside.x * inside.y * uWatermarkOpacity;\n" +
+            "    gl_FragColor = mark * weight + frame * (1.0 - mark.a * weight);\n" +
+            "}\n";
+
     // Fragment shader with a convolution filter.  The upper-left half will be drawn normally,
     // the lower-right half will have the filter applied, and a thin red line will be drawn
     // at the border.
@@ -122,6 +164,10 @@ public class Texture2dProgram {
     private int muKernelLoc;
     private int muTexOffsetLoc;
     private int muColorAdjustLoc;
+    private int muWatermarkRectLoc;
+    private int muWatermarkOpacityLoc;
+    private int muWatermarkRotationLoc;
+    private int msWatermarkLoc;
     private int maPositionLoc;
     private int maTextureCoordLoc;
 
@@ -131,6 +177,10 @@ public class Texture2dProgram {
     private float[] mTexOffset;
     private float mColorAdjust;
 
+    private int mWatermarkTextureId;
+    private final float[] mWatermarkRect = new float[4];
+    private final float[] mWatermarkRotation = {1f, 0f, 0f, 1f};
+    private float mWatermarkOpacity = 1f;
 
     /**
      * Prepares the program in the current EGL context.
@@ -141,19 +191,24 @@ public class Texture2dProgram {
         switch (programType) {
             case TEXTURE_2D:
                 mTextureTarget = GLES20.GL_TEXTURE_2D;
-                mProgramHandle = GlUtil.createProgram(VERTEX_SHADER, FRAGMENT_SHADER_2D);
+                mProgramHandle = ProgramCache.getDefault().acquire(VERTEX_SHADER, FRAGMENT_SHADER_2D);
                 break;
             case TEXTURE_EXT:
                 mTextureTarget = GLES11Ext.GL_TEXTURE_EXTERNAL_OES;
-                mProgramHandle = GlUtil.createProgram(VERTEX_SHADER, FRAGMENT_SHADER_EXT);
+                mProgramHandle = ProgramCache.getDefault().acquire(VERTEX_SHADER, FRAGMENT_SHADER_EXT);
                 break;
             case TEXTURE_EXT_BW:
                 mTextureTarget = GLES11Ext.GL_TEXTURE_EXTERNAL_OES;
-                mProgramHandle = GlUtil.createProgram(VERTEX_SHADER, FRAGMENT_SHADER_EXT_BW);
+                mProgramHandle = ProgramCache.getDefault().acquire(VERTEX_SHADER, FRAGMENT_SHADER_EXT_BW);
                 break;
             case TEXTURE_EXT_FILT:
                 mTextureTarget = GLES11Ext.GL_TEXTURE_EXTERNAL_OES;
-                mProgramHandle = GlUtil.createProgram(VERTEX_SHADER, FRAGMENT_SHADER_EXT_FILT);
+                mProgramHandle = ProgramCache.getDefault().acquire(VERTEX_SHADER, FRAGMENT_SHADER_EXT_FILT);
+                break;
+            case TEXTURE_EXT_WATERMARK:
+                mTextureTarget = GLES11Ext.GL_TEXTURE_EXTERNAL_OES;
+                mProgramHandle = ProgramCache.getDefault().acquire(VERTEX_SHADER_WATERMARK,
+                        FRAGMENT_SHADER_EXT_WATERMARK);
                 break;
             default:
                 throw new RuntimeException("Unhandled type " + programType);
@@ -190,17 +245,36 @@ public class Texture2dProgram {
             setKernel(new float[] {0f, 0f, 0f,  0f, 1f, 0f,  0f, 0f, 0f}, 0f);
             setTexSize(256, 256);
         }
+        muWatermarkRectLoc = GLES20.glGetUniformLocation(mProgramHandle, "uWatermarkRect");
+        if (muWatermarkRectLoc < 0) {
+            // no watermark in this one
+            muWatermarkRectLoc = -1;
+            muWatermarkOpacityLoc = -1;
+            muWatermarkRotationLoc = -1;
+            msWatermarkLoc = -1;
+        } else {
+            muWatermarkOpacityLoc = GLES20.glGetUniformLocation(mProgramHandle, "uWatermarkOpacity");
+            GlUtil.checkLocation(muWatermarkOpacityLoc, "uWatermarkOpacity");
+            muWatermarkRotationLoc = GLES20.glGetUniformLocation(mProgramHandle, "uWatermarkRotation");
+            GlUtil.checkLocation(muWatermarkRotationLoc, "uWatermarkRotation");
+            msWatermarkLoc = GLES20.glGetUniformLocation(mProgramHandle, "sWatermark");
+            GlUtil.checkLocation(msWatermarkLoc, "sWatermark");
+
+            // nothing shows until a rectangle is set
+            setWatermarkRect(0f, 0f, 0f, 0f);
+        }
     }
 
     /**
-     * Releases the program.
+     * Releases the program.  It stays linked in the {@link ProgramCache}, for the next
+     * program of the same type in the share group.
      * <p>
      * The appropriate EGL context must be current (i.e. the one that was used to create
      * the program).
      */
     public void release() {
-        Log.d(TAG, "deleting program " + mProgramHandle);
-        GLES20.glDeleteProgram(mProgramHandle);
+        Log.d(TAG, "releasing program " + mProgramHandle);
+        ProgramCache.getDefault().release(mProgramHandle);
         mProgramHandle = -1;
     }
 
@@ -269,6 +343,56 @@ public class Texture2dProgram {
         //Log.d(TAG, "filt size: " + width + "x" + height + ": " + Arrays.toString(mTexOffset));
     }
 
+    /**
+     * Sets the watermark drawn by {@link ProgramType#TEXTURE_EXT_WATERMARK}.
+     *
+     * @param textureId A GL_TEXTURE_2D texture with premultiplied alpha.
+     */
+    public void setWatermarkTexture(int textureId) {
+        mWatermarkTextureId = textureId;
+    }
+
+    /**
+     * Places the watermark, in viewport coordinates: (0,0) is the bottom left corner and
+     * (1,1) the top right one.  An empty rectangle hides it.
+     */
+    public void setWatermarkRect(float x, float y, float width, float height) {
+        if (width <= 0f || height <= 0f) {
+            // A zero size would divide by zero in the shader; move it off the viewport instead.
+            x = y = -2f;
+            width = height = 1f;
+        }
+        mWatermarkRect[0] = x;
+        mWatermarkRect[1] = y;
+        mWatermarkRect[2] = width;
+        mWatermarkRect[3] = height;
+    }
+
+    /**
+     * Turns the watermark within its rectangle for frames played rotated clockwise by that
+     * much, so that it shows upright; the rectangle is turned by the caller.
+     *
+     * @param degrees A multiple of 90.
+     */
+    public void setWatermarkRotation(int degrees) {
+        // Column major: takes a point of the rectangle to where it shows once played.
+        final double radians = Math.toRadians(degrees);
+        final float cos = (float) Math.rint(Math.cos(radians));
+        final float sin = (float) Math.rint(Math.sin(radians));
+        mWatermarkRotation[0] = cos;
+        mWatermarkRotation[1] = -sin;
+        mWatermarkRotation[2] = sin;
+        mWatermarkRotation[3] = cos;
+    }
+
+    /**
+     * Scales the alpha of the watermark, from 0 (hidden) to 1 (as is).  Cheap enough to
+     * change on every frame.
+     */
+    public void setWatermarkOpacity(float opacity) {
+        mWatermarkOpacity = Math.max(0f, Math.min(1f, opacity));
+    }
+
     /**
      * Issues the draw call.  Does the full setup on every call.
      *
@@ -287,23 +411,8 @@ public class Texture2dProgram {
     public void draw(float[] mvpMatrix, FloatBuffer vertexBuffer, int firstVertex,
                      int vertexCount, int coordsPerVertex, int vertexStride,
                      float[] texMatrix, FloatBuffer texBuffer, int textureId, int texStride) {
-        GlUtil.checkGlError("draw start");
-
-        // Select the program.
-        GLES20.glUseProgram(mProgramHandle);
-        GlUtil.checkGlError("glUseProgram");
-
-        // Set the texture.
-        GLES20.glActiveTexture(GLES20.GL_TEXTURE0);
-        GLES20.glBindTexture(mTextureTarget, textureId);
-
-        // Copy the model / view / projection matrix over.
-        GLES20.glUniformMatrix4fv(muMVPMatrixLoc, 1, false, mvpMatrix, 0);
-        GlUtil.checkGlError("glUniformMatrix4fv");
-
-        // Copy the texture transformation matrix over.
-        GLES20.glUniformMatrix4fv(muTexMatrixLoc, 1, false, texMatrix, 0);
-        GlUtil.checkGlError("glUniformMatrix4fv");
+        setUpDraw(mvpMatrix, texMatrix, textureId);
+        Drawable2d.unbindAttributes();
 
         // Enable the "aPosition" vertex attribute.
         GLES20.glEnableVertexAttribArray(maPositionLoc);
@@ -323,6 +432,57 @@ public class Texture2dProgram {
                 GLES20.GL_FLOAT, false, texStride, texBuffer);
             GlUtil.checkGlError("glVertexAttribPointer");
 
+        // Draw the rect.
+        GLES20.glDrawArrays(GLES20.GL_TRIANGLE_STRIP, firstVertex, vertexCount);
+        GlUtil.checkGlError("glDrawArrays");
+
+        // Done -- disable vertex array, texture, and program.
+        GLES20.glDisableVertexAttribArray(maPositionLoc);
+        GLES20.glDisableVertexAttribArray(maTextureCoordLoc);
+        finishDraw();
+    }
+
+    /**
+     * Issues the draw call with the geometry of the drawable, uploading it on the first
+     * call in this context.  Only the program and texture state is set up on every call.
+     *
+     * @param mvpMatrix The 4x4 projection matrix.
+     * @param texMatrix A 4x4 transformation matrix for texture coords.
+     */
+    public void draw(float[] mvpMatrix, Drawable2d drawable, float[] texMatrix, int textureId) {
+        drawable.upload();
+        setUpDraw(mvpMatrix, texMatrix, textureId);
+
+        drawable.bind();
+        GLES20.glDrawArrays(GLES20.GL_TRIANGLE_STRIP, 0, drawable.getVertexCount());
+        GlUtil.checkGlError("glDrawArrays");
+        drawable.unbind();
+
+        finishDraw();
+    }
+
+    /**
+     * Selects the program, binds the textures and sets the uniforms.
+     */
+    private void setUpDraw(float[] mvpMatrix, float[] texMatrix, int textureId) {
+        GlUtil.checkGlError("draw start");
+
+        // Select the program.
+        GLES20.glUseProgram(mProgramHandle);
+        GlUtil.checkGlError("glUseProgram");
+
+        // Set the texture.
+        GLES20.glActiveTexture(GLES20.GL_TEXTURE0);
+        GLES20.glBindTexture(mTextureTarget, textureId);
+
+        // Copy the model / view / projection matrix over.
+        GLES20.glUniformMatrix4fv(muMVPMatrixLoc, 1, false, mvpMatrix, 0);
+        GlUtil.checkGlError("glUniformMatrix4fv");
+
+        // Copy the texture transformation matrix over.
+        GLES20.glUniformMatrix4fv(muTexMatrixLoc, 1, false, texMatrix, 0);
+        GlUtil.checkGlError("glUniformMatrix4fv");
+
         // Populate the convolution kernel, if present.
         if (muKernelLoc >= 0) {
             GLES20.glUniform1fv(muKernelLoc, KERNEL_SIZE, mKernel, 0);
@@ -330,13 +490,26 @@ public class Texture2dProgram {
             GLES20.glUniform1f(muColorAdjustLoc, mColorAdjust);
         }
 
-        // Draw the rect.
-        GLES20.glDrawArrays(GLES20.GL_TRIANGLE_STRIP, firstVertex, vertexCount);
-        GlUtil.checkGlError("glDrawArrays");
+        // Bind the watermark to the second texture unit, if used.
+        if (muWatermarkRectLoc >= 0) {
+            GLES20.glActiveTexture(GLES20.GL_TEXTURE1);
+            GLES20.glBindTexture(GLES20.GL_TEXTURE_2D, mWatermarkTextureId);
+            GLES20.glUniform1i(msWatermarkLoc, 1);
+            GLES20.glUniform4fv(muWatermarkRectLoc, 1, mWatermarkRect, 0);
+            GLES20.glUniform1f(muWatermarkOpacityLoc, mWatermarkOpacity);
+            GLES20.glUniformMatrix2fv(muWatermarkRotationLoc, 1, false, mWatermarkRotation, 0);
+            GlUtil.checkGlError("watermark uniforms");
+        }
+    }
 
-        // Done -- disable vertex array, texture, and program.
-        GLES20.glDisableVertexAttribArray(maPositionLoc);
-        GLES20.glDisableVertexAttribArray(maTextureCoordLoc);
+    /**
+     * Unbinds the textures and the program.
+     */
+    private void finishDraw() {
+        if (muWatermarkRectLoc >= 0) {
+            GLES20.glBindTexture(GLES20.GL_TEXTURE_2D, 0);
+            GLES20.glActiveTexture(GLES20.GL_TEXTURE0);
+        }
         GLES20.glBindTexture(mTextureTarget, 0);
         GLES20.glUseProgram(0);
     }
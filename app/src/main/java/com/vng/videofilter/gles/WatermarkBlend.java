@@ -0,0 +1,89 @@
+package com.vng.videofilter.gles;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Copyright (C) 2017, VNG Corporation.
+ * <p>
+ * What the {@link Texture2dProgram.ProgramType#TEXTURE_EXT_WATERMARK} shader computes, on the
+ * CPU: each pixel is sampled at its center, mapped into the watermark rectangle the same
+ * way, and blended with the same float math, so frames can be checked against it without a
+ * GPU. The watermark is sampled at the nearest texel, which is what linear filtering gives
+ * too when the rectangle sits on whole pixels at 1:1 scale, as the generator places it.
+ *
+ * @author namnt4
+ * @since 18/10/2026
+ */
+public final class WatermarkBlend {
+
+    private WatermarkBlend() {
+    }
+
+    /**
+     * Draws a frame with the watermark on top.
+     *
+     * @param frame           RGBA pixels of the frame, row by row from the top.
+     * @param watermark       Premultiplied RGBA pixels of the watermark, row by row from the top.
+     * @param x               Rectangle of the watermark in viewport coordinates, with (0,0) at
+     *                        the bottom left of the frame and (1,1) at its top right, as given
+     *                        to {@link Texture2dProgram#setWatermarkRect}.
+     * @param rotationDegrees As given to {@link Texture2dProgram#setWatermarkRotation}.
+     * @param opacity         As given to {@link Texture2dProgram#setWatermarkOpacity}.
+     * @param out             Receives the RGBA pixels of the result; may be {@code frame}.
+     */
+    public static void compose(ByteBuffer frame, int width, int height,
+                               ByteBuffer watermark, int watermarkWidth, int watermarkHeight,
+                               float x, float y, float rectWidth, float rectHeight, int rotationDegrees,
+                               float opacity, ByteBuffer out) {
+        final float clampedOpacity = Math.max(0f, Math.min(1f, opacity));
+        final boolean empty = rectWidth <= 0f || rectHeight <= 0f;
+        final double radians = Math.toRadians(rotationDegrees);
+        final float cos = (float) Math.rint(Math.cos(radians));
+        final float sin = (float) Math.rint(Math.sin(radians));
+        for (int row = 0; row < height; row++) {
+            // Rows go down from the top, viewport coordinates up from the bottom.
+            final float rectY = ((height - row - 0.5f) / height - y) / rectHeight - 0.5f;
+            for (int column = 0; column < width; column++) {
+                final float rectX = ((column + 0.5f) / width - x) / rectWidth - 0.5f;
+                final float u = cos * rectX + sin * rectY + 0.5f;
+                final float v = 1f - (-sin * rectX + cos * rectY + 0.5f);
+                final int i = 4 * (row * width + column);
+                final boolean inside = !empty && u >= 0f && u <= 1f && v >= 0f && v <= 1f;
+                if (!inside || clampedOpacity == 0f) {
+                    copyPixel(frame, i, out);
+                    continue;
+                }
+
+                final int markColumn = Math.min((int) (u * watermarkWidth), watermarkWidth - 1);
+                final int markRow = Math.min((int) (v * watermarkHeight), watermarkHeight - 1);
+                final int j = 4 * (markRow * watermarkWidth + markColumn);
+                final float markAlpha = toFloat(watermark.get(j + 3)) * clampedOpacity;
+                for (int channel = 0; channel < 4; channel++) {
+                    out.put(i + channel, toByte(blend(toFloat(frame.get(i + channel)),
+                            toFloat(watermark.get(j + channel)) * clampedOpacity, markAlpha)));
+                }
+            }
+        }
+    }
+
+    /**
+     * One channel of a premultiplied color over another, all in [0, 1].
+     */
+    public static float blend(float frame, float mark, float markAlpha) {
+        return mark + frame * (1f - markAlpha);
+    }
+
+    private static void copyPixel(ByteBuffer frame, int i, ByteBuffer out) {
+        if (frame != out) {
+            out.putInt(i, frame.getInt(i));
+        }
+    }
+
+    private static float toFloat(byte value) {
+        return (value & 0xff) / 255f;
+    }
+
+    private static byte toByte(float value) {
+        return (byte) Math.round(Math.max(0f, Math.min(1f, value)) * 255f);
+    }
+}
@@ -0,0 +1,291 @@
+package com.vng.videofilter.mp4;
+
+import android.util.Log;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Copyright (C) 2017, VNG Corporation.
+ * <p>
+ * Tells the container of a video file from its content rather than its name. Reads the
+ * first {@value #HEADER_SIZE} bytes, for {@code ftyp} and its brands, and then only the
+ * headers of the other top level boxes, to check the file has a {@code moov} and isn't cut
+ * short, as a recording that was interrupted is.
+ * <p>
+ * Results are cached by path, and trusted while the size and modification time of the file
+ * stay the same. {@link #sniffAll} classifies many files on a small pool of threads, which
+ * share as many read buffers. The threads are daemons, and go with {@link #shutdown}.
+ *
+ * @author namnt4
+ * @since 18/10/2026
+ */
+public final class ContainerSniffer implements Closeable {
+
+    private static final String TAG = ContainerSniffer.class.getSimpleName();
+
+    public static final int TYPE_UNKNOWN = 0;
+    public static final int TYPE_MP4 = 1;
+    public static final int TYPE_QUICKTIME = 2;
+    public static final int TYPE_3GPP = 3;
+
+    static final int HEADER_SIZE = 4096;
+
+    // Top level boxes looked at past the header before giving up on finding moov.
+    private static final int MAX_TOP_LEVEL_BOXES = 64;
+
+    private static final int QUICKTIME_BRAND = Mp4Box.type("qt  ");
+
+    private static final String[] MP4_BRANDS = {
+            "isom", "iso2", "iso3", "iso4", "iso5", "iso6", "mp41", "mp42", "avc1", "dash", "msnv",
+            "M4V ", "M4VH", "M4VP", "MSNV", "f4v ", "mmp4"};
+
+    private static final String[] THREE_GPP_BRANDS = {"3gp4", "3gp5", "3gp6", "3gs6", "3g2a", "3g2b", "3g2c"};
+
+    // Boxes QuickTime files without ftyp may start with.
+    private static final int[] QUICKTIME_FIRST_BOXES = {
+            Mp4Box.MOOV, Mp4Box.MDAT, Mp4Box.FREE, Mp4Box.type("wide"), Mp4Box.type("skip"),
+            Mp4Box.type("pnot")};
+
+    private static ContainerSniffer sDefault;
+
+    private final ExecutorService mExecutor;
+
+    private final BlockingQueue<ByteBuffer> mBuffers;
+
+    private final ConcurrentHashMap<String, Entry> mCache = new ConcurrentHashMap<>();
+
+    /**
+     * @param threadCount How many files are read at once by {@link #sniffAll}.
+     */
+    public ContainerSniffer(int threadCount) {
+        mExecutor = Executors.newFixedThreadPool(threadCount, runnable -> {
+            final Thread thread = new Thread(runnable, "container_sniffer");
+            thread.setDaemon(true);
+            return thread;
+        });
+        // One for each worker and one for a caller sniffing on its own thread.
+        mBuffers = new ArrayBlockingQueue<>(threadCount + 1);
+        for (int i = 0; i <= threadCount; i++) {
+            mBuffers.add(ByteBuffer.allocate(HEADER_SIZE));
+        }
+    }
+
+    public static synchronized ContainerSniffer getDefault() {
+        if (sDefault == null || sDefault.mExecutor.isShutdown()) {
+            sDefault = new ContainerSniffer(Math.max(2, Math.min(4, Runtime.getRuntime().availableProcessors())));
+        }
+        return sDefault;
+    }
+
+    /**
+     * Stops the threads of {@link #sniffAll}, which can't be called afterwards. {@link #sniff}
+     * still works on the calling thread.
+     */
+    public void shutdown() {
+        mExecutor.shutdownNow();
+    }
+
+    @Override
+    public void close() {
+        shutdown();
+    }
+
+    /**
+     * Whether files of a type can be opened with {@code MediaExtractor}.
+     */
+    public static boolean isSupported(int type) {
+        return type != TYPE_UNKNOWN;
+    }
+
+    /**
+     * @return one of the TYPE_ constants, {@link #TYPE_UNKNOWN} if the file can't be read.
+     */
+    public int sniff(File file) throws InterruptedException {
+        final long size = file.length();
+        final long lastModified = file.lastModified();
+        final Entry cached = mCache.get(file.getPath());
+        if (cached != null && cached.size == size && cached.lastModified == lastModified) {
+            return cached.type;
+        }
+
+        final ByteBuffer buffer = mBuffers.take();
+        int type = TYPE_UNKNOWN;
+        try (FileChannel channel = new RandomAccessFile(file, "r").getChannel()) {
+            type = sniff(channel, buffer);
+        } catch (IOException e) {
+            Log.w(TAG, "sniff(): " + file + ": " + e);
+        } finally {
+            mBuffers.put(buffer);
+        }
+
+        mCache.put(file.getPath(), new Entry(size, lastModified, type));
+        return type;
+    }
+
+    /**
+     * Sniffs files in parallel.
+     *
+     * @return the type of each file, in order.
+     */
+    public int[] sniffAll(List<File> files) throws InterruptedException {
+        final List<Future<Integer>> futures = new ArrayList<>(files.size());
+        for (final File file : files) {
+            futures.add(mExecutor.submit(() -> sniff(file)));
+        }
+
+        final int[] types = new int[files.size()];
+        try {
+            for (int i = 0; i < types.length; i++) {
+                types[i] = futures.get(i).get();
+            }
+        } catch (ExecutionException e) {
+            throw new IllegalStateException(e.getCause());
+        } finally {
+            for (Future<Integer> future : futures) {
+                future.cancel(true);
+            }
+        }
+        return types;
+    }
+
+    /**
+     * Classifies what the channel holds.
+     *
+     * @param buffer At least {@value #HEADER_SIZE} bytes, overwritten.
+     */
+    static int sniff(FileChannel channel, ByteBuffer buffer) throws IOException {
+        final long fileSize = channel.size();
+        if (fileSize < 8) {
+            return TYPE_UNKNOWN;
+        }
+        buffer.clear();
+        buffer.limit((int) Math.min(HEADER_SIZE, fileSize));
+        Mp4Parser.readFully(channel, buffer, 0);
+        buffer.flip();
+
+        final Mp4Box first = readHeader(buffer, 0, fileSize);
+        if (first == null) {
+            return TYPE_UNKNOWN;
+        }
+        final int type;
+        if (first.type == Mp4Box.FTYP) {
+            type = classifyBrands(buffer, first);
+        } else if (contains(QUICKTIME_FIRST_BOXES, first.type)) {
+            type = TYPE_QUICKTIME;
+        } else {
+            return TYPE_UNKNOWN;
+        }
+        return type != TYPE_UNKNOWN && hasMovie(channel, buffer, first, fileSize) ? type : TYPE_UNKNOWN;
+    }
+
+    private static int classifyBrands(ByteBuffer buffer, Mp4Box ftyp) {
+        final int end = (int) Math.min(ftyp.getEnd(), buffer.limit());
+        if (end - buffer.position() < 8) {
+            return TYPE_UNKNOWN;
+        }
+
+        final int majorBrand = buffer.getInt();
+        // Minor version.
+        buffer.getInt();
+        int type = classifyBrand(majorBrand);
+        while (type == TYPE_UNKNOWN && buffer.position() + 4 <= end) {
+            type = classifyBrand(buffer.getInt());
+        }
+        return type;
+    }
+
+    private static int classifyBrand(int brand) {
+        if (brand == QUICKTIME_BRAND) {
+            return TYPE_QUICKTIME;
+        }
+        final String name = Mp4Box.typeToString(brand);
+        for (String mp4Brand : MP4_BRANDS) {
+            if (mp4Brand.equals(name)) {
+                return TYPE_MP4;
+            }
+        }
+        for (String threeGppBrand : THREE_GPP_BRANDS) {
+            if (threeGppBrand.equals(name)) {
+                return TYPE_3GPP;
+            }
+        }
+        return TYPE_UNKNOWN;
+    }
+
+    /**
+     * Walks the top level box headers: there must be a moov, and no box may claim to go past
+     * the end of the file.
+     */
+    private static boolean hasMovie(FileChannel channel, ByteBuffer buffer, Mp4Box first, long fileSize)
+            throws IOException {
+        Mp4Box box = first;
+        for (int i = 0; i < MAX_TOP_LEVEL_BOXES; i++) {
+            if (box.type == Mp4Box.MOOV) {
+                return true;
+            }
+            final long next = box.getEnd();
+            if (next + 8 > fileSize) {
+                return false;
+            }
+
+            buffer.clear();
+            buffer.limit((int) Math.min(16, fileSize - next));
+            Mp4Parser.readFully(channel, buffer, next);
+            buffer.flip();
+            box = readHeader(buffer, next, fileSize);
+            if (box == null) {
+                return false;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * @return null if the header is invalid, e.g. claims more bytes than the file has.
+     */
+    private static Mp4Box readHeader(ByteBuffer buffer, long offset, long fileSize) {
+        try {
+            return Mp4Box.readHeader(buffer, offset, fileSize);
+        } catch (IOException e) {
+            return null;
+        }
+    }
+
+    private static boolean contains(int[] types, int type) {
+        for (int candidate : types) {
+            if (candidate == type) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static final class Entry {
+
+        final long size;
+
+        final long lastModified;
+
+        final int type;
+
+        Entry(long size, long lastModified, int type) {
+            this.size = size;
+            this.lastModified = lastModified;
+            this.type = type;
+        }
+    }
+}
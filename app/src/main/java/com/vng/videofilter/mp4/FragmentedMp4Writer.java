@@ -0,0 +1,485 @@
+package com.vng.videofilter.mp4;
+
+import android.media.MediaFormat;
+import android.util.Log;
+
+import com.vng.videofilter.codec.MuxerPort;
+import com.vng.videofilter.codec.SampleInfo;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Copyright (C) 2017, VNG Corporation.
+ * <p>
+ * {@link MuxerPort} that writes fragmented MP4: {@code ftyp} and a sample-less {@code moov}
+ * on {@link #start()}, then a {@code moof} and {@code mdat} pair for every fragment. Samples
+ * are held in memory until their fragment is cut, at the first video sync sample once the
+ * fragment is long enough, and the fragment is then written in one go. Everything up to
+ * the end of the last fragment is a playable file, so the output can be uploaded or
+ * previewed while it's still being written; see {@link FragmentListener}.
+ * <p>
+ * All tracks use a microsecond timescale. Decode times are the presentation times of the
+ * fragment in order, so reordered frames get signed composition offsets. Not thread safe,
+ * see {@link com.vng.videofilter.codec.MuxerWrapper}.
+ *
+ * @author namnt4
+ * @since 18/10/2026
+ */
+public final class FragmentedMp4Writer implements MuxerPort {
+
+    private static final String TAG = FragmentedMp4Writer.class.getSimpleName();
+
+    public static final long DEFAULT_FRAGMENT_DURATION_US = 2_000_000L;
+
+    private static final int TIMESCALE = 1_000_000;
+
+    // Of the sample flags in trun: depends on no other sample, or is a non-sync sample.
+    private static final int SAMPLE_FLAGS_SYNC = 0x02000000;
+    private static final int SAMPLE_FLAGS_NON_SYNC = 0x01010000;
+
+    // Of tfhd: data offsets are relative to the moof.
+    private static final int TFHD_DEFAULT_BASE_IS_MOOF = 0x020000;
+
+    // Of trun: data offset, and duration, size, flags and composition offset per sample.
+    private static final int TRUN_FLAGS = 0x000001 | 0x000100 | 0x000200 | 0x000400 | 0x000800;
+
+    // Used for the last sample of a track when there is no other to tell its duration.
+    private static final long DEFAULT_SAMPLE_DURATION_US = 33_333L;
+
+    private final FileChannel mChannel;
+
+    private final boolean mOwnsChannel;
+
+    private final long mFragmentDurationUs;
+
+    private final List<Track> mTracks = new ArrayList<>();
+
+    private final Mp4BoxWriter mHeaderWriter = new Mp4BoxWriter(4096);
+
+    private int mOrientationDegrees;
+
+    private boolean mStarted;
+
+    private boolean mStopped;
+
+    private boolean mHasVideo;
+
+    private long mPosition;
+
+    private int mSequenceNumber;
+
+    private long mFragmentStartUs = -1;
+
+    private FragmentListener mListener;
+
+    /**
+     * Writes to a channel the caller keeps ownership of, from its current position.
+     *
+     * @param fragmentDurationUs How long a fragment is at least, unless the stream ends.
+     */
+    public FragmentedMp4Writer(FileChannel channel, long fragmentDurationUs) throws IOException {
+        this(channel, false, fragmentDurationUs);
+    }
+
+    private FragmentedMp4Writer(FileChannel channel, boolean ownsChannel, long fragmentDurationUs)
+            throws IOException {
+        if (fragmentDurationUs <= 0) {
+            throw new IllegalArgumentException("Invalid fragment duration " + fragmentDurationUs);
+        }
+        mChannel = channel;
+        mOwnsChannel = ownsChannel;
+        mFragmentDurationUs = fragmentDurationUs;
+        mPosition = channel.position();
+    }
+
+    /**
+     * Creates or truncates a file to write to.
+     */
+    public static FragmentedMp4Writer create(File file, long fragmentDurationUs) throws IOException {
+        final RandomAccessFile out = new RandomAccessFile(file, "rw");
+        try {
+            out.setLength(0);
+            return new FragmentedMp4Writer(out.getChannel(), true, fragmentDurationUs);
+        } catch (IOException | RuntimeException e) {
+            out.close();
+            throw e;
+        }
+    }
+
+    public void setFragmentListener(FragmentListener listener) {
+        mListener = listener;
+    }
+
+    /**
+     * @throws IllegalArgumentException if the format isn't one {@link Mp4TrackFormat} describes;
+     *                                  check with {@link Mp4TrackFormat#isSupported} first.
+     */
+    @Override
+    public int addTrack(MediaFormat format) {
+        return addTrack(Mp4TrackFormat.fromMediaFormat(format));
+    }
+
+    public int addTrack(Mp4TrackFormat format) {
+        if (mStarted) {
+            throw new IllegalStateException("Writer already started");
+        }
+
+        mTracks.add(new Track(mTracks.size() + 1, format));
+        mHasVideo |= format.isVideo();
+        return mTracks.size() - 1;
+    }
+
+    @Override
+    public void setOrientationHint(int degrees) {
+        if (degrees % 90 != 0) {
+            throw new IllegalArgumentException("Unsupported orientation " + degrees);
+        }
+        mOrientationDegrees = (degrees % 360 + 360) % 360;
+    }
+
+    @Override
+    public void start() {
+        if (mStarted) {
+            throw new IllegalStateException("Writer already started");
+        }
+        if (mTracks.isEmpty()) {
+            throw new IllegalStateException("No track added");
+        }
+
+        mHeaderWriter.clear();
+        writeFileType(mHeaderWriter);
+        writeMovie(mHeaderWriter);
+        write(mHeaderWriter.toByteBuffer());
+        mStarted = true;
+    }
+
+    @Override
+    public void writeSampleData(int trackIndex, ByteBuffer buffer, SampleInfo info) {
+        if (!mStarted || mStopped) {
+            throw new IllegalStateException("Writer not started");
+        }
+        if (info.size <= 0 || info.isCodecConfig()) {
+            return;
+        }
+
+        final Track track = mTracks.get(trackIndex);
+        if (mFragmentStartUs < 0) {
+            mFragmentStartUs = info.presentationTimeUs;
+        } else if (info.presentationTimeUs - mFragmentStartUs >= mFragmentDurationUs
+                && (!mHasVideo || track.format.isVideo() && info.isKeyFrame())) {
+            writeFragment();
+            mFragmentStartUs = info.presentationTimeUs;
+        }
+
+        final ByteBuffer sample = buffer.duplicate();
+        sample.limit(info.offset + info.size).position(info.offset);
+        track.add(sample, info.presentationTimeUs, info.isKeyFrame());
+    }
+
+    /**
+     * Writes the samples held back as the last fragment.
+     */
+    @Override
+    public void stop() {
+        if (!mStarted) {
+            throw new IllegalStateException("Writer not started");
+        }
+        if (mStopped) {
+            return;
+        }
+
+        writeFragment();
+        mStopped = true;
+    }
+
+    @Override
+    public void release() {
+        mTracks.clear();
+        if (mOwnsChannel) {
+            try {
+                mChannel.close();
+            } catch (IOException e) {
+                Log.w(TAG, "release(): " + e);
+            }
+        }
+    }
+
+    /**
+     * Number of fragments written so far.
+     */
+    public int getFragmentCount() {
+        return mSequenceNumber;
+    }
+
+    /**
+     * Where the last complete box ends; the file is readable up to there.
+     */
+    public long getWrittenBytes() {
+        return mPosition;
+    }
+
+    private void writeFileType(Mp4BoxWriter writer) {
+        writer.start(Mp4Box.FTYP)
+                .u32(Mp4Box.type("iso5")).u32(512)
+                .u32(Mp4Box.type("iso5")).u32(Mp4Box.type("iso6")).u32(Mp4Box.type("mp41"))
+                .end();
+    }
+
+    private void writeMovie(Mp4BoxWriter writer) {
+        writer.start(Mp4Box.MOOV);
+        writer.startFull(Mp4Box.MVHD, 0, 0)
+                // Creation and modification times, timescale; the duration is in the fragments.
+                .u32(0).u32(0).u32(TIMESCALE).u32(0)
+                // Rate, volume, reserved.
+                .u32(0x00010000).u16(0x0100).zeros(10);
+        writeMatrix(writer, 0);
+        writer.zeros(24)
+                .u32(mTracks.size() + 1)
+                .end();
+
+        for (Track track : mTracks) {
+            writeTrack(writer, track);
+        }
+
+        writer.start(Mp4Box.MVEX);
+        for (Track track : mTracks) {
+            writer.startFull(Mp4Box.TREX, 0, 0)
+                    // Sample description index, then the defaults trun overrides.
+                    .u32(track.id).u32(1).u32(0).u32(0).u32(0)
+                    .end();
+        }
+        writer.end().end();
+    }
+
+    private void writeTrack(Mp4BoxWriter writer, Track track) {
+        final Mp4TrackFormat format = track.format;
+        writer.start(Mp4Box.TRAK);
+        // Enabled and in the movie.
+        writer.startFull(Mp4Box.TKHD, 0, 3)
+                .u32(0).u32(0).u32(track.id).u32(0).u32(0)
+                // Reserved, layer, alternate group, volume, reserved.
+                .zeros(8).u16(0).u16(0).u16(format.isVideo() ? 0 : 0x0100).u16(0);
+        writeMatrix(writer, format.isVideo() ? mOrientationDegrees : 0);
+        writer.u32((long) format.width << 16).u32((long) format.height << 16)
+                .end();
+
+        writer.start(Mp4Box.MDIA);
+        writer.startFull(Mp4Box.MDHD, 0, 0)
+                // Creation and modification times, timescale, duration, "und", pre-defined.
+                .u32(0).u32(0).u32(TIMESCALE).u32(0).u16(0x55c4).u16(0)
+                .end();
+        writer.startFull(Mp4Box.HDLR, 0, 0)
+                .u32(0).u32(Mp4Box.type(format.handlerType)).zeros(12)
+                .bytes((format.isVideo() ? "VideoHandler\0" : "SoundHandler\0").getBytes(StandardCharsets.US_ASCII))
+                .end();
+
+        writer.start(Mp4Box.MINF);
+        if (format.isVideo()) {
+            // Graphics mode and color.
+            writer.startFull(Mp4Box.type("vmhd"), 0, 1).zeros(8).end();
+        } else {
+            // Balance.
+            writer.startFull(Mp4Box.type("smhd"), 0, 0).zeros(4).end();
+        }
+        writer.start(Mp4Box.type("dinf"))
+                .startFull(Mp4Box.type("dref"), 0, 0).u32(1)
+                // The data is in this file.
+                .startFull(Mp4Box.type("url "), 0, 1).end()
+                .end()
+                .end();
+
+        writer.start(Mp4Box.STBL);
+        writer.startFull(Mp4Box.STSD, 0, 0).u32(1).bytes(format.getSampleEntry()).end();
+        // The samples are all in the fragments.
+        writer.startFull(Mp4Box.type("stts"), 0, 0).u32(0).end();
+        writer.startFull(Mp4Box.type("stsc"), 0, 0).u32(0).end();
+        writer.startFull(Mp4Box.STSZ, 0, 0).u32(0).u32(0).end();
+        writer.startFull(Mp4Box.STCO, 0, 0).u32(0).end();
+        // stbl, minf, mdia, trak.
+        writer.end().end().end().end();
+    }
+
+    private static void writeMatrix(Mp4BoxWriter writer, int degrees) {
+        final int cos;
+        final int sin;
+        switch (degrees) {
+            case 90:
+                cos = 0;
+                sin = 1;
+                break;
+            case 180:
+                cos = -1;
+                sin = 0;
+                break;
+            case 270:
+                cos = 0;
+                sin = -1;
+                break;
+            default:
+                cos = 1;
+                sin = 0;
+                break;
+        }
+        writer.u32(cos << 16).u32(sin << 16).u32(0)
+                .u32(-sin << 16).u32(cos << 16).u32(0)
+                .u32(0).u32(0).u32(0x40000000);
+    }
+
+    private void writeFragment() {
+        final List<Track> tracks = new ArrayList<>();
+        long dataSize = 0;
+        for (Track track : mTracks) {
+            if (track.sampleCount > 0) {
+                tracks.add(track);
+                dataSize += track.data.position();
+            }
+        }
+        if (tracks.isEmpty()) {
+            return;
+        }
+
+        final Mp4BoxWriter writer = mHeaderWriter;
+        writer.clear();
+        writer.start(Mp4Box.MOOF);
+        writer.startFull(Mp4Box.MFHD, 0, 0).u32(++mSequenceNumber).end();
+
+        final int[] dataOffsetPositions = new int[tracks.size()];
+        for (int i = 0; i < tracks.size(); i++) {
+            final Track track = tracks.get(i);
+            final long[] decodeTimesUs = Arrays.copyOf(track.presentationTimesUs, track.sampleCount);
+            Arrays.sort(decodeTimesUs);
+
+            writer.start(Mp4Box.TRAF);
+            writer.startFull(Mp4Box.TFHD, 0, TFHD_DEFAULT_BASE_IS_MOOF).u32(track.id).end();
+            writer.startFull(Mp4Box.TFDT, 1, 0).u64(Math.max(0, decodeTimesUs[0])).end();
+            writer.startFull(Mp4Box.TRUN, 1, TRUN_FLAGS).u32(track.sampleCount);
+            dataOffsetPositions[i] = writer.position();
+            writer.u32(0);
+            for (int s = 0; s < track.sampleCount; s++) {
+                final long durationUs;
+                if (s + 1 < track.sampleCount) {
+                    durationUs = decodeTimesUs[s + 1] - decodeTimesUs[s];
+                } else {
+                    durationUs = track.lastDurationUs;
+                }
+                writer.u32(durationUs)
+                        .u32(track.sizes[s])
+                        .u32(track.sync[s] ? SAMPLE_FLAGS_SYNC : SAMPLE_FLAGS_NON_SYNC)
+                        .u32(track.presentationTimesUs[s] - decodeTimesUs[s]);
+            }
+            if (track.sampleCount > 1) {
+                track.lastDurationUs = decodeTimesUs[track.sampleCount - 1] - decodeTimesUs[track.sampleCount - 2];
+            }
+            writer.end().end();
+        }
+        writer.end();
+
+        final long mdatSize = 8 + dataSize;
+        if (mdatSize > 0xffffffffL) {
+            throw new IllegalStateException("Fragment too large: " + mdatSize);
+        }
+
+        // Offsets from the start of the moof to the samples of each track in the mdat.
+        long dataOffset = writer.position() + 8;
+        for (int i = 0; i < tracks.size(); i++) {
+            writer.putU32(dataOffsetPositions[i], dataOffset);
+            dataOffset += tracks.get(i).data.position();
+        }
+        writer.u32(mdatSize).u32(Mp4Box.MDAT);
+
+        write(writer.toByteBuffer());
+        for (Track track : tracks) {
+            write(track.data.toByteBuffer());
+            track.clear();
+        }
+
+        if (mListener != null) {
+            mListener.onFragmentWritten(mSequenceNumber, mPosition);
+        }
+    }
+
+    private void write(ByteBuffer buffer) {
+        try {
+            while (buffer.hasRemaining()) {
+                mPosition += mChannel.write(buffer, mPosition);
+            }
+        } catch (IOException e) {
+            throw new IllegalStateException("Failed to write fragment", e);
+        }
+    }
+
+    private static final class Track {
+
+        final int id;
+
+        final Mp4TrackFormat format;
+
+        // Samples of the pending fragment, in decode order.
+        final Mp4BoxWriter data = new Mp4BoxWriter(64 * 1024);
+        long[] presentationTimesUs = new long[64];
+        int[] sizes = new int[64];
+        boolean[] sync = new boolean[64];
+        int sampleCount;
+
+        long lastDurationUs;
+
+        Track(int id, Mp4TrackFormat format) {
+            this.id = id;
+            this.format = format;
+            lastDurationUs = format.isVideo() || format.sampleRate <= 0
+                    ? DEFAULT_SAMPLE_DURATION_US
+                    // An AAC frame.
+                    : 1024L * 1000000L / format.sampleRate;
+        }
+
+        void add(ByteBuffer sample, long presentationTimeUs, boolean keyFrame) {
+            if (sampleCount == sizes.length) {
+                presentationTimesUs = Arrays.copyOf(presentationTimesUs, sampleCount * 2);
+                sizes = Arrays.copyOf(sizes, sampleCount * 2);
+                sync = Arrays.copyOf(sync, sampleCount * 2);
+            }
+
+            final int start = data.position();
+            if (format.hasNalUnits() && Mp4TrackFormat.isAnnexB(sample)) {
+                // MP4 wants each NAL unit behind its length instead of a start code.
+                for (ByteBuffer unit : Mp4TrackFormat.splitAnnexB(sample)) {
+                    data.u32(unit.remaining()).bytes(unit);
+                }
+            } else {
+                data.bytes(sample);
+            }
+
+            presentationTimesUs[sampleCount] = presentationTimeUs;
+            sizes[sampleCount] = data.position() - start;
+            // Audio frames are all sync samples.
+            sync[sampleCount] = keyFrame || !format.isVideo();
+            sampleCount++;
+        }
+
+        void clear() {
+            data.clear();
+            sampleCount = 0;
+        }
+    }
+
+    /**
+     * {@link FragmentListener}. Called on the writing thread once a fragment is completely
+     * written.
+     */
+    public interface FragmentListener {
+
+        /**
+         * @param sequenceNumber Of the fragment, from 1.
+         * @param endOffset      Size of the file so far; everything before it can be read.
+         */
+        void onFragmentWritten(int sequenceNumber, long endOffset);
+    }
+}
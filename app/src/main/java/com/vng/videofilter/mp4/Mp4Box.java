@@ -0,0 +1,161 @@
+package com.vng.videofilter.mp4;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Copyright (C) 2017, VNG Corporation.
+ * <p>
+ * Header of an ISO base media file box: where it is, how large it is and its four
+ * character type. Also has the helpers to walk boxes held in a {@link ByteBuffer}.
+ *
+ * @author namnt4
+ * @since 18/10/2026
+ */
+public final class Mp4Box {
+
+    private static final Charset ASCII = StandardCharsets.US_ASCII;
+
+    public static final int FTYP = type("ftyp");
+    public static final int MOOV = type("moov");
+    public static final int MVHD = type("mvhd");
+    public static final int TRAK = type("trak");
+    public static final int TKHD = type("tkhd");
+    public static final int MDIA = type("mdia");
+    public static final int MDHD = type("mdhd");
+    public static final int HDLR = type("hdlr");
+    public static final int MINF = type("minf");
+    public static final int STBL = type("stbl");
+    public static final int STSD = type("stsd");
+    public static final int STSZ = type("stsz");
+    public static final int STZ2 = type("stz2");
+    public static final int STCO = type("stco");
+    public static final int CO64 = type("co64");
+    public static final int MDAT = type("mdat");
+    public static final int FREE = type("free");
+    public static final int MVEX = type("mvex");
+    public static final int TREX = type("trex");
+    public static final int MOOF = type("moof");
+    public static final int MFHD = type("mfhd");
+    public static final int TRAF = type("traf");
+    public static final int TFHD = type("tfhd");
+    public static final int TFDT = type("tfdt");
+    public static final int TRUN = type("trun");
+
+    /**
+     * Type of the box, e.g. {@link #MOOV}.
+     */
+    public final int type;
+
+    /**
+     * Position of the box in its file or buffer.
+     */
+    public final long offset;
+
+    /**
+     * Size of the box, header included.
+     */
+    public final long size;
+
+    /**
+     * Size of the header: 8 bytes, or 16 with a 64-bit size.
+     */
+    public final int headerSize;
+
+    public Mp4Box(int type, long offset, long size, int headerSize) {
+        this.type = type;
+        this.offset = offset;
+        this.size = size;
+        this.headerSize = headerSize;
+    }
+
+    public long getPayloadOffset() {
+        return offset + headerSize;
+    }
+
+    public long getPayloadSize() {
+        return size - headerSize;
+    }
+
+    public long getEnd() {
+        return offset + size;
+    }
+
+    public static int type(String fourcc) {
+        final byte[] bytes = fourcc.getBytes(ASCII);
+        return (bytes[0] & 0xff) << 24 | (bytes[1] & 0xff) << 16 | (bytes[2] & 0xff) << 8 | (bytes[3] & 0xff);
+    }
+
+    public static String typeToString(int type) {
+        return new String(new byte[]{(byte) (type >>> 24), (byte) (type >>> 16), (byte) (type >>> 8), (byte) type},
+                ASCII);
+    }
+
+    /**
+     * Reads a box header at the position of the buffer, which is left after the header.
+     *
+     * @param offset Position of the header in the file, for the returned box.
+     * @param limit  Where the enclosing box or file ends, for boxes that extend to its end.
+     */
+    public static Mp4Box readHeader(ByteBuffer buffer, long offset, long limit) throws IOException {
+        if (buffer.remaining() < 8) {
+            throw new IOException("Truncated box header at " + offset);
+        }
+
+        long size = buffer.getInt() & 0xffffffffL;
+        final int type = buffer.getInt();
+        int headerSize = 8;
+        if (size == 1) {
+            if (buffer.remaining() < 8) {
+                throw new IOException("Truncated box header at " + offset);
+            }
+            size = buffer.getLong();
+            headerSize = 16;
+        } else if (size == 0) {
+            size = limit - offset;
+        }
+
+        if (size < headerSize || offset + size > limit) {
+            throw new IOException("Invalid size " + size + " of " + typeToString(type) + " at " + offset);
+        }
+        return new Mp4Box(type, offset, size, headerSize);
+    }
+
+    /**
+     * Finds the first child of a type among the boxes between the position and the limit of
+     * the buffer, following the path of types given.
+     *
+     * @return the payload of the box, or null if there is none.
+     */
+    public static ByteBuffer findChild(ByteBuffer parent, int... path) throws IOException {
+        ByteBuffer buffer = parent;
+        for (int type : path) {
+            buffer = findChild(buffer, type);
+            if (buffer == null) {
+                return null;
+            }
+        }
+        return buffer;
+    }
+
+    private static ByteBuffer findChild(ByteBuffer parent, int type) throws IOException {
+        final ByteBuffer buffer = parent.duplicate();
+        while (buffer.remaining() >= 8) {
+            final int start = buffer.position();
+            final Mp4Box box = readHeader(buffer, start, parent.limit());
+            if (box.type == type) {
+                buffer.limit((int) box.getEnd());
+                return buffer.slice();
+            }
+            buffer.position((int) box.getEnd());
+        }
+        return null;
+    }
+
+    @Override
+    public String toString() {
+        return typeToString(type) + "@" + offset + "+" + size;
+    }
+}
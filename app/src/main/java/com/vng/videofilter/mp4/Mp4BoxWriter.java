@@ -0,0 +1,124 @@
+package com.vng.videofilter.mp4;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+/**
+ * Copyright (C) 2017, VNG Corporation.
+ * <p>
+ * Serializes boxes into a growable heap buffer. Boxes nest: {@link #start(int)} writes a
+ * placeholder size that {@link #end()} fills in once the children are written.
+ *
+ * @author namnt4
+ * @since 18/10/2026
+ */
+final class Mp4BoxWriter {
+
+    private ByteBuffer mBuffer;
+
+    private int[] mBoxStarts = new int[16];
+
+    private int mDepth;
+
+    Mp4BoxWriter(int initialCapacity) {
+        mBuffer = ByteBuffer.allocate(initialCapacity);
+    }
+
+    Mp4BoxWriter start(int type) {
+        if (mDepth == mBoxStarts.length) {
+            mBoxStarts = Arrays.copyOf(mBoxStarts, mDepth * 2);
+        }
+        mBoxStarts[mDepth++] = position();
+        return u32(0).u32(type);
+    }
+
+    Mp4BoxWriter startFull(int type, int version, int flags) {
+        return start(type).u32(version << 24 | flags);
+    }
+
+    Mp4BoxWriter end() {
+        final int start = mBoxStarts[--mDepth];
+        mBuffer.putInt(start, position() - start);
+        return this;
+    }
+
+    Mp4BoxWriter u8(int value) {
+        ensureCapacity(1);
+        mBuffer.put((byte) value);
+        return this;
+    }
+
+    Mp4BoxWriter u16(int value) {
+        ensureCapacity(2);
+        mBuffer.putShort((short) value);
+        return this;
+    }
+
+    Mp4BoxWriter u32(long value) {
+        ensureCapacity(4);
+        mBuffer.putInt((int) value);
+        return this;
+    }
+
+    Mp4BoxWriter u64(long value) {
+        ensureCapacity(8);
+        mBuffer.putLong(value);
+        return this;
+    }
+
+    Mp4BoxWriter zeros(int count) {
+        ensureCapacity(count);
+        for (int i = 0; i < count; i++) {
+            mBuffer.put((byte) 0);
+        }
+        return this;
+    }
+
+    Mp4BoxWriter bytes(byte[] bytes) {
+        ensureCapacity(bytes.length);
+        mBuffer.put(bytes);
+        return this;
+    }
+
+    Mp4BoxWriter bytes(ByteBuffer bytes) {
+        ensureCapacity(bytes.remaining());
+        mBuffer.put(bytes);
+        return this;
+    }
+
+    int position() {
+        return mBuffer.position();
+    }
+
+    /**
+     * Overwrites a 32-bit value written earlier.
+     */
+    void putU32(int position, long value) {
+        mBuffer.putInt(position, (int) value);
+    }
+
+    /**
+     * The bytes written so far, from 0 to the current position. Shares the content.
+     */
+    ByteBuffer toByteBuffer() {
+        final ByteBuffer bytes = mBuffer.duplicate();
+        bytes.flip();
+        return bytes;
+    }
+
+    void clear() {
+        mBuffer.clear();
+        mDepth = 0;
+    }
+
+    private void ensureCapacity(int count) {
+        if (mBuffer.remaining() >= count) {
+            return;
+        }
+
+        final ByteBuffer grown = ByteBuffer.allocate(Math.max(mBuffer.capacity() * 2, mBuffer.position() + count));
+        mBuffer.flip();
+        grown.put(mBuffer);
+        mBuffer = grown;
+    }
+}
@@ -0,0 +1,272 @@
+package com.vng.videofilter.mp4;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * Copyright (C) 2017, VNG Corporation.
+ * <p>
+ * Moves {@code moov} in front of the media data, as {@code qt-faststart} does, so players
+ * can start before they have the whole file. The chunk offsets in {@code stco} and
+ * {@code co64} are shifted by how far the data moves; {@code stco} tables are widened to
+ * {@code co64} when a shifted offset no longer fits in 32 bits.
+ * <p>
+ * Only {@code moov} is read onto the heap. Every other box goes from file to file with
+ * {@link FileChannel#transferTo}, which the kernel does without copying through the VM, so
+ * files of any size take memory in proportion to their sample tables only.
+ *
+ * @author namnt4
+ * @since 18/10/2026
+ */
+public final class Mp4FastStart {
+
+    // Largest copy handed to the kernel at once.
+    private static final long TRANSFER_CHUNK = 64L * 1024 * 1024;
+
+    private Mp4FastStart() {
+    }
+
+    /**
+     * Writes a copy of {@code source} with {@code moov} first to {@code dest}.
+     *
+     * @return what was done; {@code dest} is left untouched if {@code moov} already came
+     * before the media data.
+     */
+    public static Result process(File source, File dest) throws IOException {
+        final long startNs = System.nanoTime();
+        try (Mp4Parser parser = Mp4Parser.open(source);
+             FileChannel in = new RandomAccessFile(source, "r").getChannel()) {
+            final List<Mp4Box> boxes = parser.getTopLevelBoxes();
+            final Mp4Box moov = parser.findTopLevelBox(Mp4Box.MOOV);
+            if (moov == null) {
+                throw new IOException("Missing moov box");
+            }
+            if (!needsMoving(boxes, moov)) {
+                return new Result(false, 0, System.nanoTime() - startNs);
+            }
+
+            final ByteBuffer moovPayload = parser.map(moov);
+            OffsetMap offsets = new OffsetMap(boxes, moov, measure(moovPayload, false));
+            Mp4BoxWriter newMoov = rewrite(moovPayload, false, offsets);
+            if (newMoov == null) {
+                offsets = new OffsetMap(boxes, moov, measure(moovPayload, true));
+                newMoov = rewrite(moovPayload, true, offsets);
+            }
+
+            final RandomAccessFile out = new RandomAccessFile(dest, "rw");
+            try (FileChannel channel = out.getChannel()) {
+                out.setLength(0);
+                for (int i = 0; i < offsets.leadingCount; i++) {
+                    transfer(in, boxes.get(i).offset, boxes.get(i).size, channel);
+                }
+                final ByteBuffer moovBytes = newMoov.toByteBuffer();
+                while (moovBytes.hasRemaining()) {
+                    channel.write(moovBytes);
+                }
+                for (int i = offsets.leadingCount; i < boxes.size(); i++) {
+                    if (boxes.get(i) != moov) {
+                        transfer(in, boxes.get(i).offset, boxes.get(i).size, channel);
+                    }
+                }
+
+                final long written = channel.size();
+                if (written != source.length() - moov.size + newMoov.position()) {
+                    throw new IOException("Wrote " + written + " bytes, expected "
+                            + (source.length() - moov.size + newMoov.position()));
+                }
+                return new Result(true, written, System.nanoTime() - startNs);
+            }
+        }
+    }
+
+    /**
+     * Rewrites a file with {@code moov} first through a temporary file next to it.
+     */
+    public static Result processInPlace(File file) throws IOException {
+        final File temp = new File(file.getPath() + ".faststart");
+        try {
+            final Result result = process(file, temp);
+            if (result.moved && !temp.renameTo(file)) {
+                throw new IOException("Could not replace " + file);
+            }
+            return result;
+        } finally {
+            if (temp.exists() && !temp.delete()) {
+                temp.deleteOnExit();
+            }
+        }
+    }
+
+    private static boolean needsMoving(List<Mp4Box> boxes, Mp4Box moov) {
+        for (Mp4Box box : boxes) {
+            if (box.type == Mp4Box.MDAT) {
+                return box.offset < moov.offset;
+            }
+        }
+        return false;
+    }
+
+    private static void transfer(FileChannel in, long position, long count, FileChannel out) throws IOException {
+        while (count > 0) {
+            final long transferred = in.transferTo(position, Math.min(count, TRANSFER_CHUNK), out);
+            if (transferred <= 0) {
+                throw new IOException("Copy stalled at " + position);
+            }
+            position += transferred;
+            count -= transferred;
+        }
+    }
+
+    /**
+     * Size of the rewritten moov box. Doesn't depend on the offsets written into it.
+     */
+    private static long measure(ByteBuffer moovPayload, boolean widen) throws IOException {
+        return rewrite(moovPayload, widen, null).position();
+    }
+
+    /**
+     * Copies moov with its chunk offsets mapped, or measures it if {@code offsets} is null.
+     *
+     * @return null if {@code widen} is false and a mapped offset needs 64 bits.
+     */
+    private static Mp4BoxWriter rewrite(ByteBuffer moovPayload, boolean widen, OffsetMap offsets)
+            throws IOException {
+        final Mp4BoxWriter writer = new Mp4BoxWriter(moovPayload.remaining() + 1024);
+        writer.start(Mp4Box.MOOV);
+        final boolean fits = copyChildren(moovPayload.duplicate(), writer, widen, offsets);
+        writer.end();
+        return fits ? writer : null;
+    }
+
+    private static boolean copyChildren(ByteBuffer parent, Mp4BoxWriter writer, boolean widen, OffsetMap offsets)
+            throws IOException {
+        while (parent.remaining() >= 8) {
+            final int start = parent.position();
+            final Mp4Box box = Mp4Box.readHeader(parent, start, parent.limit());
+            final ByteBuffer payload = parent.duplicate();
+            payload.limit((int) box.getEnd()).position((int) box.getPayloadOffset());
+            parent.position((int) box.getEnd());
+
+            if (box.type == Mp4Box.TRAK || box.type == Mp4Box.MDIA || box.type == Mp4Box.MINF
+                    || box.type == Mp4Box.STBL) {
+                writer.start(box.type);
+                if (!copyChildren(payload, writer, widen, offsets)) {
+                    return false;
+                }
+                writer.end();
+            } else if (box.type == Mp4Box.STCO || box.type == Mp4Box.CO64) {
+                final boolean wide = box.type == Mp4Box.CO64;
+                final int flags = payload.getInt() & 0xffffff;
+                final int count = payload.getInt();
+                if (payload.remaining() < (long) count * (wide ? 8 : 4)) {
+                    throw new IOException("Truncated " + box);
+                }
+                final boolean writeWide = wide || widen;
+                writer.startFull(writeWide ? Mp4Box.CO64 : Mp4Box.STCO, 0, flags).u32(count);
+                for (int i = 0; i < count; i++) {
+                    final long offset = wide ? payload.getLong() : payload.getInt() & 0xffffffffL;
+                    final long mapped = offsets != null ? offsets.map(offset) : 0;
+                    if (writeWide) {
+                        writer.u64(mapped);
+                    } else if (mapped > 0xffffffffL) {
+                        return false;
+                    } else {
+                        writer.u32(mapped);
+                    }
+                }
+                writer.end();
+            } else {
+                final ByteBuffer bytes = parent.duplicate();
+                bytes.limit((int) box.getEnd()).position(start);
+                writer.bytes(bytes);
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Where each byte outside moov ends up: the leading ftyp stays, moov follows it, then
+     * every other box in its original order.
+     */
+    private static final class OffsetMap {
+
+        final int leadingCount;
+
+        private final long[] mStarts;
+        private final long[] mEnds;
+        private final long[] mNewStarts;
+
+        OffsetMap(List<Mp4Box> boxes, Mp4Box moov, long newMoovSize) {
+            int leading = 0;
+            while (leading < boxes.size() && boxes.get(leading).type == Mp4Box.FTYP) {
+                leading++;
+            }
+            leadingCount = leading;
+
+            mStarts = new long[boxes.size()];
+            mEnds = new long[boxes.size()];
+            mNewStarts = new long[boxes.size()];
+            long position = 0;
+            for (int i = 0; i < boxes.size(); i++) {
+                final Mp4Box box = boxes.get(i);
+                if (i == leading) {
+                    position += newMoovSize;
+                }
+                mStarts[i] = box.offset;
+                if (box == moov) {
+                    // Nothing points into moov; an empty range never matches.
+                    mEnds[i] = box.offset;
+                    continue;
+                }
+                mEnds[i] = box.getEnd();
+                mNewStarts[i] = position;
+                position += box.size;
+            }
+        }
+
+        long map(long offset) throws IOException {
+            for (int i = 0; i < mStarts.length; i++) {
+                if (offset >= mStarts[i] && offset < mEnds[i]) {
+                    return offset - mStarts[i] + mNewStarts[i];
+                }
+            }
+            throw new IOException("Chunk offset " + offset + " outside of the media data");
+        }
+    }
+
+    public static final class Result {
+
+        /**
+         * False if moov already was in front and nothing was written.
+         */
+        public final boolean moved;
+
+        public final long bytes;
+
+        public final long elapsedNs;
+
+        Result(boolean moved, long bytes, long elapsedNs) {
+            this.moved = moved;
+            this.bytes = bytes;
+            this.elapsedNs = elapsedNs;
+        }
+
+        public double getMegabytesPerSecond() {
+            return elapsedNs > 0 ? bytes / 1e6 / (elapsedNs / 1e9) : 0;
+        }
+
+        @Override
+        public String toString() {
+            if (!moved) {
+                return "Mp4FastStart.Result{moov already in front}";
+            }
+            return String.format(Locale.US, "Mp4FastStart.Result{%.1f MB in %d ms, %.1f MB/s}", bytes / 1e6,
+                    elapsedNs / 1000000, getMegabytesPerSecond());
+        }
+    }
+}
@@ -0,0 +1,207 @@
+package com.vng.videofilter.mp4;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Copyright (C) 2017, VNG Corporation.
+ * <p>
+ * Reads the metadata of an MP4 file without the platform media APIs. Only the top level
+ * box headers are read up front; {@code moov} is memory mapped and its boxes parsed when a
+ * value is first asked for. Sample data is never read, so files of any size open in
+ * constant time and memory.
+ *
+ * @author namnt4
+ * @since 18/10/2026
+ */
+public final class Mp4Parser implements Closeable {
+
+    private final FileChannel mChannel;
+
+    private final boolean mOwnsChannel;
+
+    private final List<Mp4Box> mBoxes;
+
+    private ByteBuffer mMoov;
+
+    private List<Mp4Track> mTracks;
+
+    private Mp4Parser(FileChannel channel, boolean ownsChannel) throws IOException {
+        mChannel = channel;
+        mOwnsChannel = ownsChannel;
+        mBoxes = readTopLevelBoxes(channel);
+    }
+
+    /**
+     * @throws IOException if the file can't be read or isn't an MP4 file.
+     */
+    public static Mp4Parser open(File file) throws IOException {
+        final FileChannel channel = new RandomAccessFile(file, "r").getChannel();
+        try {
+            return new Mp4Parser(channel, true);
+        } catch (IOException e) {
+            channel.close();
+            throw e;
+        }
+    }
+
+    /**
+     * Reads from a channel the caller keeps ownership of.
+     */
+    public static Mp4Parser open(FileChannel channel) throws IOException {
+        return new Mp4Parser(channel, false);
+    }
+
+    private static List<Mp4Box> readTopLevelBoxes(FileChannel channel) throws IOException {
+        final long fileSize = channel.size();
+        final List<Mp4Box> boxes = new ArrayList<>();
+        final ByteBuffer header = ByteBuffer.allocate(16);
+        long offset = 0;
+        while (offset + 8 <= fileSize) {
+            header.clear();
+            header.limit((int) Math.min(16, fileSize - offset));
+            readFully(channel, header, offset);
+            header.flip();
+
+            final Mp4Box box = Mp4Box.readHeader(header, offset, fileSize);
+            // QuickTime files may start with wide, skip or others, so any box that fits in the
+            // file will do; other formats rarely start with a printable type.
+            if (boxes.isEmpty() && !isPrintable(box.type)) {
+                throw new IOException("Not an MP4 file, starts with " + Integer.toHexString(box.type));
+            }
+            boxes.add(box);
+            offset = box.getEnd();
+        }
+
+        if (boxes.isEmpty()) {
+            throw new IOException("Empty file");
+        }
+        return Collections.unmodifiableList(boxes);
+    }
+
+    private static boolean isPrintable(int type) {
+        for (int shift = 24; shift >= 0; shift -= 8) {
+            final int c = (type >>> shift) & 0xff;
+            if (c < 0x20 || c > 0x7e) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    static void readFully(FileChannel channel, ByteBuffer buffer, long position) throws IOException {
+        while (buffer.hasRemaining()) {
+            final int read = channel.read(buffer, position);
+            if (read < 0) {
+                throw new IOException("Unexpected end of file at " + position);
+            }
+            position += read;
+        }
+    }
+
+    public List<Mp4Box> getTopLevelBoxes() {
+        return mBoxes;
+    }
+
+    /**
+     * @return the first top level box of a type, or null.
+     */
+    public Mp4Box findTopLevelBox(int type) {
+        for (Mp4Box box : mBoxes) {
+            if (box.type == type) {
+                return box;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Maps the payload of a box read only.
+     */
+    public ByteBuffer map(Mp4Box box) throws IOException {
+        if (box.getPayloadSize() > Integer.MAX_VALUE) {
+            throw new IOException("Box too large to map: " + box);
+        }
+        return mChannel.map(FileChannel.MapMode.READ_ONLY, box.getPayloadOffset(), box.getPayloadSize());
+    }
+
+    private ByteBuffer getMoov() throws IOException {
+        if (mMoov == null) {
+            final Mp4Box moov = findTopLevelBox(Mp4Box.MOOV);
+            if (moov == null) {
+                throw new IOException("Missing moov box");
+            }
+            mMoov = map(moov);
+        }
+        return mMoov.duplicate();
+    }
+
+    /**
+     * Duration of the movie from its header, in microseconds.
+     */
+    public long getDurationUs() throws IOException {
+        final ByteBuffer mvhd = Mp4Track.require(Mp4Box.findChild(getMoov(), Mp4Box.MVHD), "mvhd");
+        final int version = mvhd.get() & 0xff;
+        mvhd.position(4);
+        final long timescale;
+        final long duration;
+        if (version == 1) {
+            mvhd.position(mvhd.position() + 16);
+            timescale = mvhd.getInt() & 0xffffffffL;
+            duration = mvhd.getLong();
+        } else {
+            mvhd.position(mvhd.position() + 8);
+            timescale = mvhd.getInt() & 0xffffffffL;
+            duration = mvhd.getInt() & 0xffffffffL;
+        }
+        return timescale > 0 ? duration * 1000000L / timescale : 0;
+    }
+
+    public List<Mp4Track> getTracks() throws IOException {
+        if (mTracks == null) {
+            final List<Mp4Track> tracks = new ArrayList<>();
+            final ByteBuffer moov = getMoov();
+            while (moov.remaining() >= 8) {
+                final int start = moov.position();
+                final Mp4Box box = Mp4Box.readHeader(moov, start, moov.limit());
+                if (box.type == Mp4Box.TRAK) {
+                    final ByteBuffer trak = moov.duplicate();
+                    trak.position((int) box.getPayloadOffset()).limit((int) box.getEnd());
+                    tracks.add(new Mp4Track(trak.slice()));
+                }
+                moov.position((int) box.getEnd());
+            }
+            mTracks = Collections.unmodifiableList(tracks);
+        }
+        return mTracks;
+    }
+
+    /**
+     * @return the first video track, or null.
+     */
+    public Mp4Track getVideoTrack() throws IOException {
+        for (Mp4Track track : getTracks()) {
+            if (track.isVideo()) {
+                return track;
+            }
+        }
+        return null;
+    }
+
+    @Override
+    public void close() throws IOException {
+        // Mapped buffers stay valid until collected; only the channel is ours to close.
+        mMoov = null;
+        mTracks = null;
+        if (mOwnsChannel) {
+            mChannel.close();
+        }
+    }
+}
@@ -0,0 +1,214 @@
+package com.vng.videofilter.mp4;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+/**
+ * Copyright (C) 2017, VNG Corporation.
+ * <p>
+ * One {@code trak} box of an MP4 file. Each child box is only parsed the first time a
+ * value from it is asked for.
+ *
+ * @author namnt4
+ * @since 18/10/2026
+ */
+public final class Mp4Track {
+
+    // 1.0 in the 16.16 fixed point the transformation matrix uses.
+    private static final int FIXED_ONE = 0x10000;
+
+    private final ByteBuffer mTrak;
+
+    // From tkhd.
+    private boolean mHeaderRead;
+    private int mTrackId;
+    private final int[] mMatrix = new int[9];
+    private int mWidth;
+    private int mHeight;
+
+    // From mdhd.
+    private boolean mMediaHeaderRead;
+    private long mTimescale;
+    private long mDuration;
+
+    private String mHandlerType;
+
+    private String mCodec;
+
+    private long mSampleCount = -1;
+
+    private SampleTableIndex mSampleTableIndex;
+
+    /**
+     * @param trak Payload of the trak box.
+     */
+    Mp4Track(ByteBuffer trak) {
+        mTrak = trak;
+    }
+
+    public int getTrackId() throws IOException {
+        readHeader();
+        return mTrackId;
+    }
+
+    /**
+     * Type of the media, e.g. "vide" or "soun".
+     */
+    public String getHandlerType() throws IOException {
+        if (mHandlerType == null) {
+            final ByteBuffer hdlr = require(Mp4Box.findChild(mTrak, Mp4Box.MDIA, Mp4Box.HDLR), "hdlr");
+            // Version and flags, pre_defined.
+            hdlr.position(8);
+            mHandlerType = Mp4Box.typeToString(hdlr.getInt());
+        }
+        return mHandlerType;
+    }
+
+    public boolean isVideo() throws IOException {
+        return "vide".equals(getHandlerType());
+    }
+
+    /**
+     * Presentation width from the track header, before rotation.
+     */
+    public int getWidth() throws IOException {
+        readHeader();
+        return mWidth;
+    }
+
+    public int getHeight() throws IOException {
+        readHeader();
+        return mHeight;
+    }
+
+    /**
+     * The transformation matrix of the track header: a, b, u, c, d, v, x, y, w, with u, v and
+     * w in 2.30 fixed point and the others in 16.16.
+     */
+    public int[] getMatrix() throws IOException {
+        readHeader();
+        return mMatrix.clone();
+    }
+
+    /**
+     * Clockwise rotation the matrix applies, in degrees: 0, 90, 180 or 270, as
+     * {@code MediaMetadataRetriever} reports it.
+     */
+    public int getRotationDegrees() throws IOException {
+        readHeader();
+        final double degrees = Math.toDegrees(Math.atan2(mMatrix[1], mMatrix[0]));
+        final int rounded = (int) (Math.round(degrees / 90) * 90);
+        return (rounded % 360 + 360) % 360;
+    }
+
+    public long getTimescale() throws IOException {
+        readMediaHeader();
+        return mTimescale;
+    }
+
+    public long getDurationUs() throws IOException {
+        readMediaHeader();
+        return mTimescale > 0 ? mDuration * 1000000L / mTimescale : 0;
+    }
+
+    /**
+     * Four character code of the first sample entry, e.g. "avc1" or "mp4a".
+     */
+    public String getCodec() throws IOException {
+        if (mCodec == null) {
+            final ByteBuffer stsd = require(Mp4Box.findChild(mTrak, Mp4Box.MDIA, Mp4Box.MINF, Mp4Box.STBL,
+                    Mp4Box.STSD), "stsd");
+            // Version and flags, entry count.
+            stsd.position(8);
+            final Mp4Box entry = Mp4Box.readHeader(stsd, 8, stsd.limit());
+            mCodec = Mp4Box.typeToString(entry.type);
+        }
+        return mCodec;
+    }
+
+    public long getSampleCount() throws IOException {
+        if (mSampleCount < 0) {
+            final ByteBuffer stbl = require(Mp4Box.findChild(mTrak, Mp4Box.MDIA, Mp4Box.MINF, Mp4Box.STBL),
+                    "stbl");
+            ByteBuffer sizes = Mp4Box.findChild(stbl, Mp4Box.STSZ);
+            if (sizes == null) {
+                sizes = require(Mp4Box.findChild(stbl, Mp4Box.STZ2), "stsz");
+            }
+            // Version and flags, then sample size in stsz or the field size in stz2.
+            sizes.position(8);
+            mSampleCount = sizes.getInt() & 0xffffffffL;
+        }
+        return mSampleCount;
+    }
+
+    /**
+     * Reads the whole sample table the first time, so it's not free for long tracks, though
+     * it's much faster than stepping through the track with an extractor.
+     */
+    public SampleTableIndex getSampleTableIndex() throws IOException {
+        if (mSampleTableIndex == null) {
+            final ByteBuffer stbl = require(Mp4Box.findChild(mTrak, Mp4Box.MDIA, Mp4Box.MINF, Mp4Box.STBL),
+                    "stbl");
+            mSampleTableIndex = SampleTableIndex.read(stbl, getTimescale());
+        }
+        return mSampleTableIndex;
+    }
+
+    private void readHeader() throws IOException {
+        if (mHeaderRead) {
+            return;
+        }
+
+        final ByteBuffer tkhd = require(Mp4Box.findChild(mTrak, Mp4Box.TKHD), "tkhd");
+        final int version = tkhd.get() & 0xff;
+        tkhd.position(4);
+        // Creation and modification times.
+        tkhd.position(tkhd.position() + (version == 1 ? 16 : 8));
+        mTrackId = tkhd.getInt();
+        // Reserved, duration, reserved, layer, alternate group, volume, reserved.
+        tkhd.position(tkhd.position() + 4 + (version == 1 ? 8 : 4) + 8 + 8);
+        for (int i = 0; i < mMatrix.length; i++) {
+            mMatrix[i] = tkhd.getInt();
+        }
+        mWidth = tkhd.getInt() / FIXED_ONE;
+        mHeight = tkhd.getInt() / FIXED_ONE;
+        mHeaderRead = true;
+    }
+
+    private void readMediaHeader() throws IOException {
+        if (mMediaHeaderRead) {
+            return;
+        }
+
+        final ByteBuffer mdhd = require(Mp4Box.findChild(mTrak, Mp4Box.MDIA, Mp4Box.MDHD), "mdhd");
+        final int version = mdhd.get() & 0xff;
+        mdhd.position(4);
+        if (version == 1) {
+            mdhd.position(mdhd.position() + 16);
+            mTimescale = mdhd.getInt() & 0xffffffffL;
+            mDuration = mdhd.getLong();
+        } else {
+            mdhd.position(mdhd.position() + 8);
+            mTimescale = mdhd.getInt() & 0xffffffffL;
+            mDuration = mdhd.getInt() & 0xffffffffL;
+        }
+        mMediaHeaderRead = true;
+    }
+
+    static ByteBuffer require(ByteBuffer box, String type) throws IOException {
+        if (box == null) {
+            throw new IOException("Missing " + type + " box");
+        }
+        return box;
+    }
+
+    @Override
+    public String toString() {
+        try {
+            return "Mp4Track{" + getTrackId() + ", " + getHandlerType() + ", " + getCodec() + ", "
+                    + getDurationUs() + " us, " + getSampleCount() + " samples}";
+        } catch (IOException e) {
+            return "Mp4Track{" + e + "}";
+        }
+    }
+}
@@ -0,0 +1,247 @@
+package com.vng.videofilter.mp4;
+
+import android.media.MediaFormat;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Copyright (C) 2017, VNG Corporation.
+ * <p>
+ * What {@link FragmentedMp4Writer} needs to describe a track: its handler, its size or
+ * sample rate, and the sample entry that goes into {@code stsd}. Only AVC video and AAC
+ * audio can be described, which is what the encoders produce.
+ *
+ * @author namnt4
+ * @since 18/10/2026
+ */
+public final class Mp4TrackFormat {
+
+    public static final String HANDLER_VIDEO = "vide";
+    public static final String HANDLER_AUDIO = "soun";
+
+    private static final String MIME_AVC = "video/avc";
+    private static final String MIME_AAC = "audio/mp4a-latm";
+
+    // Object type indication and stream type of the esds decoder config.
+    private static final int OBJECT_TYPE_AAC = 0x40;
+    private static final int STREAM_TYPE_AUDIO = 0x05;
+
+    public final String handlerType;
+
+    public final int width;
+
+    public final int height;
+
+    public final int sampleRate;
+
+    public final int channelCount;
+
+    private final byte[] mSampleEntry;
+
+    private Mp4TrackFormat(String handlerType, int width, int height, int sampleRate, int channelCount,
+                           byte[] sampleEntry) {
+        this.handlerType = handlerType;
+        this.width = width;
+        this.height = height;
+        this.sampleRate = sampleRate;
+        this.channelCount = channelCount;
+        mSampleEntry = sampleEntry;
+    }
+
+    /**
+     * @param sps Sequence parameter sets as in {@code csd-0}, with or without start codes.
+     * @param pps Picture parameter sets as in {@code csd-1}.
+     */
+    public static Mp4TrackFormat avc(int width, int height, ByteBuffer sps, ByteBuffer pps) {
+        final List<ByteBuffer> spsUnits = splitAnnexB(sps);
+        final List<ByteBuffer> ppsUnits = splitAnnexB(pps);
+        if (spsUnits.isEmpty() || spsUnits.get(0).remaining() < 4 || ppsUnits.isEmpty()) {
+            throw new IllegalArgumentException("Missing SPS or PPS");
+        }
+
+        final ByteBuffer firstSps = spsUnits.get(0);
+        final Mp4BoxWriter writer = new Mp4BoxWriter(256);
+        writer.start(Mp4Box.type("avc1"))
+                // Reserved, data reference index.
+                .zeros(6).u16(1)
+                // Pre-defined and reserved.
+                .zeros(16)
+                .u16(width).u16(height)
+                // 72 dpi, reserved, frame count.
+                .u32(0x00480000).u32(0x00480000).u32(0).u16(1)
+                // Compressor name.
+                .zeros(32)
+                .u16(0x0018).u16(0xffff);
+
+        writer.start(Mp4Box.type("avcC"))
+                .u8(1)
+                .u8(firstSps.get(firstSps.position() + 1))
+                .u8(firstSps.get(firstSps.position() + 2))
+                .u8(firstSps.get(firstSps.position() + 3))
+                // 4 byte NAL unit lengths.
+                .u8(0xff)
+                .u8(0xe0 | spsUnits.size());
+        for (ByteBuffer unit : spsUnits) {
+            writer.u16(unit.remaining()).bytes(unit);
+        }
+        writer.u8(ppsUnits.size());
+        for (ByteBuffer unit : ppsUnits) {
+            writer.u16(unit.remaining()).bytes(unit);
+        }
+        writer.end().end();
+        return new Mp4TrackFormat(HANDLER_VIDEO, width, height, 0, 0, toArray(writer));
+    }
+
+    /**
+     * @param audioSpecificConfig As in {@code csd-0}.
+     */
+    public static Mp4TrackFormat aac(int sampleRate, int channelCount, ByteBuffer audioSpecificConfig) {
+        final ByteBuffer config = audioSpecificConfig.duplicate();
+        final int configSize = config.remaining();
+        final Mp4BoxWriter writer = new Mp4BoxWriter(128);
+        writer.start(Mp4Box.type("mp4a"))
+                // Reserved, data reference index.
+                .zeros(6).u16(1)
+                // Reserved.
+                .zeros(8)
+                .u16(channelCount).u16(16)
+                // Pre-defined, reserved.
+                .zeros(4)
+                .u32((long) sampleRate << 16);
+
+        writer.startFull(Mp4Box.type("esds"), 0, 0);
+        // ES descriptor: id, flags, then the decoder config and the SL config descriptors.
+        writer.u8(0x03).u8(3 + 2 + 13 + 2 + configSize + 3).u16(0).u8(0);
+        // Decoder config: buffer size, max and average bit rates left for the player to work out.
+        writer.u8(0x04).u8(13 + 2 + configSize)
+                .u8(OBJECT_TYPE_AAC).u8(STREAM_TYPE_AUDIO << 2 | 1)
+                .u8(0).u16(0).u32(0).u32(0);
+        writer.u8(0x05).u8(configSize).bytes(config);
+        writer.u8(0x06).u8(1).u8(0x02);
+        writer.end().end();
+        return new Mp4TrackFormat(HANDLER_AUDIO, 0, 0, sampleRate, channelCount, toArray(writer));
+    }
+
+    /**
+     * Whether {@link #fromMediaFormat} can describe the format: AVC or AAC, with its codec
+     * config.
+     */
+    public static boolean isSupported(MediaFormat format) {
+        final String mime = format.getString(MediaFormat.KEY_MIME);
+        if (MIME_AVC.equals(mime)) {
+            return format.containsKey("csd-0") && format.containsKey("csd-1");
+        }
+        return MIME_AAC.equals(mime) && format.containsKey("csd-0");
+    }
+
+    /**
+     * @throws IllegalArgumentException if the format is neither AVC nor AAC, or misses its
+     *                                  codec config.
+     */
+    public static Mp4TrackFormat fromMediaFormat(MediaFormat format) {
+        final String mime = format.getString(MediaFormat.KEY_MIME);
+        if (MIME_AVC.equals(mime)) {
+            final ByteBuffer sps = format.getByteBuffer("csd-0");
+            final ByteBuffer pps = format.getByteBuffer("csd-1");
+            if (sps == null || pps == null) {
+                throw new IllegalArgumentException("Missing codec config in " + format);
+            }
+            return avc(format.getInteger(MediaFormat.KEY_WIDTH), format.getInteger(MediaFormat.KEY_HEIGHT), sps, pps);
+        } else if (MIME_AAC.equals(mime)) {
+            final ByteBuffer config = format.getByteBuffer("csd-0");
+            if (config == null) {
+                throw new IllegalArgumentException("Missing codec config in " + format);
+            }
+            return aac(format.getInteger(MediaFormat.KEY_SAMPLE_RATE), format.getInteger(MediaFormat.KEY_CHANNEL_COUNT),
+                    config);
+        }
+        throw new IllegalArgumentException("Unsupported mime " + mime);
+    }
+
+    public boolean isVideo() {
+        return HANDLER_VIDEO.equals(handlerType);
+    }
+
+    /**
+     * Whether samples come as Annex B byte streams that need length prefixes instead.
+     */
+    boolean hasNalUnits() {
+        return isVideo();
+    }
+
+    ByteBuffer getSampleEntry() {
+        return ByteBuffer.wrap(mSampleEntry).asReadOnlyBuffer();
+    }
+
+    /**
+     * Whether a sample starts with a start code, as the encoders and extractors hand AVC out.
+     */
+    static boolean isAnnexB(ByteBuffer sample) {
+        final int start = sample.position();
+        if (sample.remaining() < 3 || sample.get(start) != 0 || sample.get(start + 1) != 0) {
+            return false;
+        }
+        return sample.get(start + 2) == 1
+                || sample.remaining() >= 4 && sample.get(start + 2) == 0 && sample.get(start + 3) == 1;
+    }
+
+    /**
+     * Splits an Annex B byte stream into its NAL units. A buffer without a start code is
+     * taken as a single unit.
+     */
+    static List<ByteBuffer> splitAnnexB(ByteBuffer stream) {
+        final List<ByteBuffer> units = new ArrayList<>();
+        final int start = stream.position();
+        final int limit = stream.limit();
+        int unitStart = findUnitStart(stream, start, limit);
+        if (unitStart < 0) {
+            if (limit > start) {
+                units.add(stream.slice());
+            }
+            return units;
+        }
+
+        while (unitStart >= 0) {
+            final int next = findUnitStart(stream, unitStart, limit);
+            // The start code of the next unit is 3 or 4 bytes before it.
+            int unitEnd = next < 0 ? limit : next - 3;
+            if (next >= 0 && unitEnd > unitStart && stream.get(unitEnd - 1) == 0) {
+                unitEnd--;
+            }
+            if (unitEnd > unitStart) {
+                final ByteBuffer unit = stream.duplicate();
+                unit.limit(unitEnd).position(unitStart);
+                units.add(unit.slice());
+            }
+            unitStart = next;
+        }
+        return units;
+    }
+
+    /**
+     * @return the position after the next 00 00 01 start code from {@code from}, or -1.
+     */
+    private static int findUnitStart(ByteBuffer stream, int from, int limit) {
+        for (int i = from; i + 2 < limit; i++) {
+            if (stream.get(i) == 0 && stream.get(i + 1) == 0 && stream.get(i + 2) == 1) {
+                return i + 3;
+            }
+        }
+        return -1;
+    }
+
+    private static byte[] toArray(Mp4BoxWriter writer) {
+        final ByteBuffer bytes = writer.toByteBuffer();
+        final byte[] array = new byte[bytes.remaining()];
+        bytes.get(array);
+        return array;
+    }
+
+    @Override
+    public String toString() {
+        return "Mp4TrackFormat{" + handlerType + ", " + (isVideo() ? width + "x" + height : sampleRate + " Hz")
+                + "}";
+    }
+}
@@ -0,0 +1,316 @@
+package com.vng.videofilter.mp4;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+/**
+ * Copyright (C) 2017, VNG Corporation.
+ * <p>
+ * Where every sample of a track is and when it's presented, read from the sample table
+ * boxes ({@code stts}, {@code ctts}, {@code stss}, {@code stsz} or {@code stz2},
+ * {@code stsc}, {@code stco} or {@code co64}) into primitive arrays: about 20 bytes a
+ * sample. Built once, it answers what a pass of {@code MediaExtractor.advance()} over the
+ * whole track would, and finds the sync sample before a time by binary search.
+ * <p>
+ * Times are media times in microseconds. Edit lists aren't applied.
+ *
+ * @author namnt4
+ * @since 18/10/2026
+ */
+public final class SampleTableIndex {
+
+    private final long[] mPresentationTimesUs;
+
+    private final long[] mOffsets;
+
+    private final int[] mSizes;
+
+    // Sync samples sorted by presentation time, and the index of each.
+    private final long[] mSyncTimesUs;
+    private final int[] mSyncSamples;
+
+    private final long mLastTimeUs;
+
+    private SampleTableIndex(long[] presentationTimesUs, long[] offsets, int[] sizes, long[] syncTimesUs,
+                             int[] syncSamples) {
+        mPresentationTimesUs = presentationTimesUs;
+        mOffsets = offsets;
+        mSizes = sizes;
+        mSyncTimesUs = syncTimesUs;
+        mSyncSamples = syncSamples;
+        long lastTimeUs = Long.MIN_VALUE;
+        for (long timeUs : presentationTimesUs) {
+            lastTimeUs = Math.max(lastTimeUs, timeUs);
+        }
+        mLastTimeUs = lastTimeUs;
+    }
+
+    /**
+     * @param stbl      Payload of the stbl box.
+     * @param timescale Of the track, from mdhd.
+     */
+    static SampleTableIndex read(ByteBuffer stbl, long timescale) throws IOException {
+        if (timescale <= 0) {
+            throw new IOException("Invalid timescale " + timescale);
+        }
+
+        final int[] sizes = readSizes(stbl);
+        final int count = sizes.length;
+        final long[] presentationTimesUs = readTimes(stbl, count, timescale);
+        final long[] offsets = readOffsets(stbl, sizes);
+        final int[] syncSamples = readSyncSamples(stbl, count);
+
+        // Sorted by time so that lookups can search them; they nearly always already are.
+        final long[] syncTimesUs = new long[syncSamples.length];
+        boolean sorted = true;
+        for (int i = 0; i < syncSamples.length; i++) {
+            syncTimesUs[i] = presentationTimesUs[syncSamples[i]];
+            sorted &= i == 0 || syncTimesUs[i] >= syncTimesUs[i - 1];
+        }
+        if (!sorted) {
+            sortByTime(syncTimesUs, syncSamples);
+        }
+        return new SampleTableIndex(presentationTimesUs, offsets, sizes, syncTimesUs, syncSamples);
+    }
+
+    private static int[] readSizes(ByteBuffer stbl) throws IOException {
+        final ByteBuffer stsz = Mp4Box.findChild(stbl, Mp4Box.STSZ);
+        if (stsz != null) {
+            stsz.position(4);
+            final int sampleSize = stsz.getInt();
+            final int count = checkCount(stsz.getInt(), sampleSize == 0 ? 4 : 0, stsz, "stsz");
+            final int[] sizes = new int[count];
+            if (sampleSize != 0) {
+                Arrays.fill(sizes, sampleSize);
+            } else {
+                stsz.asIntBuffer().get(sizes);
+            }
+            return sizes;
+        }
+
+        final ByteBuffer stz2 = Mp4Track.require(Mp4Box.findChild(stbl, Mp4Box.STZ2), "stsz");
+        stz2.position(7);
+        final int fieldSize = stz2.get() & 0xff;
+        if (fieldSize != 4 && fieldSize != 8 && fieldSize != 16) {
+            throw new IOException("Invalid stz2 field size " + fieldSize);
+        }
+        final int count = stz2.getInt();
+        if (count < 0 || (long) count * fieldSize > (long) stz2.remaining() * 8) {
+            throw new IOException("Truncated stz2");
+        }
+        final int[] sizes = new int[count];
+        for (int i = 0; i < count; i++) {
+            if (fieldSize == 16) {
+                sizes[i] = stz2.getShort() & 0xffff;
+            } else if (fieldSize == 8) {
+                sizes[i] = stz2.get() & 0xff;
+            } else {
+                final int pair = stz2.get(stz2.position() + i / 2) & 0xff;
+                sizes[i] = i % 2 == 0 ? pair >>> 4 : pair & 0x0f;
+            }
+        }
+        return sizes;
+    }
+
+    private static long[] readTimes(ByteBuffer stbl, int count, long timescale) throws IOException {
+        final ByteBuffer stts = Mp4Track.require(Mp4Box.findChild(stbl, Mp4Box.type("stts")), "stts");
+        stts.position(4);
+        final int entries = checkCount(stts.getInt(), 8, stts, "stts");
+        final long[] decodeTimes = new long[count];
+        long time = 0;
+        int sample = 0;
+        for (int i = 0; i < entries && sample < count; i++) {
+            final long sampleCount = stts.getInt() & 0xffffffffL;
+            final long delta = stts.getInt() & 0xffffffffL;
+            for (long s = 0; s < sampleCount && sample < count; s++) {
+                decodeTimes[sample++] = time;
+                time += delta;
+            }
+        }
+        // A short table leaves the last samples at the end time.
+        while (sample < count) {
+            decodeTimes[sample++] = time;
+        }
+
+        final ByteBuffer ctts = Mp4Box.findChild(stbl, Mp4Box.type("ctts"));
+        if (ctts != null) {
+            ctts.position(4);
+            final int cttsEntries = checkCount(ctts.getInt(), 8, ctts, "ctts");
+            sample = 0;
+            for (int i = 0; i < cttsEntries && sample < count; i++) {
+                final long sampleCount = ctts.getInt() & 0xffffffffL;
+                // Signed in version 1, and treated as such in version 0 too, as muxers write it.
+                final int offset = ctts.getInt();
+                for (long s = 0; s < sampleCount && sample < count; s++) {
+                    decodeTimes[sample++] += offset;
+                }
+            }
+        }
+
+        for (int i = 0; i < count; i++) {
+            decodeTimes[i] = decodeTimes[i] * 1000000L / timescale;
+        }
+        return decodeTimes;
+    }
+
+    private static long[] readOffsets(ByteBuffer stbl, int[] sizes) throws IOException {
+        ByteBuffer chunks = Mp4Box.findChild(stbl, Mp4Box.STCO);
+        final boolean wide = chunks == null;
+        if (wide) {
+            chunks = Mp4Track.require(Mp4Box.findChild(stbl, Mp4Box.CO64), "stco");
+        }
+        chunks.position(4);
+        final int chunkCount = checkCount(chunks.getInt(), wide ? 8 : 4, chunks, "stco");
+
+        final ByteBuffer stsc = Mp4Track.require(Mp4Box.findChild(stbl, Mp4Box.type("stsc")), "stsc");
+        stsc.position(4);
+        final int runCount = checkCount(stsc.getInt(), 12, stsc, "stsc");
+        final int runStart = stsc.position();
+
+        final long[] offsets = new long[sizes.length];
+        int sample = 0;
+        for (int run = 0; run < runCount && sample < sizes.length; run++) {
+            stsc.position(runStart + run * 12);
+            final int firstChunk = stsc.getInt() - 1;
+            final int samplesPerChunk = stsc.getInt();
+            final int endChunk = run + 1 < runCount ? stsc.getInt(runStart + (run + 1) * 12) - 1 : chunkCount;
+            for (int chunk = firstChunk; chunk < Math.min(endChunk, chunkCount) && sample < sizes.length; chunk++) {
+                long offset = wide ? chunks.getLong(chunks.position() + chunk * 8)
+                        : chunks.getInt(chunks.position() + chunk * 4) & 0xffffffffL;
+                for (int s = 0; s < samplesPerChunk && sample < sizes.length; s++) {
+                    offsets[sample] = offset;
+                    offset += sizes[sample++];
+                }
+            }
+        }
+        if (sample < sizes.length) {
+            throw new IOException("Chunks hold " + sample + " of " + sizes.length + " samples");
+        }
+        return offsets;
+    }
+
+    /**
+     * @return the indices of the sync samples; all of them if there is no stss.
+     */
+    private static int[] readSyncSamples(ByteBuffer stbl, int count) throws IOException {
+        final ByteBuffer stss = Mp4Box.findChild(stbl, Mp4Box.type("stss"));
+        if (stss == null) {
+            final int[] all = new int[count];
+            for (int i = 0; i < count; i++) {
+                all[i] = i;
+            }
+            return all;
+        }
+
+        stss.position(4);
+        final int entries = checkCount(stss.getInt(), 4, stss, "stss");
+        final int[] syncSamples = new int[entries];
+        int valid = 0;
+        for (int i = 0; i < entries; i++) {
+            final int sample = stss.getInt() - 1;
+            if (sample >= 0 && sample < count) {
+                syncSamples[valid++] = sample;
+            }
+        }
+        return valid == entries ? syncSamples : Arrays.copyOf(syncSamples, valid);
+    }
+
+    private static int checkCount(int count, int entrySize, ByteBuffer table, String type) throws IOException {
+        if (count < 0 || (long) count * entrySize > table.remaining()) {
+            throw new IOException("Truncated " + type + ": " + (count & 0xffffffffL) + " entries");
+        }
+        return count;
+    }
+
+    private static void sortByTime(long[] timesUs, int[] samples) {
+        // Insertion sort: out of order sync samples are rare and close to where they belong.
+        for (int i = 1; i < timesUs.length; i++) {
+            final long timeUs = timesUs[i];
+            final int sample = samples[i];
+            int j = i - 1;
+            while (j >= 0 && timesUs[j] > timeUs) {
+                timesUs[j + 1] = timesUs[j];
+                samples[j + 1] = samples[j];
+                j--;
+            }
+            timesUs[j + 1] = timeUs;
+            samples[j + 1] = sample;
+        }
+    }
+
+    public int getSampleCount() {
+        return mSizes.length;
+    }
+
+    /**
+     * @param sample Index of the sample, in decode order.
+     */
+    public long getPresentationTimeUs(int sample) {
+        return mPresentationTimesUs[sample];
+    }
+
+    /**
+     * Position of the sample in the file.
+     */
+    public long getOffset(int sample) {
+        return mOffsets[sample];
+    }
+
+    public int getSize(int sample) {
+        return mSizes[sample];
+    }
+
+    /**
+     * Presentation time of the last sample shown, or {@link Long#MIN_VALUE} if there is none.
+     */
+    public long getLastTimeUs() {
+        return mLastTimeUs;
+    }
+
+    public int getSyncSampleCount() {
+        return mSyncSamples.length;
+    }
+
+    /**
+     * @param index Of the sync sample, in presentation order.
+     * @return the index of the sample.
+     */
+    public int getSyncSample(int index) {
+        return mSyncSamples[index];
+    }
+
+    /**
+     * Presentation times of the sync samples, in increasing order.
+     */
+    public long[] getSyncTimesUs() {
+        return mSyncTimesUs.clone();
+    }
+
+    /**
+     * The sync sample to start decoding at to show {@code timeUs}: the last one presented at
+     * or before it. In O(log n).
+     *
+     * @return the index of the sample, or -1 if the first sync sample comes after the time.
+     */
+    public int findSyncSampleBefore(long timeUs) {
+        int low = 0;
+        int high = mSyncTimesUs.length - 1;
+        int found = -1;
+        while (low <= high) {
+            final int mid = (low + high) >>> 1;
+            if (mSyncTimesUs[mid] <= timeUs) {
+                found = mid;
+                low = mid + 1;
+            } else {
+                high = mid - 1;
+            }
+        }
+        return found >= 0 ? mSyncSamples[found] : -1;
+    }
+
+    @Override
+    public String toString() {
+        return "SampleTableIndex{" + mSizes.length + " samples, " + mSyncSamples.length + " sync}";
+    }
+}
@@ -13,6 +13,7 @@ import android.view.View;
 import com.vng.videofilter.LocalVideoProperty;
 import com.vng.videofilter.R;
 import com.vng.videofilter.watermark.WatermarkGenerator;
+import com.vng.videofilter.watermark.WatermarkImageProvider;
 
 import java.util.List;
 
@@ -22,6 +23,12 @@ import java.util.List;
  */
 public class VideoPickerActivity extends AppCompatActivity implements VideoPickerView {
 
+    private static final int WATERMARK_WIDTH = 320;
+
+    private static final int WATERMARK_HEIGHT = 80;
+
+    private static final int WATERMARK_TEXT_SIZE = 56;
+
     private RecyclerView mRecyclerView;
 
     private View mNextButton;
@@ -43,7 +50,11 @@ public class VideoPickerActivity extends AppCompatActivity implements VideoPicke
 
         initPresenter();
 
-        mWatermarkGenerator = WatermarkGenerator.with(null);
+        final WatermarkImageProvider watermarkProvider = new WatermarkImageProvider();
+        watermarkProvider.setWidth(WATERMARK_WIDTH);
+        watermarkProvider.setHeight(WATERMARK_HEIGHT);
+        watermarkProvider.setTextSize(WATERMARK_TEXT_SIZE);
+        mWatermarkGenerator = WatermarkGenerator.with(watermarkProvider);
     }
 
     @Override
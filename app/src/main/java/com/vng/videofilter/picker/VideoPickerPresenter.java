@@ -10,7 +10,9 @@ import com.vng.videofilter.BasePresenter;
 import com.vng.videofilter.IoUtils;
 import com.vng.videofilter.LocalVideoProperty;
 import com.vng.videofilter.SimpleSubscriber;
+import com.vng.videofilter.mp4.ContainerSniffer;
 
+import java.io.File;
 import java.util.ArrayList;
 import java.util.List;
 
@@ -50,10 +52,9 @@ public class VideoPickerPresenter extends BasePresenter<VideoPickerView> {
     private List<LocalVideoProperty> getListVideoProperty() {
         List<LocalVideoProperty> ret = new ArrayList<>();
 
-        List<LocalVideoProperty> listVideos = getListVideos();
+        List<LocalVideoProperty> listVideos = filterSupportedVideos(getListVideos());
         Observable.from(listVideos)
                 .map(this::getThumbnailOfVideo)
-                .filter(this::isMp4Video)
                 .subscribe(new SimpleSubscriber<LocalVideoProperty>() {
                     @Override
                     public void onNext(LocalVideoProperty videoProperty) {
@@ -103,12 +104,28 @@ public class VideoPickerPresenter extends BasePresenter<VideoPickerView> {
         return videoProperty;
     }
 
-    private boolean isMp4Video(LocalVideoProperty videoProperty) {
-        String path = videoProperty.getPath();
-        int lastIndexOf = path.lastIndexOf(".");
-        String extension = path.substring(lastIndexOf + 1, path.length());
-        boolean isMp4Video = "mp4".equals(extension);
-        return isMp4Video;
+    /**
+     * Keeps the videos whose content is a container the generator can open, whatever their
+     * extension. Done before thumbnails are loaded, so none are loaded for videos dropped.
+     */
+    private List<LocalVideoProperty> filterSupportedVideos(List<LocalVideoProperty> videoProperties) {
+        List<File> files = new ArrayList<>(videoProperties.size());
+        for (LocalVideoProperty videoProperty : videoProperties) {
+            files.add(new File(videoProperty.getPath()));
+        }
+
+        List<LocalVideoProperty> ret = new ArrayList<>();
+        try {
+            int[] types = ContainerSniffer.getDefault().sniffAll(files);
+            for (int i = 0; i < types.length; i++) {
+                if (ContainerSniffer.isSupported(types[i])) {
+                    ret.add(videoProperties.get(i));
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        return ret;
     }
 
     /**
@@ -0,0 +1,116 @@
+package com.vng.videofilter.util;
+
+import java.util.NoSuchElementException;
+
+/**
+ * Copyright (C) 2017, VNG Corporation.
+ * <p>
+ * FIFO queue of primitive ints backed by a power-of-two ring buffer. Used for codec buffer
+ * indices, which are handed out and returned on every frame, so unlike a
+ * {@code Queue<Integer>} it never boxes and never allocates once sized.
+ * <p>
+ * Not thread-safe; callers confine each instance to one thread (usually the codec handler).
+ *
+ * @author namnt4
+ * @since 18/10/2026
+ */
+public final class IntRingQueue {
+
+    private int[] mElements;
+
+    private int mMask;
+
+    private int mHead;
+
+    private int mSize;
+
+    /**
+     * @param capacity expected maximum number of elements, e.g. the codec's buffer count.
+     */
+    public IntRingQueue(int capacity) {
+        allocate(capacity);
+    }
+
+    /**
+     * Grows the backing array so that it can hold at least {@code capacity} elements.
+     * Existing elements are kept in order. Does nothing if the queue is already large enough.
+     */
+    public void ensureCapacity(int capacity) {
+        if (capacity <= mElements.length) {
+            return;
+        }
+
+        final int[] old = mElements;
+        final int oldMask = mMask;
+        allocate(capacity);
+        for (int i = 0; i < mSize; i++) {
+            mElements[i] = old[(mHead + i) & oldMask];
+        }
+        mHead = 0;
+    }
+
+    /**
+     * Appends a value at the tail. The queue only grows if the codec hands out more indices
+     * than it was sized for, which never happens in the steady state.
+     */
+    public void add(int value) {
+        if (mSize == mElements.length) {
+            ensureCapacity(mElements.length << 1);
+        }
+        mElements[(mHead + mSize) & mMask] = value;
+        mSize++;
+    }
+
+    /**
+     * Removes and returns the head of the queue.
+     *
+     * @throws NoSuchElementException if the queue is empty.
+     */
+    public int remove() {
+        if (mSize == 0) {
+            throw new NoSuchElementException();
+        }
+        final int value = mElements[mHead];
+        mHead = (mHead + 1) & mMask;
+        mSize--;
+        return value;
+    }
+
+    /**
+     * Returns the head of the queue without removing it.
+     *
+     * @throws NoSuchElementException if the queue is empty.
+     */
+    public int peek() {
+        if (mSize == 0) {
+            throw new NoSuchElementException();
+        }
+        return mElements[mHead];
+    }
+
+    public void clear() {
+        mHead = 0;
+        mSize = 0;
+    }
+
+    public boolean isEmpty() {
+        return mSize == 0;
+    }
+
+    public int size() {
+        return mSize;
+    }
+
+    public int capacity() {
+        return mElements.length;
+    }
+
+    private void allocate(int capacity) {
+        int size = 1;
+        while (size < capacity) {
+            size <<= 1;
+        }
+        mElements = new int[size];
+        mMask = size - 1;
+    }
+}
@@ -15,4 +15,8 @@ public final class Utils {
     public static boolean hasLollipop() {
         return SDK_INT >= Build.VERSION_CODES.LOLLIPOP;
     }
+
+    public static boolean hasMarshmallow() {
+        return SDK_INT >= Build.VERSION_CODES.M;
+    }
 }
@@ -0,0 +1,70 @@
+package com.vng.videofilter.watermark;
+
+/**
+ * Copyright (C) 2017, VNG Corporation.
+ * <p>
+ * Admission control for {@link WatermarkBatch}: a job may start if there are codec
+ * instances left for it and the memory it's expected to use fits in the budget. A job that
+ * doesn't fit the budget on its own still runs when nothing else does, so it can't be
+ * starved.
+ * <p>
+ * Not thread safe.
+ *
+ * @author namnt4
+ * @since 18/10/2026
+ */
+final class BatchSlots {
+
+    private long mMemoryBudget;
+
+    private int mRunningJobs;
+
+    private long mReservedMemory;
+
+    /**
+     * @param memoryBudget Bytes all running jobs may use together.
+     */
+    BatchSlots(long memoryBudget) {
+        mMemoryBudget = memoryBudget;
+    }
+
+    /**
+     * Only takes effect for jobs started from now on.
+     */
+    void setMemoryBudget(long memoryBudget) {
+        mMemoryBudget = memoryBudget;
+    }
+
+    /**
+     * @param memory  Bytes the job is expected to use.
+     * @param maxJobs Number of jobs the codecs of this job can run alongside, itself included.
+     * @return whether the job may start. If so, {@link #release(long)} must be called with
+     * the same memory once it's done.
+     */
+    boolean tryAcquire(long memory, int maxJobs) {
+        if (mRunningJobs >= maxJobs) {
+            return false;
+        }
+
+        if (mRunningJobs > 0 && mReservedMemory + memory > mMemoryBudget) {
+            return false;
+        }
+
+        mRunningJobs++;
+        mReservedMemory += memory;
+        return true;
+    }
+
+    void release(long memory) {
+        mRunningJobs--;
+        mReservedMemory -= memory;
+    }
+
+    int getRunningJobs() {
+        return mRunningJobs;
+    }
+
+    long getReservedMemory() {
+        return mReservedMemory;
+    }
+}
@@ -0,0 +1,346 @@
+package com.vng.videofilter.watermark;
+
+import android.media.MediaCodec;
+import android.media.MediaFormat;
+import android.os.Handler;
+import android.os.SystemClock;
+import android.util.Log;
+
+import com.vng.videofilter.codec.BufferEncoder;
+import com.vng.videofilter.codec.CodecPool;
+import com.vng.videofilter.codec.CodecPort;
+import com.vng.videofilter.codec.CodecProfileStore;
+import com.vng.videofilter.codec.MuxerWrapper;
+import com.vng.videofilter.codec.SampleInfo;
+import com.vng.videofilter.codec.SampleSource;
+import com.vng.videofilter.codec.SurfaceEncoder;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Copyright (C) 2017, VNG Corporation.
+ * <p>
+ * Same job as {@link WatermarkCodecWrapper}, without GL: the video track is decoded to
+ * buffers, each frame is copied into an input buffer of the encoder and the watermark is
+ * blended into its planes by a {@link YuvWatermarkBlender}.
+ * <p>
+ * Only decoders and encoders that use plain NV12 or I420 buffers are supported; vendor
+ * tiled layouts are reported through
+ * {@link WatermarkCodecWrapper.Listener#onError(Exception)}. Decoder output is
+ * held back while the encoder has no free input buffer.
+ * <p>
+ * Must be created on the looper thread of the queue handler.
+ *
+ * @author namnt4
+ * @since 18/10/2026
+ */
+public class BufferWatermarkCodecWrapper implements DecoderWrapper.Listener,
+        DecoderWrapper.OutputBufferListener {
+
+    private static final String TAG = BufferWatermarkCodecWrapper.class.getSimpleName();
+
+    private static final String OUTPUT_MIME_TYPE = WatermarkCodecWrapper.OUTPUT_MIME_TYPE;
+
+    // How long to wait before asking the encoder for an input buffer again.
+    private static final long INPUT_RETRY_MS = 5;
+
+    private static final long PROGRESS_INTERVAL_MS = 1000;
+
+    // Shorter jobs are dominated by setup time and say little about codec speed.
+    private static final int MIN_FRAMES_MEASURED = 60;
+
+    // Distance of the watermark from the bottom right corner as played, in pixels.
+    private static final int WATERMARK_MARGIN = 16;
+
+    private final Handler mQueue;
+
+    private final WatermarkCodecWrapper.Listener mListener;
+
+    private final String mInputMimeType;
+
+    private final int mWidth;
+
+    private final int mHeight;
+
+    private DecoderWrapper mDecoder;
+
+    private BufferEncoder mEncoder;
+
+    // Unpadded, as asked for in the encoder format.
+    private final YuvLayout mEncoderLayout;
+
+    // Upright, as provided; turned into the blender for the rotation of the output.
+    private ByteBuffer mWatermarkPixels;
+
+    private int mWatermarkWidth;
+
+    private int mWatermarkHeight;
+
+    private WatermarkPlacement mWatermarkPlacement;
+
+    private YuvWatermarkBlender mBlender;
+
+    private WatermarkSchedule mSchedule = WatermarkSchedule.always();
+
+    private long mTimeOffsetUs;
+
+    // Decoder output format the decoder layout was computed for.
+    private MediaFormat mDecoderFormat;
+
+    private YuvLayout mDecoderLayout;
+
+    // Input buffer of the encoder dequeued for the next frame, or -1.
+    private int mInputIndex = -1;
+
+    private int mFramesRendered;
+
+    private final AtomicInteger mFramesEncoded = new AtomicInteger();
+
+    private volatile long mStartTimeMs;
+
+    // Only touched by the encoder thread.
+    private long mLastProgressTimeMs;
+
+    private boolean mFailed;
+
+    private boolean mReleased;
+
+    private final Runnable mDrainDecoderRunnable = this::drainDecoder;
+
+    private final Runnable mEncoderDoneRunnable = this::onEncoderDone;
+
+    private final SurfaceEncoder.Listener mEncoderListener = new SurfaceEncoder.Listener() {
+        @Override
+        public void onFrameEncoded(long presentationTimeUs) {
+            final int framesEncoded = mFramesEncoded.incrementAndGet();
+            final long now = SystemClock.elapsedRealtime();
+            if (now - mLastProgressTimeMs >= PROGRESS_INTERVAL_MS) {
+                mLastProgressTimeMs = now;
+                final float fps = getFramesPerSecond(now);
+                mQueue.post(() -> {
+                    if (!mReleased) {
+                        mListener.onProgress(framesEncoded, presentationTimeUs, fps);
+                    }
+                });
+            }
+        }
+
+        @Override
+        public void onEndOfStream() {
+            mQueue.post(mEncoderDoneRunnable);
+        }
+
+        @Override
+        public void onError(Exception e) {
+            mQueue.post(() -> fail(e));
+        }
+    };
+
+    public BufferWatermarkCodecWrapper(SampleSource source,
+                                       MuxerWrapper muxer,
+                                       MediaFormat format,
+                                       Handler queue,
+                                       WatermarkProvider watermarkProvider,
+                                       WatermarkCodecWrapper.Listener listener) throws IOException {
+        this(source, muxer, format, queue, watermarkProvider, 0, Long.MAX_VALUE, listener);
+    }
+
+    /**
+     * Transcodes only the frames presenting in [startUs, endUs).
+     */
+    public BufferWatermarkCodecWrapper(SampleSource source,
+                                       MuxerWrapper muxer,
+                                       MediaFormat format,
+                                       Handler queue,
+                                       WatermarkProvider watermarkProvider,
+                                       long startUs,
+                                       long endUs,
+                                       WatermarkCodecWrapper.Listener listener) throws IOException {
+        mQueue = queue;
+        mListener = listener;
+        mInputMimeType = format.getString(MediaFormat.KEY_MIME);
+        mWidth = format.getInteger(MediaFormat.KEY_WIDTH);
+        mHeight = format.getInteger(MediaFormat.KEY_HEIGHT);
+
+        final CodecPool codecPool = CodecPool.getDefault();
+        final CodecPort encoder = codecPool.acquire(OUTPUT_MIME_TYPE, true, mWidth, mHeight);
+        final int colorFormat = BufferEncoder.selectColorFormat(encoder.getName(), OUTPUT_MIME_TYPE);
+        mEncoderLayout = YuvLayout.forColorFormat(colorFormat, mWidth, mHeight, mWidth, mHeight);
+        if (mEncoderLayout == null) {
+            encoder.release();
+            throw new IOException(encoder.getName() + " takes neither NV12 nor I420 input");
+        }
+
+        mEncoder = new BufferEncoder(encoder,
+                () -> BufferEncoder.createVideoFormat(OUTPUT_MIME_TYPE, format, colorFormat),
+                colorFormat, muxer, mEncoderListener);
+
+        if (watermarkProvider != null) {
+            mWatermarkPixels = watermarkProvider.providePixels();
+            mWatermarkWidth = watermarkProvider.getWidth();
+            mWatermarkHeight = watermarkProvider.getHeight();
+            placeWatermark(0);
+        }
+
+        mStartTimeMs = mLastProgressTimeMs = SystemClock.elapsedRealtime();
+        mEncoder.start();
+
+        mDecoder = new DecoderWrapper(queue::post, codecPool.decoderFactory(mWidth, mHeight));
+        mDecoder.setListener(this);
+        mDecoder.setOutputBufferListener(this);
+        mDecoder.setTimeRange(startUs, endUs);
+        mDecoder.configure(source, null);
+    }
+
+    /**
+     * Limits the frames the watermark is blended into. Must be called on the queue, before
+     * the first frame is decoded.
+     */
+    public void setSchedule(WatermarkSchedule schedule) {
+        mSchedule = schedule;
+    }
+
+    /**
+     * Sets the clockwise rotation the output is played with, as given to the muxer, for the
+     * watermark to show upright in the bottom right corner. Must be called on the queue,
+     * before the first frame is decoded.
+     */
+    public void setRotation(int degrees) {
+        if (mWatermarkPixels != null) {
+            placeWatermark(degrees);
+        }
+    }
+
+    private void placeWatermark(int rotationDegrees) {
+        mWatermarkPlacement = WatermarkPlacement.bottomRight(mWidth, mHeight, rotationDegrees,
+                mWatermarkWidth, mWatermarkHeight, WATERMARK_MARGIN);
+        mBlender = new YuvWatermarkBlender(mWatermarkPlacement.toStored(mWatermarkPixels, mWatermarkWidth,
+                mWatermarkHeight), mWatermarkPlacement.getWidth(), mWatermarkPlacement.getHeight(),
+                YuvWatermarkBlender.getDefaultPool());
+    }
+
+    /**
+     * Moves the encoded frames earlier by that much, e.g. so a trimmed clip starts at 0. The
+     * schedule still applies to source times. Must be called on the queue, before the first
+     * frame is decoded.
+     */
+    public void setTimeOffset(long offsetUs) {
+        mTimeOffsetUs = offsetUs;
+    }
+
+    @Override
+    public boolean canRenderFrame() {
+        if (mFailed) {
+            return false;
+        }
+
+        if (mInputIndex < 0) {
+            mInputIndex = mEncoder.dequeueInputBuffer(0);
+        }
+        if (mInputIndex < 0) {
+            // Input buffers free up as the encoder works; there is no event for it.
+            mQueue.removeCallbacks(mDrainDecoderRunnable);
+            mQueue.postDelayed(mDrainDecoderRunnable, INPUT_RETRY_MS);
+            return false;
+        }
+        return true;
+    }
+
+    @Override
+    public boolean onFrameDecoded(long presentationTimeUs) {
+        return true;
+    }
+
+    @Override
+    public void onOutputBuffer(ByteBuffer buffer, SampleInfo info, MediaFormat format) {
+        if (format != mDecoderFormat) {
+            mDecoderFormat = format;
+            mDecoderLayout = format != null ? YuvLayout.fromFormat(format) : null;
+            Log.d(TAG, "onOutputBuffer(): decoder layout " + mDecoderLayout + ", encoder layout " + mEncoderLayout);
+        }
+        if (mDecoderLayout == null) {
+            fail(new IOException(mDecoder.getCodecName() + " outputs neither NV12 nor I420"));
+            return;
+        }
+
+        final ByteBuffer input = mEncoder.getInputBuffer(mInputIndex);
+        input.clear();
+        YuvLayout.copy(buffer.slice(), mDecoderLayout, input, mEncoderLayout);
+        if (mBlender != null && mSchedule.isVisible(info.presentationTimeUs)) {
+            mBlender.blend(input, mEncoderLayout, mWatermarkPlacement.getLeft(), mWatermarkPlacement.getTop());
+        }
+
+        mEncoder.queueInputBuffer(mInputIndex, mEncoderLayout.getFrameSize(),
+                info.presentationTimeUs - mTimeOffsetUs, 0);
+        mInputIndex = -1;
+        mFramesRendered++;
+    }
+
+    @Override
+    public void onEndOfStream() {
+        Log.d(TAG, "onEndOfStream(): " + mFramesRendered + " frames rendered");
+        if (mInputIndex >= 0) {
+            mEncoder.queueInputBuffer(mInputIndex, 0, 0, MediaCodec.BUFFER_FLAG_END_OF_STREAM);
+            mInputIndex = -1;
+        } else {
+            mEncoder.signalEndOfInputStream();
+        }
+    }
+
+    @Override
+    public void onError(Exception e) {
+        fail(e);
+    }
+
+    private void drainDecoder() {
+        if (!mReleased) {
+            mDecoder.drainOutput();
+        }
+    }
+
+    private void fail(Exception e) {
+        if (mReleased || mFailed) {
+            return;
+        }
+
+        mFailed = true;
+        mListener.onError(e);
+    }
+
+    private void onEncoderDone() {
+        if (mReleased || mFailed) {
+            return;
+        }
+
+        final float fps = getFramesPerSecond(SystemClock.elapsedRealtime());
+        Log.d(TAG, "onEncoderDone(): " + mFramesEncoded.get() + " frames, " + fps + " fps");
+        if (mFramesEncoded.get() >= MIN_FRAMES_MEASURED) {
+            final CodecProfileStore profiles = CodecProfileStore.getDefault();
+            profiles.recordFrameRate(mDecoder.getCodecName(), mInputMimeType, fps);
+            profiles.recordFrameRate(mEncoder.getCodecName(), OUTPUT_MIME_TYPE, fps);
+        }
+        mListener.onComplete(mFramesEncoded.get(), fps);
+    }
+
+    private float getFramesPerSecond(long now) {
+        final long elapsedMs = Math.max(1, now - mStartTimeMs);
+        return mFramesEncoded.get() * 1000f / elapsedMs;
+    }
+
+    public void release() {
+        mReleased = true;
+        mQueue.removeCallbacks(mDrainDecoderRunnable);
+
+        if (mDecoder != null) {
+            mDecoder.release();
+            mDecoder = null;
+        }
+
+        if (mEncoder != null) {
+            mEncoder.release();
+            mEncoder = null;
+        }
+    }
+}
@@ -1,24 +1,28 @@
 package com.vng.videofilter.watermark;
 
-import android.annotation.TargetApi;
 import android.media.MediaCodec;
 import android.media.MediaExtractor;
 import android.media.MediaFormat;
-import android.os.Build;
 import android.os.Handler;
 import android.support.annotation.NonNull;
 import android.text.TextUtils;
 import android.util.Log;
 import android.view.Surface;
 
-import com.vng.videofilter.util.DispatchQueue;
-import com.vng.videofilter.util.Utils;
+import com.vng.videofilter.codec.CodecPort;
+import com.vng.videofilter.codec.CodecTuning;
+import com.vng.videofilter.codec.FormatUtils;
+import com.vng.videofilter.codec.MediaCodecPort;
+import com.vng.videofilter.codec.MediaExtractorSource;
+import com.vng.videofilter.codec.SampleInfo;
+import com.vng.videofilter.codec.SamplePrefetcher;
+import com.vng.videofilter.codec.SampleSource;
+import com.vng.videofilter.util.IntRingQueue;
 
 import java.io.IOException;
-import java.lang.ref.WeakReference;
 import java.nio.ByteBuffer;
-import java.util.LinkedList;
-import java.util.Queue;
+import java.util.Arrays;
+import java.util.concurrent.Executor;
 
 /**
  * Copyright (C) 2017, VNG Corporation.
@@ -31,37 +35,158 @@ public class DecoderWrapper {
 
     private static final String TAG = DecoderWrapper.class.getSimpleName();
 
+    // Initial size of the index queues. In asynchronous mode the codec doesn't expose its
+    // buffer count up front, and most decoders allocate fewer buffers than this anyway.
+    private static final int DEFAULT_BUFFER_COUNT = 16;
+
+    // Size of the prefetch buffers when the track doesn't tell.
+    private static final int DEFAULT_SAMPLE_SIZE = 1024 * 1024;
+
 //    protected final DispatchQueue mQueue;
 
-    protected final Handler mQueue;
+    protected final Executor mQueue;
+
+    private final CodecPort.Factory mCodecFactory;
 
-    private MediaExtractor mMediaExtractor;
+    private SampleSource mSampleSource;
+
+    // Reads the samples ahead of the decoder, so input buffers are only ever copied into.
+    private SamplePrefetcher mPrefetcher;
+
+    private int mPrefetchDepth = SamplePrefetcher.DEFAULT_DEPTH;
 
     /**
-     * The {@link MediaCodec} that is managed by this class.
+     * The {@link CodecPort} that is managed by this class.
      */
-    private MediaCodec mDecoder;
+    private CodecPort mDecoder;
 
     private String mTag = "";
 
-    public final Queue<Integer> mInputBufferIndices = new LinkedList<>();
+    public final IntRingQueue mInputBufferIndices = new IntRingQueue(DEFAULT_BUFFER_COUNT);
+
+    // Decoded buffers waiting for the listener to accept them, in presentation order.
+    private final IntRingQueue mOutputBufferIndices = new IntRingQueue(DEFAULT_BUFFER_COUNT);
+
+    // Metadata of the pending output buffers, by buffer index. Owned by the codec.
+    private SampleInfo[] mOutputInfos = new SampleInfo[DEFAULT_BUFFER_COUNT];
+
+    private boolean mInputDone;
+
+    // Presentation time range of the frames handed to the listener.
+    private long mStartTimeUs = 0;
+    private long mEndTimeUs = Long.MAX_VALUE;
+
+    // The last frame carried the end of stream flag; tell the listener once it took the frame.
+    private boolean mEndOfStreamPending;
+
+    private Listener mListener;
+
+    private OutputBufferListener mOutputBufferListener;
+
+    private final Runnable mExecuteRunnable = this::execute;
+
+    // Called by the prefetcher thread whenever it has read a sample.
+    private final SamplePrefetcher.Listener mPrefetchListener = this::onSamplesAvailable;
+
+    // Layout of the output buffers, once the decoder reported it.
+    private MediaFormat mOutputFormat;
+
+    private final CodecPort.Callback mCodecCallback = new CodecPort.Callback() {
+        @Override
+        public void onInputBufferAvailable(@NonNull CodecPort codec, int index) {
+            DecoderWrapper.this.onInputBufferAvailable(codec, index);
+        }
+
+        @Override
+        public void onOutputBufferAvailable(@NonNull CodecPort codec, int index, @NonNull SampleInfo info) {
+            DecoderWrapper.this.onOutputBufferAvailable(codec, index, info);
+        }
 
-    public final Queue<Long> mInputDataQueue = new LinkedList<>();
+        @Override
+        public void onOutputFormatChanged(@NonNull CodecPort codec, @NonNull MediaFormat format) {
+            mQueue.execute(() -> {
+                if (codec == mDecoder) {
+                    mOutputFormat = format;
+                }
+            });
+        }
 
-    // References to the internal buffers managed by the codec. The codec
-    // refers to these buffers by index, never by reference so it's up to us
-    // to keep track of which buffer is which.
-    private ByteBuffer[] mInputBuffers;
-    private ByteBuffer[] mOutputBuffers;
+        @Override
+        public void onError(@NonNull CodecPort codec, @NonNull Exception e) {
+            Log.e(getTag(), e.toString());
+            mQueue.execute(() -> {
+                if (codec != mDecoder) {
+                    return;
+                }
 
-    private ZMediaCodecCallback mMediaCodecCallback;
+                // The codec is unusable from here on; stop feeding it before telling the owner.
+                releaseCodec();
+                if (mListener != null) {
+                    mListener.onError(e);
+                }
+            });
+        }
+    };
 
 //    public DecoderWrapper(DispatchQueue queue) {
 //        mQueue = queue;
 //    }
 
     public DecoderWrapper(Handler queue) {
+        this(queue::post, MediaCodecPort.FACTORY);
+    }
+
+    /**
+     * @param queue        Serial executor that all codec events are handled on.
+     * @param codecFactory Creates the decoder, e.g. {@link MediaCodecPort#FACTORY}.
+     */
+    public DecoderWrapper(Executor queue, CodecPort.Factory codecFactory) {
         mQueue = queue;
+        mCodecFactory = codecFactory;
+    }
+
+    public void setListener(Listener listener) {
+        mListener = listener;
+    }
+
+    /**
+     * Hands the frames to render over as buffers, for decoders configured without a
+     * surface. Called right after {@link Listener#onFrameDecoded(long)} returned true.
+     */
+    public void setOutputBufferListener(OutputBufferListener listener) {
+        mOutputBufferListener = listener;
+    }
+
+    /**
+     * Limits decoding to the frames presenting in [startUs, endUs). Decoding starts at the
+     * sync sample before startUs and stops at the first sync sample from endUs on; frames
+     * outside the range are decoded but not handed to the listener. Must be called before
+     * configure.
+     */
+    public void setTimeRange(long startUs, long endUs) {
+        mStartTimeUs = startUs;
+        mEndTimeUs = endUs;
+    }
+
+    /**
+     * Number of samples read ahead of the decoder. Must be called before configure.
+     */
+    public void setPrefetchDepth(int depth) {
+        mPrefetchDepth = Math.max(1, depth);
+    }
+
+    /**
+     * The read-ahead stage, for its occupancy metrics. Null until configured.
+     */
+    public SamplePrefetcher getPrefetcher() {
+        return mPrefetcher;
+    }
+
+    /**
+     * Name of the decoder, or null until configured.
+     */
+    public String getCodecName() {
+        return mDecoder != null ? mDecoder.getName() : null;
     }
 
     public void configure(MediaExtractor extractor, Surface surface) throws IOException {
@@ -69,60 +194,62 @@ public class DecoderWrapper {
             return;
         }
 
-        mMediaExtractor = extractor;
+        configure(new MediaExtractorSource(extractor), surface);
+    }
+
+    public void configure(SampleSource source, Surface surface) throws IOException {
+        if (source == null) {
+            return;
+        }
 
-        final int trackCount = mMediaExtractor.getTrackCount();
+        mSampleSource = source;
+
+        final int trackCount = mSampleSource.getTrackCount();
         int videoTrackIndex = -1;
         for (int i = 0; i < trackCount; i++) {
-            final MediaFormat trackFormat = mMediaExtractor.getTrackFormat(i);
-            final String mime = trackFormat.getString(MediaFormat.KEY_MIME);
+            final String mime = mSampleSource.getTrackMime(i);
             if (mime.startsWith("video/")) {
                 videoTrackIndex = i;
             }
-            mMediaExtractor.unselectTrack(i);
+            mSampleSource.unselectTrack(i);
         }
 
         if (videoTrackIndex == -1) {
             return;
         }
 
-        mMediaExtractor.selectTrack(videoTrackIndex);
+        mSampleSource.selectTrack(videoTrackIndex);
+        if (mStartTimeUs > 0) {
+            mSampleSource.seekTo(mStartTimeUs, MediaExtractor.SEEK_TO_PREVIOUS_SYNC);
+        }
 
-        createDecoder(mMediaExtractor.getTrackFormat(videoTrackIndex), surface);
+        final MediaFormat format = mSampleSource.getTrackFormat(videoTrackIndex);
+        mPrefetcher = new SamplePrefetcher(mSampleSource, mPrefetchDepth,
+                FormatUtils.getMaxSampleSize(format, DEFAULT_SAMPLE_SIZE));
+        final int trackIndex = videoTrackIndex;
+        createDecoder(() -> mSampleSource.getTrackFormat(trackIndex), mSampleSource.getTrackMime(videoTrackIndex),
+                surface);
+        mPrefetcher.start(mPrefetchListener);
     }
 
-    private void createDecoder(MediaFormat trackFormat, Surface surface) throws IOException {
+    private void onSamplesAvailable() {
+        mQueue.execute(mExecuteRunnable);
+    }
+
+    private void createDecoder(CodecTuning.FormatSource trackFormat, String mimeType, Surface surface) throws IOException {
         Log.d(TAG, "createDecoder");
-        final String mimeType = trackFormat.getString(MediaFormat.KEY_MIME);
-
-        mDecoder = MediaCodec.createDecoderByType(mimeType);
-            mMediaCodecCallback = Utils.hasLollipop()
-                    ? (new ZMediaCodeCallbackV21(mDecoder))
-                    : (new ZMediaCodecCallbackPreV21(mDecoder));
-//        mDecoder.setCallback(new MediaCodec.Callback() {
-//            @Override
-//            public void onInputBufferAvailable(@NonNull MediaCodec codec, int index) {
-//                Log.d(TAG, "onInputBufferAvailable");
-//                DecoderWrapper.this.onInputBufferAvailable(codec, index);
-//            }
-//
-//            @Override
-//            public void onOutputBufferAvailable(@NonNull MediaCodec codec, int index, @NonNull MediaCodec.BufferInfo info) {
-//                DecoderWrapper.this.onOutputBufferAvailable(codec, index, info);
-//            }
-//
-//            @Override
-//            public void onError(@NonNull MediaCodec codec, @NonNull MediaCodec.CodecException e) {
-//
-//            }
-//
-//            @Override
-//            public void onOutputFormatChanged(@NonNull MediaCodec codec, @NonNull MediaFormat format) {
-//
-//            }
-//        });
-        mDecoder.configure(trackFormat, surface, null, 0);
+        mInputDone = false;
+        mEndOfStreamPending = false;
+        mOutputFormat = null;
+        mDecoder = mCodecFactory.createDecoder(mimeType);
+        // Offline: decode as fast as possible rather than at playback pace.
+        CodecTuning.configure(mDecoder, trackFormat, surface, 0, mCodecCallback);
         mDecoder.start();
+
+        final int bufferCount = mDecoder.getInputBufferCount();
+        if (bufferCount > 0) {
+            mInputBufferIndices.ensureCapacity(bufferCount);
+        }
     }
 
     private String getTag() {
@@ -132,8 +259,8 @@ public class DecoderWrapper {
         return mTag;
     }
 
-    private void onInputBufferAvailable(@NonNull final MediaCodec codec, final int index) {
-        mQueue.post(() -> {
+    private void onInputBufferAvailable(@NonNull final CodecPort codec, final int index) {
+        mQueue.execute(() -> {
             if (codec != mDecoder) {
                 return;
             }
@@ -145,53 +272,118 @@ public class DecoderWrapper {
     public void execute() {
         int index;
         ByteBuffer buffer;
-        while (!mInputBufferIndices.isEmpty()) {
-            index = mInputBufferIndices.poll();
-            buffer = getInputBuffer(index);
-            int size = mMediaExtractor.readSampleData(buffer, 0);
-            if (size == -1) {
-                release();
+        while (mDecoder != null && !mInputDone && !mInputBufferIndices.isEmpty()) {
+            // Called again by the prefetcher once it has read something.
+            if (!mPrefetcher.hasSample() && !mPrefetcher.isEndOfStream()) {
+                return;
+            }
+
+            index = mInputBufferIndices.remove();
+            if (mPrefetcher.isEndOfStream() || (mEndTimeUs != Long.MAX_VALUE && isPastEnd())) {
+                // Let the decoder drain the frames it still holds before it's released.
+                Log.d(TAG, "execute(): end of input, " + mPrefetcher);
+                mInputDone = true;
+                tryQueueInputBuffer(mDecoder, index, 0, 0, 0, MediaCodec.BUFFER_FLAG_END_OF_STREAM);
                 break;
             }
-            tryQueueInputBuffer(mDecoder, index, 0, size, mMediaExtractor.getSampleTime(), mMediaExtractor.getSampleFlags());
+
+            buffer = mDecoder.getInputBuffer(index);
+            int size = mPrefetcher.readSampleData(buffer, 0);
+            // Sample flags aren't buffer flags: a partial frame would read as the end of stream.
+            tryQueueInputBuffer(mDecoder, index, 0, size, mPrefetcher.getSampleTime(), 0);
+            mPrefetcher.advance();
         }
     }
 
-    private void onOutputBufferAvailable(@NonNull final MediaCodec codec, final int index, @NonNull final MediaCodec.BufferInfo info) {
-        mQueue.post(() -> {
+    /**
+     * Every frame presenting before the end time depends on samples before the next sync
+     * sample only, so the input can stop there.
+     */
+    private boolean isPastEnd() {
+        return mPrefetcher.getSampleTime() >= mEndTimeUs
+                && (mPrefetcher.getSampleFlags() & MediaExtractor.SAMPLE_FLAG_SYNC) != 0;
+    }
+
+    private void onOutputBufferAvailable(@NonNull final CodecPort codec, final int index, @NonNull final SampleInfo info) {
+        mQueue.execute(() -> {
             if (codec != mDecoder) {
                 return;
             }
 
-            tryReleaseOutputBuffer(codec, index, true);
+            if (index >= mOutputInfos.length) {
+                mOutputInfos = Arrays.copyOf(mOutputInfos, Math.max(index + 1, mOutputInfos.length * 2));
+            }
+            mOutputInfos[index] = info;
+            mOutputBufferIndices.add(index);
+            drainOutput();
         });
     }
 
-    public void release() {
-        releaseCodecAndCallback();
-        mMediaExtractor = null;
-    }
+    /**
+     * Hands pending output buffers to the listener for as long as it can take them. Must be
+     * called on the queue again once {@link Listener#canRenderFrame()} may have changed.
+     */
+    public void drainOutput() {
+        int index;
+        SampleInfo info;
+        while (mDecoder != null && (mEndOfStreamPending || !mOutputBufferIndices.isEmpty())) {
+            if (mListener != null && !mListener.canRenderFrame()) {
+                return;
+            }
 
-    private void releaseCodecAndCallback() {
-        if (mMediaCodecCallback != null) {
-            mMediaCodecCallback.stop();
-        }
+            if (mEndOfStreamPending) {
+                mEndOfStreamPending = false;
+                mListener.onEndOfStream();
+                return;
+            }
 
-        releaseCodec();
+            index = mOutputBufferIndices.remove();
+            info = mOutputInfos[index];
+            mOutputInfos[index] = null;
+
+            final boolean endOfStream = info.isEndOfStream();
+            final boolean render = info.size > 0
+                    && info.presentationTimeUs >= mStartTimeUs && info.presentationTimeUs < mEndTimeUs
+                    && (mListener == null || mListener.onFrameDecoded(info.presentationTimeUs));
+            if (render && mOutputBufferListener != null) {
+                handOverOutputBuffer(index, info);
+            }
+            tryReleaseOutputBuffer(mDecoder, index, render && mOutputBufferListener == null);
 
-        if (mMediaCodecCallback != null) {
-            try {
-                mMediaCodecCallback.join();
-            } catch (InterruptedException e) {
-            } finally {
-                mMediaCodecCallback = null;
+            if (endOfStream && mListener != null) {
+                if (render) {
+                    mEndOfStreamPending = true;
+                } else {
+                    mListener.onEndOfStream();
+                }
             }
         }
     }
 
+    private void handOverOutputBuffer(int index, SampleInfo info) {
+        final ByteBuffer buffer = getOutputBuffer(index);
+        buffer.limit(info.offset + info.size);
+        buffer.position(info.offset);
+        mOutputBufferListener.onOutputBuffer(buffer, info,
+                mOutputFormat != null ? mOutputFormat : mDecoder.getOutputFormat());
+    }
+
+    public void release() {
+        releaseCodec();
+        mSampleSource = null;
+    }
+
     public void releaseCodec() {
-        mInputBuffers = null;
-        mOutputBuffers = null;
+        // The reader must be done with the source before its owner releases it.
+        if (mPrefetcher != null) {
+            mPrefetcher.release();
+            mPrefetcher = null;
+        }
+
+        mInputBufferIndices.clear();
+        mOutputBufferIndices.clear();
+        Arrays.fill(mOutputInfos, null);
+        mEndOfStreamPending = false;
 
         if (mDecoder == null) {
             return;
@@ -206,29 +398,11 @@ public class DecoderWrapper {
         }
     }
 
-    private ByteBuffer getInputBuffer(int index) {
-        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.LOLLIPOP) {
-            return mDecoder.getInputBuffer(index);
-        }
-
-        if (mInputBuffers == null) {
-            mInputBuffers = mDecoder.getInputBuffers();
-        }
-        return mInputBuffers[index];
-    }
-
     protected ByteBuffer getOutputBuffer(int index) {
-        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.LOLLIPOP) {
-            return mDecoder.getOutputBuffer(index);
-        }
-
-        if (mOutputBuffers == null) {
-            mOutputBuffers = mDecoder.getOutputBuffers();
-        }
-        return mOutputBuffers[index];
+        return mDecoder.getOutputBuffer(index);
     }
 
-    protected void tryQueueInputBuffer(MediaCodec codec,
+    protected void tryQueueInputBuffer(CodecPort codec,
                                        int index,
                                        int offset,
                                        int size,
@@ -246,7 +420,7 @@ public class DecoderWrapper {
         }
     }
 
-    private void tryReleaseOutputBuffer(MediaCodec codec, int index, boolean render) {
+    private void tryReleaseOutputBuffer(CodecPort codec, int index, boolean render) {
         if (codec == null) {
             return;
         }
@@ -259,179 +433,39 @@ public class DecoderWrapper {
         }
     }
 
-    @TargetApi(21)
-    protected void tryReleaseOutputBuffer(MediaCodec codec, int index, long presentationNs) {
-        if (codec == null) {
-            return;
-        }
-
-        try {
-            codec.releaseOutputBuffer(index, presentationNs);
-        } catch (IllegalStateException e) {
-            Log.e(getTag(), e.toString());
-            e.printStackTrace();
-        }
-    }
-
-    /**
-     * {@link ZMediaCodecCallback}
-     */
-    public interface ZMediaCodecCallback {
-
-        void onInputBufferAvailable(@NonNull MediaCodec codec, final int index);
-
-        void onOutputBufferAvailable(@NonNull MediaCodec codec, int index, @NonNull MediaCodec.BufferInfo info);
-
-        void onOutputFormatChanged(@NonNull MediaCodec codec, @NonNull MediaFormat format);
-
-        void onError(@NonNull MediaCodec codec, @NonNull MediaCodec.CodecException e);
-
-        void start();
-
-        void join() throws InterruptedException;
-
-        void stop();
-    }
-
     /**
-     * {@link ZMediaCodeCallbackV21}
+     * {@link Listener}. Called on the queue.
      */
-    @TargetApi(21)
-    private final class ZMediaCodeCallbackV21 extends MediaCodec.Callback implements ZMediaCodecCallback {
-
-        public ZMediaCodeCallbackV21(MediaCodec codec) {
-            codec.setCallback(this);
-        }
-
-        @Override
-        public void onInputBufferAvailable(@NonNull MediaCodec codec, int index) {
-            DecoderWrapper.this.onInputBufferAvailable(codec, index);
-        }
-
-        @Override
-        public void onOutputBufferAvailable(@NonNull MediaCodec codec, int index, @NonNull MediaCodec.BufferInfo info) {
-            DecoderWrapper.this.onOutputBufferAvailable(codec, index, info);
-        }
+    public interface Listener {
 
-        @Override
-        public void onOutputFormatChanged(@NonNull MediaCodec codec, @NonNull MediaFormat format) {
-        }
-
-        @Override
-        public void onError(@NonNull MediaCodec codec, @NonNull MediaCodec.CodecException e) {
-        }
+        /**
+         * @return whether the next decoded buffer may be handed over now. When false, the
+         * buffers stay in the decoder until {@link #drainOutput()} is called again.
+         */
+        boolean canRenderFrame();
 
-        @Override
-        public void start() {
-        }
+        /**
+         * @return whether the frame should be rendered to the output surface.
+         */
+        boolean onFrameDecoded(long presentationTimeUs);
 
-        @Override
-        public void join() throws InterruptedException {
-        }
+        void onEndOfStream();
 
-        @Override
-        public void stop() {
-        }
+        /**
+         * The decoder failed and has been released; no more frames will come.
+         */
+        void onError(Exception e);
     }
 
     /**
-     * {@link ZMediaCodecCallbackPreV21}
+     * {@link OutputBufferListener}. Called on the queue.
      */
-    private final class ZMediaCodecCallbackPreV21 implements ZMediaCodecCallback {
-
-        private final Thread mInputThread;
-
-        private final Thread mOutputThread;
-
-        private final WeakReference<MediaCodec> mCodecRef;
-
-        public ZMediaCodecCallbackPreV21(MediaCodec codec) {
-            mCodecRef = new WeakReference<>(codec);
-
-            mInputThread = new Thread() {
-                @Override
-                public void run() {
-                    while (!isInterrupted()) {
-                        try {
-                            MediaCodec codec = mCodecRef.get();
-                            if (codec == null) {
-                                break;
-                            }
-
-                            int index = codec.dequeueInputBuffer(-1);
-                            if (index >= 0) {
-                                onInputBufferAvailable(codec, index);
-                            }
-                        } catch (IllegalStateException e) {
-                            break;
-                        }
-                    }
-                }
-            };
-
-            mOutputThread = new Thread() {
-                @Override
-                public void run() {
-                    while (!isInterrupted()) {
-                        try {
-                            MediaCodec codec = mCodecRef.get();
-                            if (codec == null) {
-                                break;
-                            }
-
-                            MediaCodec.BufferInfo info = new MediaCodec.BufferInfo();
-                            int index = codec.dequeueOutputBuffer(info, -1);
-                            if (index == MediaCodec.INFO_OUTPUT_FORMAT_CHANGED) {
-                                onOutputFormatChanged(codec, codec.getOutputFormat());
-                            } else if (index >= 0) {
-                                onOutputBufferAvailable(codec, index, info);
-                            }
-                        } catch (IllegalStateException | IllegalArgumentException e) {
-                            break;
-                        }
-                    }
-                }
-            };
-        }
-
-        @Override
-        public void onInputBufferAvailable(@NonNull MediaCodec codec, int index) {
-            DecoderWrapper.this.onInputBufferAvailable(codec, index);
-        }
-
-        @Override
-        public void onOutputBufferAvailable(@NonNull MediaCodec codec, int index, @NonNull MediaCodec.BufferInfo info) {
-            DecoderWrapper.this.onOutputBufferAvailable(codec, index, info);
-        }
-
-        @Override
-        public void onOutputFormatChanged(@NonNull MediaCodec codec, @NonNull MediaFormat format) {
-        }
-
-        @Override
-        public void onError(@NonNull MediaCodec codec, @NonNull MediaCodec.CodecException e) {
-        }
-
-        @Override
-        public void start() {
-            mInputThread.start();
-            mOutputThread.start();
-        }
+    public interface OutputBufferListener {
 
-        @Override
-        public void join() throws InterruptedException {
-            mInputThread.join();
-            mOutputThread.join();
-        }
-
-        @Override
-        public void stop() {
-            if (mInputThread.isAlive()) {
-                mInputThread.interrupt();
-            }
-            if (mOutputThread.isAlive()) {
-                mOutputThread.interrupt();
-            }
-        }
+        /**
+         * @param buffer Decoded frame, from position to limit. Only valid until this returns.
+         * @param format Output format of the decoder, which tells how the frame is laid out.
+         */
+        void onOutputBuffer(ByteBuffer buffer, SampleInfo info, MediaFormat format);
     }
 }
@@ -0,0 +1,330 @@
+package com.vng.videofilter.watermark;
+
+import android.media.MediaExtractor;
+import android.media.MediaMuxer;
+import android.net.Uri;
+import android.os.Handler;
+import android.os.HandlerThread;
+import android.os.SystemClock;
+import android.util.Log;
+
+import com.vng.videofilter.App;
+import com.vng.videofilter.codec.MediaExtractorSource;
+import com.vng.videofilter.codec.MediaMuxerPort;
+import com.vng.videofilter.codec.MuxerWrapper;
+import com.vng.videofilter.codec.SegmentPlanner.Segment;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Copyright (C) 2017, VNG Corporation.
+ * <p>
+ * Transcodes the segments of a video track in parallel, one {@link WatermarkCodecWrapper}
+ * per segment, each with its own codecs, GL context and thread. At most a given number of
+ * segments run at a time; the others wait for a free slot. Every segment is written to its
+ * own file, to be stitched once all of them are done.
+ *
+ * @author namnt4
+ * @since 18/10/2026
+ */
+public class SegmentTranscoder {
+    private static final String TAG = SegmentTranscoder.class.getSimpleName();
+
+    private final Uri mSourceUri;
+
+    private final int mVideoTrackIndex;
+
+    private final WatermarkProvider mWatermarkProvider;
+
+    private final Handler mCallbackQueue;
+
+    private final Listener mListener;
+
+    private final List<SegmentJob> mJobs;
+
+    private final int mMaxConcurrentJobs;
+
+    private WatermarkSchedule mSchedule = WatermarkSchedule.always();
+
+    private int mRotationDegrees;
+
+    private boolean mKeepCompletedFiles;
+
+    private int mNextJob;
+
+    private int mRemainingJobs;
+
+    private long mStartTimeMs;
+
+    private boolean mFailed;
+
+    /**
+     * @param outputDir         Where the segment files are written.
+     * @param maxConcurrentJobs Number of segments transcoded at the same time.
+     * @param callbackQueue     Queue the listener is called on.
+     */
+    public SegmentTranscoder(Uri sourceUri,
+                             int videoTrackIndex,
+                             List<Segment> segments,
+                             File outputDir,
+                             WatermarkProvider watermarkProvider,
+                             int maxConcurrentJobs,
+                             Handler callbackQueue,
+                             Listener listener) {
+        mSourceUri = sourceUri;
+        mMaxConcurrentJobs = Math.max(1, maxConcurrentJobs);
+        mVideoTrackIndex = videoTrackIndex;
+        mWatermarkProvider = watermarkProvider;
+        mCallbackQueue = callbackQueue;
+        mListener = listener;
+
+        mJobs = new ArrayList<>(segments.size());
+        for (Segment segment : segments) {
+            mJobs.add(new SegmentJob(segment, new File(outputDir, "segment_" + segment.index + ".mp4")));
+        }
+    }
+
+    /**
+     * Must be called before {@link #start()}.
+     */
+    public void setSchedule(WatermarkSchedule schedule) {
+        mSchedule = schedule;
+    }
+
+    /**
+     * Sets the clockwise rotation the stitched output is played with, for the watermark to
+     * show upright in the bottom right corner. Must be called before {@link #start()}.
+     */
+    public void setRotation(int degrees) {
+        mRotationDegrees = degrees;
+    }
+
+    /**
+     * Keeps the files of the completed segments on release, e.g. as checkpoints of a job
+     * that can be resumed. Must be called before {@link #start()}.
+     */
+    public void setKeepCompletedFiles(boolean keep) {
+        mKeepCompletedFiles = keep;
+    }
+
+    public List<Segment> getSegments() {
+        final List<Segment> segments = new ArrayList<>(mJobs.size());
+        for (SegmentJob job : mJobs) {
+            segments.add(job.mSegment);
+        }
+        return segments;
+    }
+
+    public List<File> getSegmentFiles() {
+        final List<File> files = new ArrayList<>(mJobs.size());
+        for (SegmentJob job : mJobs) {
+            files.add(job.mFile);
+        }
+        return files;
+    }
+
+    /**
+     * Must be called on the callback queue.
+     */
+    public void start() {
+        mRemainingJobs = mJobs.size();
+        mStartTimeMs = SystemClock.elapsedRealtime();
+        while (mNextJob < Math.min(mMaxConcurrentJobs, mJobs.size())) {
+            mJobs.get(mNextJob++).start();
+        }
+    }
+
+    /**
+     * Stops the segments still running and deletes the segment files, except for completed
+     * ones if they're kept. Must be called on the callback queue.
+     */
+    public void release() {
+        for (SegmentJob job : mJobs) {
+            job.release();
+        }
+    }
+
+    private void onSegmentProgress() {
+        int framesEncoded = 0;
+        for (SegmentJob job : mJobs) {
+            framesEncoded += job.mFramesEncoded;
+        }
+
+        final long elapsedMs = Math.max(1, SystemClock.elapsedRealtime() - mStartTimeMs);
+        mListener.onProgress(framesEncoded, framesEncoded * 1000f / elapsedMs);
+    }
+
+    private void onSegmentComplete(SegmentJob job) {
+        Log.d(TAG, "onSegmentComplete(): " + job.mSegment + ", " + job.mFramesEncoded + " frames");
+        if (mFailed) {
+            return;
+        }
+
+        job.mCompleted = true;
+        onSegmentProgress();
+        mListener.onSegmentComplete(job.mSegment, job.mFile);
+        if (--mRemainingJobs == 0) {
+            mListener.onComplete();
+        } else if (mNextJob < mJobs.size()) {
+            mJobs.get(mNextJob++).start();
+        }
+    }
+
+    private void onSegmentError(SegmentJob job, Exception e) {
+        Log.e(TAG, "onSegmentError(): " + job.mSegment + ", " + e);
+        if (mFailed) {
+            return;
+        }
+
+        mFailed = true;
+        mListener.onError(e);
+    }
+
+    /**
+     * One segment, transcoded on its own thread.
+     */
+    private final class SegmentJob implements WatermarkCodecWrapper.Listener {
+
+        private final Segment mSegment;
+
+        private final File mFile;
+
+        private HandlerThread mThread;
+
+        private Handler mQueue;
+
+        private MediaExtractor mExtractor;
+
+        private MuxerWrapper mMuxer;
+
+        private WatermarkCodecWrapper mCodecWrapper;
+
+        // Only touched on the callback queue.
+        private int mFramesEncoded;
+
+        private boolean mCompleted;
+
+        private SegmentJob(Segment segment, File file) {
+            mSegment = segment;
+            mFile = file;
+        }
+
+        private void start() {
+            mThread = new HandlerThread("watermark_segment_" + mSegment.index);
+            mThread.start();
+            mQueue = new Handler(mThread.getLooper());
+            mQueue.post(this::startInternal);
+        }
+
+        private void startInternal() {
+            mExtractor = new MediaExtractor();
+            try {
+                mExtractor.setDataSource(App.getInstance(), mSourceUri, null);
+                mMuxer = new MuxerWrapper(new MediaMuxerPort(new MediaMuxer(mFile.getPath(),
+                        MediaMuxer.OutputFormat.MUXER_OUTPUT_MPEG_4)), 1);
+                mCodecWrapper = new WatermarkCodecWrapper(new MediaExtractorSource(mExtractor), mMuxer,
+                        mExtractor.getTrackFormat(mVideoTrackIndex), mQueue, mWatermarkProvider,
+                        mSegment.startUs, mSegment.endUs, this);
+                mCodecWrapper.setSchedule(mSchedule);
+                mCodecWrapper.setRotation(mRotationDegrees);
+            } catch (IOException e) {
+                onError(e);
+            }
+        }
+
+        @Override
+        public void onProgress(int framesEncoded, long presentationTimeUs, float framesPerSecond) {
+            mCallbackQueue.post(() -> {
+                mFramesEncoded = framesEncoded;
+                onSegmentProgress();
+            });
+        }
+
+        @Override
+        public void onComplete(int framesEncoded, float framesPerSecond) {
+            // Finalize the file before anyone reads it.
+            final boolean finished = releaseInternal();
+            mThread.quitSafely();
+            mCallbackQueue.post(() -> {
+                mFramesEncoded = framesEncoded;
+                if (finished) {
+                    onSegmentComplete(this);
+                } else {
+                    onSegmentError(this, new IOException("Could not finalize " + mFile));
+                }
+            });
+        }
+
+        @Override
+        public void onError(Exception e) {
+            releaseInternal();
+            mThread.quitSafely();
+            mCallbackQueue.post(() -> onSegmentError(this, e));
+        }
+
+        private boolean releaseInternal() {
+            if (mCodecWrapper != null) {
+                mCodecWrapper.release();
+                mCodecWrapper = null;
+            }
+
+            boolean finished = false;
+            if (mMuxer != null) {
+                try {
+                    mMuxer.release();
+                    finished = true;
+                } catch (Exception e) {
+                    e.printStackTrace();
+                }
+                mMuxer = null;
+            }
+
+            if (mExtractor != null) {
+                mExtractor.release();
+                mExtractor = null;
+            }
+            return finished;
+        }
+
+        private void release() {
+            if (mThread == null) {
+                return;
+            }
+
+            // Codecs and GL objects belong to the segment thread.
+            mQueue.post(this::releaseInternal);
+            mThread.quitSafely();
+            try {
+                mThread.join();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            mThread = null;
+
+            final boolean keep = mKeepCompletedFiles && mCompleted;
+            if (!keep && mFile.exists() && !mFile.delete()) {
+                Log.w(TAG, "release(): could not delete " + mFile);
+            }
+        }
+    }
+
+    /**
+     * {@link Listener}. Called on the callback queue.
+     */
+    public interface Listener {
+
+        void onProgress(int framesEncoded, float framesPerSecond);
+
+        /**
+         * The file of the segment is finalized.
+         */
+        void onSegmentComplete(Segment segment, File file);
+
+        void onComplete();
+
+        void onError(Exception e);
+    }
+}
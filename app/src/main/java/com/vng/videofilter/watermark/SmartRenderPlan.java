@@ -0,0 +1,118 @@
+package com.vng.videofilter.watermark;
+
+import com.vng.videofilter.codec.SegmentPlanner.Segment;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Copyright (C) 2017, VNG Corporation.
+ * <p>
+ * Splits a video track into runs of GOPs: runs the watermark shows up in are re-encoded, the
+ * others are copied from the source as they are.
+ *
+ * @author namnt4
+ * @since 18/10/2026
+ */
+public final class SmartRenderPlan {
+
+    private final List<Segment> mRuns;
+
+    private final boolean[] mReencoded;
+
+    private SmartRenderPlan(List<Segment> runs, boolean[] reencoded) {
+        mRuns = runs;
+        mReencoded = reencoded;
+    }
+
+    /**
+     * @param gops One segment per GOP, in order, e.g. from
+     *             {@link com.vng.videofilter.codec.SegmentPlanner#splitAtSyncSamples}.
+     */
+    public static SmartRenderPlan create(List<Segment> gops, WatermarkSchedule schedule) {
+        return create(gops, schedule, 0, Long.MAX_VALUE);
+    }
+
+    /**
+     * Plans only [startUs, endUs) of the track. The GOPs cut by either end are re-encoded, as
+     * copying them would start or end the output off a sync sample.
+     */
+    public static SmartRenderPlan create(List<Segment> gops, WatermarkSchedule schedule, long startUs, long endUs) {
+        final List<Segment> runs = new ArrayList<>();
+        final boolean[] reencoded = new boolean[gops.size()];
+
+        long runStartUs = -1;
+        long runEndUs = -1;
+        boolean runReencoded = false;
+        for (Segment gop : gops) {
+            final long gopStartUs = Math.max(gop.startUs, startUs);
+            final long gopEndUs = Math.min(gop.endUs, endUs);
+            if (gopStartUs >= gopEndUs) {
+                continue;
+            }
+
+            final boolean cut = gopStartUs != gop.startUs || gopEndUs != gop.endUs;
+            final boolean visible = cut || schedule.intersects(gopStartUs, gopEndUs);
+            if (runStartUs != -1 && visible != runReencoded) {
+                reencoded[runs.size()] = runReencoded;
+                runs.add(new Segment(runs.size(), runStartUs, runEndUs));
+                runStartUs = -1;
+            }
+            if (runStartUs == -1) {
+                runStartUs = gopStartUs;
+            }
+            runEndUs = gopEndUs;
+            runReencoded = visible;
+        }
+        if (runStartUs != -1) {
+            reencoded[runs.size()] = runReencoded;
+            runs.add(new Segment(runs.size(), runStartUs, runEndUs));
+        }
+
+        final boolean[] runReencodedFlags = new boolean[runs.size()];
+        System.arraycopy(reencoded, 0, runReencodedFlags, 0, runs.size());
+        return new SmartRenderPlan(runs, runReencodedFlags);
+    }
+
+    /**
+     * Consecutive runs alternate between re-encoded and copied.
+     */
+    public List<Segment> getRuns() {
+        return mRuns;
+    }
+
+    public boolean isReencoded(int runIndex) {
+        return mReencoded[runIndex];
+    }
+
+    public List<Segment> getReencodedRuns() {
+        final List<Segment> runs = new ArrayList<>();
+        for (Segment run : mRuns) {
+            if (mReencoded[run.index]) {
+                runs.add(run);
+            }
+        }
+        return runs;
+    }
+
+    /**
+     * Whether anything can be copied at all; if not, a plain transcode does the same work.
+     */
+    public boolean hasCopiedRuns() {
+        for (boolean reencoded : mReencoded) {
+            if (!reencoded) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    @Override
+    public String toString() {
+        final StringBuilder builder = new StringBuilder("SmartRenderPlan{");
+        for (Segment run : mRuns) {
+            builder.append(mReencoded[run.index] ? " encode " : " copy ").append(run);
+        }
+        return builder.append('}').toString();
+    }
+}
@@ -0,0 +1,219 @@
+package com.vng.videofilter.watermark;
+
+import android.util.Log;
+
+import com.vng.videofilter.codec.SegmentPlanner.Segment;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Properties;
+
+/**
+ * Copyright (C) 2017, VNG Corporation.
+ * <p>
+ * Progress of a resumable job: the GOP aligned segments the video track is transcoded in,
+ * and which of them are already written to their segment file. A segment is only marked
+ * done once its file is finalized, so a restarted job picks up at the first GOP that isn't
+ * in a complete file, and the segment files are stitched once all of them are there.
+ * <p>
+ * Kept in a properties file next to the segment files. It's only trusted for the same job,
+ * as identified by a key the caller builds from the source and the settings.
+ *
+ * @author namnt4
+ * @since 18/10/2026
+ */
+public class TranscodeCheckpoint {
+
+    private static final String TAG = TranscodeCheckpoint.class.getSimpleName();
+
+    private static final String FILE_NAME = "checkpoint.properties";
+
+    // Bumped whenever the file layout changes.
+    private static final int VERSION = 1;
+
+    private static final String KEY_VERSION = "version";
+    private static final String KEY_JOB = "job";
+    private static final String KEY_COUNT = "count";
+
+    private final File mDir;
+
+    private final String mJobKey;
+
+    private final List<Segment> mSegments;
+
+    private final boolean[] mDone;
+
+    private TranscodeCheckpoint(File dir, String jobKey, List<Segment> segments, boolean[] done) {
+        mDir = dir;
+        mJobKey = jobKey;
+        mSegments = Collections.unmodifiableList(new ArrayList<>(segments));
+        mDone = done;
+    }
+
+    /**
+     * Starts a checkpoint over, dropping whatever was in the directory.
+     */
+    public static TranscodeCheckpoint create(File dir, String jobKey, List<Segment> segments) {
+        delete(dir);
+        if (!dir.isDirectory() && !dir.mkdirs()) {
+            Log.w(TAG, "create(): could not create " + dir);
+        }
+
+        final TranscodeCheckpoint checkpoint = new TranscodeCheckpoint(dir, jobKey, segments,
+                new boolean[segments.size()]);
+        checkpoint.save();
+        return checkpoint;
+    }
+
+    /**
+     * @return null if there is no checkpoint for that job in the directory.
+     */
+    public static TranscodeCheckpoint load(File dir, String jobKey) {
+        final File file = new File(dir, FILE_NAME);
+        if (!file.isFile()) {
+            return null;
+        }
+
+        final Properties properties = new Properties();
+        try (InputStream in = new FileInputStream(file)) {
+            properties.load(in);
+        } catch (IOException e) {
+            Log.w(TAG, "load(): " + e);
+            return null;
+        }
+
+        if (!Integer.toString(VERSION).equals(properties.getProperty(KEY_VERSION))
+                || !jobKey.equals(properties.getProperty(KEY_JOB))) {
+            return null;
+        }
+
+        try {
+            final int count = Integer.parseInt(properties.getProperty(KEY_COUNT, "0"));
+            final List<Segment> segments = new ArrayList<>(count);
+            final boolean[] done = new boolean[count];
+            for (int i = 0; i < count; i++) {
+                segments.add(new Segment(i, Long.parseLong(properties.getProperty(i + ".start")),
+                        Long.parseLong(properties.getProperty(i + ".end"))));
+                // A segment whose file went missing is transcoded again.
+                done[i] = Boolean.parseBoolean(properties.getProperty(i + ".done"))
+                        && getSegmentFile(dir, i).isFile();
+            }
+            return new TranscodeCheckpoint(dir, jobKey, segments, done);
+        } catch (RuntimeException e) {
+            Log.w(TAG, "load(): " + e);
+            return null;
+        }
+    }
+
+    /**
+     * Deletes a checkpoint and its segment files.
+     */
+    public static void delete(File dir) {
+        final File[] files = dir.listFiles();
+        if (files != null) {
+            for (File file : files) {
+                if (!file.delete()) {
+                    Log.w(TAG, "delete(): could not delete " + file);
+                }
+            }
+        }
+        if (dir.exists() && !dir.delete()) {
+            Log.w(TAG, "delete(): could not delete " + dir);
+        }
+    }
+
+    /**
+     * Where a segment is written, by its index. Matches the files {@link SegmentTranscoder}
+     * writes into the checkpoint directory.
+     */
+    public static File getSegmentFile(File dir, int index) {
+        return new File(dir, "segment_" + index + ".mp4");
+    }
+
+    public File getDirectory() {
+        return mDir;
+    }
+
+    public List<Segment> getSegments() {
+        return mSegments;
+    }
+
+    public List<File> getSegmentFiles() {
+        final List<File> files = new ArrayList<>(mSegments.size());
+        for (Segment segment : mSegments) {
+            files.add(getSegmentFile(mDir, segment.index));
+        }
+        return files;
+    }
+
+    /**
+     * Segments that still have to be transcoded, in order.
+     */
+    public List<Segment> getRemainingSegments() {
+        final List<Segment> remaining = new ArrayList<>();
+        for (Segment segment : mSegments) {
+            if (!mDone[segment.index]) {
+                remaining.add(segment);
+            }
+        }
+        return remaining;
+    }
+
+    /**
+     * End of the work already saved, i.e. where a restarted job resumes; -1 if nothing is.
+     */
+    public long getResumeTimeUs() {
+        for (Segment segment : mSegments) {
+            if (!mDone[segment.index]) {
+                return segment.index > 0 ? segment.startUs : -1;
+            }
+        }
+        return mSegments.isEmpty() ? -1 : mSegments.get(mSegments.size() - 1).endUs;
+    }
+
+    /**
+     * Records that the file of a segment is complete, and saves the checkpoint.
+     */
+    public void markDone(int index) {
+        mDone[index] = true;
+        save();
+    }
+
+    private void save() {
+        final Properties properties = new Properties();
+        properties.setProperty(KEY_VERSION, Integer.toString(VERSION));
+        properties.setProperty(KEY_JOB, mJobKey);
+        properties.setProperty(KEY_COUNT, Integer.toString(mSegments.size()));
+        for (Segment segment : mSegments) {
+            properties.setProperty(segment.index + ".start", Long.toString(segment.startUs));
+            properties.setProperty(segment.index + ".end", Long.toString(segment.endUs));
+            properties.setProperty(segment.index + ".done", Boolean.toString(mDone[segment.index]));
+        }
+
+        // Write aside and rename, so being killed midway never leaves half a file behind.
+        final File file = new File(mDir, FILE_NAME);
+        final File temp = new File(mDir, FILE_NAME + ".tmp");
+        try (OutputStream out = new FileOutputStream(temp)) {
+            properties.store(out, null);
+        } catch (IOException e) {
+            Log.w(TAG, "save(): " + e);
+            return;
+        }
+        if (!temp.renameTo(file)) {
+            Log.w(TAG, "save(): could not write " + file);
+        }
+    }
+
+    @Override
+    public String toString() {
+        return "TranscodeCheckpoint{" + mDir.getName() + ", " + getRemainingSegments().size() + " of "
+                + mSegments.size() + " segments left}";
+    }
+}
@@ -0,0 +1,394 @@
+package com.vng.videofilter.watermark;
+
+import android.app.ActivityManager;
+import android.content.Context;
+import android.media.MediaExtractor;
+import android.media.MediaFormat;
+import android.net.Uri;
+import android.os.Handler;
+import android.os.HandlerThread;
+import android.util.Log;
+
+import com.vng.videofilter.App;
+import com.vng.videofilter.codec.CodecLimits;
+import com.vng.videofilter.codec.FormatUtils;
+import com.vng.videofilter.codec.SamplePrefetcher;
+
+import java.io.File;
+import java.io.IOException;
+import java.text.SimpleDateFormat;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Date;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * Copyright (C) 2017, VNG Corporation.
+ * <p>
+ * Watermarks many files, each with its own {@link WatermarkGenerator}. Jobs run side by side
+ * as long as the device has codec instances for them and their expected memory use fits in
+ * half the free memory; whenever one finishes, the first queued job that fits starts right
+ * away, so the codecs, which {@link com.vng.videofilter.codec.CodecPool} keeps warm between
+ * jobs, don't sit idle.
+ *
+ * @author namnt4
+ * @since 18/10/2026
+ */
+public class WatermarkBatch {
+
+    private static final String TAG = WatermarkBatch.class.getSimpleName();
+
+    // Share of the free memory the jobs may use together.
+    private static final float MEMORY_SHARE = 0.5f;
+
+    // Pictures a job holds at once: decoder output, encoder input and the GL surfaces.
+    private static final int FRAMES_PER_JOB = 16;
+
+    private static final int DEFAULT_SAMPLE_SIZE = 1024 * 1024;
+
+    private final WatermarkProvider mWatermarkProvider;
+
+    private final File mOutputDir;
+
+    private final String mOutputPrefix;
+
+    private final HandlerThread mThread;
+
+    private final Handler mQueue;
+
+    private final List<Job> mJobs = new ArrayList<>();
+
+    private final BatchSlots mSlots = new BatchSlots(0);
+
+    private Listener mListener;
+
+    private boolean mReleased;
+
+    /**
+     * @param outputDir Where the watermarked files are written, one per source.
+     */
+    public WatermarkBatch(WatermarkProvider watermarkProvider, File outputDir) {
+        mWatermarkProvider = watermarkProvider;
+        mOutputDir = outputDir;
+        mOutputPrefix = "watermark_" + new SimpleDateFormat("yyyyMMdd_HHmmss", Locale.US).format(new Date());
+
+        mThread = new HandlerThread("watermark_batch");
+        mThread.start();
+        mQueue = new Handler(mThread.getLooper());
+    }
+
+    /**
+     * @param listener Notified on the batch thread.
+     */
+    public void setListener(Listener listener) {
+        mQueue.post(() -> mListener = listener);
+    }
+
+    /**
+     * Queues a source. It starts as soon as there is room for it.
+     */
+    public void add(Uri sourceUri) {
+        addAll(Collections.singletonList(sourceUri));
+    }
+
+    public void addAll(Collection<Uri> sourceUris) {
+        final List<Uri> uris = new ArrayList<>(sourceUris);
+        mQueue.post(() -> {
+            if (mReleased) {
+                return;
+            }
+
+            if (!mOutputDir.isDirectory() && !mOutputDir.mkdirs()) {
+                Log.w(TAG, "addAll(): could not create " + mOutputDir);
+            }
+
+            for (Uri uri : uris) {
+                final Job job = new Job(mJobs.size(), uri,
+                        new File(mOutputDir, mOutputPrefix + "_" + mJobs.size() + ".mp4").getPath());
+                mJobs.add(job);
+                probe(job);
+            }
+            schedule();
+        });
+    }
+
+    /**
+     * Stops the running jobs, drops the queued ones and quits the batch thread.
+     */
+    public void release() {
+        mQueue.post(() -> {
+            mReleased = true;
+            for (Job job : mJobs) {
+                if (job.mGenerator != null) {
+                    job.mGenerator.release();
+                    job.mGenerator = null;
+                }
+            }
+        });
+        mThread.quitSafely();
+    }
+
+    /**
+     * Reads what a job needs to be scheduled: its size, duration and codecs.
+     */
+    private void probe(Job job) {
+        final MediaExtractor extractor = new MediaExtractor();
+        try {
+            extractor.setDataSource(App.getInstance(), job.mSource, null);
+            for (int i = 0; i < extractor.getTrackCount(); i++) {
+                final MediaFormat format = extractor.getTrackFormat(i);
+                final String mimeType = FormatUtils.getString(format, MediaFormat.KEY_MIME);
+                if (mimeType == null || !mimeType.startsWith("video/")) {
+                    continue;
+                }
+
+                job.mDurationUs = FormatUtils.getLong(format, MediaFormat.KEY_DURATION, 0);
+                job.mFrameRate = FormatUtils.getInteger(format, MediaFormat.KEY_FRAME_RATE, 30);
+                job.mMemory = estimateMemory(FormatUtils.getInteger(format, MediaFormat.KEY_WIDTH),
+                        FormatUtils.getInteger(format, MediaFormat.KEY_HEIGHT),
+                        FormatUtils.getMaxSampleSize(format, DEFAULT_SAMPLE_SIZE));
+                job.mMaxConcurrentJobs = CodecLimits.getMaxCodecPairs(mimeType,
+                        WatermarkCodecWrapper.OUTPUT_MIME_TYPE);
+                return;
+            }
+            job.mError = new IllegalArgumentException("Source has no video track");
+        } catch (IOException e) {
+            job.mError = e;
+        } finally {
+            extractor.release();
+        }
+
+        job.mState = Job.STATE_FAILED;
+        Log.w(TAG, "probe(): " + job.mSource + ", " + job.mError);
+        if (mListener != null) {
+            mListener.onJobComplete(job);
+        }
+    }
+
+    /**
+     * Bytes a job of that size is expected to hold: its pictures and the samples read ahead.
+     */
+    static long estimateMemory(int width, int height, int maxSampleSize) {
+        return (long) width * height * 3 / 2 * FRAMES_PER_JOB
+                + (long) maxSampleSize * SamplePrefetcher.DEFAULT_DEPTH;
+    }
+
+    /**
+     * Starts queued jobs, in order, for as long as they fit.
+     */
+    private void schedule() {
+        if (mReleased) {
+            return;
+        }
+
+        if (mSlots.getRunningJobs() == 0) {
+            // Read once nothing runs, as the memory of running jobs isn't free anymore.
+            mSlots.setMemoryBudget(getMemoryBudget());
+        }
+
+        boolean pending = false;
+        for (Job job : mJobs) {
+            if (job.mState == Job.STATE_RUNNING) {
+                pending = true;
+            } else if (job.mState == Job.STATE_QUEUED) {
+                pending = true;
+                if (mSlots.tryAcquire(job.mMemory, job.mMaxConcurrentJobs)) {
+                    start(job);
+                }
+            }
+        }
+
+        if (!pending && !mJobs.isEmpty() && mListener != null) {
+            mListener.onBatchComplete(Collections.unmodifiableList(mJobs));
+        }
+    }
+
+    private static long getMemoryBudget() {
+        final ActivityManager activityManager = (ActivityManager) App.getInstance()
+                .getSystemService(Context.ACTIVITY_SERVICE);
+        final ActivityManager.MemoryInfo memoryInfo = new ActivityManager.MemoryInfo();
+        activityManager.getMemoryInfo(memoryInfo);
+        return (long) (Math.max(0, memoryInfo.availMem - memoryInfo.threshold) * MEMORY_SHARE);
+    }
+
+    private void start(Job job) {
+        Log.d(TAG, "start(): job " + job.mIndex + ", " + mSlots.getRunningJobs() + " running, "
+                + mSlots.getReservedMemory() / (1024 * 1024) + " MB reserved");
+        job.mState = Job.STATE_RUNNING;
+        job.mGenerator = WatermarkGenerator.with(mWatermarkProvider);
+        job.mGenerator.setListener(new WatermarkGenerator.Listener() {
+            @Override
+            public void onProgress(int framesEncoded, long presentationTimeUs, float framesPerSecond) {
+                mQueue.post(() -> onJobProgress(job, framesEncoded, presentationTimeUs));
+            }
+
+            @Override
+            public void onComplete(String outputPath) {
+                mQueue.post(() -> onJobDone(job, null));
+            }
+
+            @Override
+            public void onError(Exception e) {
+                mQueue.post(() -> onJobDone(job, e));
+            }
+        });
+        job.mGenerator.setOutputPath(job.mOutputPath);
+        job.mGenerator.setSource(job.mSource);
+        job.mGenerator.generate();
+    }
+
+    private void onJobProgress(Job job, int framesEncoded, long presentationTimeUs) {
+        if (mReleased || job.mState != Job.STATE_RUNNING || job.mDurationUs <= 0) {
+            return;
+        }
+
+        // Segments transcoded in parallel don't report a time.
+        final long doneUs = presentationTimeUs >= 0
+                ? presentationTimeUs
+                : framesEncoded * 1000000L / Math.max(1, job.mFrameRate);
+        job.mProgress = Math.min(1f, (float) doneUs / job.mDurationUs);
+        if (mListener != null) {
+            mListener.onProgress(job, getProgress());
+        }
+    }
+
+    private void onJobDone(Job job, Exception e) {
+        if (mReleased || job.mState != Job.STATE_RUNNING) {
+            return;
+        }
+
+        // Hand the slot over before anything else.
+        mSlots.release(job.mMemory);
+        job.mGenerator.release();
+        job.mGenerator = null;
+        job.mState = e == null ? Job.STATE_DONE : Job.STATE_FAILED;
+        job.mError = e;
+        if (e == null) {
+            job.mProgress = 1f;
+        }
+        schedule();
+
+        Log.d(TAG, "onJobDone(): job " + job.mIndex + ", " + (e == null ? "done" : e.toString()));
+        if (mListener != null) {
+            mListener.onJobComplete(job);
+            mListener.onProgress(job, getProgress());
+        }
+    }
+
+    /**
+     * Progress of the whole batch, each job weighted by its duration. Failed jobs count as
+     * done.
+     */
+    private float getProgress() {
+        long totalUs = 0;
+        double doneUs = 0;
+        for (Job job : mJobs) {
+            totalUs += job.mDurationUs;
+            doneUs += job.mState == Job.STATE_FAILED ? job.mDurationUs : job.mProgress * job.mDurationUs;
+        }
+        return totalUs > 0 ? (float) (doneUs / totalUs) : 0f;
+    }
+
+    /**
+     * One source of the batch. Only changes on the batch thread.
+     */
+    public static final class Job {
+
+        public static final int STATE_QUEUED = 0;
+
+        public static final int STATE_RUNNING = 1;
+
+        public static final int STATE_DONE = 2;
+
+        public static final int STATE_FAILED = 3;
+
+        private final int mIndex;
+
+        private final Uri mSource;
+
+        private final String mOutputPath;
+
+        private int mState = STATE_QUEUED;
+
+        private float mProgress;
+
+        private Exception mError;
+
+        private long mDurationUs;
+
+        private int mFrameRate;
+
+        private long mMemory;
+
+        private int mMaxConcurrentJobs = 1;
+
+        private WatermarkGenerator mGenerator;
+
+        private Job(int index, Uri source, String outputPath) {
+            mIndex = index;
+            mSource = source;
+            mOutputPath = outputPath;
+        }
+
+        /**
+         * Position of the job in the batch, in the order sources were added.
+         */
+        public int getIndex() {
+            return mIndex;
+        }
+
+        public Uri getSource() {
+            return mSource;
+        }
+
+        public String getOutputPath() {
+            return mOutputPath;
+        }
+
+        public int getState() {
+            return mState;
+        }
+
+        /**
+         * From 0 to 1.
+         */
+        public float getProgress() {
+            return mProgress;
+        }
+
+        /**
+         * Why the job failed, or null.
+         */
+        public Exception getError() {
+            return mError;
+        }
+
+        @Override
+        public String toString() {
+            return "Job{" + mIndex + ", " + mSource + ", state " + mState + ", " + mProgress + "}";
+        }
+    }
+
+    /**
+     * {@link Listener}. Called on the batch thread.
+     */
+    public interface Listener {
+
+        /**
+         * @param batchProgress Progress of the whole batch, from 0 to 1.
+         */
+        void onProgress(Job job, float batchProgress);
+
+        /**
+         * The job is done or failed, see {@link Job#getState()}.
+         */
+        void onJobComplete(Job job);
+
+        /**
+         * Every job added so far is done or failed.
+         */
+        void onBatchComplete(List<Job> jobs);
+    }
+}
@@ -1,71 +1,395 @@
 package com.vng.videofilter.watermark;
 
 import android.graphics.SurfaceTexture;
-import android.media.MediaExtractor;
 import android.media.MediaFormat;
-import android.media.MediaMuxer;
-import android.opengl.EGL14;
+import android.opengl.GLES20;
 import android.os.Handler;
+import android.os.SystemClock;
 import android.util.Log;
 import android.view.Surface;
 
+import com.vng.videofilter.codec.CodecPool;
+import com.vng.videofilter.codec.CodecProfileStore;
+import com.vng.videofilter.codec.MuxerWrapper;
+import com.vng.videofilter.codec.SampleSource;
+import com.vng.videofilter.codec.SurfaceEncoder;
 import com.vng.videofilter.gles.EglCore;
+import com.vng.videofilter.gles.FullFrameRect;
 import com.vng.videofilter.gles.GlUtil;
-import com.vng.videofilter.util.DispatchQueue;
+import com.vng.videofilter.gles.Texture2dProgram;
+import com.vng.videofilter.gles.WindowSurface;
 
 import java.io.IOException;
-import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicInteger;
 
 /**
  * Copyright (C) 2017, VNG Corporation.
+ * <p>
+ * Decodes the video track into a {@link SurfaceTexture}, draws each frame with the watermark
+ * on top into the input surface of an encoder, and hands the encoded samples to the muxer.
+ * Frame and watermark are sampled by one shader, so each frame takes a single full screen
+ * draw and no blending pass.
+ * <p>
+ * Decoding, rendering and encoding overlap: the decoder keeps filling its output buffers
+ * while a frame is rendered, and the encoder drains on its own thread. Only one decoded
+ * frame at a time is released to the {@link SurfaceTexture} (a second one would overwrite
+ * it), and at most {@link #MAX_FRAMES_IN_FLIGHT} rendered frames may be waiting in the
+ * encoder before the decoder output is held back.
+ * <p>
+ * Must be created on the looper thread of the queue handler, which also becomes the GL thread.
  *
  * @author namnt4
  * @since 27/08/2018
  */
 
-public class WatermarkCodecWrapper implements SurfaceTexture.OnFrameAvailableListener {
+public class WatermarkCodecWrapper implements SurfaceTexture.OnFrameAvailableListener,
+        DecoderWrapper.Listener {
     private static final String TAG = WatermarkCodecWrapper.class.getSimpleName();
 
-    private final MediaMuxer mMuxer;
+    static final String OUTPUT_MIME_TYPE = MediaFormat.MIMETYPE_VIDEO_AVC;
+
+    private static final int MAX_FRAMES_IN_FLIGHT = 4;
+
+    private static final long PROGRESS_INTERVAL_MS = 1000;
+
+    // Shorter jobs are dominated by setup time and say little about codec speed.
+    private static final int MIN_FRAMES_MEASURED = 60;
+
+    // Distance of the watermark from the bottom right corner as played, in pixels.
+    private static final int WATERMARK_MARGIN = 16;
 
 //    private final DispatchQueue mQueue;
 
     private final Handler mQueue;
 
+    private final Listener mListener;
+
+    private final String mInputMimeType;
+
+    private final int mWidth;
+
+    private final int mHeight;
+
     private DecoderWrapper mDecoder;
 
-//    private EglCore mEglCore;
+    private SurfaceEncoder mEncoder;
+
+    private EglCore mEglCore;
+
+    private WindowSurface mInputWindowSurface;
+
+    private FullFrameRect mFullFrame;
+
+    private int mTextureId;
+
+    private int mWatermarkTextureId = -1;
+
+    private int mWatermarkWidth;
+
+    private int mWatermarkHeight;
+
+    private WatermarkSchedule mSchedule = WatermarkSchedule.always();
+
+    private long mTimeOffsetNs;
+
+    private final float[] mTexMatrix = new float[16];
 
     private Surface mSurface;
 
     private SurfaceTexture mSurfaceTexture;
 
-    private CountDownLatch mCountDownLatch;
+    // A decoded frame was released to the SurfaceTexture and hasn't been drawn yet.
+    private boolean mFrameRendering;
+
+    // Frames swapped into the encoder that haven't come out of it yet. Written by both threads.
+    private final AtomicInteger mFramesInFlight = new AtomicInteger();
+
+    private int mFramesRendered;
+
+    private final AtomicInteger mFramesEncoded = new AtomicInteger();
+
+    private volatile long mStartTimeMs;
+
+    // Only touched by the encoder thread.
+    private long mLastProgressTimeMs;
+
+    private boolean mReleased;
+
+    private final Runnable mDrainDecoderRunnable = this::drainDecoder;
+
+    private final Runnable mEncoderDoneRunnable = this::onEncoderDone;
 
-    public WatermarkCodecWrapper(MediaExtractor extractor, MediaMuxer muxer, MediaFormat format, Handler queue) {
-        mMuxer = muxer;
+    private final SurfaceEncoder.Listener mEncoderListener = new SurfaceEncoder.Listener() {
+        @Override
+        public void onFrameEncoded(long presentationTimeUs) {
+            // Only re-check the decoder when this frees the slot it may be waiting for.
+            if (mFramesInFlight.getAndDecrement() == MAX_FRAMES_IN_FLIGHT) {
+                mQueue.post(mDrainDecoderRunnable);
+            }
+
+            final int framesEncoded = mFramesEncoded.incrementAndGet();
+            final long now = SystemClock.elapsedRealtime();
+            if (now - mLastProgressTimeMs >= PROGRESS_INTERVAL_MS) {
+                mLastProgressTimeMs = now;
+                final float fps = getFramesPerSecond(now);
+                mQueue.post(() -> {
+                    if (!mReleased) {
+                        mListener.onProgress(framesEncoded, presentationTimeUs, fps);
+                    }
+                });
+            }
+        }
+
+        @Override
+        public void onEndOfStream() {
+            mQueue.post(mEncoderDoneRunnable);
+        }
+
+        @Override
+        public void onError(Exception e) {
+            mQueue.post(() -> {
+                if (!mReleased) {
+                    mListener.onError(e);
+                }
+            });
+        }
+    };
+
+    public WatermarkCodecWrapper(SampleSource source,
+                                 MuxerWrapper muxer,
+                                 MediaFormat format,
+                                 Handler queue,
+                                 WatermarkProvider watermarkProvider,
+                                 Listener listener) throws IOException {
+        this(source, muxer, format, queue, watermarkProvider, 0, Long.MAX_VALUE, listener);
+    }
+
+    /**
+     * Transcodes only the frames presenting in [startUs, endUs).
+     */
+    public WatermarkCodecWrapper(SampleSource source,
+                                 MuxerWrapper muxer,
+                                 MediaFormat format,
+                                 Handler queue,
+                                 WatermarkProvider watermarkProvider,
+                                 long startUs,
+                                 long endUs,
+                                 Listener listener) throws IOException {
         mQueue = queue;
-//        mEglCore = new EglCore(EGL14.eglGetCurrentContext(), EglCore.FLAG_RECORDABLE);
-        mSurfaceTexture = new SurfaceTexture(GlUtil.genFrameBufferTexture(format.getInteger(MediaFormat.KEY_WIDTH), format.getInteger(MediaFormat.KEY_HEIGHT)));
-        mSurfaceTexture.setOnFrameAvailableListener(this);
+        mListener = listener;
+        mInputMimeType = format.getString(MediaFormat.KEY_MIME);
+        mWidth = format.getInteger(MediaFormat.KEY_WIDTH);
+        mHeight = format.getInteger(MediaFormat.KEY_HEIGHT);
+
+        // Back-to-back jobs get their codecs from the pool instead of creating them.
+        final CodecPool codecPool = CodecPool.getDefault();
+        mEncoder = new SurfaceEncoder(codecPool.acquire(OUTPUT_MIME_TYPE, true, mWidth, mHeight),
+                () -> SurfaceEncoder.createVideoFormat(OUTPUT_MIME_TYPE, format), muxer, mEncoderListener);
+
+        // GLES 3 where there is, for the program binaries ProgramCache keeps.
+        mEglCore = new EglCore(null, EglCore.FLAG_RECORDABLE | EglCore.FLAG_TRY_GLES3);
+        mInputWindowSurface = new WindowSurface(mEglCore, mEncoder.getInputSurface(), false);
+        mInputWindowSurface.makeCurrent();
+        GLES20.glViewport(0, 0, mWidth, mHeight);
+
+        mFullFrame = new FullFrameRect(new Texture2dProgram(watermarkProvider != null
+                ? Texture2dProgram.ProgramType.TEXTURE_EXT_WATERMARK
+                : Texture2dProgram.ProgramType.TEXTURE_EXT));
+        mTextureId = mFullFrame.createTextureObject();
+        setUpWatermark(watermarkProvider);
+
+        mSurfaceTexture = new SurfaceTexture(mTextureId);
+        mSurfaceTexture.setOnFrameAvailableListener(this, mQueue);
         mSurface = new Surface(mSurfaceTexture);
-        mDecoder = new DecoderWrapper(queue);
 
-        try {
-            mDecoder.configure(extractor, mSurface);
-        } catch (IOException e) {
-            e.printStackTrace();
+        mStartTimeMs = mLastProgressTimeMs = SystemClock.elapsedRealtime();
+        mEncoder.start();
+
+        mDecoder = new DecoderWrapper(queue::post, codecPool.decoderFactory(mWidth, mHeight));
+        mDecoder.setListener(this);
+        mDecoder.setTimeRange(startUs, endUs);
+        mDecoder.configure(source, mSurface);
+    }
+
+    /**
+     * Limits the frames the watermark is drawn on. Must be called on the queue, before the
+     * first frame is rendered.
+     */
+    public void setSchedule(WatermarkSchedule schedule) {
+        mSchedule = schedule;
+    }
+
+    /**
+     * Sets the clockwise rotation the output is played with, as given to the muxer, for the
+     * watermark to show upright in the bottom right corner. Must be called on the queue,
+     * before the first frame is rendered.
+     */
+    public void setRotation(int degrees) {
+        if (mWatermarkTextureId != -1) {
+            placeWatermark(degrees);
+        }
+    }
+
+    /**
+     * Moves the encoded frames earlier by that much, e.g. so a trimmed clip starts at 0. The
+     * schedule still applies to source times. Must be called on the queue, before the first
+     * frame is rendered.
+     */
+    public void setTimeOffset(long offsetUs) {
+        mTimeOffsetNs = offsetUs * 1000;
+    }
+
+    private void setUpWatermark(WatermarkProvider provider) {
+        if (provider == null) {
+            return;
+        }
+
+        mWatermarkTextureId = provider.provide();
+        mWatermarkWidth = provider.getWidth();
+        mWatermarkHeight = provider.getHeight();
+        mFullFrame.getProgram().setWatermarkTexture(mWatermarkTextureId);
+        placeWatermark(0);
+    }
+
+    private void placeWatermark(int rotationDegrees) {
+        final WatermarkPlacement placement = WatermarkPlacement.bottomRight(mWidth, mHeight, rotationDegrees,
+                mWatermarkWidth, mWatermarkHeight, WATERMARK_MARGIN);
+        final float[] rect = placement.getViewportRect();
+        final Texture2dProgram program = mFullFrame.getProgram();
+        program.setWatermarkRect(rect[0], rect[1], rect[2], rect[3]);
+        program.setWatermarkRotation(placement.getRotationDegrees());
+    }
+
+    @Override
+    public boolean canRenderFrame() {
+        return !mFrameRendering && mFramesInFlight.get() < MAX_FRAMES_IN_FLIGHT;
+    }
+
+    @Override
+    public boolean onFrameDecoded(long presentationTimeUs) {
+        mFrameRendering = true;
+        return true;
+    }
+
+    @Override
+    public void onEndOfStream() {
+        Log.d(TAG, "onEndOfStream(): " + mFramesRendered + " frames rendered");
+        mEncoder.signalEndOfInputStream();
+    }
+
+    @Override
+    public void onError(Exception e) {
+        if (!mReleased) {
+            mListener.onError(e);
         }
     }
 
     @Override
     public void onFrameAvailable(SurfaceTexture surfaceTexture) {
-        Log.d(TAG, "onFrameAvailable");
+        if (mReleased) {
+            return;
+        }
+
+        mSurfaceTexture.updateTexImage();
+        mSurfaceTexture.getTransformMatrix(mTexMatrix);
+
+        final long timestampNs = mSurfaceTexture.getTimestamp();
+        if (mWatermarkTextureId != -1) {
+            mFullFrame.getProgram().setWatermarkOpacity(mSchedule.isVisible(timestampNs / 1000) ? 1f : 0f);
+        }
+        mFullFrame.drawFrame(mTextureId, mTexMatrix);
+        GlUtil.checkFrameErrors("onFrameAvailable");
+
+        mInputWindowSurface.setPresentationTime(timestampNs - mTimeOffsetNs);
+        mFramesInFlight.incrementAndGet();
+        mInputWindowSurface.swapBuffers();
+        mFramesRendered++;
+
+        mFrameRendering = false;
+        mDecoder.drainOutput();
+    }
+
+    private void drainDecoder() {
+        if (!mReleased) {
+            mDecoder.drainOutput();
+        }
+    }
+
+    private void onEncoderDone() {
+        if (mReleased) {
+            return;
+        }
+
+        final float fps = getFramesPerSecond(SystemClock.elapsedRealtime());
+        Log.d(TAG, "onEncoderDone(): " + mFramesEncoded.get() + " frames, " + fps + " fps, "
+                + GlUtil.getErrorCount() + " GL errors in the process");
+        if (mFramesEncoded.get() >= MIN_FRAMES_MEASURED) {
+            // The pipeline runs as fast as its slowest codec; credit both with its rate.
+            final CodecProfileStore profiles = CodecProfileStore.getDefault();
+            profiles.recordFrameRate(mDecoder.getCodecName(), mInputMimeType, fps);
+            profiles.recordFrameRate(mEncoder.getCodecName(), OUTPUT_MIME_TYPE, fps);
+        }
+        mListener.onComplete(mFramesEncoded.get(), fps);
+    }
+
+    private float getFramesPerSecond(long now) {
+        final long elapsedMs = Math.max(1, now - mStartTimeMs);
+        return mFramesEncoded.get() * 1000f / elapsedMs;
     }
 
     public void release() {
-        mDecoder.release();
-        mSurfaceTexture.release();
-        mSurface.release();
+        mReleased = true;
+
+        if (mDecoder != null) {
+            mDecoder.release();
+            mDecoder = null;
+        }
+
+        if (mFullFrame != null) {
+            mFullFrame.release(true);
+            mFullFrame = null;
+        }
+
+        if (mWatermarkTextureId != -1) {
+            GLES20.glDeleteTextures(1, new int[]{mWatermarkTextureId}, 0);
+            mWatermarkTextureId = -1;
+        }
+
+        if (mInputWindowSurface != null) {
+            mInputWindowSurface.release();
+            mInputWindowSurface = null;
+        }
+
+        if (mEglCore != null) {
+            mEglCore.release();
+            mEglCore = null;
+        }
+
+        if (mEncoder != null) {
+            mEncoder.release();
+            mEncoder = null;
+        }
+
+        if (mSurfaceTexture != null) {
+            mSurfaceTexture.release();
+            mSurfaceTexture = null;
+        }
+
+        if (mSurface != null) {
+            mSurface.release();
+            mSurface = null;
+        }
+    }
+
+    /**
+     * {@link Listener}. Called on the queue.
+     */
+    public interface Listener {
+
+        void onProgress(int framesEncoded, long presentationTimeUs, float framesPerSecond);
+
+        void onComplete(int framesEncoded, float framesPerSecond);
+
+        void onError(Exception e);
     }
 }
@@ -1,10 +1,8 @@
 package com.vng.videofilter.watermark;
 
-import android.graphics.SurfaceTexture;
-import android.media.MediaCodec;
+import android.content.ContentResolver;
 import android.media.MediaExtractor;
 import android.media.MediaFormat;
-import android.media.MediaMetadataRetriever;
 import android.media.MediaMuxer;
 import android.net.Uri;
 import android.os.Environment;
@@ -12,22 +10,46 @@ import android.os.Handler;
 import android.os.HandlerThread;
 import android.os.Looper;
 import android.os.Message;
-import android.os.Process;
+import android.os.ParcelFileDescriptor;
+import android.system.ErrnoException;
+import android.system.Os;
+import android.system.OsConstants;
+import android.system.StructStat;
 import android.util.Log;
-import android.util.SparseIntArray;
-import android.view.Surface;
 
 import com.vng.videofilter.App;
-import com.vng.videofilter.gles.GlUtil;
+import com.vng.videofilter.codec.CodecLimits;
+import com.vng.videofilter.codec.CodecPool;
+import com.vng.videofilter.codec.MediaExtractorSource;
+import com.vng.videofilter.codec.MediaMuxerPort;
+import com.vng.videofilter.codec.MuxerPort;
+import com.vng.videofilter.codec.MuxerWrapper;
+import com.vng.videofilter.codec.SampleSource;
+import com.vng.videofilter.codec.SegmentPlanner;
+import com.vng.videofilter.codec.SegmentPlanner.Segment;
+import com.vng.videofilter.codec.SegmentStitcher;
+import com.vng.videofilter.codec.SegmentStitcher.Piece;
+import com.vng.videofilter.codec.TrackPassthrough;
+import com.vng.videofilter.mp4.FragmentedMp4Writer;
+import com.vng.videofilter.mp4.Mp4FastStart;
+import com.vng.videofilter.mp4.Mp4Parser;
+import com.vng.videofilter.mp4.Mp4Track;
+import com.vng.videofilter.mp4.Mp4TrackFormat;
+import com.vng.videofilter.mp4.SampleTableIndex;
 import com.vng.videofilter.util.DispatchQueue;
 
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileNotFoundException;
 import java.io.IOException;
 import java.lang.ref.WeakReference;
-import java.nio.ByteBuffer;
 import java.text.SimpleDateFormat;
+import java.util.ArrayList;
+import java.util.Collections;
 import java.util.Date;
+import java.util.Iterator;
+import java.util.List;
 import java.util.Locale;
-import java.util.concurrent.CountDownLatch;
 
 /**
  * Copyright (C) 2017, VNG Corporation.
@@ -39,6 +61,13 @@ import java.util.concurrent.CountDownLatch;
 public class WatermarkGenerator {
     private static final String TAG = WatermarkGenerator.class.getSimpleName();
 
+    private static final String SEGMENT_DIR = "watermark_segments";
+
+    private static final String CHECKPOINT_DIR = "watermark_checkpoints";
+
+    // Media time between two checkpoints of a resumable job.
+    private static final long CHECKPOINT_INTERVAL_US = 30_000_000L;
+
     private final WatermarkProvider mWatermarkProvider;
 
 //    private final DispatchQueue mDispatchQueue;
@@ -49,12 +78,63 @@ public class WatermarkGenerator {
 
     private final MediaExtractor mMediaExtractor = new MediaExtractor();
 
-    private final MediaMetadataRetriever mMetadataRetriever = new MediaMetadataRetriever();
+    private MuxerPort mMuxer;
+
+    private MuxerWrapper mMuxerWrapper;
+
+    private Uri mSourceUri;
+
+    private TrackPassthrough mPassthrough;
+
+    private boolean mVideoDone;
 
-    private MediaMuxer mMuxer;
+    private boolean mPassthroughDone;
+
+    private String mDestPath;
+
+    // Of the video track of the source, read from its header.
+    private int mRotationDegrees;
+
+    // Of the video track of the source, read on first use. Null if it couldn't be read.
+    private SampleTableIndex mSampleIndex;
+    private boolean mSampleIndexRead;
+
+    // Set by the caller, or else picked from the time the source was set.
+    private String mOutputPath;
 
     private WatermarkCodecWrapper mCodecWrapper;
 
+    private BufferWatermarkCodecWrapper mBufferCodecWrapper;
+
+    private boolean mBufferMode;
+
+    private boolean mResumable;
+
+    // 0 for a regular MP4 file, written out when the job ends.
+    private long mFragmentDurationUs;
+
+    private boolean mFastStart;
+
+    private TranscodeCheckpoint mCheckpoint;
+
+    private SegmentTranscoder mSegmentTranscoder;
+
+    private int mMaxParallelSegments = 1;
+
+    private WatermarkSchedule mSchedule = WatermarkSchedule.always();
+
+    private boolean mSmartRender;
+
+    private SmartRenderPlan mRenderPlan;
+
+    private int mVideoTrackIndex = -1;
+
+    // Part of the source that ends up in the output.
+    private long mStartTimeUs = 0;
+    private long mEndTimeUs = Long.MAX_VALUE;
+
+    private Listener mListener;
+
     private volatile boolean mIsReady = false;
 
     public static WatermarkGenerator with(WatermarkProvider provider) {
@@ -70,6 +150,96 @@ public class WatermarkGenerator {
 
     }
 
+    /**
+     * @param listener Notified on the generator thread.
+     */
+    public void setListener(Listener listener) {
+        mListener = listener;
+    }
+
+    /**
+     * Splits the video at sync samples into up to {@code count} segments, transcodes them in
+     * parallel and stitches the result. The count is capped by the number of codec instances
+     * the device supports. 1, the default, transcodes the whole video in one pipeline.
+     */
+    public void setMaxParallelSegments(int count) {
+        mDispatchQueue.post(() -> mMaxParallelSegments = Math.max(1, count));
+    }
+
+    /**
+     * Shows the watermark only at the given times. Defaults to {@link WatermarkSchedule#always()}.
+     */
+    public void setWatermarkSchedule(WatermarkSchedule schedule) {
+        mDispatchQueue.post(() -> mSchedule = schedule);
+    }
+
+    /**
+     * Re-encodes only the GOPs the watermark shows up in and copies the others from the
+     * source as they are. Falls back to a full transcode when the encoder output can't be
+     * spliced with the source, i.e. when their codec configs differ.
+     */
+    public void setSmartRender(boolean enabled) {
+        mDispatchQueue.post(() -> mSmartRender = enabled);
+    }
+
+    /**
+     * Decodes to buffers and blends the watermark into the YUV planes on the CPU instead of
+     * drawing it with GL. Only applies when the whole track is transcoded in one pipeline,
+     * and only works with codecs that use plain NV12 or I420 buffers.
+     */
+    public void setBufferMode(boolean enabled) {
+        mDispatchQueue.post(() -> mBufferMode = enabled);
+    }
+
+    /**
+     * Keeps only [startUs, endUs) of the source, moved to start at 0. Only the GOPs within
+     * the range are decoded. Schedule times stay source times.
+     */
+    public void setTimeRange(long startUs, long endUs) {
+        mDispatchQueue.post(() -> {
+            mStartTimeUs = Math.max(0, startUs);
+            mEndTimeUs = endUs;
+        });
+    }
+
+    /**
+     * Saves progress as the video is transcoded, so that a job interrupted, e.g. by the app
+     * being killed, picks up where it was saved when the same source is generated again with
+     * the same settings. The video is then transcoded in GOP aligned pieces of about 30 s,
+     * each written to its own file and stitched at the end. Parallel segments and smart
+     * render take precedence, and sources without a size and modification time, e.g. piped
+     * content URIs, are transcoded in one go.
+     */
+    public void setResumable(boolean enabled) {
+        mDispatchQueue.post(() -> mResumable = enabled);
+    }
+
+    /**
+     * Writes fragmented MP4, a fragment about every {@code fragmentDurationUs}, so the output
+     * can be read while the job runs instead of only once it's done. Only works with AVC
+     * video and AAC audio. 0, the default, writes a regular MP4 file. Applies to the next
+     * source set.
+     */
+    public void setFragmentedOutput(long fragmentDurationUs) {
+        mDispatchQueue.post(() -> mFragmentDurationUs = Math.max(0, fragmentDurationUs));
+    }
+
+    /**
+     * Moves the index of the output in front of its media data once the job is done, so
+     * players can start without reading the whole file. Fragmented output needs no such pass.
+     */
+    public void setFastStart(boolean enabled) {
+        mDispatchQueue.post(() -> mFastStart = enabled);
+    }
+
+    /**
+     * Where the next source set is written to. Defaults to a file named after the current
+     * time in the 360Live directory.
+     */
+    public void setOutputPath(String path) {
+        mDispatchQueue.post(() -> mOutputPath = path);
+    }
+
     public void setSource(Uri sourceUri) {
 //        mDispatchQueue.dispatch(mDispatchQueue.obtain(GeneratorCallback.MSG_SET_SOURCE, sourceUri));
         mDispatchQueue.sendMessage(mDispatchQueue.obtainMessage(GeneratorCallback.MSG_SET_SOURCE, sourceUri));
@@ -87,137 +257,556 @@ public class WatermarkGenerator {
 
     private void setSourceInternal(Uri sourceUri) {
         try {
-            mMetadataRetriever.setDataSource(sourceUri.getPath());
+            mSourceUri = sourceUri;
+            mRotationDegrees = readRotationDegrees(sourceUri);
+            mSampleIndex = null;
+            mSampleIndexRead = false;
             mMediaExtractor.setDataSource(App.getInstance(), sourceUri, null);
             SimpleDateFormat sdf = new SimpleDateFormat("yyyyMMdd_hhmmss", Locale.getDefault());
-            String destPath = Environment.getExternalStorageDirectory().getPath() + "/360Live/watermark_" + sdf.format(new Date()) + ".mp4";
-            mMuxer = new MediaMuxer(destPath, MediaMuxer.OutputFormat.MUXER_OUTPUT_MPEG_4);
+            mDestPath = mOutputPath != null
+                    ? mOutputPath
+                    : Environment.getExternalStorageDirectory().getPath() + "/360Live/watermark_" + sdf.format(new Date()) + ".mp4";
+            mMuxer = mFragmentDurationUs > 0
+                    ? FragmentedMp4Writer.create(new File(mDestPath), mFragmentDurationUs)
+                    : new MediaMuxerPort(new MediaMuxer(mDestPath, MediaMuxer.OutputFormat.MUXER_OUTPUT_MPEG_4));
             mIsReady = true;
         } catch (IOException e) {
             e.printStackTrace();
         }
     }
 
+    /**
+     * Reads the rotation from the MP4 header of the source, without a native retriever.
+     *
+     * @return 0 if the source isn't an MP4 file.
+     */
+    private static int readRotationDegrees(Uri sourceUri) {
+        try (FileInputStream in = openSource(sourceUri);
+             Mp4Parser parser = Mp4Parser.open(in.getChannel())) {
+            final Mp4Track videoTrack = parser.getVideoTrack();
+            return videoTrack != null ? videoTrack.getRotationDegrees() : 0;
+        } catch (IOException | RuntimeException e) {
+            Log.w(TAG, "readRotationDegrees(): " + e);
+            return 0;
+        }
+    }
+
+    /**
+     * Index of the video track of the source, so that planning finds the sync samples
+     * without stepping the extractor through the whole track.
+     *
+     * @return null if the source isn't an MP4 file or its tables can't be read.
+     */
+    private SampleTableIndex getSampleIndex() {
+        if (!mSampleIndexRead) {
+            mSampleIndexRead = true;
+            try (FileInputStream in = openSource(mSourceUri);
+                 Mp4Parser parser = Mp4Parser.open(in.getChannel())) {
+                final Mp4Track videoTrack = parser.getVideoTrack();
+                mSampleIndex = videoTrack != null ? videoTrack.getSampleTableIndex() : null;
+                Log.d(TAG, "getSampleIndex(): " + mSampleIndex);
+            } catch (IOException | RuntimeException e) {
+                Log.w(TAG, "getSampleIndex(): " + e);
+            }
+        }
+        return mSampleIndex;
+    }
+
+    /**
+     * Opens the source for reading, the way {@link MediaExtractor} does: a URI without a
+     * scheme is a path, and anything other than a file goes through the content resolver.
+     */
+    private static FileInputStream openSource(Uri sourceUri) throws IOException {
+        final String scheme = sourceUri.getScheme();
+        if (scheme == null || ContentResolver.SCHEME_FILE.equals(scheme)) {
+            return new FileInputStream(sourceUri.getPath());
+        }
+        final ParcelFileDescriptor fd = App.getInstance().getContentResolver().openFileDescriptor(sourceUri, "r");
+        if (fd == null) {
+            throw new FileNotFoundException(sourceUri.toString());
+        }
+        return new ParcelFileDescriptor.AutoCloseInputStream(fd);
+    }
+
     private void generateInternal() {
         Log.d(TAG, "generateInternal()");
         if (!mIsReady) {
             throw new IllegalStateException("Generator is not configured well. Please read log for more information.");
         }
 
-//        final CountDownLatch countDownLatch = new CountDownLatch(1);
-//
-//        int trackCount = mMediaExtractor.getTrackCount();
-//
-//        // Set up the tracks and retrieve the max buffer size for selected
-//        // tracks.
-//        final SparseIntArray muxerTrackIndices = new SparseIntArray(trackCount);
-//        int bufferSize = -1;
-//        int sourceVideoTrackIndex = -1;
-//        for (int i = 0; i < trackCount; i++) {
-//            MediaFormat format = mMediaExtractor.getTrackFormat(i);
-//            String mime = format.getString(MediaFormat.KEY_MIME);
-//            if (mime.startsWith("video/")) {
-//                // Initialize video codec
-//                sourceVideoTrackIndex = i;
-//            } else {
-//                mMediaExtractor.selectTrack(i);
-//            }
-//            int dstIndex = mMuxer.addTrack(format);
-//            muxerTrackIndices.put(i, dstIndex);
-//            if (format.containsKey(MediaFormat.KEY_MAX_INPUT_SIZE)) {
-//                int newSize = format.getInteger(MediaFormat.KEY_MAX_INPUT_SIZE);
-//                bufferSize = newSize > bufferSize ? newSize : bufferSize;
-//            }
-//        }
-//
-//        if (bufferSize < 0) {
-//            bufferSize = 1024;
-//        }
-//
-//        // Set up the orientation and starting time for extractor.
-//        String degreesString = mMetadataRetriever.extractMetadata(MediaMetadataRetriever.METADATA_KEY_VIDEO_ROTATION);
-//        if (degreesString != null) {
-//            int degrees = Integer.parseInt(degreesString);
-//            if (degrees >= 0) {
-//                mMuxer.setOrientationHint(degrees);
-//            }
-//        }
-//
-//        // Copy the samples from MediaExtractor to MediaMuxer. We will loop
-//        // for copying each sample and stop when we get to the end of the source
-//        // file or exceed the end time of the trimming.
-//        int offset = 0;
-//        int sourceTrackIndex;
-//        ByteBuffer dstBuf = ByteBuffer.allocate(bufferSize);
-//        MediaCodec.BufferInfo bufferInfo = new MediaCodec.BufferInfo();
-//
-//        try {
-//            mMuxer.start();
-//            while (true) {
-//                bufferInfo.offset = offset;
-//                bufferInfo.size = mMediaExtractor.readSampleData(dstBuf, offset);
-//                if (bufferInfo.size < 0) {
-//                    bufferInfo.size = 0;
-//                    break;
-//                } else {
-//                    bufferInfo.presentationTimeUs = mMediaExtractor.getSampleTime();
-//                    bufferInfo.flags = mMediaExtractor.getSampleFlags();
-//                    sourceTrackIndex = mMediaExtractor.getSampleTrackIndex();
-//
-//                    mMuxer.writeSampleData(muxerTrackIndices.get(sourceTrackIndex), dstBuf, bufferInfo);
-//                    mMediaExtractor.advance();
-//                }
-//            }
-//
-//            if (sourceVideoTrackIndex != -1) {
-//                final MediaFormat format = mMediaExtractor.getTrackFormat(sourceVideoTrackIndex);
-//                mCodecWrapper = new WatermarkCodecWrapper(mMediaExtractor, mMuxer, format, mDispatchQueue);
-//            }
-//
-//            mDispatchQueue.postDelayed(countDownLatch::countDown, 10000);
-////            countDownLatch.countDown();
-//            countDownLatch.await();
-//            mMuxer.stop();
-//            Log.d(TAG, "generate(): done");
-//        } catch (Exception e) {
-//            e.printStackTrace();
-//        } finally {
-//            mMuxer.release();
-//        }
-
-                int trackCount = mMediaExtractor.getTrackCount();
-
-        // Set up the tracks and retrieve the max buffer size for selected
-        // tracks.
+        int videoTrackIndex = -1;
+        final int trackCount = mMediaExtractor.getTrackCount();
         for (int i = 0; i < trackCount; i++) {
-            MediaFormat format = mMediaExtractor.getTrackFormat(i);
-            String mime = format.getString(MediaFormat.KEY_MIME);
+            final String mime = mMediaExtractor.getTrackFormat(i).getString(MediaFormat.KEY_MIME);
             if (mime.startsWith("video/")) {
-                // Initialize video codec
-                final SurfaceTexture surfaceTexture = new SurfaceTexture(GlUtil.genFrameBufferTexture(format.getInteger(MediaFormat.KEY_WIDTH), format.getInteger(MediaFormat.KEY_HEIGHT)));
-//                surfaceTexture.setOnFrameAvailableListener(this);
-                final Surface surface = new Surface(surfaceTexture);
-                final DecoderWrapper decoderWrapper = new DecoderWrapper(mDispatchQueue);
-
-                try {
-                    decoderWrapper.configure(mMediaExtractor, surface);
-                } catch (IOException e) {
-                    e.printStackTrace();
+                videoTrackIndex = i;
+                break;
+            }
+        }
+
+        if (videoTrackIndex == -1) {
+            onGenerateError(new IllegalArgumentException("Source has no video track"));
+            return;
+        }
+        mVideoTrackIndex = videoTrackIndex;
+
+        // Non-video tracks are copied on their own extractor while the video is transcoded.
+        final MediaExtractor passthroughExtractor = new MediaExtractor();
+        try {
+            passthroughExtractor.setDataSource(App.getInstance(), mSourceUri, null);
+        } catch (IOException e) {
+            passthroughExtractor.release();
+            onGenerateError(e);
+            return;
+        }
+        mPassthrough = new TrackPassthrough(new MediaExtractorSource(passthroughExtractor));
+        mVideoDone = false;
+        mPassthroughDone = mPassthrough.getTrackCount() == 0;
+
+        // The fragmented writer only describes AVC and AAC; fail here rather than in addTrack.
+        if (mMuxer instanceof FragmentedMp4Writer) {
+            for (MediaFormat trackFormat : mPassthrough.getTrackFormats()) {
+                if (!Mp4TrackFormat.isSupported(trackFormat)) {
+                    onGenerateError(new IllegalArgumentException("Can't write fragmented MP4 with "
+                            + trackFormat.getString(MediaFormat.KEY_MIME)));
+                    return;
                 }
             }
         }
+
+        // Encoded video comes in bursts, so interleave it with the copied tracks by time.
+        final int muxerTrackCount = 1 + mPassthrough.getTrackCount();
+        mMuxerWrapper = new MuxerWrapper(mMuxer, muxerTrackCount);
+
+        // Frames are encoded as they're stored, so keep the rotation of the source; the
+        // watermark is turned to match.
+        if (mRotationDegrees > 0) {
+            mMuxerWrapper.setOrientationHint(mRotationDegrees);
+        }
+
+        mPassthrough.addTracks(mMuxerWrapper);
+        mPassthrough.setTimeRange(mStartTimeUs, mEndTimeUs);
+
+        final MediaFormat format = mMediaExtractor.getTrackFormat(videoTrackIndex);
+        mRenderPlan = planSmartRender(videoTrackIndex);
+        if (mRenderPlan != null) {
+            startSegments(videoTrackIndex, mRenderPlan.getReencodedRuns(), getMaxCodecPairs(format));
+        } else {
+            final List<Segment> segments = planSegments(videoTrackIndex, format);
+            final String jobKey = mResumable && segments.size() <= 1 ? getJobKey() : null;
+            if (segments.size() > 1) {
+                startSegments(videoTrackIndex, segments, segments.size());
+            } else if (jobKey != null) {
+                startCheckpointed(videoTrackIndex, jobKey);
+            } else if (!startTranscoding(videoTrackIndex)) {
+                return;
+            }
+        }
+
+        if (!mPassthroughDone) {
+            mPassthrough.start(mPassthroughListener);
+        }
+    }
+
+    /**
+     * Transcodes the whole video track in one pipeline, straight into the output.
+     *
+     * @return false if it couldn't be started, in which case the error was reported.
+     */
+    private boolean startTranscoding(int videoTrackIndex) {
+        try {
+            if (mBufferMode) {
+                mBufferCodecWrapper = new BufferWatermarkCodecWrapper(new MediaExtractorSource(mMediaExtractor),
+                        mMuxerWrapper, mMediaExtractor.getTrackFormat(videoTrackIndex), mDispatchQueue,
+                        mWatermarkProvider, mStartTimeUs, mEndTimeUs, mCodecListener);
+                mBufferCodecWrapper.setSchedule(mSchedule);
+                mBufferCodecWrapper.setRotation(mRotationDegrees);
+                mBufferCodecWrapper.setTimeOffset(mStartTimeUs);
+                return true;
+            }
+
+            mCodecWrapper = new WatermarkCodecWrapper(new MediaExtractorSource(mMediaExtractor),
+                    mMuxerWrapper, mMediaExtractor.getTrackFormat(videoTrackIndex), mDispatchQueue,
+                    mWatermarkProvider, mStartTimeUs, mEndTimeUs, mCodecListener);
+            mCodecWrapper.setSchedule(mSchedule);
+            mCodecWrapper.setRotation(mRotationDegrees);
+            mCodecWrapper.setTimeOffset(mStartTimeUs);
+            return true;
+        } catch (IOException e) {
+            onGenerateError(e);
+            return false;
+        }
     }
 
-    private void releaseInternal() {
-        if (mMuxer != null) {
+    /**
+     * Transcodes the pieces of the checkpoint not done yet one after the other, marking each
+     * done once its file is finalized.
+     */
+    private void startCheckpointed(int videoTrackIndex, String jobKey) {
+        final File dir = new File(new File(App.getInstance().getFilesDir(), CHECKPOINT_DIR),
+                Integer.toHexString(mSourceUri.toString().hashCode()));
+        mCheckpoint = TranscodeCheckpoint.load(dir, jobKey);
+        if (mCheckpoint == null) {
+            final SampleTableIndex index = getSampleIndex();
+            mCheckpoint = TranscodeCheckpoint.create(dir, jobKey, index != null
+                    ? SegmentPlanner.planByDuration(index, CHECKPOINT_INTERVAL_US, mStartTimeUs, mEndTimeUs)
+                    : SegmentPlanner.planByDuration(new MediaExtractorSource(mMediaExtractor), videoTrackIndex,
+                    CHECKPOINT_INTERVAL_US, mStartTimeUs, mEndTimeUs));
+        } else {
+            Log.d(TAG, "startCheckpointed(): resuming at " + mCheckpoint.getResumeTimeUs() + " us");
+        }
+        Log.d(TAG, "startCheckpointed(): " + mCheckpoint);
+
+        final List<Segment> remaining = mCheckpoint.getRemainingSegments();
+        if (remaining.isEmpty()) {
+            // Killed while stitching. Let the other tracks start first, the muxer interleaves.
+            final TranscodeCheckpoint checkpoint = mCheckpoint;
+            mDispatchQueue.post(() -> {
+                if (mCheckpoint == checkpoint) {
+                    stitchSegments(checkpoint.getSegments(), checkpoint.getSegmentFiles());
+                }
+            });
+            return;
+        }
+
+        mSegmentTranscoder = new SegmentTranscoder(mSourceUri, videoTrackIndex, remaining, dir,
+                mWatermarkProvider, 1, mDispatchQueue, mSegmentListener);
+        mSegmentTranscoder.setSchedule(mSchedule);
+        mSegmentTranscoder.setRotation(mRotationDegrees);
+        mSegmentTranscoder.setKeepCompletedFiles(true);
+        mSegmentTranscoder.start();
+    }
+
+    /**
+     * Identifies a job for its checkpoint: a different source file or settings give a
+     * different output, and so can't reuse its pieces.
+     *
+     * @return null if the source has no size and modification time to tell it from a
+     * changed one, e.g. a content URI served through a pipe; such jobs aren't resumable.
+     */
+    private String getJobKey() {
+        try (FileInputStream in = openSource(mSourceUri)) {
+            final StructStat stat = Os.fstat(in.getFD());
+            if (!OsConstants.S_ISREG(stat.st_mode)) {
+                Log.w(TAG, "getJobKey(): " + mSourceUri + " is not a regular file");
+                return null;
+            }
+            return mSourceUri + "|" + stat.st_size + "|" + stat.st_mtime
+                    + "|" + mStartTimeUs + "|" + mEndTimeUs + "|" + mSchedule;
+        } catch (IOException | ErrnoException e) {
+            Log.w(TAG, "getJobKey(): " + e);
+            return null;
+        }
+    }
+
+    /**
+     * @return null if smart render is off or nothing could be copied.
+     */
+    private SmartRenderPlan planSmartRender(int videoTrackIndex) {
+        if (!mSmartRender || mSchedule.isAlways()) {
+            return null;
+        }
+
+        final SampleTableIndex index = getSampleIndex();
+        final List<Segment> gops = index != null
+                ? SegmentPlanner.splitAtSyncSamples(index)
+                : SegmentPlanner.splitAtSyncSamples(new MediaExtractorSource(mMediaExtractor), videoTrackIndex);
+        final SmartRenderPlan plan = SmartRenderPlan.create(gops, mSchedule, mStartTimeUs, mEndTimeUs);
+        Log.d(TAG, "planSmartRender(): " + gops.size() + " GOPs, " + plan);
+        return plan.hasCopiedRuns() ? plan : null;
+    }
+
+    private int getMaxCodecPairs(MediaFormat format) {
+        return Math.min(mMaxParallelSegments, CodecLimits.getMaxCodecPairs(format.getString(MediaFormat.KEY_MIME),
+                WatermarkCodecWrapper.OUTPUT_MIME_TYPE));
+    }
+
+    private List<Segment> planSegments(int videoTrackIndex, MediaFormat format) {
+        if (mMaxParallelSegments <= 1) {
+            return Collections.emptyList();
+        }
+
+        final int segmentCount = getMaxCodecPairs(format);
+        if (segmentCount <= 1) {
+            return Collections.emptyList();
+        }
+
+        final SampleTableIndex index = getSampleIndex();
+        final List<Segment> segments = index != null
+                ? SegmentPlanner.plan(index, segmentCount, mStartTimeUs, mEndTimeUs)
+                : SegmentPlanner.plan(new MediaExtractorSource(mMediaExtractor), videoTrackIndex, segmentCount,
+                mStartTimeUs, mEndTimeUs);
+        Log.d(TAG, "planSegments(): " + segments);
+        return segments;
+    }
+
+    private void startSegments(int videoTrackIndex, List<Segment> segments, int maxConcurrentJobs) {
+        final File segmentDir = new File(App.getInstance().getCacheDir(), SEGMENT_DIR);
+        if (!segmentDir.isDirectory() && !segmentDir.mkdirs()) {
+            Log.w(TAG, "startSegments(): could not create " + segmentDir);
+        }
+
+        mSegmentTranscoder = new SegmentTranscoder(mSourceUri, videoTrackIndex, segments, segmentDir,
+                mWatermarkProvider, maxConcurrentJobs, mDispatchQueue, mSegmentListener);
+        mSegmentTranscoder.setSchedule(mSchedule);
+        mSegmentTranscoder.setRotation(mRotationDegrees);
+        mSegmentTranscoder.start();
+    }
+
+    /**
+     * Splices the re-encoded runs of the smart render plan with the GOPs copied from the
+     * source. If the encoder picked a codec config the source doesn't use, the copied GOPs
+     * can't be decoded after a splice, so the whole track is transcoded instead.
+     */
+    private void stitchSmartRender(int videoTrackIndex) {
+        final SampleSource source = new MediaExtractorSource(mMediaExtractor);
+        final Iterator<File> files = mSegmentTranscoder.getSegmentFiles().iterator();
+        final List<SampleSource> segmentSources = new ArrayList<>();
+        final List<Piece> pieces = new ArrayList<>();
+        try {
+            for (Segment run : mRenderPlan.getRuns()) {
+                if (mRenderPlan.isReencoded(run.index)) {
+                    final MediaExtractor extractor = new MediaExtractor();
+                    segmentSources.add(new MediaExtractorSource(extractor));
+                    extractor.setDataSource(files.next().getPath());
+                    pieces.add(Piece.whole(segmentSources.get(segmentSources.size() - 1), 0,
+                            run.startUs - mStartTimeUs));
+                } else {
+                    pieces.add(Piece.range(source, videoTrackIndex, run.startUs, run.endUs,
+                            run.startUs - mStartTimeUs));
+                }
+            }
+
+            final int incompatible = SegmentStitcher.findIncompatiblePiece(pieces);
+            if (incompatible != -1) {
+                Log.w(TAG, "stitchSmartRender(): " + mRenderPlan.getRuns().get(incompatible)
+                        + " can't be spliced, transcoding everything");
+                mRenderPlan = null;
+                mSegmentTranscoder.release();
+                mSegmentTranscoder = null;
+                startTranscoding(videoTrackIndex);
+                return;
+            }
+
+            final int samples = SegmentStitcher.stitch(pieces, mMuxerWrapper);
+            Log.d(TAG, "stitchSmartRender(): " + samples + " samples from " + pieces.size() + " runs");
+        } catch (IOException | InterruptedException e) {
+            onGenerateError(e);
+            return;
+        } finally {
+            for (SampleSource segmentSource : segmentSources) {
+                segmentSource.release();
+            }
+        }
+
+        mVideoDone = true;
+        onTrackDone();
+    }
+
+    private void stitchSegments(List<Segment> segments, List<File> files) {
+        final List<SampleSource> sources = new ArrayList<>(files.size());
+        final long[] segmentStartsUs = new long[segments.size()];
+        try {
+            for (int i = 0; i < files.size(); i++) {
+                final MediaExtractor extractor = new MediaExtractor();
+                sources.add(new MediaExtractorSource(extractor));
+                extractor.setDataSource(files.get(i).getPath());
+                segmentStartsUs[i] = segments.get(i).startUs - mStartTimeUs;
+            }
+
+            final int samples = SegmentStitcher.stitch(sources, segmentStartsUs, mMuxerWrapper);
+            Log.d(TAG, "stitchSegments(): " + samples + " samples from " + files.size() + " segments");
+        } catch (IOException | InterruptedException e) {
+            onGenerateError(e);
+            return;
+        } finally {
+            for (SampleSource source : sources) {
+                source.release();
+            }
+        }
+
+        mVideoDone = true;
+        onTrackDone();
+    }
+
+    private final SegmentTranscoder.Listener mSegmentListener = new SegmentTranscoder.Listener() {
+        @Override
+        public void onProgress(int framesEncoded, float framesPerSecond) {
+            Log.d(TAG, "onProgress(): " + framesEncoded + " frames, " + framesPerSecond + " fps");
+            if (mListener != null) {
+                mListener.onProgress(framesEncoded, -1, framesPerSecond);
+            }
+        }
+
+        @Override
+        public void onSegmentComplete(Segment segment, File file) {
+            if (mCheckpoint != null) {
+                mCheckpoint.markDone(segment.index);
+            }
+        }
+
+        @Override
+        public void onComplete() {
+            if (mRenderPlan != null) {
+                stitchSmartRender(mVideoTrackIndex);
+            } else if (mCheckpoint != null) {
+                stitchSegments(mCheckpoint.getSegments(), mCheckpoint.getSegmentFiles());
+            } else {
+                stitchSegments(mSegmentTranscoder.getSegments(), mSegmentTranscoder.getSegmentFiles());
+            }
+        }
+
+        @Override
+        public void onError(Exception e) {
+            onGenerateError(e);
+        }
+    };
+
+    private final TrackPassthrough.Listener mPassthroughListener = new TrackPassthrough.Listener() {
+        @Override
+        public void onComplete() {
+            mDispatchQueue.post(() -> {
+                mPassthroughDone = true;
+                onTrackDone();
+            });
+        }
+
+        @Override
+        public void onError(Exception e) {
+            mDispatchQueue.post(() -> onGenerateError(e));
+        }
+    };
+
+    private final WatermarkCodecWrapper.Listener mCodecListener = new WatermarkCodecWrapper.Listener() {
+        @Override
+        public void onProgress(int framesEncoded, long presentationTimeUs, float framesPerSecond) {
+            Log.d(TAG, "onProgress(): " + framesEncoded + " frames, " + framesPerSecond + " fps");
+            if (mListener != null) {
+                mListener.onProgress(framesEncoded, presentationTimeUs, framesPerSecond);
+            }
+        }
+
+        @Override
+        public void onComplete(int framesEncoded, float framesPerSecond) {
+            Log.d(TAG, "onComplete(): " + framesEncoded + " frames, " + framesPerSecond + " fps");
+            mVideoDone = true;
+            onTrackDone();
+        }
+
+        @Override
+        public void onError(Exception e) {
+            onGenerateError(e);
+        }
+    };
+
+    private void onTrackDone() {
+        if (!mVideoDone || !mPassthroughDone || mMuxerWrapper == null) {
+            return;
+        }
+
+        Log.d(TAG, "generate(): done, " + CodecPool.getDefault());
+        final TranscodeCheckpoint checkpoint = mCheckpoint;
+        final boolean finished = finishGenerating();
+        if (finished && checkpoint != null) {
+            TranscodeCheckpoint.delete(checkpoint.getDirectory());
+        }
+        if (finished && mFastStart && mFragmentDurationUs == 0) {
+            moveIndexToFront();
+        }
+        if (mListener != null) {
+            if (finished) {
+                mListener.onComplete(mDestPath);
+            } else {
+                mListener.onError(new IOException("Could not finalize " + mDestPath));
+            }
+        }
+    }
+
+    /**
+     * The output stays playable, if not streamable, when this fails.
+     */
+    private void moveIndexToFront() {
+        try {
+            final Mp4FastStart.Result result = Mp4FastStart.processInPlace(new File(mDestPath));
+            Log.d(TAG, "moveIndexToFront(): " + result);
+        } catch (IOException e) {
+            Log.w(TAG, "moveIndexToFront(): " + e);
+        }
+    }
+
+    private void onGenerateError(Exception e) {
+        Log.e(TAG, "generate(): " + e);
+        finishGenerating();
+        if (mListener != null) {
+            mListener.onError(e);
+        }
+    }
+
+    /**
+     * Tears down the pipeline and finalizes the output file.
+     *
+     * @return whether the output file was written completely.
+     */
+    private boolean finishGenerating() {
+        if (mCodecWrapper != null) {
+            mCodecWrapper.release();
+            mCodecWrapper = null;
+        }
+
+        if (mBufferCodecWrapper != null) {
+            mBufferCodecWrapper.release();
+            mBufferCodecWrapper = null;
+        }
+
+        if (mSegmentTranscoder != null) {
+            mSegmentTranscoder.release();
+            mSegmentTranscoder = null;
+        }
+
+        if (mPassthrough != null) {
+            mPassthrough.release();
+            mPassthrough = null;
+        }
+
+        // Its files stay behind for the next attempt.
+        mCheckpoint = null;
+
+        boolean finished = false;
+        if (mMuxerWrapper != null) {
             try {
-                mCodecWrapper.release();
-                mMuxer.stop();
-                mMuxer.release();
+                mMuxerWrapper.release();
+                finished = true;
             } catch (Exception e) {
                 e.printStackTrace();
             }
+            mMuxerWrapper = null;
+        } else if (mMuxer != null) {
+            mMuxer.release();
         }
+        mMuxer = null;
+        mIsReady = false;
+        return finished;
+    }
+
+    private void releaseInternal() {
+        finishGenerating();
+        mMediaExtractor.release();
+    }
+
+    /**
+     * {@link Listener}. Called on the generator thread.
+     */
+    public interface Listener {
+
+        /**
+         * @param presentationTimeUs Time of the last encoded frame, or -1 when segments are
+         *                           transcoded in parallel.
+         */
+        void onProgress(int framesEncoded, long presentationTimeUs, float framesPerSecond);
+
+        void onComplete(String outputPath);
+
+        void onError(Exception e);
     }
 
     private static final class GeneratorCallback extends Handler {
@@ -33,12 +33,27 @@ public class WatermarkImageProvider implements WatermarkProvider {
         mHeight = height;
     }
 
+    @Override
+    public int getWidth() {
+        return mWidth;
+    }
+
+    @Override
+    public int getHeight() {
+        return mHeight;
+    }
+
     public void setTextSize(int textSize) {
         mTextSize = textSize;
     }
 
     @Override
     public Integer provide() {
+        return GlUtil.createImageTexture(providePixels(), mWidth, mHeight, GLES20.GL_RGBA);
+    }
+
+    @Override
+    public ByteBuffer providePixels() {
         final Bitmap watermark = Bitmap.createBitmap(mWidth, mHeight, Bitmap.Config.ARGB_8888);
         final Canvas canvas = new Canvas(watermark);
         final Paint paint = new Paint(Paint.ANTI_ALIAS_FLAG);
@@ -46,8 +61,12 @@ public class WatermarkImageProvider implements WatermarkProvider {
         paint.setColor(Color.WHITE);
         paint.setTextSize(mTextSize);
 
-        canvas.drawText("360Live\n12345", 0, 0, paint);
+        canvas.drawText("360Live", 0, mTextSize, paint);
 
-        return GlUtil.createImageTexture(ByteBuffer.allocate(watermark.getByteCount()), mWidth, mHeight, GLES20.GL_TEXTURE_2D);
+        final ByteBuffer pixels = ByteBuffer.allocateDirect(watermark.getByteCount());
+        watermark.copyPixelsToBuffer(pixels);
+        pixels.rewind();
+        watermark.recycle();
+        return pixels;
     }
 }
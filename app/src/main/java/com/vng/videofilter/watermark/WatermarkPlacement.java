@@ -0,0 +1,173 @@
+package com.vng.videofilter.watermark;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Copyright (C) 2017, VNG Corporation.
+ * <p>
+ * Where the watermark goes in the frames as they are stored, for it to show upright in the
+ * bottom right corner once the player turns them by the rotation of the video. Frames are
+ * encoded the way the source stores them, and played turned clockwise by the orientation
+ * hint of the output, so on a 90° video the watermark goes in the top right corner of the
+ * stored frame, turned a quarter counterclockwise.
+ *
+ * @author namnt4
+ * @since 18/10/2026
+ */
+public final class WatermarkPlacement {
+
+    private final int mFrameWidth;
+
+    private final int mFrameHeight;
+
+    private final int mRotationDegrees;
+
+    // The rectangle in stored pixels, from the top left of the frame.
+    private final int mLeft;
+
+    private final int mTop;
+
+    private final int mWidth;
+
+    private final int mHeight;
+
+    private WatermarkPlacement(int frameWidth, int frameHeight, int rotationDegrees,
+                               int left, int top, int width, int height) {
+        mFrameWidth = frameWidth;
+        mFrameHeight = frameHeight;
+        mRotationDegrees = rotationDegrees;
+        mLeft = left;
+        mTop = top;
+        mWidth = width;
+        mHeight = height;
+    }
+
+    /**
+     * @param frameWidth      Size of the frames as stored.
+     * @param rotationDegrees Clockwise rotation the frames are played with; a multiple of 90.
+     * @param markWidth       Size of the watermark, upright.
+     * @param margin          Space between the watermark and the edges of the displayed frame.
+     */
+    public static WatermarkPlacement bottomRight(int frameWidth, int frameHeight, int rotationDegrees,
+                                                 int markWidth, int markHeight, int margin) {
+        final int rotation = normalize(rotationDegrees);
+        final boolean sideways = rotation == 90 || rotation == 270;
+        final int displayWidth = sideways ? frameHeight : frameWidth;
+        final int displayHeight = sideways ? frameWidth : frameHeight;
+
+        // Opposite corners of the rectangle on display, taken back into the stored frame.
+        final int displayLeft = displayWidth - margin - markWidth;
+        final int displayTop = displayHeight - margin - markHeight;
+        final int[] first = toStored(displayLeft, displayTop, frameWidth, frameHeight, rotation);
+        final int[] second = toStored(displayLeft + markWidth, displayTop + markHeight,
+                frameWidth, frameHeight, rotation);
+        return new WatermarkPlacement(frameWidth, frameHeight, rotation,
+                Math.min(first[0], second[0]), Math.min(first[1], second[1]),
+                Math.abs(second[0] - first[0]), Math.abs(second[1] - first[1]));
+    }
+
+    /**
+     * Turns the watermark pixels the way the stored frames are turned, so that they can be
+     * blended in as they are at {@link #getLeft()}, {@link #getTop()}.
+     *
+     * @param rgba RGBA pixels of the upright watermark, row by row from the top.
+     * @return the pixels, {@link #getWidth()} by {@link #getHeight()}, or {@code rgba} itself
+     * if the video isn't rotated.
+     */
+    public ByteBuffer toStored(ByteBuffer rgba, int markWidth, int markHeight) {
+        if (mRotationDegrees == 0) {
+            return rgba;
+        }
+
+        final ByteBuffer stored = ByteBuffer.allocate(mWidth * mHeight * 4);
+        for (int row = 0; row < mHeight; row++) {
+            for (int column = 0; column < mWidth; column++) {
+                // The pixel of the upright watermark that ends up here.
+                final int markColumn;
+                final int markRow;
+                switch (mRotationDegrees) {
+                    case 90:
+                        markColumn = mHeight - 1 - row;
+                        markRow = column;
+                        break;
+                    case 180:
+                        markColumn = mWidth - 1 - column;
+                        markRow = mHeight - 1 - row;
+                        break;
+                    default:
+                        markColumn = row;
+                        markRow = mWidth - 1 - column;
+                        break;
+                }
+                stored.putInt(4 * (row * mWidth + column), rgba.getInt(4 * (markRow * markWidth + markColumn)));
+            }
+        }
+        return stored;
+    }
+
+    /**
+     * The rectangle in viewport coordinates, with (0,0) at the bottom left of the frame and
+     * (1,1) at its top right, as {@code Texture2dProgram.setWatermarkRect} takes it.
+     *
+     * @return x, y, width and height.
+     */
+    public float[] getViewportRect() {
+        return new float[]{
+                (float) mLeft / mFrameWidth,
+                (float) (mFrameHeight - mTop - mHeight) / mFrameHeight,
+                (float) mWidth / mFrameWidth,
+                (float) mHeight / mFrameHeight};
+    }
+
+    /**
+     * @return 0, 90, 180 or 270.
+     */
+    public int getRotationDegrees() {
+        return mRotationDegrees;
+    }
+
+    public int getLeft() {
+        return mLeft;
+    }
+
+    public int getTop() {
+        return mTop;
+    }
+
+    /**
+     * Width in the stored frame: the height of the watermark if the video is played sideways.
+     */
+    public int getWidth() {
+        return mWidth;
+    }
+
+    public int getHeight() {
+        return mHeight;
+    }
+
+    @Override
+    public String toString() {
+        return mWidth + "x" + mHeight + " at " + mLeft + "," + mTop + ", rotated " + mRotationDegrees;
+    }
+
+    /**
+     * Where a point of the displayed frame is in the stored one, both in pixels from the top
+     * left.
+     */
+    private static int[] toStored(int x, int y, int frameWidth, int frameHeight, int rotation) {
+        switch (rotation) {
+            case 90:
+                return new int[]{y, frameHeight - x};
+            case 180:
+                return new int[]{frameWidth - x, frameHeight - y};
+            case 270:
+                return new int[]{frameWidth - y, x};
+            default:
+                return new int[]{x, y};
+        }
+    }
+
+    private static int normalize(int degrees) {
+        return ((Math.round(degrees / 90f) % 4 + 4) % 4) * 90;
+    }
+}
@@ -2,6 +2,8 @@ package com.vng.videofilter.watermark;
 
 import com.vng.videofilter.util.Provider;
 
+import java.nio.ByteBuffer;
+
 /**
  * Copyright (C) 2017, VNG Corporation.
  *
@@ -10,4 +12,20 @@ import com.vng.videofilter.util.Provider;
  */
 
 public interface WatermarkProvider extends Provider<Integer> {
+
+    /**
+     * Width of the provided texture, in pixels.
+     */
+    int getWidth();
+
+    /**
+     * Height of the provided texture, in pixels.
+     */
+    int getHeight();
+
+    /**
+     * The watermark as premultiplied RGBA pixels, row by row, for pipelines that blend it
+     * without GL.
+     */
+    ByteBuffer providePixels();
 }
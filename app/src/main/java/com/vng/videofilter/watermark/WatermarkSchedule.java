@@ -0,0 +1,130 @@
+package com.vng.videofilter.watermark;
+
+import java.util.Arrays;
+
+/**
+ * Copyright (C) 2017, VNG Corporation.
+ * <p>
+ * When the watermark is visible: a set of presentation time intervals [start, end), kept
+ * sorted and merged.
+ *
+ * @author namnt4
+ * @since 18/10/2026
+ */
+public final class WatermarkSchedule {
+
+    private static final WatermarkSchedule ALWAYS = new WatermarkSchedule(new long[]{0, Long.MAX_VALUE}, 1);
+
+    // Interval i is [mBounds[2 * i], mBounds[2 * i + 1]).
+    private final long[] mBounds;
+
+    private final int mCount;
+
+    private WatermarkSchedule(long[] bounds, int count) {
+        mBounds = bounds;
+        mCount = count;
+    }
+
+    /**
+     * The watermark is visible on every frame.
+     */
+    public static WatermarkSchedule always() {
+        return ALWAYS;
+    }
+
+    public boolean isAlways() {
+        return mCount == 1 && mBounds[0] <= 0 && mBounds[1] == Long.MAX_VALUE;
+    }
+
+    public boolean isVisible(long presentationTimeUs) {
+        final int i = findInterval(presentationTimeUs);
+        return i >= 0 && presentationTimeUs < mBounds[2 * i + 1];
+    }
+
+    /**
+     * Whether the watermark is visible anywhere in [startUs, endUs).
+     */
+    public boolean intersects(long startUs, long endUs) {
+        if (startUs >= endUs) {
+            return false;
+        }
+
+        // The last interval starting before endUs is the only candidate.
+        final int i = findInterval(endUs - 1);
+        return i >= 0 && mBounds[2 * i + 1] > startUs;
+    }
+
+    // Index of the last interval starting at or before timeUs, or -1.
+    private int findInterval(long timeUs) {
+        int low = 0;
+        int high = mCount - 1;
+        int found = -1;
+        while (low <= high) {
+            final int mid = (low + high) >>> 1;
+            if (mBounds[2 * mid] <= timeUs) {
+                found = mid;
+                low = mid + 1;
+            } else {
+                high = mid - 1;
+            }
+        }
+        return found;
+    }
+
+    @Override
+    public String toString() {
+        final StringBuilder builder = new StringBuilder("WatermarkSchedule{");
+        for (int i = 0; i < mCount; i++) {
+            if (i > 0) {
+                builder.append(", ");
+            }
+            builder.append(mBounds[2 * i]).append("..").append(mBounds[2 * i + 1]);
+        }
+        return builder.append('}').toString();
+    }
+
+    public static final class Builder {
+
+        private long[] mBounds = new long[8];
+
+        private int mCount;
+
+        /**
+         * Shows the watermark on frames presenting in [startUs, endUs).
+         */
+        public Builder add(long startUs, long endUs) {
+            if (startUs >= endUs) {
+                return this;
+            }
+
+            if (2 * mCount == mBounds.length) {
+                mBounds = Arrays.copyOf(mBounds, mBounds.length * 2);
+            }
+            mBounds[2 * mCount] = startUs;
+            mBounds[2 * mCount + 1] = endUs;
+            mCount++;
+            return this;
+        }
+
+        public WatermarkSchedule build() {
+            final long[][] intervals = new long[mCount][];
+            for (int i = 0; i < mCount; i++) {
+                intervals[i] = new long[]{mBounds[2 * i], mBounds[2 * i + 1]};
+            }
+            Arrays.sort(intervals, (a, b) -> Long.compare(a[0], b[0]));
+
+            final long[] bounds = new long[Math.max(2, 2 * mCount)];
+            int count = 0;
+            for (long[] interval : intervals) {
+                if (count > 0 && interval[0] <= bounds[2 * count - 1]) {
+                    bounds[2 * count - 1] = Math.max(bounds[2 * count - 1], interval[1]);
+                } else {
+                    bounds[2 * count] = interval[0];
+                    bounds[2 * count + 1] = interval[1];
+                    count++;
+                }
+            }
+            return new WatermarkSchedule(bounds, count);
+        }
+    }
+}
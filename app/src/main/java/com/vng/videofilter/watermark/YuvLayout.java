@@ -0,0 +1,153 @@
+package com.vng.videofilter.watermark;
+
+import android.media.MediaCodecInfo;
+import android.media.MediaFormat;
+
+import com.vng.videofilter.codec.FormatUtils;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Copyright (C) 2017, VNG Corporation.
+ * <p>
+ * Where the planes of a YUV 4:2:0 frame are in a codec buffer: NV12 (Y, then interleaved
+ * UV) or I420 (Y, U, V), each possibly padded to a stride and slice height.
+ *
+ * @author namnt4
+ * @since 18/10/2026
+ */
+public final class YuvLayout {
+
+    public final int width;
+
+    public final int height;
+
+    public final int yOffset;
+
+    public final int yRowStride;
+
+    public final int uOffset;
+
+    public final int vOffset;
+
+    public final int uvRowStride;
+
+    /**
+     * 1 for planar chroma, 2 for interleaved.
+     */
+    public final int uvPixelStride;
+
+    private YuvLayout(int width, int height, int yOffset, int yRowStride,
+                      int uOffset, int vOffset, int uvRowStride, int uvPixelStride) {
+        this.width = width;
+        this.height = height;
+        this.yOffset = yOffset;
+        this.yRowStride = yRowStride;
+        this.uOffset = uOffset;
+        this.vOffset = vOffset;
+        this.uvRowStride = uvRowStride;
+        this.uvPixelStride = uvPixelStride;
+    }
+
+    public static YuvLayout nv12(int width, int height, int stride, int sliceHeight) {
+        final int uvOffset = stride * sliceHeight;
+        return new YuvLayout(width, height, 0, stride, uvOffset, uvOffset + 1, stride, 2);
+    }
+
+    public static YuvLayout i420(int width, int height, int stride, int sliceHeight) {
+        final int uOffset = stride * sliceHeight;
+        final int vOffset = uOffset + (stride / 2) * (sliceHeight / 2);
+        return new YuvLayout(width, height, 0, stride, uOffset, vOffset, stride / 2, 1);
+    }
+
+    /**
+     * @return null if the color format is neither NV12 nor I420.
+     */
+    public static YuvLayout forColorFormat(int colorFormat, int width, int height, int stride, int sliceHeight) {
+        switch (colorFormat) {
+            case MediaCodecInfo.CodecCapabilities.COLOR_FormatYUV420SemiPlanar:
+                return nv12(width, height, stride, sliceHeight);
+            case MediaCodecInfo.CodecCapabilities.COLOR_FormatYUV420Planar:
+                return i420(width, height, stride, sliceHeight);
+            default:
+                return null;
+        }
+    }
+
+    /**
+     * Layout of the buffers of a decoder, from its output format.
+     *
+     * @return null if the decoder outputs neither NV12 nor I420.
+     */
+    public static YuvLayout fromFormat(MediaFormat format) {
+        final int width = FormatUtils.getInteger(format, MediaFormat.KEY_WIDTH);
+        final int height = FormatUtils.getInteger(format, MediaFormat.KEY_HEIGHT);
+        final int stride = FormatUtils.getInteger(format, MediaFormat.KEY_STRIDE, width);
+        final int sliceHeight = FormatUtils.getInteger(format, MediaFormat.KEY_SLICE_HEIGHT, height);
+        return forColorFormat(FormatUtils.getInteger(format, MediaFormat.KEY_COLOR_FORMAT),
+                width, height, Math.max(stride, width), Math.max(sliceHeight, height));
+    }
+
+    /**
+     * Size of a buffer holding the whole frame.
+     */
+    public int getFrameSize() {
+        return Math.max(uOffset, vOffset) + uvRowStride * ((height + 1) / 2);
+    }
+
+    /**
+     * Copies the visible part of a frame between layouts. Both frames must have the same
+     * size.
+     */
+    public static void copy(ByteBuffer src, YuvLayout srcLayout, ByteBuffer dst, YuvLayout dstLayout) {
+        final int width = Math.min(srcLayout.width, dstLayout.width);
+        final int height = Math.min(srcLayout.height, dstLayout.height);
+
+        final ByteBuffer srcRows = src.duplicate();
+        final ByteBuffer dstRows = dst.duplicate();
+        for (int row = 0; row < height; row++) {
+            final int srcStart = srcLayout.yOffset + row * srcLayout.yRowStride;
+            srcRows.limit(srcStart + width).position(srcStart);
+            dstRows.position(dstLayout.yOffset + row * dstLayout.yRowStride);
+            dstRows.put(srcRows);
+        }
+
+        final int chromaWidth = (width + 1) / 2;
+        final int chromaHeight = (height + 1) / 2;
+        if (srcLayout.uvPixelStride == 2 && dstLayout.uvPixelStride == 2) {
+            // Interleaved on both sides: whole rows at once.
+            final int uvOffset = Math.min(srcLayout.uOffset, srcLayout.vOffset);
+            final int dstUvOffset = Math.min(dstLayout.uOffset, dstLayout.vOffset);
+            if (srcLayout.uOffset - srcLayout.vOffset == dstLayout.uOffset - dstLayout.vOffset) {
+                for (int row = 0; row < chromaHeight; row++) {
+                    final int srcStart = uvOffset + row * srcLayout.uvRowStride;
+                    srcRows.limit(srcStart + 2 * chromaWidth).position(srcStart);
+                    dstRows.position(dstUvOffset + row * dstLayout.uvRowStride);
+                    dstRows.put(srcRows);
+                }
+                return;
+            }
+        }
+
+        for (int row = 0; row < chromaHeight; row++) {
+            int srcU = srcLayout.uOffset + row * srcLayout.uvRowStride;
+            int srcV = srcLayout.vOffset + row * srcLayout.uvRowStride;
+            int dstU = dstLayout.uOffset + row * dstLayout.uvRowStride;
+            int dstV = dstLayout.vOffset + row * dstLayout.uvRowStride;
+            for (int column = 0; column < chromaWidth; column++) {
+                dst.put(dstU, src.get(srcU));
+                dst.put(dstV, src.get(srcV));
+                srcU += srcLayout.uvPixelStride;
+                srcV += srcLayout.uvPixelStride;
+                dstU += dstLayout.uvPixelStride;
+                dstV += dstLayout.uvPixelStride;
+            }
+        }
+    }
+
+    @Override
+    public String toString() {
+        return "YuvLayout{" + width + "x" + height + (uvPixelStride == 2 ? ", NV12" : ", I420")
+                + ", stride " + yRowStride + "}";
+    }
+}
@@ -0,0 +1,220 @@
+package com.vng.videofilter.watermark;
+
+import java.nio.ByteBuffer;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * Copyright (C) 2017, VNG Corporation.
+ * <p>
+ * Alpha-blends a watermark into the planes of a YUV 4:2:0 frame, for pipelines that decode
+ * to buffers instead of a surface. The watermark is converted to BT.601 video range once;
+ * each frame then costs one multiply-add per sample in 8.8 fixed point, with chroma
+ * blended with the alpha averaged over its 2x2 pixels. Rows are split across a
+ * {@link ForkJoinPool}.
+ *
+ * @author namnt4
+ * @since 18/10/2026
+ */
+public class YuvWatermarkBlender {
+
+    // Fewer rows than this aren't worth a task of their own.
+    private static final int MIN_ROWS_PER_TASK = 16;
+
+    private static ForkJoinPool sDefaultPool;
+
+    private final int mWidth;
+
+    private final int mHeight;
+
+    private final int mChromaWidth;
+
+    // Per watermark pixel: premultiplied Y scaled by 256, and 256 minus alpha.
+    private final int[] mY;
+    private final int[] mInverseAlpha;
+
+    // Per 2x2 block: premultiplied U and V scaled by 256, and 256 minus the average alpha.
+    private final int[] mU;
+    private final int[] mV;
+    private final int[] mInverseChromaAlpha;
+
+    private final ForkJoinPool mPool;
+
+    /**
+     * @param rgba   Premultiplied RGBA pixels, row by row, as copied out of an
+     *               {@code ARGB_8888} bitmap.
+     * @param width  Width of the watermark, in pixels.
+     * @param height Height of the watermark, in pixels.
+     * @param pool   Runs the row tasks.
+     */
+    public YuvWatermarkBlender(ByteBuffer rgba, int width, int height, ForkJoinPool pool) {
+        mWidth = width;
+        mHeight = height;
+        mChromaWidth = (width + 1) / 2;
+        mPool = pool;
+
+        mY = new int[width * height];
+        mInverseAlpha = new int[width * height];
+        for (int i = 0; i < width * height; i++) {
+            final int r = rgba.get(4 * i) & 0xff;
+            final int g = rgba.get(4 * i + 1) & 0xff;
+            final int b = rgba.get(4 * i + 2) & 0xff;
+            final int alpha = toFixed(rgba.get(4 * i + 3) & 0xff);
+            mY[i] = 16 * alpha + 66 * r + 129 * g + 25 * b;
+            mInverseAlpha[i] = 256 - alpha;
+        }
+
+        final int chromaHeight = (height + 1) / 2;
+        mU = new int[mChromaWidth * chromaHeight];
+        mV = new int[mChromaWidth * chromaHeight];
+        mInverseChromaAlpha = new int[mChromaWidth * chromaHeight];
+        for (int row = 0; row < chromaHeight; row++) {
+            for (int column = 0; column < mChromaWidth; column++) {
+                int r = 0;
+                int g = 0;
+                int b = 0;
+                int alpha = 0;
+                // Pixels past an odd edge count as transparent.
+                for (int y = 2 * row; y < Math.min(2 * row + 2, height); y++) {
+                    for (int x = 2 * column; x < Math.min(2 * column + 2, width); x++) {
+                        final int i = 4 * (y * width + x);
+                        r += rgba.get(i) & 0xff;
+                        g += rgba.get(i + 1) & 0xff;
+                        b += rgba.get(i + 2) & 0xff;
+                        alpha += toFixed(rgba.get(i + 3) & 0xff);
+                    }
+                }
+
+                final int i = row * mChromaWidth + column;
+                mU[i] = (128 * alpha - 38 * r - 74 * g + 112 * b) / 4;
+                mV[i] = (128 * alpha + 112 * r - 94 * g - 18 * b) / 4;
+                mInverseChromaAlpha[i] = 256 - (alpha + 2) / 4;
+            }
+        }
+    }
+
+    /**
+     * Pool with one thread per core, shared by the blenders of all jobs.
+     */
+    public static synchronized ForkJoinPool getDefaultPool() {
+        if (sDefaultPool == null) {
+            sDefaultPool = new ForkJoinPool(Runtime.getRuntime().availableProcessors());
+        }
+        return sDefaultPool;
+    }
+
+    // Maps 0..255 to 0..256, so that opaque is exact.
+    private static int toFixed(int alpha) {
+        return alpha + (alpha >> 7);
+    }
+
+    public int getWidth() {
+        return mWidth;
+    }
+
+    public int getHeight() {
+        return mHeight;
+    }
+
+    /**
+     * Blends the watermark into a frame in place, with its top left corner at (x, y).
+     * Odd positions are rounded down so the chroma lines up; whatever falls outside the
+     * frame is clipped.
+     */
+    public void blend(ByteBuffer frame, YuvLayout layout, int x, int y) {
+        x &= ~1;
+        y &= ~1;
+        final int width = Math.min(mWidth, layout.width - x);
+        final int height = Math.min(mHeight, layout.height - y);
+        if (x < 0 || y < 0 || width <= 0 || height <= 0) {
+            return;
+        }
+
+        final BlendTask task = new BlendTask(frame, layout, x, y, width, 0, height);
+        if (height < 2 * MIN_ROWS_PER_TASK) {
+            task.compute();
+        } else {
+            mPool.invoke(task);
+        }
+    }
+
+    private void blendRows(ByteBuffer frame, YuvLayout layout, int x, int y, int width, int fromRow, int toRow) {
+        for (int row = fromRow; row < toRow; row++) {
+            int dst = layout.yOffset + (y + row) * layout.yRowStride + x;
+            int src = row * mWidth;
+            for (int column = 0; column < width; column++, dst++, src++) {
+                final int inverseAlpha = mInverseAlpha[src];
+                if (inverseAlpha == 256) {
+                    continue;
+                }
+                final int value = (mY[src] + (frame.get(dst) & 0xff) * inverseAlpha + 128) >> 8;
+                frame.put(dst, (byte) clamp(value));
+            }
+        }
+
+        final int chromaX = x / 2;
+        final int chromaWidth = (width + 1) / 2;
+        for (int row = fromRow / 2; row < (toRow + 1) / 2; row++) {
+            final int chromaRow = y / 2 + row;
+            int dstU = layout.uOffset + chromaRow * layout.uvRowStride + chromaX * layout.uvPixelStride;
+            int dstV = layout.vOffset + chromaRow * layout.uvRowStride + chromaX * layout.uvPixelStride;
+            int src = row * mChromaWidth;
+            for (int column = 0; column < chromaWidth; column++, src++) {
+                final int inverseAlpha = mInverseChromaAlpha[src];
+                if (inverseAlpha != 256) {
+                    frame.put(dstU, (byte) clamp((mU[src] + (frame.get(dstU) & 0xff) * inverseAlpha + 128) >> 8));
+                    frame.put(dstV, (byte) clamp((mV[src] + (frame.get(dstV) & 0xff) * inverseAlpha + 128) >> 8));
+                }
+                dstU += layout.uvPixelStride;
+                dstV += layout.uvPixelStride;
+            }
+        }
+    }
+
+    private static int clamp(int value) {
+        return value < 0 ? 0 : value > 255 ? 255 : value;
+    }
+
+    /**
+     * Blends a range of watermark rows, halving it until it's small enough. Ranges start on
+     * even rows, so each chroma row belongs to exactly one task.
+     */
+    private final class BlendTask extends RecursiveAction {
+
+        private final ByteBuffer mFrame;
+
+        private final YuvLayout mLayout;
+
+        private final int mLeft;
+
+        private final int mTop;
+
+        private final int mColumns;
+
+        private final int mFromRow;
+
+        private final int mToRow;
+
+        BlendTask(ByteBuffer frame, YuvLayout layout, int x, int y, int width, int fromRow, int toRow) {
+            mFrame = frame;
+            mLayout = layout;
+            mLeft = x;
+            mTop = y;
+            mColumns = width;
+            mFromRow = fromRow;
+            mToRow = toRow;
+        }
+
+        @Override
+        protected void compute() {
+            if (mToRow - mFromRow < 2 * MIN_ROWS_PER_TASK) {
+                blendRows(mFrame, mLayout, mLeft, mTop, mColumns, mFromRow, mToRow);
+                return;
+            }
+
+            final int middle = (mFromRow + (mToRow - mFromRow) / 2) & ~1;
+            invokeAll(new BlendTask(mFrame, mLayout, mLeft, mTop, mColumns, mFromRow, middle),
+                    new BlendTask(mFrame, mLayout, mLeft, mTop, mColumns, middle, mToRow));
+        }
+    }
+}
@@ -0,0 +1,108 @@
+package com.vng.videofilter.codec;
+
+import org.junit.Test;
+
+import java.io.IOException;
+
+import static org.junit.Assert.*;
+
+/**
+ * Runs {@link CodecPool} over {@link FakeCodecPort}s.
+ */
+public class CodecPoolTest {
+
+    private static final CodecPool.Creator CREATOR = (mimeType, encoder, width, height) -> new FakeCodecPort(4, 0, 0, 1024);
+
+    private static final CodecPool.InstanceLimits UNLIMITED = (mimeType, encoder) -> Integer.MAX_VALUE;
+
+    @Test
+    public void releasedCodec_isHandedOutAgainForTheSameKey() throws Exception {
+        final CodecPool pool = new CodecPool(CREATOR, UNLIMITED, 4, 60_000);
+
+        final CodecPort first = pool.acquire("video/avc", false, 1280, 720);
+        first.start();
+        first.release();
+        assertEquals(1, pool.getIdleCount());
+
+        // Another role or resolution class doesn't get it.
+        pool.acquire("video/avc", true, 1280, 720).release();
+        pool.acquire("video/avc", false, 1920, 1080).release();
+        assertEquals(3, pool.getMissCount());
+        assertEquals(0, pool.getHitCount());
+
+        final CodecPort second = pool.acquire("video/avc", false, 1200, 720);
+        assertNotSame(first, second);
+        assertEquals(1, pool.getHitCount());
+        assertEquals(2, pool.getIdleCount());
+
+        // The pooled codec can go through a whole lifecycle again.
+        second.start();
+        second.release();
+        second.release();
+        assertEquals(3, pool.getIdleCount());
+        pool.clear();
+        assertEquals(0, pool.getIdleCount());
+    }
+
+    @Test
+    public void idleCodecs_areBoundedAndEvicted() throws Exception {
+        final CodecPool pool = new CodecPool(CREATOR, UNLIMITED, 2, 50);
+
+        final CodecPort a = pool.acquire("video/avc", false, 640, 480);
+        final CodecPort b = pool.acquire("video/avc", false, 640, 480);
+        final CodecPort c = pool.acquire("video/avc", false, 640, 480);
+        a.release();
+        b.release();
+        c.release();
+        assertEquals(2, pool.getIdleCount());
+        assertEquals(1, pool.getEvictionCount());
+
+        final long deadlineMs = System.currentTimeMillis() + 5000;
+        while (pool.getIdleCount() > 0 && System.currentTimeMillis() < deadlineMs) {
+            Thread.sleep(10);
+        }
+        assertEquals(0, pool.getIdleCount());
+        assertEquals(3, pool.getEvictionCount());
+    }
+
+    @Test
+    public void liveCodecs_areCappedByMimeTypeAndRole() throws Exception {
+        final CodecPool pool = new CodecPool(CREATOR, (mimeType, encoder) -> encoder ? 1 : 2, 4, 60_000);
+
+        final CodecPort a = pool.acquire("video/avc", false, 640, 480);
+        final CodecPort b = pool.acquire("video/avc", false, 1920, 1080);
+        try {
+            pool.acquire("video/avc", false, 640, 480);
+            fail("Third decoder acquired");
+        } catch (IOException expected) {
+        }
+        // Other types and roles have their own cap.
+        pool.acquire("video/avc", true, 640, 480).release();
+        pool.acquire("video/hevc", false, 640, 480).release();
+        assertEquals(2, pool.getLiveCount("video/avc", false));
+
+        // An idle one of another resolution class gives up its slot.
+        a.release();
+        final CodecPort c = pool.acquire("video/avc", false, 1280, 720);
+        assertEquals(2, pool.getLiveCount("video/avc", false));
+        assertEquals(1, pool.getEvictionCount());
+
+        // And one of the same class is handed out again.
+        b.release();
+        pool.acquire("video/avc", false, 1920, 1080).release();
+        assertEquals(1, pool.getHitCount());
+
+        c.release();
+        pool.clear();
+        assertEquals(0, pool.getLiveCount("video/avc", false));
+        assertEquals(0, pool.getLiveCount("video/avc", true));
+    }
+
+    @Test
+    public void resolutionClasses() {
+        assertEquals(0, CodecPool.getResolutionClass(640, 360));
+        assertEquals(1, CodecPool.getResolutionClass(1280, 720));
+        assertEquals(2, CodecPool.getResolutionClass(1920, 1080));
+        assertEquals(3, CodecPool.getResolutionClass(3840, 2160));
+    }
+}
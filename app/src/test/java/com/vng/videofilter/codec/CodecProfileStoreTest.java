@@ -0,0 +1,61 @@
+package com.vng.videofilter.codec;
+
+import org.junit.Test;
+
+import java.io.File;
+import java.util.Arrays;
+
+import static org.junit.Assert.*;
+
+/**
+ * Tests for {@link CodecProfileStore}.
+ */
+public class CodecProfileStoreTest {
+
+    private static final CodecProfile SOFTWARE = new CodecProfile("OMX.google.h264.decoder", "video/avc",
+            false, false, 2048, 2048, 60, 32, 400);
+
+    private static final CodecProfile HARDWARE_SLOW = new CodecProfile("OMX.vendor.avc.decoder", "video/avc",
+            false, true, 1920, 1088, 60, 8, 120);
+
+    private static final CodecProfile HARDWARE_FAST = new CodecProfile("OMX.vendor.avc.decoder.fast", "video/avc",
+            false, true, 1280, 720, 60, 4, 240);
+
+    @Test
+    public void select_prefersHardwareThenSpeed() {
+        final CodecProfileStore store = new CodecProfileStore(null, "build");
+        store.setProfiles(Arrays.asList(SOFTWARE, HARDWARE_SLOW, HARDWARE_FAST));
+
+        assertSame(HARDWARE_FAST, store.select("video/avc", false, 720, 1280));
+        assertSame(HARDWARE_SLOW, store.select("video/avc", false, 1920, 1080));
+        assertSame(SOFTWARE, store.select("video/avc", false, 2048, 1536));
+        assertNull(store.select("video/avc", true, 1280, 720));
+        assertNull(store.select("video/hevc", false, 1280, 720));
+    }
+
+    @Test
+    public void profiles_areReloadedOnTheSameBuildOnly() throws Exception {
+        final File file = File.createTempFile("codec_profiles", ".properties");
+        try {
+            final CodecProfileStore store = new CodecProfileStore(file, "build-1");
+            store.setProfiles(Arrays.asList(SOFTWARE, new CodecProfile(HARDWARE_SLOW.name, "video/avc",
+                    false, true, 1920, 1088, 60, 8, 120)));
+            store.save();
+            store.recordFrameRate(HARDWARE_SLOW.name, "video/avc", 90);
+
+            final CodecProfileStore reloaded = new CodecProfileStore(file, "build-1");
+            assertTrue(reloaded.load());
+            assertEquals(2, reloaded.getProfiles().size());
+            final CodecProfile profile = reloaded.find(HARDWARE_SLOW.name, "video/avc");
+            assertTrue(profile.hardware);
+            assertEquals(1920, profile.maxWidth);
+            assertEquals(8, profile.maxInstances);
+            assertEquals(90, profile.getMeasuredFrameRate(), 0.01);
+            assertEquals(90, profile.getExpectedFrameRate(), 0.01);
+
+            assertFalse(new CodecProfileStore(file, "build-2").load());
+        } finally {
+            assertTrue(file.delete());
+        }
+    }
+}
@@ -0,0 +1,104 @@
+package com.vng.videofilter.codec;
+
+import android.media.MediaCodec;
+import android.media.MediaFormat;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.lang.reflect.Proxy;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.*;
+
+/**
+ * Tests for {@link CodecTuning}.
+ */
+public class CodecTuningTest {
+
+    @Before
+    public void setUp() {
+        CodecTuning.clearCache();
+    }
+
+    @Test
+    public void rejectedKeys_areDroppedAndRemembered() {
+        final AtomicInteger configures = new AtomicInteger();
+        final AtomicInteger resets = new AtomicInteger();
+        // Rejects all the keys, then the priority with the operating rate, i.e. the second key.
+        final CodecPort codec = codec("OMX.test.decoder", configures, resets, 1, 3);
+
+        CodecTuning.configure(codec, MediaFormat::new, null, 0, null);
+
+        // All the keys, then one more key at a time; the last attempt is kept.
+        assertEquals(6, configures.get());
+        assertEquals(5, resets.get());
+        final List<String> accepted = CodecTuning.getAcceptedKeys("OMX.test.decoder", false);
+        assertEquals(Arrays.asList(MediaFormat.KEY_PRIORITY, CodecTuning.KEY_LOW_LATENCY,
+                CodecTuning.KEY_QTI_LOW_LATENCY, CodecTuning.KEY_RTC_LOW_LATENCY), accepted);
+        assertNull(CodecTuning.getAcceptedKeys("OMX.test.decoder", true));
+
+        // The next session goes straight to what worked.
+        CodecTuning.configure(codec, MediaFormat::new, null, 0, null);
+        assertEquals(7, configures.get());
+        assertEquals(5, resets.get());
+    }
+
+    @Test
+    public void keysRejectedOnlyTogether_keepTheFirst() {
+        final AtomicInteger configures = new AtomicInteger();
+        // Rejects all the keys, then the operating rate on top of the priority.
+        final CodecPort codec = codec("OMX.test.encoder", configures, new AtomicInteger(), 1, 3);
+
+        CodecTuning.configure(codec, MediaFormat::new, null, MediaCodec.CONFIGURE_FLAG_ENCODE, null);
+
+        // The last attempt failed, so the priority alone is configured again.
+        assertEquals(4, configures.get());
+        assertEquals(Collections.singletonList(MediaFormat.KEY_PRIORITY),
+                CodecTuning.getAcceptedKeys("OMX.test.encoder", true));
+    }
+
+    @Test
+    public void encoder_getsItsOwnKeys() {
+        final AtomicInteger configures = new AtomicInteger();
+        CodecTuning.configure(codec("OMX.test.encoder", configures, new AtomicInteger()),
+                MediaFormat::new, null, MediaCodec.CONFIGURE_FLAG_ENCODE, null);
+
+        assertEquals(1, configures.get());
+        assertTrue(CodecTuning.getAcceptedKeys("OMX.test.encoder", true).contains(MediaFormat.KEY_OPERATING_RATE));
+        assertFalse(CodecTuning.getAcceptedKeys("OMX.test.encoder", true).contains(CodecTuning.KEY_LOW_LATENCY));
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void codecThatNeverConfigures_throws() {
+        CodecTuning.configure(codec("OMX.test.broken", new AtomicInteger(), new AtomicInteger(), 1, 2, 3, 4, 5, 6, 7),
+                MediaFormat::new, null, 0, null);
+    }
+
+    /**
+     * @param failures Which configure calls throw, counting from 1.
+     */
+    private static CodecPort codec(String name, AtomicInteger configures, AtomicInteger resets, Integer... failures) {
+        final List<Integer> failing = Arrays.asList(failures);
+        return (CodecPort) Proxy.newProxyInstance(CodecPort.class.getClassLoader(), new Class<?>[]{CodecPort.class},
+                (proxy, method, args) -> {
+                    switch (method.getName()) {
+                        case "getName":
+                            return name;
+                        case "configure":
+                            if (failing.contains(configures.incrementAndGet())) {
+                                throw new IllegalStateException("configure failed");
+                            }
+                            return null;
+                        case "reset":
+                            resets.incrementAndGet();
+                            return null;
+                        default:
+                            return null;
+                    }
+                });
+    }
+}
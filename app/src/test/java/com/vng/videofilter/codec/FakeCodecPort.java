@@ -0,0 +1,439 @@
+package com.vng.videofilter.codec;
+
+import android.media.MediaCodec;
+import android.media.MediaFormat;
+import android.view.Surface;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayDeque;
+import java.util.PriorityQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * In-JVM stand-in for a hardware codec. Copies each input sample to an output buffer after
+ * a configurable latency, optionally reordering frames by presentation time the way a
+ * decoder does with B-frames. Output buffers are only reused once the client releases
+ * them, so a slow consumer backs up into the input side like a real codec.
+ * <p>
+ * Supports both synchronous (dequeue) and asynchronous (callback) mode.
+ */
+public final class FakeCodecPort implements CodecPort {
+
+    private final int mBufferCount;
+
+    private final long mFrameLatencyNs;
+
+    private final int mReorderDepth;
+
+    private final ByteBuffer[] mInputBuffers;
+
+    private final ByteBuffer[] mOutputBuffers;
+
+    private final SampleInfo[] mInputInfos;
+
+    private final SampleInfo[] mOutputInfos;
+
+    private final ReentrantLock mLock = new ReentrantLock();
+
+    private final Condition mChanged = mLock.newCondition();
+
+    private final ArrayDeque<Integer> mFreeInputs = new ArrayDeque<>();
+
+    private final ArrayDeque<Integer> mQueuedInputs = new ArrayDeque<>();
+
+    private final ArrayDeque<Integer> mFreeOutputs = new ArrayDeque<>();
+
+    private final ArrayDeque<Integer> mReadyOutputs = new ArrayDeque<>();
+
+    private final PriorityQueue<Frame> mReorderWindow = new PriorityQueue<>(
+            (a, b) -> Long.compare(a.presentationTimeUs, b.presentationTimeUs));
+
+    private Callback mCallback;
+
+    private Thread mWorker;
+
+    private volatile boolean mRunning;
+
+    private int mFramesInCodec;
+
+    private int mMaxFramesInCodec;
+
+    private int mFramesQueued;
+
+    private int mFramesOutput;
+
+    private int mOutputStalls;
+
+    public FakeCodecPort(int bufferCount, long frameLatencyUs, int reorderDepth, int bufferSize) {
+        mBufferCount = bufferCount;
+        mFrameLatencyNs = TimeUnit.MICROSECONDS.toNanos(frameLatencyUs);
+        mReorderDepth = reorderDepth;
+        mInputBuffers = new ByteBuffer[bufferCount];
+        mOutputBuffers = new ByteBuffer[bufferCount];
+        mInputInfos = new SampleInfo[bufferCount];
+        mOutputInfos = new SampleInfo[bufferCount];
+        for (int i = 0; i < bufferCount; i++) {
+            mInputBuffers[i] = ByteBuffer.allocateDirect(bufferSize);
+            mOutputBuffers[i] = ByteBuffer.allocateDirect(bufferSize);
+            mInputInfos[i] = new SampleInfo();
+            mOutputInfos[i] = new SampleInfo();
+        }
+    }
+
+    public static Factory factory(int bufferCount, long frameLatencyUs, int reorderDepth) {
+        return mimeType -> new FakeCodecPort(bufferCount, frameLatencyUs, reorderDepth, 64 * 1024);
+    }
+
+    @Override
+    public void setCallback(Callback callback) {
+        mCallback = callback;
+    }
+
+    @Override
+    public void configure(MediaFormat format, Surface surface, int flags) {
+    }
+
+    @Override
+    public void start() {
+        mLock.lock();
+        try {
+            resetQueues();
+            mRunning = true;
+        } finally {
+            mLock.unlock();
+        }
+        mWorker = new Thread(this::work, "fake_codec");
+        mWorker.start();
+    }
+
+    @Override
+    public Surface createInputSurface() {
+        throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public void signalEndOfInputStream() {
+        throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public int getInputBufferCount() {
+        return mCallback != null ? 0 : mBufferCount;
+    }
+
+    @Override
+    public int getOutputBufferCount() {
+        return mCallback != null ? 0 : mBufferCount;
+    }
+
+    @Override
+    public ByteBuffer getInputBuffer(int index) {
+        final ByteBuffer buffer = mInputBuffers[index];
+        buffer.clear();
+        return buffer;
+    }
+
+    @Override
+    public ByteBuffer getOutputBuffer(int index) {
+        return mOutputBuffers[index];
+    }
+
+    @Override
+    public int dequeueInputBuffer(long timeoutUs) {
+        mLock.lock();
+        try {
+            if (!await(() -> !mFreeInputs.isEmpty(), timeoutUs)) {
+                return MediaCodec.INFO_TRY_AGAIN_LATER;
+            }
+            return mFreeInputs.poll();
+        } finally {
+            mLock.unlock();
+        }
+    }
+
+    @Override
+    public int dequeueOutputBuffer(SampleInfo info, long timeoutUs) {
+        mLock.lock();
+        try {
+            if (!await(() -> !mReadyOutputs.isEmpty(), timeoutUs)) {
+                return MediaCodec.INFO_TRY_AGAIN_LATER;
+            }
+            final int index = mReadyOutputs.poll();
+            info.set(mOutputInfos[index]);
+            return index;
+        } finally {
+            mLock.unlock();
+        }
+    }
+
+    @Override
+    public void queueInputBuffer(int index, int offset, int size, long presentationTimeUs, int flags) {
+        mLock.lock();
+        try {
+            mInputInfos[index].set(offset, size, presentationTimeUs, flags);
+            mQueuedInputs.add(index);
+            mFramesQueued++;
+            mFramesInCodec++;
+            mMaxFramesInCodec = Math.max(mMaxFramesInCodec, mFramesInCodec);
+            mChanged.signalAll();
+        } finally {
+            mLock.unlock();
+        }
+    }
+
+    @Override
+    public void queueSecureInputBuffer(int index, int offset, MediaCodec.CryptoInfo info,
+                                       long presentationTimeUs, int flags) {
+        throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public void releaseOutputBuffer(int index, boolean render) {
+        mLock.lock();
+        try {
+            mFreeOutputs.add(index);
+            mFramesInCodec--;
+            mChanged.signalAll();
+        } finally {
+            mLock.unlock();
+        }
+    }
+
+    @Override
+    public MediaFormat getOutputFormat() {
+        return null;
+    }
+
+    @Override
+    public String getName() {
+        return "fake.codec";
+    }
+
+    @Override
+    public void flush() {
+        mLock.lock();
+        try {
+            resetQueues();
+            mChanged.signalAll();
+        } finally {
+            mLock.unlock();
+        }
+    }
+
+    @Override
+    public void stop() {
+        mRunning = false;
+        if (mWorker != null) {
+            mWorker.interrupt();
+            try {
+                mWorker.join();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            mWorker = null;
+        }
+    }
+
+    @Override
+    public void reset() {
+        stop();
+        mCallback = null;
+    }
+
+    @Override
+    public void release() {
+        stop();
+    }
+
+    /**
+     * Reports an error the way a codec that broke down does, in asynchronous mode.
+     */
+    public void fail(Exception e) {
+        if (mCallback != null) {
+            mCallback.onError(this, e);
+        }
+    }
+
+    /**
+     * Largest number of frames held at once between queueInputBuffer and releaseOutputBuffer.
+     */
+    public int getMaxFramesInCodec() {
+        mLock.lock();
+        try {
+            return mMaxFramesInCodec;
+        } finally {
+            mLock.unlock();
+        }
+    }
+
+    /**
+     * Number of times a decoded frame had to wait for the client to release an output buffer.
+     */
+    public int getOutputStalls() {
+        mLock.lock();
+        try {
+            return mOutputStalls;
+        } finally {
+            mLock.unlock();
+        }
+    }
+
+    public int getFramesQueued() {
+        mLock.lock();
+        try {
+            return mFramesQueued;
+        } finally {
+            mLock.unlock();
+        }
+    }
+
+    public int getFramesOutput() {
+        mLock.lock();
+        try {
+            return mFramesOutput;
+        } finally {
+            mLock.unlock();
+        }
+    }
+
+    private void resetQueues() {
+        mFreeInputs.clear();
+        mQueuedInputs.clear();
+        mFreeOutputs.clear();
+        mReadyOutputs.clear();
+        mReorderWindow.clear();
+        mFramesInCodec = 0;
+        for (int i = 0; i < mBufferCount; i++) {
+            mFreeOutputs.add(i);
+            if (mCallback == null) {
+                mFreeInputs.add(i);
+            }
+        }
+    }
+
+    private void work() {
+        try {
+            if (mCallback != null) {
+                for (int i = 0; i < mBufferCount; i++) {
+                    mCallback.onInputBufferAvailable(this, i);
+                }
+            }
+
+            while (mRunning) {
+                final Frame frame = new Frame();
+                final int inputIndex;
+                mLock.lock();
+                try {
+                    while (mQueuedInputs.isEmpty()) {
+                        mChanged.await();
+                    }
+                    inputIndex = mQueuedInputs.poll();
+                    final SampleInfo info = mInputInfos[inputIndex];
+                    frame.presentationTimeUs = info.presentationTimeUs;
+                    frame.flags = info.flags;
+                    frame.data = new byte[info.size];
+                    final ByteBuffer input = mInputBuffers[inputIndex].duplicate();
+                    input.position(info.offset);
+                    input.get(frame.data);
+                } finally {
+                    mLock.unlock();
+                }
+
+                if (mFrameLatencyNs > 0) {
+                    Thread.sleep(mFrameLatencyNs / 1_000_000, (int) (mFrameLatencyNs % 1_000_000));
+                }
+                releaseInput(inputIndex);
+
+                if ((frame.flags & MediaCodec.BUFFER_FLAG_END_OF_STREAM) != 0) {
+                    while (!mReorderWindow.isEmpty()) {
+                        emit(mReorderWindow.poll());
+                    }
+                    emit(frame);
+                } else {
+                    mReorderWindow.add(frame);
+                    if (mReorderWindow.size() > mReorderDepth) {
+                        emit(mReorderWindow.poll());
+                    }
+                }
+            }
+        } catch (InterruptedException e) {
+            // stopped
+        }
+    }
+
+    private void releaseInput(int index) {
+        mLock.lock();
+        try {
+            if (mCallback == null) {
+                mFreeInputs.add(index);
+                mChanged.signalAll();
+            }
+        } finally {
+            mLock.unlock();
+        }
+        if (mCallback != null) {
+            mCallback.onInputBufferAvailable(this, index);
+        }
+    }
+
+    private void emit(Frame frame) throws InterruptedException {
+        final int index;
+        mLock.lock();
+        try {
+            if (mFreeOutputs.isEmpty()) {
+                mOutputStalls++;
+            }
+            while (mFreeOutputs.isEmpty()) {
+                mChanged.await();
+            }
+            index = mFreeOutputs.poll();
+            final ByteBuffer output = mOutputBuffers[index];
+            output.clear();
+            output.put(frame.data);
+            output.flip();
+            mOutputInfos[index].set(0, frame.data.length, frame.presentationTimeUs, frame.flags);
+            mFramesOutput++;
+            if (mCallback == null) {
+                mReadyOutputs.add(index);
+                mChanged.signalAll();
+            }
+        } finally {
+            mLock.unlock();
+        }
+        if (mCallback != null) {
+            mCallback.onOutputBufferAvailable(this, index, mOutputInfos[index]);
+        }
+    }
+
+    private boolean await(Check check, long timeoutUs) {
+        long remainingNs = TimeUnit.MICROSECONDS.toNanos(timeoutUs);
+        try {
+            while (!check.isMet()) {
+                if (timeoutUs >= 0 && remainingNs <= 0) {
+                    return false;
+                }
+                if (timeoutUs < 0) {
+                    mChanged.await();
+                } else {
+                    remainingNs = mChanged.awaitNanos(remainingNs);
+                }
+            }
+            return true;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return false;
+        }
+    }
+
+    private interface Check {
+        boolean isMet();
+    }
+
+    private static final class Frame {
+        long presentationTimeUs;
+        int flags;
+        byte[] data;
+    }
+}
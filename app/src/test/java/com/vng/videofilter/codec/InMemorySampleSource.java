@@ -0,0 +1,184 @@
+package com.vng.videofilter.codec;
+
+import android.media.MediaCodec;
+import android.media.MediaExtractor;
+import android.media.MediaFormat;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * {@link SampleSource} over samples held in memory, in the order they were added.
+ */
+public final class InMemorySampleSource implements SampleSource {
+
+    private final List<String> mTrackMimes = new ArrayList<>();
+
+    private final List<Sample> mSamples = new ArrayList<>();
+
+    private boolean[] mSelected = new boolean[0];
+
+    private int mPosition;
+
+    public int addTrack(String mime) {
+        mTrackMimes.add(mime);
+        boolean[] selected = new boolean[mTrackMimes.size()];
+        System.arraycopy(mSelected, 0, selected, 0, mSelected.length);
+        mSelected = selected;
+        return mTrackMimes.size() - 1;
+    }
+
+    public void addSample(int track, long presentationTimeUs, int flags, byte[] data) {
+        mSamples.add(new Sample(track, presentationTimeUs, flags, data));
+    }
+
+    /**
+     * Builds a single video track in decode order. Every {@code gopSize}-th frame is a sync
+     * sample and, if {@code bFrames} is set, each pair of frames after the sync sample is
+     * swapped so that presentation order differs from decode order.
+     */
+    public static InMemorySampleSource video(int frameCount, long frameDurationUs, int gopSize,
+                                             boolean bFrames, int payloadSize) {
+        final InMemorySampleSource source = new InMemorySampleSource();
+        final int track = source.addTrack("video/avc");
+        for (int i = 0; i < frameCount; i++) {
+            int ptsIndex = i;
+            final int positionInGop = i % gopSize;
+            if (bFrames && positionInGop > 0) {
+                final boolean lastInGop = positionInGop == gopSize - 1 || i == frameCount - 1;
+                if (positionInGop % 2 == 1 && !lastInGop) {
+                    ptsIndex = i + 1;
+                } else if (positionInGop % 2 == 0) {
+                    ptsIndex = i - 1;
+                }
+            }
+            final byte[] data = new byte[payloadSize];
+            data[0] = (byte) i;
+            source.addSample(track, ptsIndex * frameDurationUs,
+                    positionInGop == 0 ? MediaExtractor.SAMPLE_FLAG_SYNC : 0, data);
+        }
+        return source;
+    }
+
+    @Override
+    public int getTrackCount() {
+        return mTrackMimes.size();
+    }
+
+    @Override
+    public String getTrackMime(int index) {
+        return mTrackMimes.get(index);
+    }
+
+    @Override
+    public MediaFormat getTrackFormat(int index) {
+        return new MediaFormat();
+    }
+
+    @Override
+    public void selectTrack(int index) {
+        mSelected[index] = true;
+    }
+
+    @Override
+    public void unselectTrack(int index) {
+        mSelected[index] = false;
+    }
+
+    @Override
+    public int readSampleData(ByteBuffer buffer, int offset) {
+        final int position = current();
+        if (position >= mSamples.size()) {
+            return -1;
+        }
+        final byte[] data = mSamples.get(position).data;
+        buffer.clear();
+        buffer.position(offset);
+        buffer.put(data);
+        buffer.flip();
+        buffer.position(offset);
+        return data.length;
+    }
+
+    @Override
+    public long getSampleTime() {
+        final int position = current();
+        return position < mSamples.size() ? mSamples.get(position).presentationTimeUs : -1;
+    }
+
+    @Override
+    public int getSampleFlags() {
+        final int position = current();
+        return position < mSamples.size() ? mSamples.get(position).flags : 0;
+    }
+
+    @Override
+    public int getSampleTrackIndex() {
+        final int position = current();
+        return position < mSamples.size() ? mSamples.get(position).track : -1;
+    }
+
+    @Override
+    public boolean getSampleCryptoInfo(MediaCodec.CryptoInfo info) {
+        return false;
+    }
+
+    @Override
+    public boolean advance() {
+        final int position = current();
+        if (position >= mSamples.size()) {
+            return false;
+        }
+        mPosition = position + 1;
+        return current() < mSamples.size();
+    }
+
+    /**
+     * Only {@link MediaExtractor#SEEK_TO_PREVIOUS_SYNC} semantics: positions at the last
+     * sync sample of a selected track at or before {@code timeUs}.
+     */
+    @Override
+    public void seekTo(long timeUs, int mode) {
+        int target = 0;
+        for (int i = 0; i < mSamples.size(); i++) {
+            final Sample sample = mSamples.get(i);
+            if (!mSelected[sample.track] || (sample.flags & MediaExtractor.SAMPLE_FLAG_SYNC) == 0) {
+                continue;
+            }
+            if (sample.presentationTimeUs > timeUs) {
+                break;
+            }
+            target = i;
+        }
+        mPosition = target;
+    }
+
+    @Override
+    public void release() {
+        mSamples.clear();
+    }
+
+    // First sample at or after the read position that belongs to a selected track.
+    private int current() {
+        int position = mPosition;
+        while (position < mSamples.size() && !mSelected[mSamples.get(position).track]) {
+            position++;
+        }
+        return position;
+    }
+
+    private static final class Sample {
+        final int track;
+        final long presentationTimeUs;
+        final int flags;
+        final byte[] data;
+
+        Sample(int track, long presentationTimeUs, int flags, byte[] data) {
+            this.track = track;
+            this.presentationTimeUs = presentationTimeUs;
+            this.flags = flags;
+            this.data = data;
+        }
+    }
+}
@@ -0,0 +1,63 @@
+package com.vng.videofilter.codec;
+
+import android.media.MediaCodec;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+/**
+ * Drives {@link MediaCodecWrapper} in synchronous mode against {@link FakeCodecPort}.
+ */
+public class MediaCodecWrapperTest {
+
+    private static final int BUFFER_COUNT = 4;
+
+    private static final int REORDER_DEPTH = 1;
+
+    @Test(timeout = 10000)
+    public void slowConsumer_backsUpIntoInput() throws Exception {
+        final FakeCodecPort codec = new FakeCodecPort(BUFFER_COUNT, 0, REORDER_DEPTH, 16 * 1024);
+        final MediaCodecWrapper wrapper = MediaCodecWrapper.fromCodec(codec);
+        final InMemorySampleSource source = InMemorySampleSource.video(100, 33_333L, 10, false, 1024);
+        source.selectTrack(0);
+        final MediaCodec.BufferInfo info = new MediaCodec.BufferInfo();
+
+        // Never release output: the codec must stop accepting input once every buffer and
+        // the frame in flight are held.
+        int accepted = 0;
+        final long deadline = System.currentTimeMillis() + 2000;
+        while (System.currentTimeMillis() < deadline) {
+            wrapper.peekSample(info);
+            if (wrapper.writeSample(source, false, source.getSampleTime(), 0)) {
+                source.advance();
+                accepted++;
+            } else {
+                Thread.sleep(1);
+            }
+        }
+
+        final int limit = 2 * BUFFER_COUNT + REORDER_DEPTH + 1;
+        assertTrue("accepted " + accepted, accepted <= limit);
+        assertTrue("accepted " + accepted, accepted >= BUFFER_COUNT);
+        assertTrue(codec.getOutputStalls() > 0);
+
+        // Draining the output lets the rest of the stream through, followed by end of stream.
+        int drained = 0;
+        boolean endOfStreamQueued = false;
+        while (drained < 101) {
+            if (wrapper.peekSample(info)) {
+                wrapper.popSample(false);
+                drained++;
+            }
+            final long sampleTime = source.getSampleTime();
+            if (!endOfStreamQueued && wrapper.writeSample(source, false, sampleTime, 0)) {
+                endOfStreamQueued = sampleTime < 0;
+                source.advance();
+            }
+        }
+        assertEquals(101, codec.getFramesOutput());
+
+        wrapper.stopAndRelease();
+    }
+}
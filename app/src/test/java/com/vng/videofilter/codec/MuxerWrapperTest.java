@@ -0,0 +1,203 @@
+package com.vng.videofilter.codec;
+
+import org.junit.Test;
+
+import java.nio.ByteBuffer;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.junit.Assert.*;
+
+/**
+ * Runs {@link MuxerWrapper} and {@link TrackPassthrough} against {@link RecordingMuxerPort}.
+ */
+public class MuxerWrapperTest {
+
+    private static final long VIDEO_FRAME_US = 33_333L;
+
+    private static final long AUDIO_FRAME_US = 21_333L;
+
+    private static final long DURATION_US = 2_000_000L;
+
+    @Test(timeout = 10000)
+    public void write_waitsForAllTracks() throws Exception {
+        final RecordingMuxerPort port = new RecordingMuxerPort();
+        final MuxerWrapper muxer = new MuxerWrapper(port, 2);
+        final int first = muxer.addTrack(null);
+
+        final SampleInfo info = new SampleInfo();
+        info.set(0, 1, 0, 0);
+        final CountDownLatch written = new CountDownLatch(1);
+        final Thread writer = new Thread(() -> {
+            try {
+                muxer.writeSampleData(first, ByteBuffer.allocate(1), info);
+                written.countDown();
+            } catch (InterruptedException ignored) {
+            }
+        });
+        writer.start();
+
+        assertFalse(written.await(100, TimeUnit.MILLISECONDS));
+        assertFalse(port.isStarted());
+
+        muxer.addTrack(null);
+        assertTrue(written.await(5, TimeUnit.SECONDS));
+        assertTrue(port.isStarted());
+        muxer.release();
+    }
+
+    @Test(timeout = 30000)
+    public void passthrough_staysInterleavedWithSlowerTrack() throws Exception {
+        final InMemorySampleSource source = new InMemorySampleSource();
+        source.addTrack("video/avc");
+        final int audioTrack = source.addTrack("audio/mp4a-latm");
+        for (long pts = 0; pts < DURATION_US; pts += AUDIO_FRAME_US) {
+            source.addSample(audioTrack, pts, 1, new byte[64]);
+        }
+
+        final RecordingMuxerPort port = new RecordingMuxerPort();
+        final TrackPassthrough passthrough = new TrackPassthrough(source);
+        assertEquals(1, passthrough.getTrackCount());
+
+        final MuxerWrapper muxer = new MuxerWrapper(port, 1 + passthrough.getTrackCount());
+        passthrough.addTracks(muxer);
+
+        final CountDownLatch done = new CountDownLatch(1);
+        final AtomicReference<Exception> error = new AtomicReference<>();
+        passthrough.start(new TrackPassthrough.Listener() {
+            @Override
+            public void onComplete() {
+                done.countDown();
+            }
+
+            @Override
+            public void onError(Exception e) {
+                error.set(e);
+                done.countDown();
+            }
+        });
+
+        // Stands in for the encoder: added last, and much slower than copying.
+        final int videoTrack = muxer.addTrack(null);
+        final SampleInfo info = new SampleInfo();
+        final ByteBuffer buffer = ByteBuffer.allocate(128);
+        for (long pts = 0; pts < DURATION_US; pts += VIDEO_FRAME_US) {
+            Thread.sleep(1);
+            info.set(0, 128, pts, 0);
+            buffer.clear();
+            muxer.writeSampleData(videoTrack, buffer, info);
+        }
+        muxer.finishTrack(videoTrack);
+
+        assertTrue(done.await(10, TimeUnit.SECONDS));
+        assertNull(error.get());
+
+        final List<long[]> samples = port.getSamples();
+        long lastVideoUs = 0;
+        int audioSamples = 0;
+        for (long[] sample : samples) {
+            if (sample[0] == videoTrack) {
+                lastVideoUs = sample[1];
+            } else {
+                audioSamples++;
+                assertTrue("audio at " + sample[1] + " written with video at " + lastVideoUs,
+                        sample[1] <= lastVideoUs + SampleInterleaver.DEFAULT_WINDOW_US);
+            }
+        }
+        assertEquals((DURATION_US + AUDIO_FRAME_US - 1) / AUDIO_FRAME_US, audioSamples);
+
+        passthrough.release();
+        muxer.release();
+    }
+
+    @Test(timeout = 10000)
+    public void passthrough_copiesOnlyTheTimeRange() throws Exception {
+        final InMemorySampleSource source = new InMemorySampleSource();
+        final int audioTrack = source.addTrack("audio/mp4a-latm");
+        for (long pts = 0; pts < DURATION_US; pts += AUDIO_FRAME_US) {
+            source.addSample(audioTrack, pts, 1, new byte[64]);
+        }
+
+        final RecordingMuxerPort port = new RecordingMuxerPort();
+        final TrackPassthrough passthrough = new TrackPassthrough(source);
+        final MuxerWrapper muxer = new MuxerWrapper(port, 1);
+        passthrough.addTracks(muxer);
+        passthrough.setTimeRange(500_000L, 1_000_000L);
+
+        final CountDownLatch done = new CountDownLatch(1);
+        passthrough.start(new TrackPassthrough.Listener() {
+            @Override
+            public void onComplete() {
+                done.countDown();
+            }
+
+            @Override
+            public void onError(Exception e) {
+                done.countDown();
+            }
+        });
+        assertTrue(done.await(5, TimeUnit.SECONDS));
+
+        final List<long[]> samples = port.getSamples();
+        assertFalse(samples.isEmpty());
+        for (long[] sample : samples) {
+            assertTrue(sample[1] >= 0 && sample[1] < 500_000L);
+        }
+        // Samples from 500 ms on, until 1 s.
+        assertEquals(1_000_000L / AUDIO_FRAME_US - (500_000L + AUDIO_FRAME_US - 1) / AUDIO_FRAME_US + 1, samples.size());
+
+        passthrough.release();
+        muxer.release();
+    }
+
+    @Test(timeout = 10000)
+    public void passthrough_copiesOnlyAudio() throws Exception {
+        final InMemorySampleSource source = new InMemorySampleSource();
+        source.addTrack("video/avc");
+        final int audioTrack = source.addTrack("audio/mp4a-latm");
+        // As phone recordings and QuickTime files carry them.
+        final int metadataTrack = source.addTrack("application/octet-stream");
+        final int textTrack = source.addTrack("text/3gpp-tt");
+        for (long pts = 0; pts < DURATION_US; pts += AUDIO_FRAME_US) {
+            source.addSample(audioTrack, pts, 1, new byte[64]);
+            if (pts % (10 * AUDIO_FRAME_US) == 0) {
+                source.addSample(metadataTrack, pts, 1, new byte[16]);
+                source.addSample(textTrack, pts, 1, new byte[16]);
+            }
+        }
+
+        final RecordingMuxerPort port = new RecordingMuxerPort();
+        final TrackPassthrough passthrough = new TrackPassthrough(source);
+        assertEquals(1, passthrough.getTrackCount());
+        final MuxerWrapper muxer = new MuxerWrapper(port, 1);
+        passthrough.addTracks(muxer);
+
+        final CountDownLatch done = new CountDownLatch(1);
+        final AtomicReference<Exception> error = new AtomicReference<>();
+        passthrough.start(new TrackPassthrough.Listener() {
+            @Override
+            public void onComplete() {
+                done.countDown();
+            }
+
+            @Override
+            public void onError(Exception e) {
+                error.set(e);
+                done.countDown();
+            }
+        });
+        assertTrue(done.await(5, TimeUnit.SECONDS));
+        assertNull(error.get());
+
+        final List<long[]> samples = port.getSamples();
+        assertEquals((DURATION_US + AUDIO_FRAME_US - 1) / AUDIO_FRAME_US, samples.size());
+        for (long[] sample : samples) {
+            assertEquals(0, sample[0]);
+        }
+
+        passthrough.release();
+        muxer.release();
+    }
+}
@@ -0,0 +1,66 @@
+package com.vng.videofilter.codec;
+
+import android.media.MediaFormat;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * {@link MuxerPort} that keeps the track and timestamp of every sample written, in order.
+ */
+public final class RecordingMuxerPort implements MuxerPort {
+
+    private final List<long[]> mSamples = new ArrayList<>();
+
+    private int mTrackCount;
+
+    private boolean mStarted;
+
+    private boolean mStopped;
+
+    @Override
+    public synchronized int addTrack(MediaFormat format) {
+        return mTrackCount++;
+    }
+
+    @Override
+    public void setOrientationHint(int degrees) {
+    }
+
+    @Override
+    public synchronized void start() {
+        mStarted = true;
+    }
+
+    @Override
+    public synchronized void writeSampleData(int trackIndex, ByteBuffer buffer, SampleInfo info) {
+        if (!mStarted || mStopped) {
+            throw new IllegalStateException("not started");
+        }
+        if (buffer.remaining() < info.size) {
+            throw new IllegalArgumentException("buffer holds " + buffer.remaining() + " bytes, sample has " + info.size);
+        }
+        mSamples.add(new long[]{trackIndex, info.presentationTimeUs});
+    }
+
+    @Override
+    public synchronized void stop() {
+        mStopped = true;
+    }
+
+    @Override
+    public void release() {
+    }
+
+    public synchronized boolean isStarted() {
+        return mStarted;
+    }
+
+    /**
+     * Returns {track, presentationTimeUs} pairs in the order they were written.
+     */
+    public synchronized List<long[]> getSamples() {
+        return new ArrayList<>(mSamples);
+    }
+}
@@ -0,0 +1,198 @@
+package com.vng.videofilter.codec;
+
+import android.media.MediaCodec;
+
+import org.junit.Test;
+
+import java.nio.ByteBuffer;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.junit.Assert.*;
+
+/**
+ * Tests for {@link SampleInterleaver}.
+ */
+public class SampleInterleaverTest {
+
+    private static final long VIDEO_FRAME_US = 33_333L;
+
+    private static final long AUDIO_FRAME_US = 21_333L;
+
+    @Test
+    public void burst_isHeldUntilTheOtherTrackCatchesUp() {
+        final RecordingMuxerPort port = startedPort(2);
+        final SampleInterleaver interleaver = new SampleInterleaver(2, 1_000_000L, 64);
+
+        // A burst of encoded video with no audio yet.
+        for (int i = 0; i < 10; i++) {
+            add(interleaver, port, 0, i * VIDEO_FRAME_US);
+        }
+        assertEquals(0, port.getSamples().size());
+        assertEquals(10, interleaver.getQueuedCount());
+
+        for (long pts = 0; pts <= 10 * VIDEO_FRAME_US; pts += AUDIO_FRAME_US) {
+            add(interleaver, port, 1, pts);
+        }
+        interleaver.finishTrack(0);
+        interleaver.finishTrack(1);
+        interleaver.drain(port);
+
+        assertEquals(0, interleaver.getQueuedCount());
+        assertInTimeOrder(port.getSamples());
+    }
+
+    @Test
+    public void codecConfig_isDropped() {
+        final RecordingMuxerPort port = startedPort(1);
+        final SampleInterleaver interleaver = new SampleInterleaver(1, 1_000_000L, 4);
+        final SampleInfo info = new SampleInfo();
+
+        info.set(0, 4, 0, MediaCodec.BUFFER_FLAG_CODEC_CONFIG);
+        interleaver.add(0, ByteBuffer.allocate(4), info, port);
+        assertEquals(0, port.getSamples().size());
+
+        // Only one track, so every sample is written right away from a buffer of the pool.
+        final ByteBuffer payload = ByteBuffer.wrap(new byte[]{9, 9, 1, 2, 3});
+        info.set(2, 3, 0, 0);
+        interleaver.add(0, payload, info, port);
+        assertEquals(1, port.getSamples().size());
+    }
+
+    @Test
+    public void fullPool_writesTheOldestSampleEarly() {
+        final RecordingMuxerPort port = startedPort(2);
+        final SampleInterleaver interleaver = new SampleInterleaver(2, 1_000_000L, 4);
+
+        for (int i = 0; i < 10; i++) {
+            add(interleaver, port, 0, i * VIDEO_FRAME_US);
+            assertTrue(interleaver.getQueuedCount() <= 4);
+        }
+        assertEquals(6, port.getSamples().size());
+        assertInTimeOrder(port.getSamples());
+
+        interleaver.flush(port);
+        assertEquals(10, port.getSamples().size());
+    }
+
+    @Test
+    public void isAhead_onlyBeyondTheWindowOfUnfinishedTracks() {
+        final RecordingMuxerPort port = startedPort(2);
+        final SampleInterleaver interleaver = new SampleInterleaver(2, 500_000L, 16);
+
+        assertFalse(interleaver.isAhead(0, 500_000L));
+        assertTrue(interleaver.isAhead(0, 500_001L));
+
+        add(interleaver, port, 1, 300_000L);
+        assertFalse(interleaver.isAhead(0, 800_000L));
+        assertTrue(interleaver.isAhead(0, 800_001L));
+
+        interleaver.finishTrack(1);
+        assertFalse(interleaver.isAhead(0, 10_000_000L));
+    }
+
+    @Test
+    public void isAhead_notOnAStalledTrack() {
+        final RecordingMuxerPort port = startedPort(2);
+        final SampleInterleaver interleaver = new SampleInterleaver(2, 500_000L, 16);
+        final long timeoutNs = SampleInterleaver.STALL_TIMEOUT_MS * 1_000_000L;
+
+        // A track that hasn't started yet is waited on for the timeout, from the first ask.
+        assertTrue(interleaver.isAhead(0, 600_000L, 1_000L));
+        assertTrue(interleaver.isAhead(0, 600_000L, 1_000L + timeoutNs - 1));
+        assertFalse(interleaver.isAhead(0, 600_000L, 1_000L + timeoutNs));
+
+        // A sparse one, from its last sample, and again once it produces.
+        final SampleInfo info = new SampleInfo();
+        info.set(0, 16, 100_000L, 0);
+        interleaver.add(1, ByteBuffer.allocate(16), info, port, 5 * timeoutNs);
+        assertTrue(interleaver.isAhead(0, 700_000L, 6 * timeoutNs - 1));
+        assertFalse(interleaver.isAhead(0, 700_000L, 6 * timeoutNs));
+        assertFalse(interleaver.isAhead(0, 600_000L, 6 * timeoutNs));
+    }
+
+    @Test(timeout = 10000)
+    public void muxerWrapper_doesNotWaitForeverOnATrackOfTheSameThread() throws Exception {
+        final RecordingMuxerPort port = new RecordingMuxerPort();
+        final MuxerWrapper muxer = new MuxerWrapper(port, 2);
+        final int video = muxer.addTrack(null);
+        final int audio = muxer.addTrack(null);
+
+        // Audio would only come after all of the video, from the same thread.
+        final SampleInfo info = new SampleInfo();
+        for (long pts = 0; pts < 2_000_000L; pts += VIDEO_FRAME_US) {
+            info.set(0, 8, pts, 0);
+            muxer.writeSampleData(video, ByteBuffer.allocate(8), info);
+        }
+        info.set(0, 8, 0, 0);
+        muxer.writeSampleData(audio, ByteBuffer.allocate(8), info);
+        muxer.release();
+
+        assertEquals(61 + 1, port.getSamples().size());
+    }
+
+    @Test(timeout = 30000)
+    public void muxerWrapper_makesBurstyProducersWait() throws Exception {
+        final RecordingMuxerPort port = new RecordingMuxerPort();
+        final SampleInterleaver interleaver = new SampleInterleaver(2, 200_000L, 32);
+        final MuxerWrapper muxer = new MuxerWrapper(port, 2, interleaver);
+        final int video = muxer.addTrack(null);
+        final int audio = muxer.addTrack(null);
+
+        final AtomicReference<Exception> error = new AtomicReference<>();
+        final Thread videoThread = new Thread(() -> produce(muxer, video, VIDEO_FRAME_US, 0, error));
+        final Thread audioThread = new Thread(() -> produce(muxer, audio, AUDIO_FRAME_US, 1, error));
+        videoThread.start();
+        audioThread.start();
+        videoThread.join();
+        audioThread.join();
+        muxer.release();
+
+        assertNull(error.get());
+        final List<long[]> samples = port.getSamples();
+        assertEquals(61 + 94, samples.size());
+        assertInTimeOrder(samples);
+    }
+
+    /**
+     * Writes 2 s of samples as fast as possible, or slowly if {@code sleepMs} is set.
+     */
+    private static void produce(MuxerWrapper muxer, int track, long frameUs, long sleepMs,
+                                AtomicReference<Exception> error) {
+        try {
+            final SampleInfo info = new SampleInfo();
+            for (long pts = 0; pts < 2_000_000L; pts += frameUs) {
+                info.set(0, 8, pts, 0);
+                muxer.writeSampleData(track, ByteBuffer.allocate(8), info);
+                if (sleepMs > 0) {
+                    Thread.sleep(sleepMs);
+                }
+            }
+            muxer.finishTrack(track);
+        } catch (Exception e) {
+            error.set(e);
+        }
+    }
+
+    private static RecordingMuxerPort startedPort(int trackCount) {
+        final RecordingMuxerPort port = new RecordingMuxerPort();
+        for (int i = 0; i < trackCount; i++) {
+            port.addTrack(null);
+        }
+        port.start();
+        return port;
+    }
+
+    private static void add(SampleInterleaver interleaver, MuxerPort port, int track, long pts) {
+        final SampleInfo info = new SampleInfo();
+        info.set(0, 16, pts, 0);
+        interleaver.add(track, ByteBuffer.allocate(16), info, port);
+    }
+
+    private static void assertInTimeOrder(List<long[]> samples) {
+        for (int i = 1; i < samples.size(); i++) {
+            assertTrue("sample " + i + " at " + samples.get(i)[1] + " after " + samples.get(i - 1)[1],
+                    samples.get(i)[1] >= samples.get(i - 1)[1]);
+        }
+    }
+}
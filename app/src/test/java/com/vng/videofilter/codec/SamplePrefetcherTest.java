@@ -0,0 +1,68 @@
+package com.vng.videofilter.codec;
+
+import android.media.MediaExtractor;
+
+import org.junit.Test;
+
+import java.nio.ByteBuffer;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.*;
+
+/**
+ * Tests for {@link SamplePrefetcher}.
+ */
+public class SamplePrefetcherTest {
+
+    private static final long FRAME_US = 33_333L;
+
+    @Test(timeout = 10000)
+    public void samples_areHandedOverInOrder() throws Exception {
+        final InMemorySampleSource source = InMemorySampleSource.video(100, FRAME_US, 10, true, 64);
+        source.selectTrack(0);
+        final SamplePrefetcher prefetcher = new SamplePrefetcher(source, 4, 64);
+        final Semaphore available = new Semaphore(0);
+        prefetcher.start(available::release);
+
+        final ByteBuffer buffer = ByteBuffer.allocateDirect(128);
+        int count = 0;
+        while (!prefetcher.isEndOfStream()) {
+            if (!prefetcher.hasSample()) {
+                assertTrue(available.tryAcquire(5, TimeUnit.SECONDS));
+                continue;
+            }
+            assertTrue(prefetcher.getOccupancy() <= 4);
+
+            assertEquals(64, prefetcher.readSampleData(buffer, 16));
+            assertEquals(16, buffer.position());
+            assertEquals((byte) count, buffer.get(16));
+            assertEquals(count % 10 == 0, (prefetcher.getSampleFlags() & MediaExtractor.SAMPLE_FLAG_SYNC) != 0);
+            prefetcher.advance();
+            count++;
+        }
+
+        assertEquals(100, count);
+        assertTrue(prefetcher.getAverageOccupancy() >= 1);
+        prefetcher.release();
+    }
+
+    @Test(timeout = 10000)
+    public void reader_stopsWhenTheRingIsFull() throws Exception {
+        final InMemorySampleSource source = InMemorySampleSource.video(100, FRAME_US, 10, false, 16);
+        source.selectTrack(0);
+        final SamplePrefetcher prefetcher = new SamplePrefetcher(source, 3, 16);
+        prefetcher.start(() -> {
+        });
+
+        while (prefetcher.getOccupancy() < 3) {
+            Thread.sleep(5);
+        }
+        Thread.sleep(50);
+        assertEquals(3, prefetcher.getOccupancy());
+
+        // The source is only read as far as the ring reaches.
+        prefetcher.release();
+        assertEquals(3 * FRAME_US, source.getSampleTime());
+    }
+}
@@ -0,0 +1,75 @@
+package com.vng.videofilter.codec;
+
+import com.vng.videofilter.codec.SegmentPlanner.Segment;
+
+import org.junit.Test;
+
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+/**
+ * Tests for {@link SegmentPlanner}.
+ */
+public class SegmentPlannerTest {
+
+    private static final long FRAME_US = 33_333L;
+
+    @Test
+    public void segments_startAtSyncSamplesAndCoverTheTrack() {
+        // 10 s at 30 fps, one sync sample per second.
+        final InMemorySampleSource source = InMemorySampleSource.video(300, FRAME_US, 30, true, 16);
+
+        final List<Segment> segments = SegmentPlanner.plan(source, 0, 4);
+
+        assertEquals(4, segments.size());
+        assertEquals(0, segments.get(0).startUs);
+        assertEquals(Long.MAX_VALUE, segments.get(3).endUs);
+        for (int i = 0; i < segments.size(); i++) {
+            final Segment segment = segments.get(i);
+            assertEquals(i, segment.index);
+            assertEquals(0, segment.startUs % (30 * FRAME_US));
+            if (i > 0) {
+                assertEquals(segments.get(i - 1).endUs, segment.startUs);
+            }
+        }
+        // Boundaries land on the sync sample closest to each quarter.
+        assertEquals(2 * 30 * FRAME_US, segments.get(1).startUs);
+        assertEquals(5 * 30 * FRAME_US, segments.get(2).startUs);
+        assertEquals(7 * 30 * FRAME_US, segments.get(3).startUs);
+        // The source is left at its first sample.
+        assertEquals(0, source.getSampleTime());
+    }
+
+    @Test
+    public void fewSyncSamples_giveFewerSegments() {
+        final long[] syncTimesUs = {0, 5_000_000L};
+
+        final List<Segment> segments = SegmentPlanner.plan(syncTimesUs, 2, 9_000_000L, 8);
+
+        assertEquals(2, segments.size());
+        assertEquals(5_000_000L, segments.get(0).endUs);
+        assertEquals(5_000_000L, segments.get(1).startUs);
+    }
+
+    @Test
+    public void noSyncSamples_giveNoSegments() {
+        assertTrue(SegmentPlanner.plan(new long[0], 0, 0, 4).isEmpty());
+    }
+
+    @Test
+    public void timeRange_isSplitOnItsOwn() {
+        // 10 s at 30 fps, one sync sample per second; keep 2.5 s .. 6.5 s.
+        final InMemorySampleSource source = InMemorySampleSource.video(300, FRAME_US, 30, false, 16);
+        final long startUs = 75 * FRAME_US;
+        final long endUs = 195 * FRAME_US;
+
+        final List<Segment> segments = SegmentPlanner.plan(source, 0, 2, startUs, endUs);
+
+        assertEquals(2, segments.size());
+        assertEquals(startUs, segments.get(0).startUs);
+        assertEquals(segments.get(0).endUs, segments.get(1).startUs);
+        assertEquals(0, segments.get(1).startUs % (30 * FRAME_US));
+        assertEquals(endUs, segments.get(1).endUs);
+    }
+}
@@ -0,0 +1,70 @@
+package com.vng.videofilter.codec;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+/**
+ * Runs {@link SegmentStitcher} against {@link RecordingMuxerPort}.
+ */
+public class SegmentStitcherTest {
+
+    private static final long FRAME_US = 33_333L;
+
+    @Test(timeout = 10000)
+    public void segments_areShiftedToTheirPlannedStart() throws Exception {
+        // Containers usually rebase each segment to start at 0.
+        final List<SampleSource> segments = Arrays.asList(
+                segment(0, 30), segment(0, 30), segment(FRAME_US, 15));
+        final long[] startsUs = {0, 30 * FRAME_US, 60 * FRAME_US};
+
+        final RecordingMuxerPort port = new RecordingMuxerPort();
+        final MuxerWrapper muxer = new MuxerWrapper(port, 1);
+
+        assertEquals(75, SegmentStitcher.stitch(segments, startsUs, muxer));
+
+        final List<long[]> samples = port.getSamples();
+        assertEquals(75, samples.size());
+        for (int i = 0; i < samples.size(); i++) {
+            assertEquals(i * FRAME_US, samples.get(i)[1]);
+        }
+        muxer.release();
+    }
+
+    @Test(timeout = 10000)
+    public void copiedRanges_areSplicedWithEncodedSegments() throws Exception {
+        // 6 GOPs of 10 frames; GOPs 1 and 4 were re-encoded into their own files.
+        final InMemorySampleSource source = InMemorySampleSource.video(60, FRAME_US, 10, false, 32);
+        final List<SegmentStitcher.Piece> pieces = Arrays.asList(
+                SegmentStitcher.Piece.range(source, 0, 0, 10 * FRAME_US),
+                SegmentStitcher.Piece.whole(segment(0, 10), 0, 10 * FRAME_US),
+                SegmentStitcher.Piece.range(source, 0, 20 * FRAME_US, 40 * FRAME_US),
+                SegmentStitcher.Piece.whole(segment(0, 10), 0, 40 * FRAME_US),
+                SegmentStitcher.Piece.range(source, 0, 50 * FRAME_US, Long.MAX_VALUE));
+
+        final RecordingMuxerPort port = new RecordingMuxerPort();
+        final MuxerWrapper muxer = new MuxerWrapper(port, 1);
+
+        assertEquals(-1, SegmentStitcher.findIncompatiblePiece(pieces));
+        assertEquals(60, SegmentStitcher.stitch(pieces, muxer));
+
+        final List<long[]> samples = port.getSamples();
+        assertEquals(60, samples.size());
+        for (int i = 0; i < samples.size(); i++) {
+            assertEquals(i * FRAME_US, samples.get(i)[1]);
+        }
+        muxer.release();
+    }
+
+    private static SampleSource segment(long firstTimeUs, int frameCount) {
+        final InMemorySampleSource source = new InMemorySampleSource();
+        final int track = source.addTrack("video/avc");
+        for (int i = 0; i < frameCount; i++) {
+            source.addSample(track, firstTimeUs + i * FRAME_US, i == 0 ? 1 : 0, new byte[32]);
+        }
+        return source;
+    }
+}
@@ -0,0 +1,79 @@
+package com.vng.videofilter.gles;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.RandomAccessFile;
+
+import static org.junit.Assert.*;
+
+/**
+ * Tests for {@link ProgramBinaryStore}.
+ */
+public class ProgramBinaryStoreTest {
+
+    private static final String DRIVER = "fingerprint|Vendor|Renderer|OpenGL ES 3.2 V@415.0";
+
+    private File mDirectory;
+
+    private ProgramBinaryStore mStore;
+
+    @Before
+    public void setUp() throws Exception {
+        mDirectory = File.createTempFile("programs", "");
+        mDirectory.delete();
+        mStore = new ProgramBinaryStore(mDirectory);
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        final File[] files = mDirectory.listFiles();
+        if (files != null) {
+            for (File file : files) {
+                file.delete();
+            }
+        }
+        mDirectory.delete();
+    }
+
+    @Test
+    public void binary_isOnlyLoadedForTheSameDriver() {
+        final String key = ProgramCache.getKey("vertex", "fragment");
+        assertNull(mStore.load(key, DRIVER));
+
+        mStore.save(key, DRIVER, new ProgramBinaryStore.Binary(0x8E1F, new byte[]{1, 2, 3, 4}));
+        final ProgramBinaryStore.Binary binary = mStore.load(key, DRIVER);
+        assertEquals(0x8E1F, binary.format);
+        assertArrayEquals(new byte[]{1, 2, 3, 4}, binary.data);
+
+        // After a driver update.
+        assertNull(mStore.load(key, DRIVER.replace("415", "490")));
+
+        mStore.delete(key);
+        assertNull(mStore.load(key, DRIVER));
+    }
+
+    @Test
+    public void truncatedFile_isDeleted() throws Exception {
+        final String key = ProgramCache.getKey("vertex", "fragment");
+        mStore.save(key, DRIVER, new ProgramBinaryStore.Binary(1, new byte[1000]));
+        final File file = mDirectory.listFiles()[0];
+        try (RandomAccessFile out = new RandomAccessFile(file, "rw")) {
+            out.setLength(file.length() - 10);
+        }
+
+        assertNull(mStore.load(key, DRIVER));
+        assertFalse(file.exists());
+    }
+
+    @Test
+    public void key_coversBothSources() {
+        final String key = ProgramCache.getKey("ab", "c");
+        assertEquals(40, key.length());
+        assertEquals(key, ProgramCache.getKey("ab", "c"));
+        assertNotEquals(key, ProgramCache.getKey("a", "bc"));
+        assertNotEquals(key, ProgramCache.getKey("ab", "#define A 1\nc"));
+    }
+}
@@ -0,0 +1,110 @@
+package com.vng.videofilter.gles;
+
+import org.junit.Test;
+
+import java.nio.ByteBuffer;
+
+import static org.junit.Assert.*;
+
+/**
+ * Tests for {@link WatermarkBlend}.
+ */
+public class WatermarkBlendTest {
+
+    private static final int WIDTH = 8;
+
+    private static final int HEIGHT = 4;
+
+    private static final int[] FRAME_PIXEL = {101, 151, 201, 255};
+
+    // 2x2, premultiplied: opaque white, transparent, half white, red at a quarter.
+    private static final int[] WATERMARK = {
+            255, 255, 255, 255, 0, 0, 0, 0,
+            128, 128, 128, 128, 64, 0, 0, 64};
+
+    @Test
+    public void opaque_matchesGolden() {
+        final ByteBuffer out = compose(1f);
+
+        // Columns 5 and 6 of rows 1 and 2 from the top, with the top of the watermark first.
+        assertPixel(out, 5, 1, 255, 255, 255, 255);
+        assertPixel(out, 6, 1, 101, 151, 201, 255);
+        assertPixel(out, 5, 2, 178, 203, 228, 255);
+        assertPixel(out, 6, 2, 140, 113, 151, 255);
+        assertOnlyRectangleChanged(out);
+    }
+
+    @Test
+    public void halfOpacity_matchesGolden() {
+        final ByteBuffer out = compose(0.5f);
+
+        assertPixel(out, 5, 1, 178, 203, 228, 255);
+        assertPixel(out, 6, 1, 101, 151, 201, 255);
+        assertPixel(out, 6, 2, 120, 132, 176, 255);
+        assertOnlyRectangleChanged(out);
+    }
+
+    @Test
+    public void hiddenOrEmpty_leavesTheFrame() {
+        assertOnlyRectangleChanged(compose(0f));
+        assertPixel(compose(0f), 5, 1, FRAME_PIXEL[0], FRAME_PIXEL[1], FRAME_PIXEL[2], FRAME_PIXEL[3]);
+
+        final ByteBuffer out = ByteBuffer.allocate(WIDTH * HEIGHT * 4);
+        WatermarkBlend.compose(frame(), WIDTH, HEIGHT, ByteBuffer.wrap(toBytes(WATERMARK)), 2, 2,
+                0f, 0f, 0f, 0f, 0, 1f, out);
+        assertEquals(frame(), out);
+    }
+
+    @Test
+    public void blend_isGlOneOneMinusSrcAlpha() {
+        assertEquals(1f, WatermarkBlend.blend(0.3f, 1f, 1f), 0f);
+        assertEquals(0.3f, WatermarkBlend.blend(0.3f, 0f, 0f), 0f);
+        assertEquals(0.25f + 0.4f * 0.75f, WatermarkBlend.blend(0.4f, 0.25f, 0.25f), 1e-6f);
+    }
+
+    /**
+     * The 2x2 watermark at 1:1 scale, in columns 5 and 6 and rows 1 and 2 from the bottom.
+     */
+    private static ByteBuffer compose(float opacity) {
+        final ByteBuffer out = ByteBuffer.allocate(WIDTH * HEIGHT * 4);
+        WatermarkBlend.compose(frame(), WIDTH, HEIGHT, ByteBuffer.wrap(toBytes(WATERMARK)), 2, 2,
+                5f / WIDTH, 1f / HEIGHT, 2f / WIDTH, 2f / HEIGHT, 0, opacity, out);
+        return out;
+    }
+
+    private static ByteBuffer frame() {
+        final ByteBuffer frame = ByteBuffer.allocate(WIDTH * HEIGHT * 4);
+        for (int i = 0; i < WIDTH * HEIGHT; i++) {
+            frame.put(toBytes(FRAME_PIXEL));
+        }
+        frame.flip();
+        return frame;
+    }
+
+    private static void assertOnlyRectangleChanged(ByteBuffer out) {
+        for (int row = 0; row < HEIGHT; row++) {
+            for (int column = 0; column < WIDTH; column++) {
+                if ((column == 5 || column == 6) && (row == 1 || row == 2)) {
+                    continue;
+                }
+                assertPixel(out, column, row, FRAME_PIXEL[0], FRAME_PIXEL[1], FRAME_PIXEL[2], FRAME_PIXEL[3]);
+            }
+        }
+    }
+
+    private static void assertPixel(ByteBuffer out, int column, int row, int... rgba) {
+        final int i = 4 * (row * WIDTH + column);
+        for (int channel = 0; channel < 4; channel++) {
+            assertEquals("channel " + channel + " at " + column + "," + row, rgba[channel],
+                    out.get(i + channel) & 0xff);
+        }
+    }
+
+    private static byte[] toBytes(int[] values) {
+        final byte[] bytes = new byte[values.length];
+        for (int i = 0; i < values.length; i++) {
+            bytes[i] = (byte) values[i];
+        }
+        return bytes;
+    }
+}
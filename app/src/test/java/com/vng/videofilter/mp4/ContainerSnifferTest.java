@@ -0,0 +1,120 @@
+package com.vng.videofilter.mp4;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import static com.vng.videofilter.mp4.Mp4Fixture.*;
+import static org.junit.Assert.*;
+
+/**
+ * Tests for {@link ContainerSniffer}.
+ */
+public class ContainerSnifferTest {
+
+    private final List<File> mFiles = new ArrayList<>();
+
+    private ContainerSniffer mSniffer;
+
+    @Before
+    public void setUp() throws Exception {
+        mSniffer = new ContainerSniffer(2);
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        mSniffer.shutdown();
+        for (File file : mFiles) {
+            file.delete();
+        }
+    }
+
+    @Test
+    public void brands_giveTheContainer() throws Exception {
+        assertEquals(ContainerSniffer.TYPE_MP4, mSniffer.sniff(movie(ftyp())));
+        assertEquals(ContainerSniffer.TYPE_QUICKTIME, mSniffer.sniff(movie(fileType("qt  "))));
+        assertEquals(ContainerSniffer.TYPE_3GPP, mSniffer.sniff(movie(fileType("3gp4"))));
+        // Found among the compatible brands.
+        assertEquals(ContainerSniffer.TYPE_MP4, mSniffer.sniff(movie(fileType("XXXX", "mp42"))));
+        // An image, whatever its name.
+        assertEquals(ContainerSniffer.TYPE_UNKNOWN, mSniffer.sniff(movie(fileType("heic", "mif1", "heic"))));
+    }
+
+    @Test
+    public void movie_isRequired() throws Exception {
+        // Old QuickTime files have no ftyp.
+        assertEquals(ContainerSniffer.TYPE_QUICKTIME, mSniffer.sniff(file(box("moov"), box("mdat", new byte[64]))));
+
+        assertEquals(ContainerSniffer.TYPE_UNKNOWN, mSniffer.sniff(file(ftyp(), box("mdat", new byte[64]))));
+        // A recording cut short: mdat claims more than the file has, and moov never came.
+        final byte[] mdat = create().u32(1_000_000).fourcc("mdat").zeros(64).toByteArray();
+        assertEquals(ContainerSniffer.TYPE_UNKNOWN, mSniffer.sniff(file(ftyp(), mdat, box("moov"))));
+
+        final byte[] noise = new byte[8192];
+        new Random(1).nextBytes(noise);
+        assertEquals(ContainerSniffer.TYPE_UNKNOWN, mSniffer.sniff(file(noise)));
+        assertEquals(ContainerSniffer.TYPE_UNKNOWN, mSniffer.sniff(new File(mFiles.get(0).getPath() + ".missing")));
+    }
+
+    @Test
+    public void cache_isDroppedWhenTheFileChanges() throws Exception {
+        final File file = movie(fileType("3gp4"));
+        assertEquals(ContainerSniffer.TYPE_3GPP, mSniffer.sniff(file));
+
+        // Same size, later time.
+        write(file, fileType("isom"), box("moov"), box("mdat", new byte[64]));
+        assertTrue(file.setLastModified(file.lastModified() + 10_000));
+        assertEquals(ContainerSniffer.TYPE_MP4, mSniffer.sniff(file));
+
+        // Other size, same time.
+        final long lastModified = file.lastModified();
+        write(file, fileType("isom"), box("mdat", new byte[64]));
+        assertTrue(file.setLastModified(lastModified));
+        assertEquals(ContainerSniffer.TYPE_UNKNOWN, mSniffer.sniff(file));
+    }
+
+    @Test
+    public void sniffAll_keepsTheOrder() throws Exception {
+        final List<File> files = new ArrayList<>();
+        final int[] expected = new int[24];
+        for (int i = 0; i < expected.length; i++) {
+            if (i % 3 == 0) {
+                files.add(movie(ftyp()));
+                expected[i] = ContainerSniffer.TYPE_MP4;
+            } else if (i % 3 == 1) {
+                files.add(movie(fileType("qt  ")));
+                expected[i] = ContainerSniffer.TYPE_QUICKTIME;
+            } else {
+                files.add(file(ftyp(), box("free")));
+                expected[i] = ContainerSniffer.TYPE_UNKNOWN;
+            }
+        }
+
+        assertArrayEquals(expected, mSniffer.sniffAll(files));
+        // From the cache.
+        assertArrayEquals(expected, mSniffer.sniffAll(files));
+    }
+
+    private File movie(byte[] ftyp) throws Exception {
+        return file(ftyp, box("moov"), box("mdat", new byte[64]));
+    }
+
+    private File file(byte[]... boxes) throws Exception {
+        final File file = File.createTempFile("sniff", ".bin");
+        mFiles.add(file);
+        return write(file, boxes);
+    }
+
+    private static byte[] fileType(String majorBrand, String... compatibleBrands) {
+        final Mp4Fixture payload = create().fourcc(majorBrand).u32(0);
+        for (String brand : compatibleBrands) {
+            payload.fourcc(brand);
+        }
+        return box("ftyp", payload.toByteArray());
+    }
+}
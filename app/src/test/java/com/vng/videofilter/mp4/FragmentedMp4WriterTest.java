@@ -0,0 +1,240 @@
+package com.vng.videofilter.mp4;
+
+import android.media.MediaCodec;
+
+import com.vng.videofilter.codec.SampleInfo;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+/**
+ * Tests for {@link FragmentedMp4Writer}.
+ */
+public class FragmentedMp4WriterTest {
+
+    private static final byte[] SPS = {0, 0, 0, 1, 0x67, 0x42, (byte) 0xc0, 0x1f, 0x11};
+    private static final byte[] PPS = {0, 0, 0, 1, 0x68, (byte) 0xce, 0x3c, (byte) 0x80};
+
+    private static final long FRAME_US = 33_333L;
+    private static final long AAC_FRAME_US = 1024L * 1000000L / 44100;
+
+    private File mFile;
+
+    @Before
+    public void setUp() throws Exception {
+        mFile = File.createTempFile("fragmented", ".mp4");
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        mFile.delete();
+    }
+
+    @Test
+    public void fragments_areCutAtSyncSamplesAndReadableRightAway() throws Exception {
+        final FragmentedMp4Writer writer = FragmentedMp4Writer.create(mFile, 900_000L);
+        final List<Long> endOffsets = new ArrayList<>();
+        writer.setFragmentListener((sequenceNumber, endOffset) -> {
+            assertEquals(endOffsets.size() + 1, sequenceNumber);
+            endOffsets.add(endOffset);
+            // What's on disk so far is a complete file.
+            assertEquals(endOffset, mFile.length());
+            try (Mp4Parser parser = Mp4Parser.open(mFile)) {
+                assertEquals(2 + 2 * sequenceNumber, parser.getTopLevelBoxes().size());
+            } catch (Exception e) {
+                throw new AssertionError(e);
+            }
+        });
+
+        final int video = writer.addTrack(Mp4TrackFormat.avc(640, 360, ByteBuffer.wrap(SPS), ByteBuffer.wrap(PPS)));
+        final int audio = writer.addTrack(Mp4TrackFormat.aac(44100, 2, ByteBuffer.wrap(new byte[]{0x12, 0x10})));
+        writer.setOrientationHint(90);
+        writer.start();
+
+        // 3 s of 30 fps video with a key frame every second, audio interleaved.
+        long audioTimeUs = 0;
+        int audioSamples = 0;
+        for (int i = 0; i < 90; i++) {
+            final long timeUs = i * FRAME_US;
+            while (audioTimeUs <= timeUs) {
+                write(writer, audio, new byte[]{(byte) audioSamples, 1, 2, 3}, audioTimeUs, 0);
+                audioSamples++;
+                audioTimeUs = audioSamples * AAC_FRAME_US;
+            }
+            write(writer, video, frame(i), timeUs, i % 30 == 0 ? MediaCodec.BUFFER_FLAG_KEY_FRAME : 0);
+        }
+        assertEquals(2, writer.getFragmentCount());
+
+        writer.stop();
+        writer.release();
+        assertEquals(3, endOffsets.size());
+        assertEquals(mFile.length(), (long) endOffsets.get(2));
+
+        try (Mp4Parser parser = Mp4Parser.open(mFile);
+             FileChannel channel = new RandomAccessFile(mFile, "r").getChannel()) {
+            final List<Mp4Track> tracks = parser.getTracks();
+            assertEquals(2, tracks.size());
+            assertEquals("avc1", tracks.get(0).getCodec());
+            assertEquals(640, tracks.get(0).getWidth());
+            assertEquals(360, tracks.get(0).getHeight());
+            assertEquals(90, tracks.get(0).getRotationDegrees());
+            assertEquals("mp4a", tracks.get(1).getCodec());
+            assertEquals("soun", tracks.get(1).getHandlerType());
+
+            final List<Mp4Box> boxes = parser.getTopLevelBoxes();
+            assertEquals(8, boxes.size());
+            int videoSamples = 0;
+            int writtenAudio = 0;
+            for (int f = 0; f < 3; f++) {
+                final Mp4Box moof = boxes.get(2 + 2 * f);
+                assertEquals(Mp4Box.MOOF, moof.type);
+                assertEquals(Mp4Box.MDAT, boxes.get(3 + 2 * f).type);
+
+                final Fragment fragment = readFragment(parser.map(moof), moof, 1);
+                assertEquals(30, fragment.sampleCount);
+                assertEquals(f * 30 * FRAME_US, fragment.baseDecodeTime);
+                assertTrue(fragment.firstSync);
+
+                // The first frame of the fragment, its start code swapped for its length.
+                final ByteBuffer sample = ByteBuffer.allocate(fragment.firstSize);
+                Mp4Parser.readFully(channel, sample, fragment.dataOffset);
+                sample.flip();
+                assertEquals(frame(videoSamples).length - 4, sample.getInt());
+                assertEquals(frame(videoSamples)[4], sample.get());
+
+                videoSamples += fragment.sampleCount;
+                writtenAudio += readFragment(parser.map(moof), moof, 2).sampleCount;
+            }
+            assertEquals(90, videoSamples);
+            assertEquals(audioSamples, writtenAudio);
+        }
+    }
+
+    @Test
+    public void reorderedFrames_getCompositionOffsets() throws Exception {
+        final FragmentedMp4Writer writer = FragmentedMp4Writer.create(mFile, 1_000_000L);
+        final int video = writer.addTrack(Mp4TrackFormat.avc(320, 240, ByteBuffer.wrap(SPS), ByteBuffer.wrap(PPS)));
+        writer.start();
+
+        // Decode order I P B B, presented I B B P.
+        final long[] times = {0, 3 * FRAME_US, FRAME_US, 2 * FRAME_US};
+        for (int i = 0; i < times.length; i++) {
+            write(writer, video, frame(i), times[i], i == 0 ? MediaCodec.BUFFER_FLAG_KEY_FRAME : 0);
+        }
+        writer.stop();
+        writer.release();
+
+        try (Mp4Parser parser = Mp4Parser.open(mFile)) {
+            final Mp4Box moof = parser.findTopLevelBox(Mp4Box.MOOF);
+            final Fragment fragment = readFragment(parser.map(moof), moof, 1);
+            assertEquals(4, fragment.sampleCount);
+            assertEquals(FRAME_US, fragment.durations[0]);
+            assertEquals(FRAME_US, fragment.durations[1]);
+            assertEquals(0, fragment.compositionOffsets[0]);
+            assertEquals(2 * FRAME_US, fragment.compositionOffsets[1]);
+            assertEquals(-FRAME_US, fragment.compositionOffsets[2]);
+            assertEquals(-FRAME_US, fragment.compositionOffsets[3]);
+        }
+    }
+
+    @Test
+    public void codecConfigAndEmptySamples_areSkipped() throws Exception {
+        final FragmentedMp4Writer writer = FragmentedMp4Writer.create(mFile, 1_000_000L);
+        final int audio = writer.addTrack(Mp4TrackFormat.aac(48000, 1, ByteBuffer.wrap(new byte[]{0x11, (byte) 0x88})));
+        writer.start();
+        write(writer, audio, new byte[]{0x11, (byte) 0x88}, 0, MediaCodec.BUFFER_FLAG_CODEC_CONFIG);
+        write(writer, audio, new byte[0], 0, 0);
+        write(writer, audio, new byte[]{1, 2, 3}, 0, 0);
+        writer.stop();
+        writer.release();
+
+        try (Mp4Parser parser = Mp4Parser.open(mFile)) {
+            final Mp4Box moof = parser.findTopLevelBox(Mp4Box.MOOF);
+            final Fragment fragment = readFragment(parser.map(moof), moof, 1);
+            assertEquals(1, fragment.sampleCount);
+            assertEquals(3, fragment.firstSize);
+            assertTrue(fragment.firstSync);
+        }
+    }
+
+    private static void write(FragmentedMp4Writer writer, int track, byte[] data, long timeUs, int flags) {
+        final SampleInfo info = new SampleInfo();
+        info.set(0, data.length, timeUs, flags);
+        writer.writeSampleData(track, ByteBuffer.wrap(data), info);
+    }
+
+    /**
+     * An Annex B frame with a single NAL unit whose size changes from frame to frame.
+     */
+    private static byte[] frame(int index) {
+        final byte[] frame = new byte[4 + 10 + index % 7];
+        frame[3] = 1;
+        frame[4] = (byte) (index % 30 == 0 ? 0x65 : 0x41);
+        return frame;
+    }
+
+    private static final class Fragment {
+        int sampleCount;
+        long baseDecodeTime;
+        long dataOffset;
+        int firstSize;
+        boolean firstSync;
+        long[] durations;
+        long[] compositionOffsets;
+    }
+
+    /**
+     * Reads the traf of a track from a moof as {@link FragmentedMp4Writer} lays it out.
+     */
+    private static Fragment readFragment(ByteBuffer moof, Mp4Box moofBox, int trackId) throws Exception {
+        final ByteBuffer buffer = moof.duplicate();
+        while (buffer.remaining() >= 8) {
+            final Mp4Box box = Mp4Box.readHeader(buffer, buffer.position(), buffer.limit());
+            if (box.type == Mp4Box.TRAF) {
+                final ByteBuffer traf = buffer.duplicate();
+                traf.limit((int) box.getEnd());
+                final ByteBuffer tfhd = Mp4Box.findChild(traf, Mp4Box.TFHD);
+                if (tfhd.getInt(4) == trackId) {
+                    return readTrackFragment(traf, moofBox);
+                }
+            }
+            buffer.position((int) box.getEnd());
+        }
+        throw new AssertionError("No traf for track " + trackId);
+    }
+
+    private static Fragment readTrackFragment(ByteBuffer traf, Mp4Box moofBox) throws Exception {
+        final Fragment fragment = new Fragment();
+        final ByteBuffer tfdt = Mp4Box.findChild(traf, Mp4Box.TFDT);
+        assertEquals(1, tfdt.get(0));
+        fragment.baseDecodeTime = tfdt.getLong(4);
+
+        final ByteBuffer trun = Mp4Box.findChild(traf, Mp4Box.TRUN);
+        trun.position(4);
+        fragment.sampleCount = trun.getInt();
+        fragment.dataOffset = moofBox.offset + trun.getInt();
+        fragment.durations = new long[fragment.sampleCount];
+        fragment.compositionOffsets = new long[fragment.sampleCount];
+        for (int i = 0; i < fragment.sampleCount; i++) {
+            fragment.durations[i] = trun.getInt() & 0xffffffffL;
+            final int size = trun.getInt();
+            final int flags = trun.getInt();
+            fragment.compositionOffsets[i] = trun.getInt();
+            if (i == 0) {
+                fragment.firstSize = size;
+                fragment.firstSync = (flags & 0x00010000) == 0;
+            }
+        }
+        return fragment;
+    }
+}
@@ -0,0 +1,188 @@
+package com.vng.videofilter.mp4;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.List;
+
+import static com.vng.videofilter.mp4.Mp4Fixture.*;
+import static org.junit.Assert.*;
+import static org.junit.Assume.assumeTrue;
+
+/**
+ * Tests for {@link Mp4FastStart}.
+ */
+public class Mp4FastStartTest {
+
+    // ftyp is 24 bytes and the mdat header 8, so the media data starts at 32.
+    private static final int DATA_START = 32;
+
+    private File mSource;
+
+    private File mDest;
+
+    @Before
+    public void setUp() throws Exception {
+        mSource = File.createTempFile("moov_last", ".mp4");
+        mDest = File.createTempFile("moov_first", ".mp4");
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        mSource.delete();
+        mDest.delete();
+    }
+
+    @Test
+    public void moov_isMovedFirstAndChunkOffsetsFollowTheData() throws Exception {
+        final byte[] data = new byte[1000];
+        for (int i = 0; i < data.length; i++) {
+            data[i] = (byte) (i * 7);
+        }
+        final long[] videoChunks = {DATA_START, DATA_START + 500};
+        final long[] audioChunks = {DATA_START + 200, DATA_START + 800};
+        write(mSource, ftyp(), box("mdat", data), box("moov",
+                mvhd(1000, 1000),
+                trak(tkhd(0, 1, 1000, IDENTITY, 320, 240), mdhd(0, 90_000, 90_000), "vide",
+                        videoSampleEntry("avc1", 320, 240), 2, stco(videoChunks)),
+                trak(tkhd(0, 2, 1000, IDENTITY, 0, 0), mdhd(0, 44_100, 44_100), "soun",
+                        audioSampleEntry("mp4a"), 2, co64(audioChunks))),
+                box("free", new byte[16]));
+
+        final Mp4FastStart.Result result = Mp4FastStart.process(mSource, mDest);
+        assertTrue(result.moved);
+        assertEquals(mSource.length(), mDest.length());
+        assertEquals(mDest.length(), result.bytes);
+
+        try (Mp4Parser parser = Mp4Parser.open(mDest);
+             FileChannel channel = new RandomAccessFile(mDest, "r").getChannel()) {
+            final List<Mp4Box> boxes = parser.getTopLevelBoxes();
+            assertEquals(Mp4Box.FTYP, boxes.get(0).type);
+            assertEquals(Mp4Box.MOOV, boxes.get(1).type);
+            assertEquals(Mp4Box.MDAT, boxes.get(2).type);
+            assertEquals(Mp4Box.FREE, boxes.get(3).type);
+            assertEquals(2, parser.getTracks().size());
+            assertEquals("avc1", parser.getVideoTrack().getCodec());
+
+            final List<long[]> tables = readChunkOffsets(parser.map(boxes.get(1)));
+            assertChunksPointAt(channel, data, videoChunks, tables.get(0));
+            assertChunksPointAt(channel, data, audioChunks, tables.get(1));
+        }
+    }
+
+    @Test
+    public void moovInFront_isLeftAlone() throws Exception {
+        write(mSource, ftyp(), box("moov", mvhd(1000, 1000)), box("mdat", new byte[100]));
+        final long destLength = mDest.length();
+
+        final Mp4FastStart.Result result = Mp4FastStart.process(mSource, mDest);
+        assertFalse(result.moved);
+        assertEquals(destLength, mDest.length());
+        assertFalse(Mp4FastStart.processInPlace(mSource).moved);
+    }
+
+    @Test
+    public void manyChunks_allFollowTheData() throws Exception {
+        writeChunks(64, 4096);
+
+        final Mp4FastStart.Result result = Mp4FastStart.processInPlace(mSource);
+        assertTrue(result.toString(), result.moved);
+        assertEquals(mSource.length(), result.bytes);
+        assertChunksMoved(64);
+    }
+
+    /**
+     * 64 MB through {@link Mp4FastStart#processInPlace}; run with {@code -Dbenchmark=true}.
+     */
+    @Test
+    public void benchmark() throws Exception {
+        assumeTrue(Boolean.getBoolean("benchmark"));
+        writeChunks(64, 1024 * 1024);
+
+        final Mp4FastStart.Result result = Mp4FastStart.processInPlace(mSource);
+        assertTrue(result.toString(), result.moved);
+        assertChunksMoved(64);
+    }
+
+    /**
+     * A movie whose mdat holds the chunks, each starting with its index, with moov last.
+     */
+    private void writeChunks(int chunkCount, int chunkSize) throws Exception {
+        final int dataSize = chunkCount * chunkSize;
+        try (FileChannel channel = new RandomAccessFile(mSource, "rw").getChannel()) {
+            channel.write(ByteBuffer.wrap(ftyp()));
+            channel.write((ByteBuffer) ByteBuffer.allocate(8).putInt(8 + dataSize).putInt(Mp4Box.MDAT).flip());
+            final ByteBuffer chunk = ByteBuffer.allocate(chunkSize);
+            final long[] chunks = new long[chunkCount];
+            for (int i = 0; i < chunkCount; i++) {
+                chunk.clear();
+                chunk.put(0, (byte) i);
+                channel.write(chunk);
+                chunks[i] = DATA_START + (long) i * chunkSize;
+            }
+            channel.write(ByteBuffer.wrap(box("moov", mvhd(1000, 1000),
+                    trak(tkhd(0, 1, 1000, IDENTITY, 320, 240), mdhd(0, 90_000, 90_000), "vide",
+                            videoSampleEntry("avc1", 320, 240), chunkCount, stco(chunks)))));
+        }
+    }
+
+    private void assertChunksMoved(int chunkCount) throws Exception {
+        try (Mp4Parser parser = Mp4Parser.open(mSource);
+             FileChannel channel = new RandomAccessFile(mSource, "r").getChannel()) {
+            final long[] chunks = readChunkOffsets(parser.map(parser.findTopLevelBox(Mp4Box.MOOV))).get(0);
+            assertEquals(chunkCount, chunks.length);
+            final ByteBuffer first = ByteBuffer.allocate(1);
+            for (int i = 0; i < chunks.length; i++) {
+                first.clear();
+                Mp4Parser.readFully(channel, first, chunks[i]);
+                assertEquals((byte) i, first.get(0));
+            }
+        }
+    }
+
+    private static void assertChunksPointAt(FileChannel channel, byte[] data, long[] oldOffsets, long[] newOffsets)
+            throws Exception {
+        assertEquals(oldOffsets.length, newOffsets.length);
+        final ByteBuffer bytes = ByteBuffer.allocate(1);
+        for (int i = 0; i < oldOffsets.length; i++) {
+            bytes.clear();
+            Mp4Parser.readFully(channel, bytes, newOffsets[i]);
+            assertEquals(data[(int) oldOffsets[i] - DATA_START], bytes.get(0));
+        }
+    }
+
+    /**
+     * The stco or co64 table of each track, in order.
+     */
+    private static List<long[]> readChunkOffsets(ByteBuffer moov) throws Exception {
+        final List<long[]> tables = new ArrayList<>();
+        final ByteBuffer buffer = moov.duplicate();
+        while (buffer.remaining() >= 8) {
+            final Mp4Box box = Mp4Box.readHeader(buffer, buffer.position(), buffer.limit());
+            if (box.type == Mp4Box.TRAK) {
+                final ByteBuffer trak = buffer.duplicate();
+                trak.limit((int) box.getEnd());
+                final ByteBuffer stbl = Mp4Box.findChild(trak, Mp4Box.MDIA, Mp4Box.MINF, Mp4Box.STBL);
+                ByteBuffer table = Mp4Box.findChild(stbl, Mp4Box.STCO);
+                final boolean wide = table == null;
+                if (wide) {
+                    table = Mp4Box.findChild(stbl, Mp4Box.CO64);
+                }
+                table.position(4);
+                final long[] offsets = new long[table.getInt()];
+                for (int i = 0; i < offsets.length; i++) {
+                    offsets[i] = wide ? table.getLong() : table.getInt() & 0xffffffffL;
+                }
+                tables.add(offsets);
+            }
+            buffer.position((int) box.getEnd());
+        }
+        return tables;
+    }
+}
@@ -0,0 +1,190 @@
+package com.vng.videofilter.mp4;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.charset.Charset;
+
+/**
+ * Builds small MP4 files for tests, box by box.
+ */
+final class Mp4Fixture {
+
+    static final int[] IDENTITY = {0x10000, 0, 0, 0, 0x10000, 0, 0, 0, 0x40000000};
+
+    // As MediaMuxer writes a 90 degree orientation hint.
+    static final int[] ROTATE_90 = {0, 0x10000, 0, -0x10000, 0, 0, 0, 0, 0x40000000};
+
+    private final ByteArrayOutputStream mBytes = new ByteArrayOutputStream();
+
+    private final DataOutputStream mOut = new DataOutputStream(mBytes);
+
+    static Mp4Fixture create() {
+        return new Mp4Fixture();
+    }
+
+    Mp4Fixture u8(int value) {
+        return write(() -> mOut.writeByte(value));
+    }
+
+    Mp4Fixture u16(int value) {
+        return write(() -> mOut.writeShort(value));
+    }
+
+    Mp4Fixture u32(long value) {
+        return write(() -> mOut.writeInt((int) value));
+    }
+
+    Mp4Fixture u64(long value) {
+        return write(() -> mOut.writeLong(value));
+    }
+
+    Mp4Fixture fourcc(String type) {
+        return bytes(type.getBytes(Charset.forName("US-ASCII")));
+    }
+
+    Mp4Fixture zeros(int count) {
+        return bytes(new byte[count]);
+    }
+
+    Mp4Fixture bytes(byte[] bytes) {
+        return write(() -> mOut.write(bytes));
+    }
+
+    byte[] toByteArray() {
+        return mBytes.toByteArray();
+    }
+
+    static byte[] box(String type, byte[]... children) {
+        final Mp4Fixture payload = create();
+        for (byte[] child : children) {
+            payload.bytes(child);
+        }
+        final byte[] bytes = payload.toByteArray();
+        return create().u32(8 + bytes.length).fourcc(type).bytes(bytes).toByteArray();
+    }
+
+    /**
+     * A box with a 64-bit size.
+     */
+    static byte[] largeBox(String type, byte[] payload) {
+        return create().u32(1).fourcc(type).u64(16 + payload.length).bytes(payload).toByteArray();
+    }
+
+    static byte[] fullBox(String type, int version, byte[] payload) {
+        return box(type, create().u8(version).zeros(3).bytes(payload).toByteArray());
+    }
+
+    static byte[] ftyp() {
+        return box("ftyp", create().fourcc("isom").u32(0x200).fourcc("isom").fourcc("mp41").toByteArray());
+    }
+
+    static byte[] mvhd(long timescale, long duration) {
+        return fullBox("mvhd", 0, create().u32(0).u32(0).u32(timescale).u32(duration).u32(0x10000).u16(0x100)
+                .zeros(10).zeros(36).zeros(24).u32(3).toByteArray());
+    }
+
+    static byte[] tkhd(int version, int trackId, long duration, int[] matrix, int width, int height) {
+        final Mp4Fixture payload = create();
+        if (version == 1) {
+            payload.u64(0).u64(0).u32(trackId).u32(0).u64(duration);
+        } else {
+            payload.u32(0).u32(0).u32(trackId).u32(0).u32(duration);
+        }
+        payload.zeros(8).u16(0).u16(0).u16(0).u16(0);
+        for (int value : matrix) {
+            payload.u32(value);
+        }
+        return fullBox("tkhd", version, payload.u32(width << 16).u32(height << 16).toByteArray());
+    }
+
+    static byte[] mdhd(int version, long timescale, long duration) {
+        final Mp4Fixture payload = create();
+        if (version == 1) {
+            payload.u64(0).u64(0).u32(timescale).u64(duration);
+        } else {
+            payload.u32(0).u32(0).u32(timescale).u32(duration);
+        }
+        return fullBox("mdhd", version, payload.u16(0x55c4).u16(0).toByteArray());
+    }
+
+    static byte[] hdlr(String handlerType) {
+        return fullBox("hdlr", 0, create().u32(0).fourcc(handlerType).zeros(12).u8(0).toByteArray());
+    }
+
+    static byte[] videoSampleEntry(String codec, int width, int height) {
+        return box(codec, create().zeros(6).u16(1).zeros(16).u16(width).u16(height).u32(0x480000).u32(0x480000)
+                .u32(0).u16(1).zeros(32).u16(0x18).u16(0xffff).toByteArray());
+    }
+
+    static byte[] audioSampleEntry(String codec) {
+        return box(codec, create().zeros(6).u16(1).zeros(8).u16(2).u16(16).u32(0).u32(44100 << 16).toByteArray());
+    }
+
+    static byte[] stsd(byte[] entry) {
+        return fullBox("stsd", 0, create().u32(1).bytes(entry).toByteArray());
+    }
+
+    static byte[] stsz(int sampleCount) {
+        final Mp4Fixture payload = create().u32(0).u32(sampleCount);
+        for (int i = 0; i < sampleCount; i++) {
+            payload.u32(100);
+        }
+        return fullBox("stsz", 0, payload.toByteArray());
+    }
+
+    static byte[] trak(byte[] tkhd, byte[] mdhd, String handlerType, byte[] sampleEntry, int sampleCount) {
+        return box("trak", tkhd, box("mdia", mdhd, hdlr(handlerType),
+                box("minf", box("stbl", stsd(sampleEntry), stsz(sampleCount)))));
+    }
+
+    static byte[] stco(long... offsets) {
+        final Mp4Fixture payload = create().u32(offsets.length);
+        for (long offset : offsets) {
+            payload.u32(offset);
+        }
+        return fullBox("stco", 0, payload.toByteArray());
+    }
+
+    static byte[] co64(long... offsets) {
+        final Mp4Fixture payload = create().u32(offsets.length);
+        for (long offset : offsets) {
+            payload.u64(offset);
+        }
+        return fullBox("co64", 0, payload.toByteArray());
+    }
+
+    /**
+     * A track with a chunk offset table, e.g. {@link #stco(long...)}.
+     */
+    static byte[] trak(byte[] tkhd, byte[] mdhd, String handlerType, byte[] sampleEntry, int sampleCount,
+                       byte[] chunkOffsets) {
+        return box("trak", tkhd, box("mdia", mdhd, hdlr(handlerType),
+                box("minf", box("stbl", stsd(sampleEntry), stsz(sampleCount), chunkOffsets))));
+    }
+
+    static File write(File file, byte[]... boxes) throws IOException {
+        try (FileOutputStream out = new FileOutputStream(file)) {
+            for (byte[] box : boxes) {
+                out.write(box);
+            }
+        }
+        return file;
+    }
+
+    private Mp4Fixture write(Write write) {
+        try {
+            write.run();
+        } catch (IOException e) {
+            throw new AssertionError(e);
+        }
+        return this;
+    }
+
+    private interface Write {
+
+        void run() throws IOException;
+    }
+}
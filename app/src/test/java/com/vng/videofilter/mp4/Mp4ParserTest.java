@@ -0,0 +1,120 @@
+package com.vng.videofilter.mp4;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.List;
+
+import static com.vng.videofilter.mp4.Mp4Fixture.*;
+import static org.junit.Assert.*;
+
+/**
+ * Tests for {@link Mp4Parser}.
+ */
+public class Mp4ParserTest {
+
+    private File mFile;
+
+    @Before
+    public void setUp() throws Exception {
+        mFile = File.createTempFile("parser", ".mp4");
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        mFile.delete();
+    }
+
+    @Test
+    public void tracks_areReadFromMoovAfterMdat() throws Exception {
+        // As MediaMuxer writes it: moov at the end, behind a 64-bit mdat.
+        write(mFile, ftyp(), largeBox("mdat", new byte[1000]), box("moov",
+                mvhd(1000, 10_000),
+                trak(tkhd(0, 1, 10_000, ROTATE_90, 1280, 720), mdhd(0, 90_000, 900_000), "vide",
+                        videoSampleEntry("avc1", 1280, 720), 300),
+                trak(tkhd(0, 2, 10_000, IDENTITY, 0, 0), mdhd(1, 44_100, 441_000L), "soun",
+                        audioSampleEntry("mp4a"), 431)));
+
+        try (Mp4Parser parser = Mp4Parser.open(mFile)) {
+            assertEquals(3, parser.getTopLevelBoxes().size());
+            assertEquals(10_000_000L, parser.getDurationUs());
+
+            final List<Mp4Track> tracks = parser.getTracks();
+            assertEquals(2, tracks.size());
+
+            final Mp4Track video = parser.getVideoTrack();
+            assertSame(tracks.get(0), video);
+            assertEquals(1, video.getTrackId());
+            assertEquals("avc1", video.getCodec());
+            assertEquals(1280, video.getWidth());
+            assertEquals(720, video.getHeight());
+            assertEquals(90, video.getRotationDegrees());
+            assertEquals(10_000_000L, video.getDurationUs());
+            assertEquals(300, video.getSampleCount());
+
+            final Mp4Track audio = tracks.get(1);
+            assertFalse(audio.isVideo());
+            assertEquals("soun", audio.getHandlerType());
+            assertEquals("mp4a", audio.getCodec());
+            assertEquals(0, audio.getRotationDegrees());
+            assertEquals(10_000_000L, audio.getDurationUs());
+            assertEquals(431, audio.getSampleCount());
+        }
+    }
+
+    @Test
+    public void rotation_coversAllQuarterTurns() throws Exception {
+        final int[][] matrices = {
+                {-0x10000, 0, 0, 0, -0x10000, 0, 0, 0, 0x40000000},
+                {0, -0x10000, 0, 0x10000, 0, 0, 0, 0, 0x40000000},
+        };
+        final int[] degrees = {180, 270};
+        for (int i = 0; i < matrices.length; i++) {
+            write(mFile, ftyp(), box("moov", mvhd(1000, 1000),
+                    trak(tkhd(1, 1, 1000, matrices[i], 640, 480), mdhd(0, 1000, 1000), "vide",
+                            videoSampleEntry("hvc1", 640, 480), 30)));
+            try (Mp4Parser parser = Mp4Parser.open(mFile)) {
+                assertEquals(degrees[i], parser.getVideoTrack().getRotationDegrees());
+                assertEquals("hvc1", parser.getVideoTrack().getCodec());
+            }
+        }
+    }
+
+    @Test
+    public void quickTimeFile_mayStartWithAnyBox() throws Exception {
+        final byte[] moov = box("moov", mvhd(600, 6_000),
+                trak(tkhd(0, 1, 6_000, IDENTITY, 640, 480), mdhd(0, 600, 6_000), "vide",
+                        videoSampleEntry("avc1", 640, 480), 300));
+        final String[] firstTypes = {"wide", "skip", "pnot"};
+        for (String type : firstTypes) {
+            write(mFile, box(type), box("mdat", new byte[100]), moov);
+            try (Mp4Parser parser = Mp4Parser.open(mFile)) {
+                assertEquals(3, parser.getTopLevelBoxes().size());
+                assertEquals(Mp4Box.type(type), parser.getTopLevelBoxes().get(0).type);
+                assertEquals(10_000_000L, parser.getDurationUs());
+                assertEquals(640, parser.getVideoTrack().getWidth());
+            }
+        }
+    }
+
+    @Test
+    public void otherFiles_areRejected() throws Exception {
+        write(mFile, new byte[]{0x1a, 0x45, (byte) 0xdf, (byte) 0xa3, 0, 0, 0, 0, 0, 0, 0, 0});
+        try {
+            Mp4Parser.open(mFile).close();
+            fail("Matroska opened as MP4");
+        } catch (IOException expected) {
+        }
+
+        // A moov cut short.
+        write(mFile, ftyp(), Mp4Fixture.create().u32(4096).fourcc("moov").zeros(100).toByteArray());
+        try {
+            Mp4Parser.open(mFile).close();
+            fail("Truncated file opened");
+        } catch (IOException expected) {
+        }
+    }
+}
@@ -0,0 +1,132 @@
+package com.vng.videofilter.mp4;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.nio.ByteBuffer;
+
+import static com.vng.videofilter.mp4.Mp4Fixture.*;
+import static org.junit.Assert.*;
+
+/**
+ * Tests for {@link SampleTableIndex}.
+ */
+public class SampleTableIndexTest {
+
+    private File mFile;
+
+    @Before
+    public void setUp() throws Exception {
+        mFile = File.createTempFile("index", ".mp4");
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        mFile.delete();
+    }
+
+    @Test
+    public void tables_giveTimeOffsetAndSizeOfEverySample() throws Exception {
+        // 6 samples at 30 fps in a 90 kHz timescale, decoded I P B B P B, key frames 1 and 5.
+        write(mFile, ftyp(), box("moov", mvhd(1000, 200), box("trak",
+                tkhd(0, 1, 200, IDENTITY, 320, 240),
+                box("mdia", mdhd(0, 90_000, 18_000), hdlr("vide"), box("minf", box("stbl",
+                        stsd(videoSampleEntry("avc1", 320, 240)),
+                        fullBox("stts", 0, entries(1, 6, 3000)),
+                        fullBox("ctts", 1, entries(5, 1, 0, 1, 6000, 2, -3000, 1, 3000, 1, -3000)),
+                        fullBox("stss", 0, entries(2, 1, 5)),
+                        fullBox("stsz", 0, entries(0, 6, 100, 10, 20, 30, 40, 50)),
+                        // Two chunks: 4 samples, then 2.
+                        fullBox("stsc", 0, entries(2, 1, 4, 1, 2, 2, 1)),
+                        stco(1000, 5000)))))));
+
+        try (Mp4Parser parser = Mp4Parser.open(mFile)) {
+            final SampleTableIndex index = parser.getVideoTrack().getSampleTableIndex();
+            assertEquals(6, index.getSampleCount());
+
+            final long[] times = {0, 100_000, 33_333, 66_666, 166_666, 133_333};
+            final long[] offsets = {1000, 1100, 1110, 1130, 5000, 5040};
+            final int[] sizes = {100, 10, 20, 30, 40, 50};
+            for (int i = 0; i < 6; i++) {
+                assertEquals("time of " + i, times[i], index.getPresentationTimeUs(i));
+                assertEquals("offset of " + i, offsets[i], index.getOffset(i));
+                assertEquals("size of " + i, sizes[i], index.getSize(i));
+            }
+            assertEquals(166_666, index.getLastTimeUs());
+
+            assertEquals(2, index.getSyncSampleCount());
+            assertEquals(0, index.getSyncSample(0));
+            assertEquals(4, index.getSyncSample(1));
+            assertArrayEquals(new long[]{0, 166_666}, index.getSyncTimesUs());
+        }
+    }
+
+    @Test
+    public void compactTables_andNoSyncTable() throws Exception {
+        final ByteBuffer stbl = ByteBuffer.wrap(concat(
+                fullBox("stts", 0, entries(1, 3, 1024)),
+                // 4-bit sizes 1, 2, 3.
+                fullBox("stz2", 0, create().zeros(3).u8(4).u32(3).u8(0x12).u8(0x30).toByteArray()),
+                fullBox("stsc", 0, entries(1, 1, 3, 1)),
+                co64(0x1_0000_0000L)));
+
+        final SampleTableIndex index = SampleTableIndex.read(stbl, 44_100);
+        assertEquals(3, index.getSampleCount());
+        assertEquals(1, index.getSize(0));
+        assertEquals(3, index.getSize(2));
+        assertEquals(0x1_0000_0003L, index.getOffset(2));
+        assertEquals(2048L * 1000000 / 44_100, index.getPresentationTimeUs(2));
+        // Every sample is a sync sample without stss.
+        assertEquals(3, index.getSyncSampleCount());
+    }
+
+    @Test
+    public void syncSampleBefore_isFoundByBinarySearch() throws Exception {
+        // 10 minutes at 30 fps with a key frame every second.
+        final int count = 18_000;
+        final int[] sync = new int[count / 30];
+        for (int i = 0; i < sync.length; i++) {
+            sync[i] = 1 + i * 30;
+        }
+        final ByteBuffer stbl = ByteBuffer.wrap(concat(
+                fullBox("stts", 0, entries(1, count, 1)),
+                fullBox("stss", 0, prepend(sync.length, sync)),
+                fullBox("stsz", 0, entries(100, count)),
+                fullBox("stsc", 0, entries(1, 1, count, 1)),
+                stco(0)));
+
+        final SampleTableIndex index = SampleTableIndex.read(stbl, 30);
+        assertEquals(index.toString(), count, index.getSampleCount());
+        assertEquals(100L * 17_999, index.getOffset(17_999));
+        assertEquals(0, index.findSyncSampleBefore(0));
+        assertEquals(0, index.findSyncSampleBefore(999_999));
+        assertEquals(30, index.findSyncSampleBefore(1_000_000));
+        assertEquals(17_970, index.findSyncSampleBefore(Long.MAX_VALUE));
+        assertEquals(-1, index.findSyncSampleBefore(-1));
+    }
+
+    private static byte[] entries(int... values) {
+        final Mp4Fixture payload = create();
+        for (int value : values) {
+            payload.u32(value);
+        }
+        return payload.toByteArray();
+    }
+
+    private static byte[] prepend(int first, int[] values) {
+        final int[] all = new int[values.length + 1];
+        all[0] = first;
+        System.arraycopy(values, 0, all, 1, values.length);
+        return entries(all);
+    }
+
+    private static byte[] concat(byte[]... boxes) {
+        final Mp4Fixture bytes = create();
+        for (byte[] box : boxes) {
+            bytes.bytes(box);
+        }
+        return bytes.toByteArray();
+    }
+}
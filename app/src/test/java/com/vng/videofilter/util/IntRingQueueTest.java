@@ -0,0 +1,89 @@
+package com.vng.videofilter.util;
+
+import org.junit.Test;
+
+import java.lang.management.ManagementFactory;
+import java.util.NoSuchElementException;
+
+import static org.junit.Assert.*;
+
+/**
+ * Local unit tests for {@link IntRingQueue}.
+ */
+public class IntRingQueueTest {
+
+    private static final int ITERATIONS = 1_000_000;
+
+    @Test
+    public void capacity_isRoundedUpToPowerOfTwo() throws Exception {
+        assertEquals(8, new IntRingQueue(5).capacity());
+        assertEquals(16, new IntRingQueue(16).capacity());
+    }
+
+    @Test
+    public void fifoOrder_isKeptAcrossWrapAround() throws Exception {
+        IntRingQueue queue = new IntRingQueue(4);
+        for (int round = 0; round < 10; round++) {
+            queue.add(round);
+            queue.add(round + 100);
+            assertEquals(round, queue.peek());
+            assertEquals(round, queue.remove());
+            assertEquals(round + 100, queue.remove());
+            assertTrue(queue.isEmpty());
+        }
+        assertEquals(4, queue.capacity());
+    }
+
+    @Test
+    public void grow_keepsOrder() throws Exception {
+        IntRingQueue queue = new IntRingQueue(4);
+        queue.add(-1);
+        queue.remove();
+        for (int i = 0; i < 6; i++) {
+            queue.add(i);
+        }
+        assertEquals(8, queue.capacity());
+        for (int i = 0; i < 6; i++) {
+            assertEquals(i, queue.remove());
+        }
+    }
+
+    @Test(expected = NoSuchElementException.class)
+    public void remove_onEmpty_throws() throws Exception {
+        new IntRingQueue(2).remove();
+    }
+
+    @Test
+    public void steadyState_doesNotAllocate() throws Exception {
+        final com.sun.management.ThreadMXBean threadBean =
+                (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        final long threadId = Thread.currentThread().getId();
+        final IntRingQueue indices = new IntRingQueue(8);
+
+        // Warm up so that the JIT has settled before measuring.
+        long checksum = cycle(indices, ITERATIONS);
+
+        final long before = threadBean.getThreadAllocatedBytes(threadId);
+        checksum += cycle(indices, ITERATIONS);
+        final long allocated = threadBean.getThreadAllocatedBytes(threadId) - before;
+
+        assertTrue(checksum != 0);
+        // Allow a little slack for the measurement itself.
+        assertTrue("allocated " + allocated + " bytes", allocated < 1024);
+    }
+
+    private static long cycle(IntRingQueue indices, int iterations) {
+        long checksum = 0;
+        for (int i = 0; i < iterations; i++) {
+            // Same pattern as a codec with 4 buffers in flight.
+            indices.add(i & 7);
+            if (indices.size() >= 4) {
+                checksum += indices.remove();
+            }
+        }
+        while (!indices.isEmpty()) {
+            checksum += indices.remove();
+        }
+        return checksum;
+    }
+}
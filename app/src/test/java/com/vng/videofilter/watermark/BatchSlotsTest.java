@@ -0,0 +1,42 @@
+package com.vng.videofilter.watermark;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+/**
+ * Tests for {@link BatchSlots}.
+ */
+public class BatchSlotsTest {
+
+    @Test
+    public void jobs_startWhileCodecsAndMemoryLast() {
+        final BatchSlots slots = new BatchSlots(100);
+
+        assertTrue(slots.tryAcquire(40, 3));
+        assertTrue(slots.tryAcquire(40, 3));
+        // Over the memory budget.
+        assertFalse(slots.tryAcquire(40, 3));
+        // A smaller job behind it still fits.
+        assertTrue(slots.tryAcquire(20, 3));
+        // Out of codec instances.
+        assertFalse(slots.tryAcquire(0, 3));
+
+        slots.release(40);
+        assertEquals(2, slots.getRunningJobs());
+        assertEquals(60, slots.getReservedMemory());
+        assertTrue(slots.tryAcquire(40, 3));
+    }
+
+    @Test
+    public void oversizedJob_runsAlone() {
+        final BatchSlots slots = new BatchSlots(100);
+
+        assertTrue(slots.tryAcquire(500, 4));
+        assertFalse(slots.tryAcquire(1, 4));
+
+        slots.release(500);
+        assertEquals(0, slots.getReservedMemory());
+        assertTrue(slots.tryAcquire(1, 4));
+    }
+}
@@ -0,0 +1,283 @@
+package com.vng.videofilter.watermark;
+
+import com.vng.videofilter.codec.CodecPort;
+import com.vng.videofilter.codec.FakeCodecPort;
+import com.vng.videofilter.codec.InMemorySampleSource;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.junit.Assert.*;
+import static org.junit.Assume.assumeTrue;
+
+/**
+ * Runs {@link DecoderWrapper} against {@link FakeCodecPort} on the local JVM.
+ */
+public class DecoderWrapperThroughputTest {
+
+    private static final int FRAME_COUNT = 120;
+
+    private static final int BUFFER_COUNT = 4;
+
+    private static final long FRAME_DURATION_US = 33_333L;
+
+    private ScheduledExecutorService mQueue;
+
+    @Before
+    public void setUp() throws Exception {
+        mQueue = Executors.newSingleThreadScheduledExecutor();
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        mQueue.shutdownNow();
+    }
+
+    @Test(timeout = 60000)
+    public void decodesAllFramesInPresentationOrder() throws Exception {
+        final FakeCodecPort codec = decodeAll(FRAME_COUNT);
+        // Input buffers, the reorder window and one frame being decoded.
+        assertTrue("max " + codec.getMaxFramesInCodec() + " frames in codec",
+                codec.getMaxFramesInCodec() <= BUFFER_COUNT + 2 + 1);
+    }
+
+    /**
+     * Ten minutes at 30 fps; run with {@code -Dbenchmark=true}.
+     */
+    @Test(timeout = 600000)
+    public void benchmark() throws Exception {
+        assumeTrue(Boolean.getBoolean("benchmark"));
+        final int frameCount = 18_000;
+
+        final long start = System.nanoTime();
+        final FakeCodecPort codec = decodeAll(frameCount);
+        final double seconds = (System.nanoTime() - start) / 1e9;
+
+        final String result = String.format("%d frames in %.3f s, %.1f fps, max %d frames in codec",
+                frameCount, seconds, frameCount / seconds, codec.getMaxFramesInCodec());
+        assertTrue(result, codec.getMaxFramesInCodec() <= BUFFER_COUNT + 2 + 1);
+    }
+
+    @Test(timeout = 60000)
+    public void holdsOutputWhileListenerIsBusy() throws Exception {
+        final InMemorySampleSource source = InMemorySampleSource.video(FRAME_COUNT / 4, FRAME_DURATION_US, 30, true, 8 * 1024);
+
+        final List<Long> timestamps = new ArrayList<>();
+        // Current, maximum, and current at the end of stream.
+        final int[] framesInFlight = new int[]{0, 0, -1};
+        final CountDownLatch done = new CountDownLatch(1);
+        final DecoderWrapper decoder = new DecoderWrapper(mQueue, FakeCodecPort.factory(BUFFER_COUNT, 200, 2));
+        decoder.setListener(new DecoderWrapper.Listener() {
+            @Override
+            public boolean canRenderFrame() {
+                return framesInFlight[0] == 0;
+            }
+
+            @Override
+            public boolean onFrameDecoded(long presentationTimeUs) {
+                timestamps.add(presentationTimeUs);
+                framesInFlight[1] = Math.max(framesInFlight[1], ++framesInFlight[0]);
+                // Stands in for the SurfaceTexture frame callback.
+                mQueue.schedule(() -> {
+                    framesInFlight[0]--;
+                    decoder.drainOutput();
+                }, 1, TimeUnit.MILLISECONDS);
+                return true;
+            }
+
+            @Override
+            public void onEndOfStream() {
+                framesInFlight[2] = framesInFlight[0];
+                done.countDown();
+            }
+
+            @Override
+            public void onError(Exception e) {
+                throw new AssertionError(e);
+            }
+        });
+
+        mQueue.submit(() -> {
+            decoder.configure(source, null);
+            return null;
+        }).get();
+        assertTrue("decoder did not finish", done.await(30, TimeUnit.SECONDS));
+
+        assertEquals(FRAME_COUNT / 4, timestamps.size());
+        for (int i = 0; i < timestamps.size(); i++) {
+            assertEquals(i * FRAME_DURATION_US, (long) timestamps.get(i));
+        }
+        assertEquals(1, framesInFlight[1]);
+        // The end of stream queues behind the frame still being rendered.
+        assertEquals(0, framesInFlight[2]);
+
+        mQueue.submit(decoder::release).get();
+    }
+
+    @Test(timeout = 60000)
+    public void timeRange_stopsAtNextSyncSample() throws Exception {
+        final AtomicReference<FakeCodecPort> codecRef = new AtomicReference<>();
+        final CodecPort.Factory factory = mimeType -> {
+            FakeCodecPort codec = new FakeCodecPort(BUFFER_COUNT, 200, 2, 16 * 1024);
+            codecRef.set(codec);
+            return codec;
+        };
+        final InMemorySampleSource source = InMemorySampleSource.video(100, FRAME_DURATION_US, 10, true, 1024);
+
+        final List<Long> timestamps = new ArrayList<>();
+        final CountDownLatch done = new CountDownLatch(1);
+        final DecoderWrapper decoder = new DecoderWrapper(mQueue, factory);
+        decoder.setListener(new DecoderWrapper.Listener() {
+            @Override
+            public boolean canRenderFrame() {
+                return true;
+            }
+
+            @Override
+            public boolean onFrameDecoded(long presentationTimeUs) {
+                timestamps.add(presentationTimeUs);
+                return true;
+            }
+
+            @Override
+            public void onEndOfStream() {
+                done.countDown();
+            }
+
+            @Override
+            public void onError(Exception e) {
+                throw new AssertionError(e);
+            }
+        });
+        // Starts mid-GOP, ends on a sync sample.
+        decoder.setTimeRange(15 * FRAME_DURATION_US, 40 * FRAME_DURATION_US);
+
+        mQueue.submit(() -> {
+            decoder.configure(source, null);
+            return null;
+        }).get();
+        assertTrue("decoder did not finish", done.await(30, TimeUnit.SECONDS));
+
+        assertEquals(25, timestamps.size());
+        for (int i = 0; i < timestamps.size(); i++) {
+            assertEquals((15 + i) * FRAME_DURATION_US, (long) timestamps.get(i));
+        }
+        // Frames 10 to 39 and the end of stream.
+        assertEquals(31, codecRef.get().getFramesQueued());
+
+        mQueue.submit(decoder::release).get();
+    }
+
+    @Test(timeout = 60000)
+    public void codecError_releasesTheDecoderAndReachesTheListener() throws Exception {
+        final AtomicReference<FakeCodecPort> codecRef = new AtomicReference<>();
+        final CodecPort.Factory factory = mimeType -> {
+            FakeCodecPort codec = new FakeCodecPort(BUFFER_COUNT, 200, 2, 16 * 1024);
+            codecRef.set(codec);
+            return codec;
+        };
+        final InMemorySampleSource source = InMemorySampleSource.video(FRAME_COUNT, FRAME_DURATION_US, 30, true, 1024);
+
+        final AtomicReference<Exception> error = new AtomicReference<>();
+        final CountDownLatch failed = new CountDownLatch(1);
+        final DecoderWrapper decoder = new DecoderWrapper(mQueue, factory);
+        decoder.setListener(new DecoderWrapper.Listener() {
+            @Override
+            public boolean canRenderFrame() {
+                return true;
+            }
+
+            @Override
+            public boolean onFrameDecoded(long presentationTimeUs) {
+                return true;
+            }
+
+            @Override
+            public void onEndOfStream() {
+            }
+
+            @Override
+            public void onError(Exception e) {
+                error.set(e);
+                failed.countDown();
+            }
+        });
+
+        mQueue.submit(() -> {
+            decoder.configure(source, null);
+            return null;
+        }).get();
+        final Exception codecError = new IllegalStateException("codec error");
+        codecRef.get().fail(codecError);
+
+        assertTrue("error not reported", failed.await(30, TimeUnit.SECONDS));
+        assertSame(codecError, error.get());
+        assertNull(mQueue.submit(decoder::getCodecName).get());
+
+        mQueue.submit(decoder::release).get();
+    }
+
+    /**
+     * Decodes every frame of a stream, checking their order.
+     *
+     * @return the codec that decoded them.
+     */
+    private FakeCodecPort decodeAll(int frameCount) throws Exception {
+        final AtomicReference<FakeCodecPort> codecRef = new AtomicReference<>();
+        final CodecPort.Factory factory = mimeType -> {
+            FakeCodecPort codec = new FakeCodecPort(BUFFER_COUNT, 200, 2, 16 * 1024);
+            codecRef.set(codec);
+            return codec;
+        };
+        final InMemorySampleSource source = InMemorySampleSource.video(frameCount, FRAME_DURATION_US, 30, true, 8 * 1024);
+
+        final List<Long> timestamps = new ArrayList<>();
+        final CountDownLatch done = new CountDownLatch(1);
+        final DecoderWrapper decoder = new DecoderWrapper(mQueue, factory);
+        decoder.setListener(new DecoderWrapper.Listener() {
+            @Override
+            public boolean canRenderFrame() {
+                return true;
+            }
+
+            @Override
+            public boolean onFrameDecoded(long presentationTimeUs) {
+                timestamps.add(presentationTimeUs);
+                return true;
+            }
+
+            @Override
+            public void onEndOfStream() {
+                done.countDown();
+            }
+
+            @Override
+            public void onError(Exception e) {
+                throw new AssertionError(e);
+            }
+        });
+
+        mQueue.submit(() -> {
+            decoder.configure(source, null);
+            return null;
+        }).get();
+        assertTrue("decoder did not finish", done.await(frameCount / 10 + 30, TimeUnit.SECONDS));
+
+        assertEquals(frameCount, timestamps.size());
+        for (int i = 0; i < frameCount; i++) {
+            assertEquals(i * FRAME_DURATION_US, (long) timestamps.get(i));
+        }
+
+        mQueue.submit(decoder::release).get();
+        return codecRef.get();
+    }
+}
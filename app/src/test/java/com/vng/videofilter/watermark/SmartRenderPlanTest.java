@@ -0,0 +1,93 @@
+package com.vng.videofilter.watermark;
+
+import com.vng.videofilter.codec.SegmentPlanner.Segment;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+/**
+ * Tests for {@link WatermarkSchedule} and {@link SmartRenderPlan}.
+ */
+public class SmartRenderPlanTest {
+
+    private static final long GOP_US = 1_000_000L;
+
+    @Test
+    public void schedule_mergesOverlappingIntervals() {
+        final WatermarkSchedule schedule = new WatermarkSchedule.Builder()
+                .add(8_000_000, 10_000_000)
+                .add(0, 2_000_000)
+                .add(1_500_000, 3_000_000)
+                .build();
+
+        assertTrue(schedule.isVisible(0));
+        assertTrue(schedule.isVisible(2_999_999));
+        assertFalse(schedule.isVisible(3_000_000));
+        assertTrue(schedule.isVisible(8_000_000));
+        assertFalse(schedule.isVisible(10_000_000));
+        assertTrue(schedule.intersects(2_500_000, 5_000_000));
+        assertFalse(schedule.intersects(3_000_000, 8_000_000));
+        assertFalse(schedule.isAlways());
+        assertTrue(WatermarkSchedule.always().isVisible(Long.MAX_VALUE - 1));
+    }
+
+    @Test
+    public void plan_reencodesOnlyTheGopsTheWatermarkCovers() {
+        // Watermark on the first 1.5 s and the last second of a 10 GOP clip.
+        final WatermarkSchedule schedule = new WatermarkSchedule.Builder()
+                .add(0, 1_500_000)
+                .add(9 * GOP_US, Long.MAX_VALUE)
+                .build();
+
+        final SmartRenderPlan plan = SmartRenderPlan.create(gops(10), schedule);
+
+        final List<Segment> runs = plan.getRuns();
+        assertEquals(3, runs.size());
+        assertTrue(plan.isReencoded(0));
+        assertEquals(0, runs.get(0).startUs);
+        assertEquals(2 * GOP_US, runs.get(0).endUs);
+        assertFalse(plan.isReencoded(1));
+        assertEquals(9 * GOP_US, runs.get(1).endUs);
+        assertTrue(plan.isReencoded(2));
+        assertEquals(Long.MAX_VALUE, runs.get(2).endUs);
+        assertEquals(2, plan.getReencodedRuns().size());
+        assertTrue(plan.hasCopiedRuns());
+    }
+
+    @Test
+    public void plan_withWatermarkEverywhere_hasNothingToCopy() {
+        final SmartRenderPlan plan = SmartRenderPlan.create(gops(5), WatermarkSchedule.always());
+
+        assertEquals(1, plan.getRuns().size());
+        assertFalse(plan.hasCopiedRuns());
+    }
+
+    @Test
+    public void plan_reencodesTheGopsCutByTheTimeRange() {
+        final WatermarkSchedule schedule = new WatermarkSchedule.Builder().add(0, 1).build();
+
+        final SmartRenderPlan plan = SmartRenderPlan.create(gops(10), schedule, 2_500_000, 6 * GOP_US + 500_000);
+
+        final List<Segment> runs = plan.getRuns();
+        assertEquals(3, runs.size());
+        assertTrue(plan.isReencoded(0));
+        assertEquals(2_500_000, runs.get(0).startUs);
+        assertEquals(3 * GOP_US, runs.get(0).endUs);
+        assertFalse(plan.isReencoded(1));
+        assertEquals(6 * GOP_US, runs.get(1).endUs);
+        assertTrue(plan.isReencoded(2));
+        assertEquals(6 * GOP_US + 500_000, runs.get(2).endUs);
+    }
+
+    private static List<Segment> gops(int count) {
+        final List<Segment> gops = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            gops.add(new Segment(i, i * GOP_US, i + 1 < count ? (i + 1) * GOP_US : Long.MAX_VALUE));
+        }
+        return gops;
+    }
+}
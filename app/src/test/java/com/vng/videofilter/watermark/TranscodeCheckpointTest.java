@@ -0,0 +1,84 @@
+package com.vng.videofilter.watermark;
+
+import com.vng.videofilter.codec.SegmentPlanner.Segment;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+/**
+ * Tests for {@link TranscodeCheckpoint}.
+ */
+public class TranscodeCheckpointTest {
+
+    private static final String JOB = "file:///sdcard/a.mp4|1000|0|0|" + Long.MAX_VALUE;
+
+    private File mDir;
+
+    @Before
+    public void setUp() throws Exception {
+        mDir = new File(Files.createTempDirectory("checkpoint").toFile(), "job");
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        TranscodeCheckpoint.delete(mDir);
+        mDir.getParentFile().delete();
+    }
+
+    @Test
+    public void restartedJob_resumesAfterTheLastCompleteSegment() throws Exception {
+        final TranscodeCheckpoint checkpoint = TranscodeCheckpoint.create(mDir, JOB, segments());
+        assertEquals(-1, checkpoint.getResumeTimeUs());
+
+        writeSegment(0);
+        checkpoint.markDone(0);
+        writeSegment(1);
+        checkpoint.markDone(1);
+        // Killed while writing the third segment.
+        writeSegment(2);
+
+        final TranscodeCheckpoint resumed = TranscodeCheckpoint.load(mDir, JOB);
+        assertNotNull(resumed);
+        assertEquals(4, resumed.getSegments().size());
+        assertEquals(60_000_000L, resumed.getResumeTimeUs());
+        final List<Segment> remaining = resumed.getRemainingSegments();
+        assertEquals(2, remaining.size());
+        assertEquals(2, remaining.get(0).index);
+        assertEquals(Long.MAX_VALUE, remaining.get(1).endUs);
+        assertEquals(TranscodeCheckpoint.getSegmentFile(mDir, 3), resumed.getSegmentFiles().get(3));
+    }
+
+    @Test
+    public void checkpoint_isOnlyTrustedForTheSameJobAndFiles() throws Exception {
+        final TranscodeCheckpoint checkpoint = TranscodeCheckpoint.create(mDir, JOB, segments());
+        writeSegment(0);
+        checkpoint.markDone(0);
+        checkpoint.markDone(1);
+
+        assertNull(TranscodeCheckpoint.load(mDir, JOB + "|other schedule"));
+        // The second segment's file is gone, so it's done again.
+        assertEquals(1, TranscodeCheckpoint.load(mDir, JOB).getRemainingSegments().get(0).index);
+
+        TranscodeCheckpoint.delete(mDir);
+        assertFalse(mDir.exists());
+        assertNull(TranscodeCheckpoint.load(mDir, JOB));
+    }
+
+    private static List<Segment> segments() {
+        return Arrays.asList(new Segment(0, 0, 30_000_000L), new Segment(1, 30_000_000L, 60_000_000L),
+                new Segment(2, 60_000_000L, 90_000_000L), new Segment(3, 90_000_000L, Long.MAX_VALUE));
+    }
+
+    private void writeSegment(int index) throws IOException {
+        Files.write(TranscodeCheckpoint.getSegmentFile(mDir, index).toPath(), new byte[]{1});
+    }
+}
@@ -0,0 +1,138 @@
+package com.vng.videofilter.watermark;
+
+import com.vng.videofilter.gles.WatermarkBlend;
+
+import org.junit.Test;
+
+import java.nio.ByteBuffer;
+
+import static org.junit.Assert.*;
+
+/**
+ * Tests for {@link WatermarkPlacement}.
+ */
+public class WatermarkPlacementTest {
+
+    // Stored frame, played sideways as 6x8 on 90 and 270.
+    private static final int WIDTH = 8;
+
+    private static final int HEIGHT = 6;
+
+    // Upright watermark.
+    private static final int MARK_WIDTH = 2;
+
+    private static final int MARK_HEIGHT = 3;
+
+    private static final int MARGIN = 1;
+
+    private static final int FRAME_PIXEL = 0x204060ff;
+
+    @Test
+    public void sideways_goesInTheTopRightOfTheStoredFrame() {
+        final WatermarkPlacement placement = place(90);
+        assertEquals(4, placement.getLeft());
+        assertEquals(1, placement.getTop());
+        assertEquals(3, placement.getWidth());
+        assertEquals(2, placement.getHeight());
+        assertArrayEquals(new float[]{4f / WIDTH, 3f / HEIGHT, 3f / WIDTH, 2f / HEIGHT},
+                placement.getViewportRect(), 1e-6f);
+
+        assertEquals(WIDTH - MARGIN - MARK_WIDTH, place(0).getLeft());
+        assertEquals(HEIGHT - MARGIN - MARK_HEIGHT, place(0).getTop());
+        assertEquals(90, place(-270).getRotationDegrees());
+    }
+
+    @Test
+    public void shader_showsTheWatermarkUprightInTheBottomRight() {
+        for (int rotation = 0; rotation < 360; rotation += 90) {
+            final WatermarkPlacement placement = place(rotation);
+            final float[] rect = placement.getViewportRect();
+            final ByteBuffer stored = ByteBuffer.allocate(WIDTH * HEIGHT * 4);
+            WatermarkBlend.compose(frame(), WIDTH, HEIGHT, watermark(), MARK_WIDTH, MARK_HEIGHT,
+                    rect[0], rect[1], rect[2], rect[3], placement.getRotationDegrees(), 1f, stored);
+
+            assertShowsInTheBottomRight(stored, rotation);
+        }
+    }
+
+    @Test
+    public void storedPixels_showUprightInTheBottomRight() {
+        for (int rotation = 0; rotation < 360; rotation += 90) {
+            final WatermarkPlacement placement = place(rotation);
+            final ByteBuffer mark = placement.toStored(watermark(), MARK_WIDTH, MARK_HEIGHT);
+            final ByteBuffer stored = frame();
+            for (int row = 0; row < placement.getHeight(); row++) {
+                for (int column = 0; column < placement.getWidth(); column++) {
+                    stored.putInt(4 * ((placement.getTop() + row) * WIDTH + placement.getLeft() + column),
+                            mark.getInt(4 * (row * placement.getWidth() + column)));
+                }
+            }
+
+            assertShowsInTheBottomRight(stored, rotation);
+        }
+    }
+
+    private static WatermarkPlacement place(int rotation) {
+        return WatermarkPlacement.bottomRight(WIDTH, HEIGHT, rotation, MARK_WIDTH, MARK_HEIGHT, MARGIN);
+    }
+
+    /**
+     * Turns the stored frame as a player would, and checks it against the watermark.
+     */
+    private static void assertShowsInTheBottomRight(ByteBuffer stored, int rotation) {
+        int width = WIDTH;
+        int height = HEIGHT;
+        ByteBuffer shown = stored;
+        for (int turns = 0; turns < rotation / 90; turns++) {
+            shown = turnClockwise(shown, width, height);
+            final int swap = width;
+            width = height;
+            height = swap;
+        }
+
+        final ByteBuffer mark = watermark();
+        final int left = width - MARGIN - MARK_WIDTH;
+        final int top = height - MARGIN - MARK_HEIGHT;
+        for (int row = 0; row < height; row++) {
+            for (int column = 0; column < width; column++) {
+                final int markColumn = column - left;
+                final int markRow = row - top;
+                final boolean inside = markColumn >= 0 && markColumn < MARK_WIDTH
+                        && markRow >= 0 && markRow < MARK_HEIGHT;
+                final int expected = inside ? mark.getInt(4 * (markRow * MARK_WIDTH + markColumn)) : FRAME_PIXEL;
+                assertEquals("at " + column + "," + row + " rotated " + rotation,
+                        Integer.toHexString(expected), Integer.toHexString(shown.getInt(4 * (row * width + column))));
+            }
+        }
+    }
+
+    private static ByteBuffer turnClockwise(ByteBuffer pixels, int width, int height) {
+        final ByteBuffer turned = ByteBuffer.allocate(pixels.capacity());
+        for (int row = 0; row < height; row++) {
+            for (int column = 0; column < width; column++) {
+                // The left column becomes the top row.
+                turned.putInt(4 * (column * height + height - 1 - row), pixels.getInt(4 * (row * width + column)));
+            }
+        }
+        return turned;
+    }
+
+    private static ByteBuffer frame() {
+        final ByteBuffer frame = ByteBuffer.allocate(WIDTH * HEIGHT * 4);
+        for (int i = 0; i < WIDTH * HEIGHT; i++) {
+            frame.putInt(4 * i, FRAME_PIXEL);
+        }
+        return frame;
+    }
+
+    /**
+     * Opaque, and a different color in every pixel, so that a turned one shows.
+     */
+    private static ByteBuffer watermark() {
+        final ByteBuffer watermark = ByteBuffer.allocate(MARK_WIDTH * MARK_HEIGHT * 4);
+        for (int i = 0; i < MARK_WIDTH * MARK_HEIGHT; i++) {
+            watermark.putInt(4 * i, (40 * (i + 1)) << 24 | (i * 20) << 16 | 0xff);
+        }
+        return watermark;
+    }
+}
@@ -0,0 +1,188 @@
+package com.vng.videofilter.watermark;
+
+import org.junit.AfterClass;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import java.nio.ByteBuffer;
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+
+import static org.junit.Assert.*;
+import static org.junit.Assume.assumeTrue;
+
+/**
+ * Tests for {@link YuvWatermarkBlender}.
+ */
+public class YuvWatermarkBlenderTest {
+
+    // The fixed point kernel rounds twice where the reference rounds once.
+    private static final int TOLERANCE = 2;
+
+    private static ForkJoinPool sPool;
+
+    @BeforeClass
+    public static void setUpClass() {
+        sPool = new ForkJoinPool(4);
+    }
+
+    @AfterClass
+    public static void tearDownClass() {
+        sPool.shutdown();
+    }
+
+    @Test
+    public void nv12_matchesReference() {
+        assertMatchesReference(YuvLayout.nv12(96, 80, 112, 88), 23, 17);
+    }
+
+    @Test
+    public void i420_matchesReference() {
+        assertMatchesReference(YuvLayout.i420(96, 80, 96, 80), 40, 42);
+    }
+
+    @Test
+    public void clipsToTheFrame() {
+        final YuvLayout layout = YuvLayout.nv12(64, 64, 64, 64);
+        final ByteBuffer frame = randomFrame(layout, 3);
+        final ByteBuffer watermark = randomWatermark(48, 48, 4);
+        final ByteBuffer expected = copy(frame);
+        blendReference(watermark, 48, 48, expected, layout, 40, 40);
+
+        new YuvWatermarkBlender(watermark, 48, 48, sPool).blend(frame, layout, 40, 40);
+
+        assertFramesMatch(expected, frame, layout);
+    }
+
+    /**
+     * Blends 1080p frames for MB/s; run with {@code -Dbenchmark=true}. Has to keep up with
+     * 30 fps.
+     */
+    @Test
+    public void benchmark() {
+        assumeTrue(Boolean.getBoolean("benchmark"));
+        final int width = 1920;
+        final int height = 1080;
+        final YuvLayout layout = YuvLayout.nv12(width, height, width, height);
+        final ByteBuffer frame = randomFrame(layout, 5);
+        final YuvWatermarkBlender blender = new YuvWatermarkBlender(randomWatermark(width, height, 6),
+                width, height, sPool);
+
+        // Warm up the JIT first.
+        for (int i = 0; i < 5; i++) {
+            blender.blend(frame, layout, 0, 0);
+        }
+
+        final int iterations = 30;
+        final long startNs = System.nanoTime();
+        for (int i = 0; i < iterations; i++) {
+            blender.blend(frame, layout, 0, 0);
+        }
+        final double seconds = (System.nanoTime() - startNs) / 1e9;
+
+        final double megabytes = (double) iterations * width * height * 3 / 2 / (1024 * 1024);
+        final String result = String.format("%d %dx%d frames in %.3f s, %.1f MB/s, %.1f fps",
+                iterations, width, height, seconds, megabytes / seconds, iterations / seconds);
+        assertTrue(result, iterations / seconds >= 30);
+    }
+
+    private static void assertMatchesReference(YuvLayout layout, int x, int y) {
+        final int width = 41;
+        final int height = 37;
+        final ByteBuffer frame = randomFrame(layout, 1);
+        final ByteBuffer watermark = randomWatermark(width, height, 2);
+        final ByteBuffer expected = copy(frame);
+        blendReference(watermark, width, height, expected, layout, x & ~1, y & ~1);
+
+        new YuvWatermarkBlender(watermark, width, height, sPool).blend(frame, layout, x, y);
+
+        assertFramesMatch(expected, frame, layout);
+    }
+
+    private static void assertFramesMatch(ByteBuffer expected, ByteBuffer actual, YuvLayout layout) {
+        for (int i = 0; i < layout.getFrameSize(); i++) {
+            final int difference = Math.abs((expected.get(i) & 0xff) - (actual.get(i) & 0xff));
+            assertTrue("byte " + i + ": expected " + (expected.get(i) & 0xff) + ", was " + (actual.get(i) & 0xff),
+                    difference <= TOLERANCE);
+        }
+    }
+
+    /**
+     * Straight floating point BT.601 conversion and "over" blending.
+     */
+    private static void blendReference(ByteBuffer rgba, int width, int height, ByteBuffer frame, YuvLayout layout,
+                                       int x, int y) {
+        for (int row = 0; row < height && y + row < layout.height; row++) {
+            for (int column = 0; column < width && x + column < layout.width; column++) {
+                final int i = 4 * (row * width + column);
+                final double a = (rgba.get(i + 3) & 0xff) / 255.0;
+                final double luma = 16 * a + (66 * (rgba.get(i) & 0xff) + 129 * (rgba.get(i + 1) & 0xff)
+                        + 25 * (rgba.get(i + 2) & 0xff)) / 256.0;
+                final int offset = layout.yOffset + (y + row) * layout.yRowStride + x + column;
+                frame.put(offset, (byte) round(luma + (frame.get(offset) & 0xff) * (1 - a)));
+            }
+        }
+
+        for (int row = 0; row < (height + 1) / 2 && y / 2 + row < (layout.height + 1) / 2; row++) {
+            for (int column = 0; column < (width + 1) / 2 && x / 2 + column < (layout.width + 1) / 2; column++) {
+                double r = 0;
+                double g = 0;
+                double b = 0;
+                double a = 0;
+                for (int dy = 0; dy < 2 && 2 * row + dy < height; dy++) {
+                    for (int dx = 0; dx < 2 && 2 * column + dx < width; dx++) {
+                        final int i = 4 * ((2 * row + dy) * width + 2 * column + dx);
+                        r += (rgba.get(i) & 0xff) / 4.0;
+                        g += (rgba.get(i + 1) & 0xff) / 4.0;
+                        b += (rgba.get(i + 2) & 0xff) / 4.0;
+                        a += (rgba.get(i + 3) & 0xff) / 255.0 / 4;
+                    }
+                }
+
+                final int chromaOffset = (y / 2 + row) * layout.uvRowStride + (x / 2 + column) * layout.uvPixelStride;
+                final int u = layout.uOffset + chromaOffset;
+                final int v = layout.vOffset + chromaOffset;
+                frame.put(u, (byte) round(128 * a + (-38 * r - 74 * g + 112 * b) / 256
+                        + (frame.get(u) & 0xff) * (1 - a)));
+                frame.put(v, (byte) round(128 * a + (112 * r - 94 * g - 18 * b) / 256
+                        + (frame.get(v) & 0xff) * (1 - a)));
+            }
+        }
+    }
+
+    private static int round(double value) {
+        return (int) Math.max(0, Math.min(255, Math.round(value)));
+    }
+
+    private static ByteBuffer randomFrame(YuvLayout layout, long seed) {
+        final byte[] bytes = new byte[layout.getFrameSize()];
+        new Random(seed).nextBytes(bytes);
+        final ByteBuffer frame = ByteBuffer.allocateDirect(bytes.length);
+        frame.put(bytes).clear();
+        return frame;
+    }
+
+    /**
+     * Premultiplied, with a good share of fully transparent and fully opaque pixels.
+     */
+    private static ByteBuffer randomWatermark(int width, int height, long seed) {
+        final Random random = new Random(seed);
+        final ByteBuffer pixels = ByteBuffer.allocateDirect(4 * width * height);
+        for (int i = 0; i < width * height; i++) {
+            final int choice = random.nextInt(4);
+            final int alpha = choice == 0 ? 0 : choice == 1 ? 255 : random.nextInt(256);
+            for (int c = 0; c < 3; c++) {
+                pixels.put((byte) (random.nextInt(256) * alpha / 255));
+            }
+            pixels.put((byte) alpha);
+        }
+        pixels.clear();
+        return pixels;
+    }
+
+    private static ByteBuffer copy(ByteBuffer frame) {
+        final ByteBuffer copy = ByteBuffer.allocateDirect(frame.capacity());
+        copy.put(frame.duplicate()).clear();
+        return copy;
+    }
+}